@@ -0,0 +1,265 @@
+package ua.edu.ukma.fin.iretrieval.benchmark;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates synthetic RSS feeds resembling news feeds the engine indexes.
+ * Terms of titles, descriptions and categories are drawn from a vocabulary of
+ * a given size following Zipf's law, descriptions contain HTML markup the way
+ * real feeds do. Generation is deterministic for a given seed, so every run
+ * of a benchmark sees the same corpus.
+ *
+ * @see "Introduction to information retrieval. 5.1.2 Zipf's law: Modeling the
+ * distribution of terms"
+ */
+public class CorpusGenerator
+{
+	/**
+	 * @param vocabularySize
+	 * Number of distinct terms.
+	 *
+	 * @param exponent
+	 * Exponent of Zipf's law, frequency of the term of rank r is proportional
+	 * to 1 / r^exponent.
+	 *
+	 * @param seed
+	 * Seed of the random generator.
+	 */
+	public CorpusGenerator(int vocabularySize, double exponent, long seed)
+	{
+		if (vocabularySize <= 0)
+		{
+			throw new IllegalArgumentException("Vocabulary can't be empty.");
+		}
+		this.random = new Random(seed);
+		this.vocabulary = new String[vocabularySize];
+		this.distribution = new double[vocabularySize];
+		double sum = 0;
+		for (int rank = 0; rank < vocabularySize; rank++)
+		{
+			vocabulary[rank] = word(rank);
+			sum += 1 / Math.pow(rank + 1, exponent);
+			distribution[rank] = sum;
+		}
+		for (int rank = 0; rank < vocabularySize; rank++)
+		{
+			distribution[rank] /= sum;
+		}
+	}
+
+	/**
+	 * @return Description of a news item: paragraphs of random terms with some
+	 * words emphasized and character references in between.
+	 */
+	public String nextDescription()
+	{
+		StringBuilder description = new StringBuilder();
+		int length = descriptionLength / 2 + random.nextInt(descriptionLength + 1);
+		description.append("<p>");
+		for (int i = 0; i < length; i++)
+		{
+			if (i > 0)
+			{
+				description.append(i % 40 == 0 ? "</p><p>" : i % 17 == 0 ? " &amp; " : " ");
+			}
+			if (random.nextInt(20) == 0)
+			{
+				description.append("<b>").append(nextTerm()).append("</b>");
+			}
+			else
+			{
+				description.append(nextTerm());
+			}
+		}
+		return description.append(".</p>").toString();
+	}
+
+	/**
+	 * @param length
+	 * Number of terms in the query.
+	 *
+	 * @return Query of random terms.
+	 */
+	public String nextQuery(int length)
+	{
+		return nextText(length);
+	}
+
+	/**
+	 * @return Random term, terms of lower ranks are more probable.
+	 */
+	public String nextTerm()
+	{
+		int rank = Arrays.binarySearch(distribution, random.nextDouble());
+		if (rank < 0)
+		{
+			rank = -rank - 1;
+		}
+		return vocabulary[Math.min(rank, vocabulary.length - 1)];
+	}
+
+	/**
+	 * @param length
+	 * Number of terms.
+	 *
+	 * @return Random terms separated by spaces.
+	 */
+	public String nextText(int length)
+	{
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < length; i++)
+		{
+			if (i > 0)
+			{
+				text.append(' ');
+			}
+			text.append(nextTerm());
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Sets mean number of terms in item descriptions, actual lengths are
+	 * uniformly distributed between half and one and a half of the mean.
+	 */
+	public void setDescriptionLength(int descriptionLength)
+	{
+		this.descriptionLength = descriptionLength;
+	}
+
+	/**
+	 * Writes training examples for a feed {@link #writeFeed(Path, int)
+	 * generated} with the same number of items, in the format accepted by
+	 * {@link ua.edu.ukma.fin.iretrieval.index.IndexFactory#addExamples(String)}.
+	 *
+	 * @param path
+	 * File to write examples to.
+	 *
+	 * @param documentCount
+	 * Number of items in the feed.
+	 *
+	 * @param exampleCount
+	 * Number of examples to generate.
+	 *
+	 * @throws IOException
+	 * In case file can't be written.
+	 */
+	public void writeExamples(Path path, int documentCount, int exampleCount) throws IOException
+	{
+		try (Writer writer = newWriter(path))
+		{
+			writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<ExampleSet>\n");
+			for (int i = 0; i < exampleCount; i++)
+			{
+				writer.write("<Example><Term>" + nextTerm() + "</Term><Guid>" + guid(random
+						.nextInt(documentCount)) + "</Guid><Relevance>" + random.nextBoolean()
+						+ "</Relevance></Example>\n");
+			}
+			writer.write("</ExampleSet>\n");
+		}
+	}
+
+	/**
+	 * Writes RSS 2.0 feed of random news items.
+	 *
+	 * @param path
+	 * File to write the feed to.
+	 *
+	 * @param documentCount
+	 * Number of items in the feed.
+	 *
+	 * @throws IOException
+	 * In case file can't be written.
+	 */
+	public void writeFeed(Path path, int documentCount) throws IOException
+	{
+		SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z",
+				Locale.ENGLISH);
+		long time = 1000000000000L;
+		try (Writer writer = newWriter(path))
+		{
+			writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<rss version=\"2.0\">"
+					+ "<channel><title>Synthetic feed</title><link>http://example.com/</link>"
+					+ "<description>Generated corpus</description>\n");
+			for (int i = 0; i < documentCount; i++)
+			{
+				writer.write("<item><guid>" + guid(i) + "</guid>");
+				writer.write("<title>" + nextText(4 + random.nextInt(MAX_TITLE_LENGTH - 3))
+						+ "</title>");
+				writer.write("<link>http://example.com/news/" + i + "</link>");
+				writer.write("<description>" + escape(nextDescription()) + "</description>");
+				for (int j = random.nextInt(MAX_CATEGORIES + 1); j > 0; j--)
+				{
+					writer.write("<category>" + nextTerm() + "</category>");
+				}
+				writer.write("<pubDate>" + dateFormat.format(new Date(time + i * 60000L))
+						+ "</pubDate></item>\n");
+			}
+			writer.write("</channel></rss>\n");
+		}
+	}
+
+	/**
+	 * @return GUID of the item with a given number.
+	 */
+	public static String guid(int item)
+	{
+		return "http://example.com/news/" + item + "#guid";
+	}
+
+	private static String escape(String text)
+	{
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+	}
+
+	private static Writer newWriter(Path path) throws IOException
+	{
+		return Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Builds a distinct pronounceable word of at least four letters from its
+	 * rank, so that no term is lost to normalization.
+	 */
+	private static String word(int rank)
+	{
+		StringBuilder word = new StringBuilder();
+		int rest = rank;
+		do
+		{
+			word.append(SYLLABLES[rest % SYLLABLES.length]);
+			rest /= SYLLABLES.length;
+		}
+		while (rest > 0);
+		if (word.length() < 4)
+		{
+			word.append("ra");
+		}
+		return word.toString();
+	}
+
+	private static final int MAX_CATEGORIES = 3;
+	private static final int MAX_TITLE_LENGTH = 12;
+
+	private static final String[] SYLLABLES = { "ba", "ce", "di", "fo", "gu", "ha", "ke", "li",
+			"mo", "nu", "pa", "re", "si", "to", "vu", "wa", "xe", "zi", "bro", "cla", "dre",
+			"fli", "gro", "kra", "pla", "stu", "tri", "vla" };
+
+	private int descriptionLength = 80;
+
+	/**
+	 * Cumulative probabilities of the terms in order of their ranks
+	 */
+	private final double[] distribution;
+	private final Random random;
+	private final String[] vocabulary;
+}
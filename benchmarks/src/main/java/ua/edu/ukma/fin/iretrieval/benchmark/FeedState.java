@@ -0,0 +1,68 @@
+package ua.edu.ukma.fin.iretrieval.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import ua.edu.ukma.fin.iretrieval.index.IndexFactory;
+
+/**
+ * Synthetic feed and training examples loaded into an {@link IndexFactory}.
+ * Size and shape of the corpus are benchmark parameters, so they can be
+ * overridden from the command line, e.g. <code>-p documentCount=100000</code>.
+ */
+@State(Scope.Benchmark)
+public class FeedState
+{
+	@Setup
+	public void setUp() throws IOException
+	{
+		Logger.getLogger("com.iretrieval.index").setLevel(Level.WARNING);
+		directory = Files.createTempDirectory("corpus");
+		generator = new CorpusGenerator(vocabularySize, exponent, SEED);
+		Path feed = directory.resolve("feed.xml");
+		generator.writeFeed(feed, documentCount);
+		Path examples = directory.resolve("examples.xml");
+		generator.writeExamples(examples, documentCount, Math.max(1, documentCount / 10));
+		factory = new IndexFactory();
+		factory.setDocuments(feed.toUri().toString());
+		factory.setExamples(examples.toString());
+	}
+
+	@TearDown
+	public void tearDown() throws IOException
+	{
+		Files.deleteIfExists(directory.resolve("feed.xml"));
+		Files.deleteIfExists(directory.resolve("examples.xml"));
+		Files.deleteIfExists(directory);
+	}
+
+	private static final long SEED = 42;
+
+	Path directory;
+
+	@Param("10000")
+	public int documentCount;
+
+	@Param("1.0")
+	public double exponent;
+
+	IndexFactory factory;
+
+	/**
+	 * Generator the corpus has been produced by, continues the same random
+	 * sequence for queries
+	 */
+	CorpusGenerator generator;
+
+	@Param("20000")
+	public int vocabularySize;
+}
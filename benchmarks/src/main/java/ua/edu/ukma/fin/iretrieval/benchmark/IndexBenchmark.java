@@ -0,0 +1,53 @@
+package ua.edu.ukma.fin.iretrieval.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ua.edu.ukma.fin.iretrieval.index.Index;
+import ua.edu.ukma.fin.iretrieval.index.IndexType;
+
+/**
+ * Construction of an index of every type from the documents of a feed,
+ * feed parsing is done once in the setup. The factory learns zone weights
+ * only from examples it hasn't counted yet, so the examples are reloaded
+ * before every invocation and each ZONED build learns the weights anew.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IndexBenchmark
+{
+	@Benchmark
+	public Index build(FeedState feed)
+	{
+		return feed.factory.getIndex(type);
+	}
+
+	@Setup(Level.Invocation)
+	public void setUp(FeedState feed) throws IOException
+	{
+		if (type == IndexType.ZONED)
+		{
+			feed.factory.setExamples(feed.directory.resolve("examples.xml").toString());
+		}
+	}
+
+	@Param({ "BASIC", "INVERTED", "VECTOR_SPACE", "ZONED" })
+	public IndexType type;
+}
@@ -0,0 +1,61 @@
+package ua.edu.ukma.fin.iretrieval.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ua.edu.ukma.fin.iretrieval.Utils;
+
+/**
+ * Normalization of item descriptions containing markup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NormalizeBenchmark
+{
+	@Benchmark
+	public String normalize()
+	{
+		return Utils.normalize(descriptions[next++ & (DESCRIPTIONS - 1)]);
+	}
+
+	@Setup
+	public void setUp()
+	{
+		CorpusGenerator generator = new CorpusGenerator(vocabularySize, exponent, 42);
+		generator.setDescriptionLength(descriptionLength);
+		for (int i = 0; i < DESCRIPTIONS; i++)
+		{
+			descriptions[i] = generator.nextDescription();
+		}
+	}
+
+	private static final int DESCRIPTIONS = 1024;
+
+	@Param("80")
+	public int descriptionLength;
+
+	private final String[] descriptions = new String[DESCRIPTIONS];
+
+	@Param("1.0")
+	public double exponent;
+
+	private int next = 0;
+
+	@Param("20000")
+	public int vocabularySize;
+}
@@ -0,0 +1,73 @@
+package ua.edu.ukma.fin.iretrieval.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ua.edu.ukma.fin.iretrieval.Document;
+import ua.edu.ukma.fin.iretrieval.Query;
+import ua.edu.ukma.fin.iretrieval.index.Index;
+import ua.edu.ukma.fin.iretrieval.index.IndexType;
+
+/**
+ * Top-k retrieval from an index of every type. Queries of one to three terms
+ * are drawn from the same distribution as the corpus, each call parses the
+ * query as the search engine does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RetrievalBenchmark
+{
+	/**
+	 * Position of a thread in the list of queries
+	 */
+	@State(Scope.Thread)
+	public static class Cursor
+	{
+		int next = 0;
+	}
+
+	@Benchmark
+	public List<Document> retrieveDocuments(Cursor cursor)
+	{
+		Query query = new Query(queries[cursor.next++ & (QUERIES - 1)]);
+		return index.retrieveDocuments(query, k);
+	}
+
+	@Setup
+	public void setUp(FeedState feed)
+	{
+		index = feed.factory.getIndex(type);
+		for (int i = 0; i < QUERIES; i++)
+		{
+			queries[i] = feed.generator.nextQuery(1 + i % 3);
+		}
+	}
+
+	private static final int QUERIES = 1024;
+
+	private Index index;
+
+	@Param("20")
+	public int k;
+
+	private final String[] queries = new String[QUERIES];
+
+	@Param({ "BASIC", "INVERTED", "VECTOR_SPACE", "ZONED" })
+	public IndexType type;
+}
@@ -0,0 +1,429 @@
+package ua.edu.ukma.fin.iretrieval;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Query combining terms with Boolean operators AND, OR and NOT, operators are
+ * recognized in upper case only. Parentheses group subexpressions, AND binds
+ * tighter than OR and is implied between adjacent operands, so
+ * <code>car insurance OR auto NOT tractor</code> means
+ * <code>(car AND insurance) OR (auto AND NOT tractor)</code>.
+ *
+ * Words in double quotes form a phrase, which matches documents containing
+ * them one right after another. Proximity operator <code>NEAR/k</code> joins
+ * two words or phrases and matches documents where they are separated by
+ * less than k other words, in any order: <code>car NEAR/1 insurance</code>
+ * matches "car insurance" and "insurance car".
+ *
+ * Words are normalized the same way as the text of documents. A word
+ * normalized to several terms is a phrase of them, a word normalized to no
+ * terms is ignored together with the operators applied to it. Terms which
+ * aren't negated are the {@link #getTerms() terms} of the query, matching
+ * documents are ranked by them.
+ *
+ * @see "Introduction to information retrieval. 1.3 Processing Boolean
+ * queries"
+ * @see "Introduction to information retrieval. 2.4 Positional postings and
+ * phrase queries"
+ */
+public class BooleanQuery extends Query
+{
+	/**
+	 * Node of the query's expression tree.
+	 */
+	public static final class Clause
+	{
+		public enum Operator
+		{
+			AND, NEAR, NOT, OR, PHRASE, TERM
+		}
+
+		Clause(Operator operator, List<Clause> clauses, String term)
+		{
+			this(operator, clauses, term, 0);
+		}
+
+		Clause(Operator operator, List<Clause> clauses, String term, int distance)
+		{
+			this.operator = operator;
+			this.clauses = Collections.unmodifiableList(clauses);
+			this.term = term;
+			this.distance = distance;
+		}
+
+		/**
+		 * @return Operands of AND and OR, single operand of NOT, terms of
+		 * PHRASE in their order, two operands of NEAR each being TERM or
+		 * PHRASE, empty list for TERM.
+		 */
+		public List<Clause> getClauses()
+		{
+			return clauses;
+		}
+
+		/**
+		 * @return Maximum distance between positions of the operands of
+		 * NEAR, 0 for other operators.
+		 */
+		public int getDistance()
+		{
+			return distance;
+		}
+
+		public Operator getOperator()
+		{
+			return operator;
+		}
+
+		/**
+		 * @return Normalized term of TERM clause, null for operators.
+		 */
+		public String getTerm()
+		{
+			return term;
+		}
+
+		@Override
+		public String toString()
+		{
+			if (operator == Operator.TERM)
+			{
+				return term;
+			}
+			if (operator == Operator.NOT)
+			{
+				return "NOT " + clauses.get(0);
+			}
+			if (operator == Operator.NEAR)
+			{
+				return "(" + clauses.get(0) + " NEAR/" + distance + " " + clauses.get(1) + ")";
+			}
+			boolean phrase = operator == Operator.PHRASE;
+			StringBuilder string = new StringBuilder(phrase ? "\"" : "(");
+			for (Clause clause : clauses)
+			{
+				if (string.length() > 1)
+				{
+					string.append(phrase ? " " : " " + operator + " ");
+				}
+				string.append(clause);
+			}
+			return string.append(phrase ? '"' : ')').toString();
+		}
+
+		private final List<Clause> clauses;
+		private final int distance;
+		private final Operator operator;
+		private final String term;
+	}
+
+	/**
+	 * Parses the query.
+	 *
+	 * @param queryString
+	 * Query text.
+	 *
+	 * @throws IllegalArgumentException
+	 * In case parentheses aren't balanced or an operator lacks an operand.
+	 */
+	public BooleanQuery(String queryString)
+	{
+		this.words = split(queryString);
+		Clause clause = parseOr();
+		if (position < words.size())
+		{
+			throw new IllegalArgumentException("Unexpected " + words.get(position) + " in query: "
+					+ queryString);
+		}
+		this.clause = clause;
+		this.words = null;
+		if (clause != null)
+		{
+			addTerms(clause, false);
+		}
+	}
+
+	/**
+	 * @return Root of the expression tree or null if the query has no terms.
+	 */
+	public Clause getClause()
+	{
+		return clause;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.valueOf(clause);
+	}
+
+	/**
+	 * Tells whether the text uses Boolean syntax, plain text is better
+	 * answered by a ranked {@link Query}.
+	 *
+	 * @param queryString
+	 * Query text.
+	 *
+	 * @return TRUE if the text contains operators, parentheses or phrases.
+	 */
+	public static boolean isBoolean(String queryString)
+	{
+		for (String word : split(queryString))
+		{
+			if (isOperator(word) || word.equals("(") || word.equals(")") || word.startsWith("\""))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void addTerms(Clause clause, boolean negated)
+	{
+		switch (clause.getOperator())
+		{
+		case TERM:
+			if (!negated)
+			{
+				addTerm(clause.getTerm());
+			}
+			break;
+		case NOT:
+			addTerms(clause.getClauses().get(0), !negated);
+			break;
+		default:
+			for (Clause operand : clause.getClauses())
+			{
+				addTerms(operand, negated);
+			}
+		}
+	}
+
+	private boolean isNext(String word)
+	{
+		return position < words.size() && words.get(position).equals(word);
+	}
+
+	/**
+	 * and := unary (AND? unary)*
+	 */
+	private Clause parseAnd()
+	{
+		List<Clause> operands = new ArrayList<Clause>();
+		operands.add(parseUnary());
+		while (position < words.size() && !isNext("OR") && !isNext(")"))
+		{
+			if (isNext("AND"))
+			{
+				position++;
+			}
+			operands.add(parseUnary());
+		}
+		return combine(Clause.Operator.AND, operands);
+	}
+
+	/**
+	 * or := and (OR and)*
+	 */
+	private Clause parseOr()
+	{
+		List<Clause> operands = new ArrayList<Clause>();
+		if (position == words.size())
+		{
+			return null;
+		}
+		operands.add(parseAnd());
+		while (isNext("OR"))
+		{
+			position++;
+			operands.add(parseAnd());
+		}
+		return combine(Clause.Operator.OR, operands);
+	}
+
+	/**
+	 * unary := NOT unary | '(' or ')' | word
+	 */
+	private Clause parseUnary()
+	{
+		if (position == words.size())
+		{
+			throw new IllegalArgumentException("Operand is missing at the end of the query.");
+		}
+		String word = words.get(position++);
+		if (word.equals("NOT"))
+		{
+			Clause operand = parseUnary();
+			return operand == null ? null : new Clause(Clause.Operator.NOT, Collections
+					.singletonList(operand), null);
+		}
+		if (word.equals("("))
+		{
+			Clause group = isNext(")") ? null : parseOr();
+			if (!isNext(")"))
+			{
+				throw new IllegalArgumentException("Closing parenthesis is missing.");
+			}
+			position++;
+			return group;
+		}
+		if (isOperator(word) || word.equals(")"))
+		{
+			throw new IllegalArgumentException("Operand is missing before " + word + ".");
+		}
+		Clause operand = parsePhrase(word);
+		while (position < words.size() && getDistance(words.get(position)) > 0)
+		{
+			int distance = getDistance(words.get(position++));
+			if (position == words.size() || isOperator(words.get(position))
+					|| words.get(position).equals("(") || words.get(position).equals(")"))
+			{
+				throw new IllegalArgumentException("Word or phrase is missing after NEAR/"
+						+ distance + ".");
+			}
+			Clause other = parsePhrase(words.get(position++));
+			if (operand != null && operand.getOperator() == Clause.Operator.NEAR)
+			{
+				throw new IllegalArgumentException("Proximity operators can't be chained.");
+			}
+			if (operand == null || other == null)
+			{
+				operand = operand == null ? other : operand;
+			}
+			else
+			{
+				operand = new Clause(Clause.Operator.NEAR, Arrays.asList(operand, other), null,
+						distance);
+			}
+		}
+		return operand;
+	}
+
+	/**
+	 * Normalizes a word or a quoted phrase.
+	 * 
+	 * @return TERM, PHRASE of several terms or null if there are no terms.
+	 */
+	private static Clause parsePhrase(String word)
+	{
+		List<Clause> terms = new ArrayList<Clause>(1);
+		Tokenizer tokenizer = Utils.tokenizer(word);
+		while (tokenizer.next())
+		{
+			terms.add(new Clause(Clause.Operator.TERM, Collections.<Clause> emptyList(), tokenizer
+					.toString()));
+		}
+		if (terms.size() > 1)
+		{
+			return new Clause(Clause.Operator.PHRASE, terms, null);
+		}
+		return terms.isEmpty() ? null : terms.get(0);
+	}
+
+	/**
+	 * Drops ignored operands, a single operand is returned as is.
+	 */
+	private static Clause combine(Clause.Operator operator, List<Clause> operands)
+	{
+		List<Clause> present = new ArrayList<Clause>(operands.size());
+		for (Clause operand : operands)
+		{
+			if (operand != null)
+			{
+				present.add(operand);
+			}
+		}
+		if (present.isEmpty())
+		{
+			return null;
+		}
+		if (present.size() == 1)
+		{
+			return present.get(0);
+		}
+		return new Clause(operator, present, null);
+	}
+
+	/**
+	 * @return Distance of NEAR/k operator or 0 if the word isn't one.
+	 */
+	private static int getDistance(String word)
+	{
+		if (!word.startsWith("NEAR/") || word.length() == 5 || word.length() > 14)
+		{
+			return 0;
+		}
+		for (int i = 5; i < word.length(); i++)
+		{
+			if (word.charAt(i) < '0' || word.charAt(i) > '9')
+			{
+				return 0;
+			}
+		}
+		return (int) Math.min(Long.parseLong(word.substring(5)), Integer.MAX_VALUE);
+	}
+
+	private static boolean isOperator(String word)
+	{
+		return word.equals("AND") || word.equals("OR") || word.equals("NOT")
+				|| getDistance(word) > 0;
+	}
+
+	/**
+	 * Splits query text into words, parentheses and quoted phrases, quotes
+	 * are kept. Phrase missing the closing quote lasts till the end of the
+	 * text.
+	 */
+	private static List<String> split(String queryString)
+	{
+		List<String> words = new ArrayList<String>();
+		if (queryString == null)
+		{
+			return words;
+		}
+		int start = -1;
+		for (int i = 0; i <= queryString.length(); i++)
+		{
+			char c = i < queryString.length() ? queryString.charAt(i) : ' ';
+			if (c == '"' && start == -1)
+			{
+				int close = queryString.indexOf('"', i + 1);
+				int end = close < 0 ? queryString.length() : close + 1;
+				words.add(queryString.substring(i, end));
+				i = end - 1;
+			}
+			else if (Character.isWhitespace(c) || c == '(' || c == ')')
+			{
+				if (start != -1)
+				{
+					words.add(queryString.substring(start, i));
+					start = -1;
+				}
+				if (c == '(' || c == ')')
+				{
+					words.add(String.valueOf(c));
+				}
+			}
+			else if (start == -1)
+			{
+				start = i;
+			}
+		}
+		return words;
+	}
+
+	private final Clause clause;
+
+	/**
+	 * Position of the next word to be parsed
+	 */
+	private int position = 0;
+
+	/**
+	 * Words of the query text, kept while it is being parsed
+	 */
+	private List<String> words;
+}
@@ -23,6 +23,48 @@ public class Document implements TermStatistics
 		this.guid = guid;
 	}
 
+	/**
+	 * Restores a document from fields which are already normalized, e.g. the
+	 * ones stored in a segment file. Unlike the setters, the constructor
+	 * doesn't normalize the fields again.
+	 * 
+	 * @param guid
+	 * <a href="http://en.wikipedia.org/wiki/Globally_Unique_Identifier"
+	 * >Globally Unique Identifier</a> of the document.
+	 * 
+	 * @param title
+	 * Normalized title, can be null.
+	 * 
+	 * @param body
+	 * Normalized body, can be null.
+	 * 
+	 * @param link
+	 * Link to the document, can be null.
+	 * 
+	 * @param pubDate
+	 * Publishing date, can be null.
+	 * 
+	 * @param categories
+	 * Normalized categories.
+	 * 
+	 * @param extraFields
+	 * Normalized values of the extra fields grouped by the group name.
+	 */
+	public Document(String guid, String title, String body, String link, Date pubDate,
+			Collection<String> categories, Map<String, Map<String, String>> extraFields)
+	{
+		this.guid = guid;
+		this.title = title;
+		this.body = body;
+		this.link = link;
+		setPubDate(pubDate);
+		this.categories.addAll(categories);
+		for (Map.Entry<String, Map<String, String>> group : extraFields.entrySet())
+		{
+			this.extraFields.put(group.getKey(), new HashMap<String, String>(group.getValue()));
+		}
+	}
+
 	/**
 	 * Adds a category to document's categories' set.
 	 * 
@@ -39,6 +81,7 @@ public class Document implements TermStatistics
 		{
 			categories = new HashSet<String>();
 		}
+		termFrequencies = null;
 		return categories.add(Utils.normalize(category));
 	}
 
@@ -70,6 +113,7 @@ public class Document implements TermStatistics
 			extraFields.put(groupName, new HashMap<String, String>());
 		}
 		Map<String, String> group = extraFields.get(groupName);
+		termFrequencies = null;
 		return group.put(fieldName, Utils.normalize(fieldValue));
 	}
 
@@ -222,7 +266,9 @@ public class Document implements TermStatistics
 	}
 
 	/**
-	 * Gets how many times term occurs in the document
+	 * Gets how many times term occurs in the document. All the terms of the
+	 * document are counted on the first call, so both hits and misses are
+	 * answered from the counts until the document is changed.
 	 * 
 	 * @see "Introduction to information retrieval. 6.2 Term frequency and
 	 * weighting"
@@ -234,19 +280,16 @@ public class Document implements TermStatistics
 	 */
 	public int getTermFrequency(String term)
 	{
-		// if text has been changed we cannot rely on cached frequencies
-		if (getText().hashCode() != termFrequenciesVersion)
+		// setters drop the counts, they are replaced as a whole so that
+		// concurrent readers never see frequencies of different versions of
+		// the text
+		TermFrequencies counts = termFrequencies;
+		if (counts == null)
 		{
-			termFrequencies.clear();
-			termFrequenciesVersion = getText().hashCode();
+			counts = TermFrequencies.count(getText());
+			termFrequencies = counts;
 		}
-		Integer termFrequency = termFrequencies.get(term);
-		if (termFrequency == null)
-		{
-			termFrequency = Utils.countTerms(term, getText());
-			termFrequencies.put(term, termFrequency);
-		}
-		return termFrequency.intValue();
+		return counts.get(term);
 	}
 
 	/**
@@ -279,6 +322,7 @@ public class Document implements TermStatistics
 	public void setCategories(Collection<String> categories)
 	{
 		this.categories.clear();
+		termFrequencies = null;
 		if (categories != null)
 		{
 			this.categories.addAll(categories);
@@ -296,6 +340,7 @@ public class Document implements TermStatistics
 	public void setBody(String content)
 	{
 		this.body = Utils.normalize(content);
+		termFrequencies = null;
 	}
 
 	/**
@@ -313,6 +358,7 @@ public class Document implements TermStatistics
 	public void setExtraFields(Map<String, Map<String, String>> extraFields)
 	{
 		this.extraFields.clear();
+		termFrequencies = null;
 		for (String extraGroupName : extraFields.keySet())
 		{
 			Map<String, String> extraGroup = extraFields.get(extraGroupName);
@@ -369,7 +415,7 @@ public class Document implements TermStatistics
 	public void setTitle(String title)
 	{
 		this.title = Utils.normalize(title);
-		;
+		termFrequencies = null;
 	}
 
 	@Override
@@ -420,13 +466,11 @@ public class Document implements TermStatistics
 	private String guid;
 	private String link;
 	private Date pubDate;
-	private Map<String, Integer> termFrequencies = new HashMap<String, Integer>();
 
 	/**
-	 * if equal to getRawText() hashCode, termFrequencies cache is up to date
+	 * Frequencies of the terms of the current text, null until they are
+	 * counted
 	 */
-	private int termFrequenciesVersion = 0;
-
+	private volatile TermFrequencies termFrequencies = null;
 	private String title;
-
-}
\ No newline at end of file
+}
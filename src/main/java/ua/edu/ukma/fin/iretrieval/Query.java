@@ -2,11 +2,8 @@ package ua.edu.ukma.fin.iretrieval;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
-import java.util.StringTokenizer;
 
 public class Query implements TermStatistics
 {
@@ -16,33 +13,96 @@ public class Query implements TermStatistics
 	 * @param queryString
 	 * String representation of the information need (query text). Before being
 	 * stored is processed by {@link ua.edu.ukma.fin.iretrieval.Utils#normalize(String)
-	 * normalization function}.
+	 * normalization function}. Words containing '*' or '?' followed by
+	 * another character are kept apart as {@link #getWildcards() wildcards}.
 	 */
 	public Query(String queryString)
 	{
-		this.queryString = Utils.normalize(queryString);
-		StringTokenizer st = new StringTokenizer(this.queryString);
-		while (st.hasMoreTokens())
+		StringBuilder text = new StringBuilder();
+		if (queryString != null)
 		{
-			String term = st.nextToken();
-			terms.add(term);
+			for (String word : queryString.split("\\s+"))
+			{
+				String pattern = toPattern(word);
+				if (pattern == null)
+				{
+					text.append(word).append(' ');
+				}
+				else
+				{
+					wildcards.add(pattern);
+				}
+			}
 		}
+		Tokenizer tokenizer = Utils.tokenizer(text);
+		StringBuilder normalized = new StringBuilder();
+		while (tokenizer.next())
+		{
+			if (normalized.length() > 0)
+			{
+				normalized.append(' ');
+			}
+			normalized.append(tokenizer.buffer(), 0, tokenizer.length());
+			terms.add(tokenizer.toString());
+		}
+		this.queryString = normalized.toString();
+	}
+
+	/**
+	 * Constructs an empty query, terms are {@link #addTerm(String) added} by
+	 * subclasses parsing query text on their own.
+	 */
+	protected Query()
+	{
+		this.queryString = "";
 	}
 
+	/**
+	 * Replaces wildcards of the query with the terms they match.
+	 * 
+	 * @param terms
+	 * Normalized terms the wildcards are expanded to.
+	 * 
+	 * @return Query without wildcards, its terms are the terms of this query
+	 * followed by the given ones.
+	 */
+	public Query expand(Collection<String> terms)
+	{
+		Query expanded = new Query();
+		Tokenizer tokenizer = Utils.tokenizer(queryString);
+		while (tokenizer.next())
+		{
+			expanded.addTerm(tokenizer.toString());
+		}
+		for (String term : terms)
+		{
+			expanded.addTerm(term);
+		}
+		return expanded;
+	}
+
+	/**
+	 * @return Query text without wildcards.
+	 */
 	public String getQueryString()
 	{
 		return queryString;
 	}
 
+	/**
+	 * Gets how many times term occurs in the query text. All the terms of the
+	 * text are counted on the first call, later calls are answered from the
+	 * counts whether the term occurs or not.
+	 */
 	public int getTermFrequency(String term)
 	{
-		Integer termFrequency = termFrequencies.get(term);
-		if (termFrequency == null)
+		TermFrequencies counts = termFrequencies;
+		if (counts == null)
 		{
-			termFrequency = Utils.countTerms(term, queryString);
-			termFrequencies.put(term, termFrequency);
+			counts = TermFrequencies.count(queryString);
+			termFrequencies = counts;
 		}
-		return termFrequency.intValue();
+		return counts.get(term);
 	}
 
 	public Set<String> getTerms()
@@ -50,9 +110,24 @@ public class Query implements TermStatistics
 		return Collections.unmodifiableSet(terms);
 	}
 
+	/**
+	 * Gets wildcards of the query, they are expanded into terms of the
+	 * dictionary when the query is evaluated.
+	 * 
+	 * @see "Introduction to information retrieval. 3.2 Wildcard queries"
+	 * 
+	 * @return Unmodifiable set of lower-cased patterns, where '*' stands for
+	 * any sequence of characters and '?' for any single character.
+	 */
+	public Set<String> getWildcards()
+	{
+		return Collections.unmodifiableSet(wildcards);
+	}
+
 	public void setQueryString(String queryString)
 	{
 		this.queryString = queryString;
+		this.termFrequencies = null;
 	}
 
 	public void setTerms(Collection<String> terms)
@@ -64,9 +139,65 @@ public class Query implements TermStatistics
 		}
 	}
 
+	/**
+	 * Adds a normalized term to the query text and terms.
+	 * 
+	 * @param term
+	 * Term as it is stored in the index.
+	 */
+	protected void addTerm(String term)
+	{
+		queryString = queryString.isEmpty() ? term : queryString + ' ' + term;
+		termFrequencies = null;
+		terms.add(term);
+	}
+
+	/**
+	 * Normalizes a word of the query text into a wildcard pattern: letters
+	 * are lower-cased, characters other than letters, digits, '+', '#' and
+	 * the wildcards are dropped. Trailing '?' is punctuation rather than a
+	 * wildcard.
+	 * 
+	 * @return Pattern or null if the word isn't a wildcard or has no
+	 * characters besides wildcards.
+	 */
+	private static String toPattern(String word)
+	{
+		StringBuilder pattern = new StringBuilder(word.length());
+		boolean literal = false;
+		for (int i = 0; i < word.length(); i++)
+		{
+			char c = word.charAt(i);
+			if (Character.isLetterOrDigit(c) || c == '+' || c == '#')
+			{
+				pattern.append(Character.toLowerCase(c));
+				literal = true;
+			}
+			else if (c == '*' || c == '?')
+			{
+				pattern.append(c);
+			}
+		}
+		int end = pattern.length();
+		while (end > 0 && pattern.charAt(end - 1) == '?')
+		{
+			end--;
+		}
+		pattern.setLength(end);
+		if (!literal || (pattern.indexOf("*") < 0 && pattern.indexOf("?") < 0))
+		{
+			return null;
+		}
+		return pattern.toString();
+	}
+
 	private String queryString;
 
-	private Map<String, Integer> termFrequencies = new HashMap<String, Integer>();
+	/**
+	 * Frequencies of the terms of the query text, null until they are counted
+	 */
+	private volatile TermFrequencies termFrequencies = null;
 
 	private Set<String> terms = new HashSet<String>();
+	private Set<String> wildcards = new HashSet<String>();
 }
@@ -1,20 +1,46 @@
 package ua.edu.ukma.fin.iretrieval;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 
+import ua.edu.ukma.fin.iretrieval.index.DocumentSource;
 import ua.edu.ukma.fin.iretrieval.index.Index;
 import ua.edu.ukma.fin.iretrieval.index.IndexFactory;
+import ua.edu.ukma.fin.iretrieval.index.IndexManager;
 import ua.edu.ukma.fin.iretrieval.index.IndexType;
+import ua.edu.ukma.fin.iretrieval.index.QueryCache;
+import ua.edu.ukma.fin.iretrieval.index.SearchMetrics;
+import ua.edu.ukma.fin.iretrieval.index.ShardCoordinator;
 
 public class SearchEngine
 {
 	public static void main(String[] args)
 	{
 		Map<String, String> argsMap = parseArgs(args);
+		// metrics are exposed over JMX from the start, so the build is seen too
+		SearchMetrics.getInstance().register();
+		if (argsMap.containsKey("-l"))
+		{
+			try
+			{
+				SearchMetrics.getInstance().setSlowQueryThreshold(
+						Long.parseLong(argsMap.get("-l")));
+			}
+			catch (NumberFormatException e)
+			{
+				System.err.println(argsMap.get("-l") + " is not a valid number of milliseconds. "
+						+ "Slow queries won't be logged.");
+			}
+		}
 
 		// Define the index type from user input
 		// Set it to the most primitive index type if user hasn't specified
@@ -36,34 +62,205 @@ public class SearchEngine
 			indexType = IndexType.BASIC;
 		}
 
+		// Index can be served by shard servers, possibly on other machines,
+		// then queries are sent to them instead of building an index.
+		if (argsMap.containsKey("-c"))
+		{
+			List<InetSocketAddress> shards = new ArrayList<InetSocketAddress>();
+			try
+			{
+				for (String address : argsMap.get("-c").split(","))
+				{
+					int colon = address.lastIndexOf(':');
+					shards.add(new InetSocketAddress(address.substring(0, colon).trim(), Integer
+							.parseInt(address.substring(colon + 1).trim())));
+				}
+			}
+			catch (RuntimeException e)
+			{
+				System.err.println(argsMap.get("-c") + " is not a valid list of shards. "
+						+ "Shards must be given as host:port separated by commas.");
+				System.exit(-1);
+			}
+			ShardCoordinator coordinator = new ShardCoordinator(shards, indexType);
+			System.out.println("Connected to " + shards.size() + " shards. Now you are able to "
+					+ "run queries and retrieve documents. Type exit to quit.");
+			runQueries(null, coordinator);
+			coordinator.close();
+			return;
+		}
+
 		// Create index factory based on user input
 		// and try to obtain the index of the desired type.
 		IndexFactory indexFactory = new IndexFactory();
 		try
 		{
-			indexFactory.setDocuments(argsMap.get("-s"));
+			indexFactory.setExamples(argsMap.get("-e"));
 		}
 		catch (IOException e)
 		{
-			System.err.println("Failed to build index from the specified source."
-					+ " Program will terminate now.");
-			System.exit(-1);
+			System.err.println("The file you have specified as one containnig "
+					+ "training examples is either invalid or not found. "
+					+ "Examples won't be used for weights adjustment.");
+		}
+
+		// Index file is opened if it exists and no source is given,
+		// otherwise index is built from the source and saved to it.
+		Path indexFile = argsMap.containsKey("-i") ? Paths.get(argsMap.get("-i")) : null;
+		Index index = null;
+		if (indexFile != null && !argsMap.containsKey("-s") && Files.exists(indexFile))
+		{
+			try
+			{
+				index = indexFactory.openIndex(indexFile, indexType);
+			}
+			catch (IOException e)
+			{
+				System.err.println("Failed to open index file " + indexFile
+						+ ". Program will terminate now.");
+				System.exit(-1);
+			}
+		}
+		else
+		{
+			// Several sources (URLs, files, directories) can be given
+			// separated by commas, they are read concurrently.
+			try
+			{
+				if (!argsMap.containsKey("-s"))
+				{
+					throw new IOException("Source isn't specified.");
+				}
+				List<DocumentSource> sources = new ArrayList<DocumentSource>();
+				for (String location : argsMap.get("-s").split(","))
+				{
+					sources.add(DocumentSource.forLocation(location.trim()));
+				}
+				indexFactory.setDocuments(sources);
+			}
+			catch (IOException e)
+			{
+				System.err.println("Failed to build index from the specified source."
+						+ " Program will terminate now.");
+				System.exit(-1);
+			}
+			// Index can be split into shards queried in parallel
+			int shardCount = 1;
+			try
+			{
+				if (argsMap.containsKey("-n"))
+				{
+					shardCount = Integer.parseInt(argsMap.get("-n"));
+				}
+			}
+			catch (NumberFormatException e)
+			{
+				System.err.println(argsMap.get("-n") + " is not a valid number of shards. "
+						+ "Index won't be sharded.");
+			}
+			if (indexFile != null)
+			{
+				try
+				{
+					indexFactory.writeIndex(indexFile);
+					// shards are written next to the index for shard servers
+					if (shardCount > 1)
+					{
+						indexFactory.writeShards(indexFile, shardCount);
+					}
+				}
+				catch (IOException e)
+				{
+					System.err.println("Failed to save index to " + indexFile + ".");
+				}
+			}
+			index = shardCount > 1 ? indexFactory.getShardedIndex(indexType, shardCount)
+					: indexFactory.getIndex(indexType);
+		}
+		System.out.println("Index has been built.");
+
+		// If we got to this point we are ready to handle queries :)
+		// Repeated queries are answered from the cache.
+		IndexManager manager = new IndexManager(index);
+		manager.setQueryCache(new QueryCache(QUERY_CACHE_CAPACITY));
+		SearchMetrics.getInstance().monitor(manager);
+		if (argsMap.containsKey("-p"))
+		{
+			serve(manager, argsMap.get("-p"));
 		}
+		else
+		{
+			System.out.println("Now you are able to run queries and retrieve documents. "
+					+ "Type " + METRICS_COMMAND + " to see metrics, exit to quit.");
+			runQueries(manager, null);
+		}
+	}
+
+	/**
+	 * Command printing the {@link SearchMetrics#dump() metrics} instead of
+	 * running a query
+	 */
+	private static final String METRICS_COMMAND = ":metrics";
+
+	/**
+	 * Number of the most relevant documents shown for a query
+	 */
+	private static final int MAX_RESULTS = 20;
+
+	/**
+	 * Number of documents held by cached query results
+	 */
+	private static final int QUERY_CACHE_CAPACITY = 100000;
+
+	/**
+	 * Number of queries waiting for a worker of the HTTP server per worker
+	 */
+	private static final int QUEUED_QUERIES_PER_WORKER = 16;
+
+	/**
+	 * Milliseconds the HTTP server waits for a query to be answered
+	 */
+	private static final long QUERY_TIMEOUT = 5000;
+
+	/**
+	 * Answers queries over HTTP until the process is killed.
+	 */
+	private static void serve(IndexManager manager, String port)
+	{
+		int workers = Runtime.getRuntime().availableProcessors();
+		SearchServer server = new SearchServer(manager, workers, workers
+				* QUEUED_QUERIES_PER_WORKER, QUERY_TIMEOUT);
 		try
 		{
-			indexFactory.setExamples(argsMap.get("-e"));
+			server.start(new InetSocketAddress(Integer.parseInt(port)));
+			System.out.println("Queries are served on port " + server.getPort() + ", e.g. "
+					+ "http://localhost:" + server.getPort() + "/search?q=car+insurance");
+			// threads of the server are daemons, main thread keeps the process alive
+			Thread.currentThread().join();
+		}
+		catch (NumberFormatException e)
+		{
+			System.err.println(port + " is not a valid port. Program will terminate now.");
+			System.exit(-1);
 		}
 		catch (IOException e)
 		{
-			System.err.println("The file you have specified as one containnig "
-					+ "training examples is either invalid or not found. "
-					+ "Examples won't be used for weights adjustment.");
+			System.err.println("Failed to listen on port " + port + ". Program will terminate now.");
+			System.exit(-1);
+		}
+		catch (InterruptedException e)
+		{
+			server.close();
 		}
-		Index index = indexFactory.getIndex(indexType);
-		System.out.println("Index has been built. Now you are able to run "
-				+ "queries and retrieve documents. Type exit to quit.");
+	}
 
-		// If we got to this point we are ready to handle queries :)
+	/**
+	 * Reads queries from the standard input until exit is typed and prints
+	 * the documents retrieved either by the manager or, if it is null, by the
+	 * shards of the coordinator. {@link #METRICS_COMMAND} prints the metrics.
+	 */
+	private static void runQueries(IndexManager manager, ShardCoordinator coordinator)
+	{
 		Scanner in = new Scanner(System.in);
 		String command = "";
 		while (!command.equals("exit"))
@@ -72,10 +269,43 @@ public class SearchEngine
 			if (in.hasNextLine())
 			{
 				command = in.nextLine();
-				if (!command.equals("exit"))
+				if (command.trim().equals(METRICS_COMMAND))
+				{
+					System.out.print(SearchMetrics.getInstance().dump());
+				}
+				else if (!command.equals("exit"))
 				{
 					int i = 0;
-					for (Document document : index.retrieveDocuments(new Query(command)))
+					Query query;
+					try
+					{
+						query = BooleanQuery.isBoolean(command) ? new BooleanQuery(command)
+								: new Query(command);
+					}
+					catch (IllegalArgumentException e)
+					{
+						System.err.println(e.getMessage());
+						continue;
+					}
+					List<Document> documents;
+					if (manager != null)
+					{
+						documents = manager.retrieveDocuments(query, MAX_RESULTS);
+					}
+					else
+					{
+						try
+						{
+							documents = coordinator.retrieveDocuments(query, MAX_RESULTS);
+						}
+						catch (IOException e)
+						{
+							System.err.println("Shards failed to answer the query: "
+									+ e.getMessage());
+							continue;
+						}
+					}
+					for (Document document : documents)
 					{
 						System.out.println(++i + ") " + document.toString());
 					}
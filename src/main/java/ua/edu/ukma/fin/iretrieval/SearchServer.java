@@ -0,0 +1,474 @@
+package ua.edu.ukma.fin.iretrieval;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ua.edu.ukma.fin.iretrieval.index.IndexManager;
+import ua.edu.ukma.fin.iretrieval.index.IndexSnapshot;
+import ua.edu.ukma.fin.iretrieval.index.QueryCache;
+import ua.edu.ukma.fin.iretrieval.index.SearchMetrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Answers queries over HTTP with the JDK's built-in server, so the engine can
+ * be put behind a load balancer. Responses are JSON objects.
+ *
+ * <ul>
+ * <li><code>GET /search?q=query&amp;k=20</code> retrieves at most k documents,
+ * query text is parsed the same way {@link SearchEngine} parses the lines it
+ * reads.</li>
+ * <li><code>GET /status</code> describes the current version of the index and
+ * the load of the server.</li>
+ * <li><code>GET /metrics</code> returns the {@link SearchMetrics#dump()
+ * metrics} of the process as plain text.</li>
+ * </ul>
+ *
+ * Connections are accepted by the server's dispatcher thread, every exchange
+ * is then handled by a thread of its own, virtual if the JVM has them.
+ * Queries themselves are evaluated by a bounded pool of workers with a
+ * bounded queue. A query arriving when the queue is full is rejected at once
+ * with 503 Service Unavailable, so an overloaded server sheds load instead of
+ * answering everything late. A query not answered
+ * within the timeout gets 504 Gateway Timeout; a query still waiting in the
+ * queue is cancelled then, one already being evaluated runs to the end, as
+ * evaluation can't be interrupted.
+ */
+public class SearchServer implements Closeable
+{
+	/**
+	 * @param manager
+	 * Manager handing out the current version of the index.
+	 *
+	 * @param workers
+	 * Number of threads evaluating queries, must be positive.
+	 *
+	 * @param queueCapacity
+	 * Number of queries waiting for a worker before new ones are rejected,
+	 * must be positive.
+	 *
+	 * @param timeout
+	 * Milliseconds a query may wait and run before it gets 504, must be
+	 * positive.
+	 */
+	public SearchServer(IndexManager manager, int workers, int queueCapacity, long timeout)
+	{
+		if (timeout <= 0)
+		{
+			throw new IllegalArgumentException("Timeout must be positive: " + timeout);
+		}
+		this.manager = manager;
+		this.timeout = timeout;
+		this.workers = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory()
+				{
+					public Thread newThread(Runnable runnable)
+					{
+						Thread thread = new Thread(runnable, "search-worker");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * Stops accepting requests, requests being handled are given a second to
+	 * complete.
+	 */
+	public void close()
+	{
+		if (server != null)
+		{
+			server.stop(1);
+		}
+		workers.shutdownNow();
+		exchanges.shutdownNow();
+	}
+
+	/**
+	 * @return Port the server listens on, -1 if it isn't started.
+	 */
+	public int getPort()
+	{
+		return server == null ? -1 : server.getAddress().getPort();
+	}
+
+	/**
+	 * @return Number of queries rejected because the queue was full.
+	 */
+	public long getRejectedCount()
+	{
+		return rejectedCount.get();
+	}
+
+	/**
+	 * @return Number of queries not answered within the timeout.
+	 */
+	public long getTimedOutCount()
+	{
+		return timedOutCount.get();
+	}
+
+	/**
+	 * Starts accepting requests in background.
+	 *
+	 * @param address
+	 * Address to listen on, port 0 picks any free port.
+	 *
+	 * @throws IOException
+	 * In case the address can't be bound.
+	 */
+	public synchronized void start(InetSocketAddress address) throws IOException
+	{
+		if (server != null)
+		{
+			throw new IllegalStateException("Server is already started.");
+		}
+		server = HttpServer.create(address, BACKLOG);
+		server.createContext("/search", new HttpHandler()
+		{
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				search(exchange);
+			}
+		});
+		server.createContext("/status", new HttpHandler()
+		{
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				status(exchange);
+			}
+		});
+		server.createContext("/metrics", new HttpHandler()
+		{
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				metrics(exchange);
+			}
+		});
+		server.setExecutor(exchanges);
+		server.start();
+		logger.log(Level.INFO, "Queries are served on {0}.", server.getAddress());
+	}
+
+	private void metrics(HttpExchange exchange) throws IOException
+	{
+		if (!"GET".equals(exchange.getRequestMethod()))
+		{
+			sendError(exchange, 405, "Only GET is supported.");
+			return;
+		}
+		send(exchange, 200, SearchMetrics.getInstance().dump(), "text/plain");
+	}
+
+	private void search(HttpExchange exchange) throws IOException
+	{
+		if (!"GET".equals(exchange.getRequestMethod()))
+		{
+			sendError(exchange, 405, "Only GET is supported.");
+			return;
+		}
+		Map<String, String> parameters;
+		try
+		{
+			parameters = parseParameters(exchange.getRequestURI().getRawQuery());
+		}
+		catch (IllegalArgumentException e)
+		{
+			sendError(exchange, 400, "Malformed parameters: " + e.getMessage());
+			return;
+		}
+		final String text = parameters.get("q");
+		if (text == null)
+		{
+			sendError(exchange, 400, "Query text is missing.");
+			return;
+		}
+		final int k;
+		try
+		{
+			k = parameters.containsKey("k") ? Integer.parseInt(parameters.get("k"))
+					: DEFAULT_RESULTS;
+		}
+		catch (NumberFormatException e)
+		{
+			sendError(exchange, 400, "Number of results is not a number: "
+					+ parameters.get("k"));
+			return;
+		}
+		if (k <= 0 || k > MAX_RESULTS)
+		{
+			sendError(exchange, 400, "Number of results must be in range [1, " + MAX_RESULTS
+					+ "]: " + k);
+			return;
+		}
+		final Query query;
+		try
+		{
+			query = BooleanQuery.isBoolean(text) ? new BooleanQuery(text) : new Query(text);
+		}
+		catch (IllegalArgumentException e)
+		{
+			sendError(exchange, 400, e.getMessage());
+			return;
+		}
+		Future<List<Document>> results;
+		try
+		{
+			results = workers.submit(new Callable<List<Document>>()
+			{
+				public List<Document> call()
+				{
+					return manager.retrieveDocuments(query, k);
+				}
+			});
+		}
+		catch (RejectedExecutionException e)
+		{
+			rejectedCount.incrementAndGet();
+			exchange.getResponseHeaders().set("Retry-After", "1");
+			sendError(exchange, 503, "Server is overloaded.");
+			return;
+		}
+		List<Document> documents;
+		try
+		{
+			documents = results.get(timeout, TimeUnit.MILLISECONDS);
+		}
+		catch (TimeoutException e)
+		{
+			results.cancel(true);
+			timedOutCount.incrementAndGet();
+			sendError(exchange, 504, "Query took longer than " + timeout + " ms.");
+			return;
+		}
+		catch (InterruptedException e)
+		{
+			results.cancel(true);
+			Thread.currentThread().interrupt();
+			sendError(exchange, 503, "Server is shutting down.");
+			return;
+		}
+		catch (ExecutionException e)
+		{
+			logger.log(Level.WARNING, "Query {0} failed: {1}.", new Object[] { text,
+					e.getCause() });
+			sendError(exchange, 500, String.valueOf(e.getCause()));
+			return;
+		}
+		StringBuilder json = new StringBuilder("{\"query\":");
+		appendString(json, text);
+		json.append(",\"results\":[");
+		for (int i = 0; i < documents.size(); i++)
+		{
+			Document document = documents.get(i);
+			json.append(i == 0 ? "{" : ",{").append("\"guid\":");
+			appendString(json, document.getGuid());
+			json.append(",\"title\":");
+			appendString(json, document.getTitle());
+			json.append(",\"link\":");
+			appendString(json, document.getLink());
+			json.append('}');
+		}
+		json.append("]}");
+		send(exchange, 200, json);
+	}
+
+	private void status(HttpExchange exchange) throws IOException
+	{
+		if (!"GET".equals(exchange.getRequestMethod()))
+		{
+			sendError(exchange, 405, "Only GET is supported.");
+			return;
+		}
+		IndexSnapshot snapshot = manager.acquire();
+		StringBuilder json = new StringBuilder("{\"version\":").append(snapshot.getVersion());
+		json.append(",\"index\":");
+		appendString(json, snapshot.getIndex().getClass().getSimpleName());
+		json.append(",\"documents\":").append(snapshot.getIndex().getDocumentCount());
+		json.append(",\"workers\":").append(workers.getMaximumPoolSize());
+		json.append(",\"active\":").append(workers.getActiveCount());
+		json.append(",\"queued\":").append(workers.getQueue().size());
+		json.append(",\"queueCapacity\":").append(
+				workers.getQueue().size() + workers.getQueue().remainingCapacity());
+		json.append(",\"completed\":").append(workers.getCompletedTaskCount());
+		json.append(",\"rejected\":").append(rejectedCount.get());
+		json.append(",\"timedOut\":").append(timedOutCount.get());
+		QueryCache queryCache = manager.getQueryCache();
+		if (queryCache != null)
+		{
+			json.append(",\"cache\":{\"size\":").append(queryCache.size());
+			json.append(",\"hits\":").append(queryCache.getHitCount());
+			json.append(",\"misses\":").append(queryCache.getMissCount());
+			json.append(",\"hitRate\":").append(queryCache.getHitRate()).append('}');
+		}
+		json.append('}');
+		send(exchange, 200, json);
+	}
+
+	/**
+	 * Appends the string as a JSON string literal, null as null.
+	 */
+	private static void appendString(StringBuilder json, String string)
+	{
+		if (string == null)
+		{
+			json.append("null");
+			return;
+		}
+		json.append('"');
+		for (int i = 0; i < string.length(); i++)
+		{
+			char c = string.charAt(i);
+			if (c == '"' || c == '\\')
+			{
+				json.append('\\').append(c);
+			}
+			else if (c < 0x20)
+			{
+				json.append(String.format("\\u%04x", (int) c));
+			}
+			else
+			{
+				json.append(c);
+			}
+		}
+		json.append('"');
+	}
+
+	/**
+	 * @return Executor running a virtual thread per exchange, or a cached
+	 * pool of daemon threads if virtual threads aren't available.
+	 */
+	private static ExecutorService newExchangeExecutor()
+	{
+		try
+		{
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			return Executors.newCachedThreadPool(new ThreadFactory()
+			{
+				public Thread newThread(Runnable runnable)
+				{
+					Thread thread = new Thread(runnable, "search-exchange");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	private static Map<String, String> parseParameters(String query)
+			throws UnsupportedEncodingException
+	{
+		Map<String, String> parameters = new HashMap<String, String>();
+		if (query != null)
+		{
+			for (String pair : query.split("&"))
+			{
+				int equals = pair.indexOf('=');
+				if (equals > 0)
+				{
+					parameters.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+							URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+				}
+			}
+		}
+		return parameters;
+	}
+
+	private static void send(HttpExchange exchange, int status, CharSequence json)
+			throws IOException
+	{
+		send(exchange, status, json, "application/json");
+	}
+
+	private static void send(HttpExchange exchange, int status, CharSequence content,
+			String contentType) throws IOException
+	{
+		byte[] body = content.toString().getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		OutputStream output = exchange.getResponseBody();
+		try
+		{
+			output.write(body);
+		}
+		finally
+		{
+			output.close();
+		}
+	}
+
+	private static void sendError(HttpExchange exchange, int status, String message)
+			throws IOException
+	{
+		StringBuilder json = new StringBuilder("{\"error\":");
+		appendString(json, message);
+		send(exchange, status, json.append('}'));
+	}
+
+	/**
+	 * Number of results of a query which doesn't specify it
+	 */
+	public static final int DEFAULT_RESULTS = 20;
+
+	/**
+	 * Maximum number of results a query may ask for
+	 */
+	public static final int MAX_RESULTS = 1000;
+
+	/**
+	 * Number of connections waiting to be accepted
+	 */
+	private static final int BACKLOG = 128;
+
+	private static final Logger logger = Logger.getLogger("com.iretrieval.index");
+
+	/**
+	 * Handles exchanges, waiting for their queries to be evaluated
+	 */
+	private final ExecutorService exchanges = newExchangeExecutor();
+	private final IndexManager manager;
+	private final AtomicLong rejectedCount = new AtomicLong();
+	private volatile HttpServer server;
+	private final AtomicLong timedOutCount = new AtomicLong();
+
+	/**
+	 * Milliseconds a query may wait and run
+	 */
+	private final long timeout;
+
+	/**
+	 * Evaluates queries
+	 */
+	private final ThreadPoolExecutor workers;
+}
@@ -0,0 +1,199 @@
+package ua.edu.ukma.fin.iretrieval;
+
+import java.util.Arrays;
+
+/**
+ * Frequencies of all the terms of a text, counted in a single pass of the
+ * {@link Tokenizer tokenizer}. Characters of the distinct terms are stored one
+ * after another in a single array and looked up by open addressing with
+ * linear probing, so no string or boxed count is kept per term. A term
+ * absent from the table doesn't occur in the text, misses don't need to be
+ * counted again.
+ *
+ * Table is immutable once counted and safe for concurrent use.
+ *
+ * @see "Introduction to information retrieval. 6.2 Term frequency and
+ * weighting"
+ */
+final class TermFrequencies
+{
+	/**
+	 * Counts the terms of the text.
+	 *
+	 * @param text
+	 * Text to count terms of, may contain HTML markup.
+	 *
+	 * @return Frequencies of the text's terms.
+	 */
+	static TermFrequencies count(CharSequence text)
+	{
+		Tokenizer tokenizer = Utils.tokenizer(text);
+		TermFrequencies frequencies = new TermFrequencies();
+		while (tokenizer.next())
+		{
+			frequencies.add(tokenizer.buffer(), tokenizer.length());
+		}
+		frequencies.trim();
+		return frequencies;
+	}
+
+	/**
+	 * Gets how many times the term occurs in the text, case of the term is
+	 * ignored the same way {@link Tokenizer#contentEquals(CharSequence)} does.
+	 *
+	 * @param term
+	 * Term to get frequency of.
+	 *
+	 * @return Term frequency, 0 if the term doesn't occur in the text.
+	 */
+	int get(CharSequence term)
+	{
+		int length = term.length();
+		int hash = 0;
+		for (int i = 0; i < length; i++)
+		{
+			hash = 31 * hash + Character.toLowerCase(term.charAt(i));
+		}
+		int mask = slots.length - 1;
+		for (int slot = mix(hash) & mask; slots[slot] != 0; slot = (slot + 1) & mask)
+		{
+			int termId = slots[slot] - 1;
+			int offset = offsets[termId];
+			if (offsets[termId + 1] - offset == length && matches(term, offset))
+			{
+				return counts[termId];
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @return Number of distinct terms in the text.
+	 */
+	int size()
+	{
+		return size;
+	}
+
+	private TermFrequencies()
+	{
+	}
+
+	private void add(char[] term, int length)
+	{
+		int hash = 0;
+		for (int i = 0; i < length; i++)
+		{
+			hash = 31 * hash + term[i];
+		}
+		int mask = slots.length - 1;
+		int slot = mix(hash) & mask;
+		while (slots[slot] != 0)
+		{
+			int termId = slots[slot] - 1;
+			int offset = offsets[termId];
+			if (offsets[termId + 1] - offset == length && matches(term, length, offset))
+			{
+				counts[termId]++;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		int termId = size++;
+		if (termId == counts.length)
+		{
+			counts = Arrays.copyOf(counts, termId * 2);
+			offsets = Arrays.copyOf(offsets, termId * 2 + 1);
+		}
+		int offset = offsets[termId];
+		if (offset + length > chars.length)
+		{
+			chars = Arrays.copyOf(chars, Math.max(chars.length * 2, offset + length));
+		}
+		System.arraycopy(term, 0, chars, offset, length);
+		offsets[termId + 1] = offset + length;
+		counts[termId] = 1;
+		slots[slot] = termId + 1;
+		if (size * 2 > slots.length)
+		{
+			rehash();
+		}
+	}
+
+	private boolean matches(char[] term, int length, int offset)
+	{
+		for (int i = 0; i < length; i++)
+		{
+			if (chars[offset + i] != term[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean matches(CharSequence term, int offset)
+	{
+		for (int i = 0; i < term.length(); i++)
+		{
+			if (chars[offset + i] != Character.toLowerCase(term.charAt(i)))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rehash()
+	{
+		slots = new int[slots.length * 2];
+		int mask = slots.length - 1;
+		for (int termId = 0; termId < size; termId++)
+		{
+			int hash = 0;
+			for (int i = offsets[termId]; i < offsets[termId + 1]; i++)
+			{
+				hash = 31 * hash + chars[i];
+			}
+			int slot = mix(hash) & mask;
+			while (slots[slot] != 0)
+			{
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = termId + 1;
+		}
+	}
+
+	/**
+	 * Releases unused capacity of the arrays once all the terms are added.
+	 */
+	private void trim()
+	{
+		chars = Arrays.copyOf(chars, offsets[size]);
+		counts = Arrays.copyOf(counts, size);
+		offsets = Arrays.copyOf(offsets, size + 1);
+	}
+
+	private static int mix(int hash)
+	{
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Characters of the distinct terms in order of their first occurrence
+	 */
+	private char[] chars = new char[64];
+	private int[] counts = new int[8];
+
+	/**
+	 * Term with ID i occupies characters [offsets[i], offsets[i + 1])
+	 */
+	private int[] offsets = new int[9];
+	private int size = 0;
+
+	/**
+	 * Term ID plus one for every occupied slot, 0 for an empty one
+	 */
+	private int[] slots = new int[16];
+}
@@ -0,0 +1,400 @@
+package ua.edu.ukma.fin.iretrieval;
+
+import java.util.Arrays;
+
+/**
+ * Single-pass streaming tokenizer. Reads text (possibly containing HTML
+ * markup) char by char and emits lower-cased tokens into a reusable buffer,
+ * no intermediate strings are created. Tokens are runs of Latin and Cyrillic
+ * letters, digits and the characters '+' and '#'; tokens of a single
+ * character and two-digit numbers are skipped.
+ *
+ * Markup is stripped the way HTML text extraction does it: tags of block
+ * elements separate words while inline tags don't, contents of scripts,
+ * styles and comments are skipped, character references are decoded.
+ *
+ * Tokenizer is not thread-safe, but can be {@link #reset(CharSequence)
+ * reset} and reused for any number of texts.
+ *
+ * @see "Introduction to information retrieval. 2.2 Determining the vocabulary
+ * of terms"
+ */
+public final class Tokenizer
+{
+	/**
+	 * @return Characters of the current token, valid until the next call to
+	 * {@link #next()}. Only the first {@link #length()} characters belong to
+	 * the token.
+	 */
+	public char[] buffer()
+	{
+		return buffer;
+	}
+
+	/**
+	 * Compares the current token with the term ignoring case of the term.
+	 *
+	 * @param term
+	 * Term to compare the token with.
+	 *
+	 * @return TRUE if the token consists of the same characters as the term.
+	 */
+	public boolean contentEquals(CharSequence term)
+	{
+		if (term.length() != length)
+		{
+			return false;
+		}
+		for (int i = 0; i < length; i++)
+		{
+			if (buffer[i] != Character.toLowerCase(term.charAt(i)))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return Length of the current token.
+	 */
+	public int length()
+	{
+		return length;
+	}
+
+	/**
+	 * Moves to the next token.
+	 *
+	 * @return TRUE if there is a token, FALSE if the end of the text has been
+	 * reached.
+	 */
+	public boolean next()
+	{
+		while (true)
+		{
+			length = 0;
+			while (offset < end)
+			{
+				char c = text.charAt(offset);
+				if (c == '<')
+				{
+					int markup = skipTag();
+					if (markup == BLOCK_MARKUP && length > 0)
+					{
+						break;
+					}
+					if (markup != NO_MARKUP)
+					{
+						continue;
+					}
+				}
+				if (c == '&')
+				{
+					c = decodeReference();
+				}
+				else
+				{
+					offset++;
+				}
+				c = Character.toLowerCase(c);
+				if (isTokenChar(c))
+				{
+					append(c);
+				}
+				else if (length > 0)
+				{
+					break;
+				}
+			}
+			if (length == 0)
+			{
+				return false;
+			}
+			if (!isShort())
+			{
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Starts tokenizing a new text.
+	 *
+	 * @param text
+	 * Text to be tokenized, null is treated as an empty text.
+	 *
+	 * @return This tokenizer.
+	 */
+	public Tokenizer reset(CharSequence text)
+	{
+		this.text = text == null ? "" : text;
+		this.offset = 0;
+		this.end = this.text.length();
+		this.length = 0;
+		this.unclosed = Integer.MAX_VALUE;
+		return this;
+	}
+
+	/**
+	 * @return Current token as a new string.
+	 */
+	@Override
+	public String toString()
+	{
+		return new String(buffer, 0, length);
+	}
+
+	private void append(char c)
+	{
+		if (length == buffer.length)
+		{
+			buffer = Arrays.copyOf(buffer, length * 2);
+		}
+		buffer[length++] = c;
+	}
+
+	/**
+	 * Decodes character reference at the current offset and moves past it.
+	 * Unknown named references are decoded as a separator, '&' not starting
+	 * a reference is returned as is.
+	 */
+	private char decodeReference()
+	{
+		int start = offset + 1;
+		int i = start;
+		while (i < end && i - start < MAX_REFERENCE_LENGTH && text.charAt(i) != ';'
+				&& isReferenceChar(text.charAt(i)))
+		{
+			i++;
+		}
+		if (i == start || i >= end || text.charAt(i) != ';')
+		{
+			offset++;
+			return '&';
+		}
+		offset = i + 1;
+		if (text.charAt(start) == '#')
+		{
+			int code = 0;
+			boolean hexadecimal = start + 1 < i
+					&& (text.charAt(start + 1) == 'x' || text.charAt(start + 1) == 'X');
+			for (int j = hexadecimal ? start + 2 : start + 1; j < i; j++)
+			{
+				int digit = Character.digit(text.charAt(j), hexadecimal ? 16 : 10);
+				if (digit < 0)
+				{
+					return ' ';
+				}
+				code = code * (hexadecimal ? 16 : 10) + digit;
+			}
+			return code > 0 && code <= Character.MAX_VALUE ? (char) code : ' ';
+		}
+		for (int j = 0; j < REFERENCES.length; j += 2)
+		{
+			if (regionEquals(start, i, REFERENCES[j]))
+			{
+				return REFERENCES[j + 1].charAt(0);
+			}
+		}
+		return ' ';
+	}
+
+	/**
+	 * Tokens of a single character and two-digit numbers carry no meaning.
+	 */
+	private boolean isShort()
+	{
+		return length == 1 || length == 2 && isDigit(buffer[0]) && isDigit(buffer[1]);
+	}
+
+	private boolean regionEquals(int start, int end, String string)
+	{
+		if (end - start != string.length())
+		{
+			return false;
+		}
+		for (int i = start; i < end; i++)
+		{
+			if (text.charAt(i) != string.charAt(i - start))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean regionEqualsIgnoreCase(int start, String string)
+	{
+		if (start + string.length() > end)
+		{
+			return false;
+		}
+		for (int i = 0; i < string.length(); i++)
+		{
+			if (Character.toLowerCase(text.charAt(start + i)) != string.charAt(i))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Skips the tag, comment or raw text element at the current offset.
+	 *
+	 * @return {@link #NO_MARKUP} if '<' doesn't start a tag and should be
+	 * treated as text, {@link #BLOCK_MARKUP} if the skipped markup separates
+	 * words, {@link #INLINE_MARKUP} otherwise.
+	 */
+	private int skipTag()
+	{
+		int start = offset + 1;
+		if (start >= end)
+		{
+			return NO_MARKUP;
+		}
+		char first = text.charAt(start);
+		if (first == '!' && regionEqualsIgnoreCase(start, "!--"))
+		{
+			int close = indexOf("-->", start + 3);
+			offset = close < 0 ? end : close + 3;
+			return INLINE_MARKUP;
+		}
+		boolean closing = first == '/';
+		int nameStart = closing ? start + 1 : start;
+		if (!(nameStart < end && isAsciiLetter(text.charAt(nameStart))) && first != '!'
+				&& first != '?')
+		{
+			return NO_MARKUP;
+		}
+		int close = start < unclosed ? indexOf(">", start) : -1;
+		if (close < 0)
+		{
+			unclosed = Math.min(unclosed, start);
+			return NO_MARKUP;
+		}
+		int nameEnd = nameStart;
+		while (nameEnd < close && isNameChar(text.charAt(nameEnd)))
+		{
+			nameEnd++;
+		}
+		offset = close + 1;
+		if (!closing)
+		{
+			for (String element : RAW_TEXT_ELEMENTS)
+			{
+				if (nameEnd - nameStart == element.length()
+						&& regionEqualsIgnoreCase(nameStart, element))
+				{
+					int closingTag = indexOfClosingTag(element, offset);
+					int closingEnd = closingTag < 0 ? -1 : indexOf(">", closingTag);
+					offset = closingEnd < 0 ? end : closingEnd + 1;
+					return BLOCK_MARKUP;
+				}
+			}
+		}
+		for (String element : BLOCK_ELEMENTS)
+		{
+			if (nameEnd - nameStart == element.length()
+					&& regionEqualsIgnoreCase(nameStart, element))
+			{
+				return BLOCK_MARKUP;
+			}
+		}
+		return INLINE_MARKUP;
+	}
+
+	private int indexOf(String string, int from)
+	{
+		for (int i = from; i + string.length() <= end; i++)
+		{
+			if (regionEquals(i, i + string.length(), string))
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return Offset of the closing tag of the element, e.g.
+	 * <code>&lt;/script</code>, or -1 if there is none.
+	 */
+	private int indexOfClosingTag(String element, int from)
+	{
+		for (int i = from; i + 2 + element.length() <= end; i++)
+		{
+			if (text.charAt(i) == '<' && text.charAt(i + 1) == '/'
+					&& regionEqualsIgnoreCase(i + 2, element))
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean isAsciiLetter(char c)
+	{
+		return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+	}
+
+	private static boolean isDigit(char c)
+	{
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isNameChar(char c)
+	{
+		return isAsciiLetter(c) || isDigit(c);
+	}
+
+	private static boolean isReferenceChar(char c)
+	{
+		return isNameChar(c) || c == '#';
+	}
+
+	private static boolean isTokenChar(char c)
+	{
+		return c >= 'a' && c <= 'z' || c >= '\u0430' && c <= '\u044f' || isDigit(c) || c == '+'
+				|| c == '#';
+	}
+
+	/**
+	 * Elements starting a new line of text
+	 */
+	private static final String[] BLOCK_ELEMENTS = { "address", "article", "aside", "blockquote",
+			"body", "br", "dd", "div", "dl", "dt", "fieldset", "figcaption", "figure", "footer",
+			"form", "h1", "h2", "h3", "h4", "h5", "h6", "head", "header", "hr", "html", "li",
+			"main", "nav", "ol", "p", "pre", "section", "table", "tbody", "td", "tfoot", "th",
+			"thead", "title", "tr", "ul" };
+
+	private static final int BLOCK_MARKUP = 2;
+	private static final int INLINE_MARKUP = 1;
+	private static final int MAX_REFERENCE_LENGTH = 10;
+	private static final int NO_MARKUP = 0;
+
+	/**
+	 * Elements whose content isn't text
+	 */
+	private static final String[] RAW_TEXT_ELEMENTS = { "script", "style" };
+
+	/**
+	 * Named character references decoded to characters which matter for
+	 * tokenization, pairs of name and character
+	 */
+	private static final String[] REFERENCES = { "amp", "&", "apos", "'", "gt", ">", "lt", "<",
+			"nbsp", "\u00a0", "num", "#", "plus", "+", "quot", "\"" };
+
+	private char[] buffer = new char[32];
+	private int end = 0;
+	private int length = 0;
+	private int offset = 0;
+	private CharSequence text = "";
+
+	/**
+	 * Offset from which the text has no '>', so a '<' after it is text
+	 * without searching again
+	 */
+	private int unclosed = Integer.MAX_VALUE;
+}
@@ -10,6 +10,27 @@ public class TrainingExample
 		this.relevant = relevant;
 	}
 
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (this == obj) return true;
+		if (obj == null) return false;
+		if (getClass() != obj.getClass()) return false;
+		TrainingExample other = (TrainingExample) obj;
+		if (documentGuid == null)
+		{
+			if (other.documentGuid != null) return false;
+		}
+		else if (!documentGuid.equals(other.documentGuid)) return false;
+		if (relevant != other.relevant) return false;
+		if (term == null)
+		{
+			if (other.term != null) return false;
+		}
+		else if (!term.equals(other.term)) return false;
+		return true;
+	}
+
 	public String getDocumentGuid()
 	{
 		return documentGuid;
@@ -20,6 +41,17 @@ public class TrainingExample
 		return term;
 	}
 
+	@Override
+	public int hashCode()
+	{
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((documentGuid == null) ? 0 : documentGuid.hashCode());
+		result = prime * result + (relevant ? 1231 : 1237);
+		result = prime * result + ((term == null) ? 0 : term.hashCode());
+		return result;
+	}
+
 	/**
 	 * @return TRUE if the example's document is relevant to the example's term,
 	 * FALSE otherwise
@@ -28,7 +60,7 @@ public class TrainingExample
 	{
 		return relevant;
 	}
-	
+
 	private String documentGuid;
 	private boolean relevant;
 	private String term;
@@ -1,17 +1,13 @@
 package ua.edu.ukma.fin.iretrieval;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import org.jsoup.Jsoup;
-
 public class Utils
 {
 	/**
-	 * Counts how many times term occurs in haystack string
+	 * Counts how many times term occurs in haystack string. Haystack is
+	 * tokenized the same way documents are, so only whole tokens are counted.
 	 * 
 	 * @param term
-	 * Term to count occurrences for.
+	 * Term to count occurrences for, case is ignored.
 	 * 
 	 * @param haystack
 	 * The input string.
@@ -20,12 +16,14 @@ public class Utils
 	 */
 	public static int countTerms(String term, String haystack)
 	{
-		Pattern p = Pattern.compile("\\b" + term + "\\b", Pattern.CASE_INSENSITIVE);
-		Matcher m = p.matcher(haystack);
+		Tokenizer tokenizer = tokenizer(haystack);
 		int count = 0;
-		while (m.find())
+		while (tokenizer.next())
 		{
-			count++;
+			if (tokenizer.contentEquals(term))
+			{
+				count++;
+			}
 		}
 		return count;
 	}
@@ -34,20 +32,45 @@ public class Utils
 	 * Prepares string for indexing: strips tags, removes punctuation, removes
 	 * trailing and leading whitespace, sets case to lower, etc.
 	 * 
+	 * @see Tokenizer
+	 * 
 	 * @param string
 	 * String to be processed. If null is passed returns an empty string.
 	 * 
-	 * @return Normalized string
+	 * @return Normalized string, tokens separated by single spaces.
 	 */
 	public static String normalize(String string)
 	{
 		if (string == null) {
 			return "";
 		}
-		string = Jsoup.parse(string).text();
-		string = string.toLowerCase();
-		string = string.replaceAll("[^a-zа-я0-9+#]+", " ");
-		string = string.replaceAll("(\\s|^)((\\S{1}|\\d{2})(\\s|\\n|\\r|\\t|$){1})+", " ");
-		return string.trim();
+		Tokenizer tokenizer = tokenizer(string);
+		StringBuilder normalized = new StringBuilder(string.length());
+		while (tokenizer.next())
+		{
+			if (normalized.length() > 0)
+			{
+				normalized.append(' ');
+			}
+			normalized.append(tokenizer.buffer(), 0, tokenizer.length());
+		}
+		return normalized.toString();
+	}
+
+	/**
+	 * @return Tokenizer of the calling thread reset to the text.
+	 */
+	public static Tokenizer tokenizer(CharSequence text)
+	{
+		return tokenizers.get().reset(text);
 	}
+
+	private static final ThreadLocal<Tokenizer> tokenizers = new ThreadLocal<Tokenizer>()
+	{
+		@Override
+		protected Tokenizer initialValue()
+		{
+			return new Tokenizer();
+		}
+	};
 }
@@ -1,8 +1,5 @@
 package ua.edu.ukma.fin.iretrieval;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public class Zone
 {
 
@@ -10,7 +7,6 @@ public class Zone
 	{
 		this.name = name;
 		this.content = content;
-		this.termFrequencies = new HashMap<String, Integer>();
 	}
 
 	public String getContent()
@@ -33,22 +29,24 @@ public class Zone
 		return termFrequency;
 	}
 
+	/**
+	 * Gets how many times term occurs in the zone. All the terms of the zone
+	 * are counted on the first call, later calls are answered from the counts
+	 * whether the term occurs or not.
+	 */
 	public int getTermFrequency(String term)
 	{
-		Integer termFrequency = termFrequencies.get(term);
-		if (termFrequency == null)
+		TermFrequencies counts = termFrequencies;
+		if (counts == null)
 		{
-			termFrequency = Utils.countTerms(term, getContent());
-			if (termFrequency > 0)
-			{
-				termFrequencies.put(term, termFrequency);
-			}
+			counts = TermFrequencies.count(getContent());
+			termFrequencies = counts;
 		}
-		return termFrequency.intValue();
+		return counts.get(term);
 	}
 
 	private String content;
 	private ZoneName name;
-	private Map<String, Integer> termFrequencies = null;
+	private volatile TermFrequencies termFrequencies = null;
 
 }
@@ -0,0 +1,266 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import java.nio.ByteBuffer;
+
+import ua.edu.ukma.fin.iretrieval.ZoneName;
+
+/**
+ * Iterator over a {@link BlockPostingsList}. Decodes postings lazily and uses
+ * block skip pointers to {@link #advance(int) jump} over postings that can't
+ * match: blocks whose last document is less than the target are skipped
+ * without being decoded. Positions are decoded only for postings they are
+ * requested for.
+ */
+class BlockPostingsIterator extends PostingsIterator
+{
+	BlockPostingsIterator(BlockPostingsList postings)
+	{
+		this.postings = postings;
+	}
+
+	@Override
+	public int advance(int target)
+	{
+		if (document != -1 && document >= target)
+		{
+			return document;
+		}
+		int block = findBlock(target);
+		if (block == postings.getBlockCount())
+		{
+			return exhaust();
+		}
+		if (block != getCurrentBlock())
+		{
+			seekBlock(block);
+		}
+		while (nextDocument() < target)
+		{
+		}
+		return document;
+	}
+
+	@Override
+	public int document()
+	{
+		return document;
+	}
+
+	@Override
+	public int getBlockLastDocument(int target)
+	{
+		int block = findBlock(target);
+		if (block == postings.getBlockCount())
+		{
+			return NO_MORE_DOCUMENTS;
+		}
+		return postings.getBlockLastDocument(block);
+	}
+
+	@Override
+	public int getBlockMaxTermFrequency(int target)
+	{
+		int block = findBlock(target);
+		if (block == postings.getBlockCount())
+		{
+			return 0;
+		}
+		return postings.getBlockMaxTermFrequency(block);
+	}
+
+	@Override
+	public int getMaxTermFrequency()
+	{
+		return postings.getMaxTermFrequency();
+	}
+
+	@Override
+	public int getScannedCount()
+	{
+		return scannedCount;
+	}
+
+	@Override
+	public int nextDocument()
+	{
+		if (index + 1 >= postings.size)
+		{
+			return exhaust();
+		}
+		if (!positionsConsumed)
+		{
+			positionsToSkip += termFrequency;
+		}
+		index++;
+		scannedCount++;
+		document += readInt();
+		int frequencies = readInt();
+		termFrequency = frequencies >>> PostingsList.ZONE_BITS;
+		zoneMask = frequencies & ((1 << PostingsList.ZONE_BITS) - 1);
+		if (Integer.bitCount(zoneMask) > 1)
+		{
+			for (int zone = 0; zone < PostingsList.ZONE_BITS; zone++)
+			{
+				zoneTermFrequencies[zone] = (zoneMask & (1 << zone)) != 0 ? readInt() : 0;
+			}
+		}
+		positionsConsumed = false;
+		return document;
+	}
+
+	@Override
+	public int[] positions()
+	{
+		if (positionsConsumed)
+		{
+			throw new IllegalStateException("Positions of the posting have already been read.");
+		}
+		ByteBuffer data = postings.positions;
+		for (; positionsToSkip > 0; positionsToSkip--)
+		{
+			while (data.get(positionsOffset++) < 0)
+			{
+			}
+		}
+		int[] positions = new int[termFrequency];
+		int position = 0;
+		for (int i = 0; i < termFrequency; i++)
+		{
+			int b = data.get(positionsOffset++);
+			int gap = b & 0x7F;
+			for (int shift = 7; b < 0; shift += 7)
+			{
+				b = data.get(positionsOffset++);
+				gap |= (b & 0x7F) << shift;
+			}
+			position += gap;
+			positions[i] = position;
+		}
+		positionsConsumed = true;
+		return positions;
+	}
+
+	@Override
+	public int size()
+	{
+		return postings.size;
+	}
+
+	@Override
+	public int termFrequency()
+	{
+		return termFrequency;
+	}
+
+	@Override
+	public int zoneMask()
+	{
+		return zoneMask;
+	}
+
+	@Override
+	public int zoneTermFrequency(ZoneName zone)
+	{
+		int bit = 1 << zone.ordinal();
+		if ((zoneMask & bit) == 0)
+		{
+			return 0;
+		}
+		return zoneMask == bit ? termFrequency : zoneTermFrequencies[zone.ordinal()];
+	}
+
+	private int exhaust()
+	{
+		index = postings.size;
+		document = NO_MORE_DOCUMENTS;
+		termFrequency = 0;
+		zoneMask = 0;
+		positionsConsumed = true;
+		return document;
+	}
+
+	/**
+	 * Searches for the first block, starting from the current one, whose last
+	 * document ID is not less than the target.
+	 */
+	private int findBlock(int target)
+	{
+		BlockPostingsList postings = this.postings;
+		int blocks = postings.getBlockCount();
+		int block = getCurrentBlock();
+		if (block < blocks && postings.getBlockLastDocument(block) < target)
+		{
+			// gallop: targets of intersections are usually close to the
+			// current block, so the range is doubled before binary search
+			int from = block + 1;
+			int step = 1;
+			while (from + step < blocks && postings.getBlockLastDocument(from + step - 1) < target)
+			{
+				from += step;
+				step <<= 1;
+			}
+			// first block in [from, to) whose last document isn't less than
+			// the target, to if there is none
+			int to = Math.min(from + step, blocks);
+			while (from < to)
+			{
+				int middle = (from + to) >>> 1;
+				if (postings.getBlockLastDocument(middle) < target)
+				{
+					from = middle + 1;
+				}
+				else
+				{
+					to = middle;
+				}
+			}
+			block = from;
+		}
+		return block;
+	}
+
+	private int getCurrentBlock()
+	{
+		return index < 0 ? 0 : index / PostingsList.BLOCK_SIZE;
+	}
+
+	private int readInt()
+	{
+		ByteBuffer data = postings.data;
+		int b = data.get(offset++);
+		int value = b & 0x7F;
+		for (int shift = 7; b < 0; shift += 7)
+		{
+			b = data.get(offset++);
+			value |= (b & 0x7F) << shift;
+		}
+		return value;
+	}
+
+	private void seekBlock(int block)
+	{
+		index = block * PostingsList.BLOCK_SIZE - 1;
+		offset = postings.getBlockOffset(block);
+		positionsOffset = postings.getBlockPositionOffset(block);
+		positionsToSkip = 0;
+		positionsConsumed = true;
+		document = block == 0 ? -1 : postings.getBlockLastDocument(block - 1);
+	}
+
+	private int document = -1;
+	private int index = -1;
+	private int offset = 0;
+	private final BlockPostingsList postings;
+	private boolean positionsConsumed = true;
+	private int positionsOffset = 0;
+	private int positionsToSkip = 0;
+	private int scannedCount = 0;
+	private int termFrequency = 0;
+	private int zoneMask = 0;
+
+	/**
+	 * Term frequencies in zones of the current posting, valid only if the
+	 * term occurs in several zones
+	 */
+	private final int[] zoneTermFrequencies = new int[PostingsList.ZONE_BITS];
+}
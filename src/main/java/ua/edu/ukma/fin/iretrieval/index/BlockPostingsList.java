@@ -0,0 +1,160 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Postings list stored as compressed streams split into blocks of
+ * {@link PostingsList#BLOCK_SIZE} postings. Document IDs are stored as gaps
+ * followed by term frequency shifted left by {@link PostingsList#ZONE_BITS}
+ * and combined with the mask of zones the term occurs in. If there are
+ * several such zones, term frequency in each of them follows. Positions are
+ * kept in a separate stream as gaps within the document. Both streams are
+ * compressed with variable byte encoding. The last document ID, maximum term
+ * frequency and the byte offsets of every block are kept uncompressed and
+ * serve as skip pointers.
+ *
+ * Compressed streams and the block table are accessed through buffers, so
+ * postings can be read in place either from the heap or from a memory-mapped
+ * segment file. The table holds {@link #SKIP_ENTRY_SIZE} integers per block:
+ * last document ID, offset in the documents stream, offset in the positions
+ * stream and maximum term frequency, which is the layout of the file.
+ *
+ * @see "Introduction to information retrieval. 5.3 Postings file compression"
+ */
+class BlockPostingsList extends PostingsList
+{
+	/**
+	 * Builds a list on the heap, block tables are interleaved into one.
+	 */
+	BlockPostingsList(ByteBuffer data, ByteBuffer positions, int size, int[] blockLastDocuments,
+			int[] blockOffsets, int[] blockPositionOffsets, int[] blockMaxTermFrequencies)
+	{
+		this(data, positions, size, interleave(blockLastDocuments, blockOffsets,
+				blockPositionOffsets, blockMaxTermFrequencies));
+	}
+
+	/**
+	 * @param skips
+	 * Block table of {@link #SKIP_ENTRY_SIZE} integers per block, e.g. a view
+	 * of the mapped segment file.
+	 */
+	BlockPostingsList(ByteBuffer data, ByteBuffer positions, int size, IntBuffer skips)
+	{
+		this.data = data;
+		this.positions = positions;
+		this.size = size;
+		this.skips = skips;
+	}
+
+	/**
+	 * Maximum term frequency is found on the first call, so opening a list
+	 * doesn't read its whole block table.
+	 */
+	@Override
+	public int getMaxTermFrequency()
+	{
+		int maxTermFrequency = this.maxTermFrequency;
+		if (maxTermFrequency < 0)
+		{
+			maxTermFrequency = 0;
+			for (int block = 0; block < getBlockCount(); block++)
+			{
+				maxTermFrequency = Math.max(maxTermFrequency, getBlockMaxTermFrequency(block));
+			}
+			this.maxTermFrequency = maxTermFrequency;
+		}
+		return maxTermFrequency;
+	}
+
+	@Override
+	public long getHeapSize()
+	{
+		long heapSize = OBJECT_SIZE;
+		if (!skips.isDirect())
+		{
+			heapSize += Segment.getArraySize(skips.capacity(), 4);
+		}
+		if (!data.isDirect())
+		{
+			heapSize += Segment.getArraySize(data.capacity(), 1);
+		}
+		if (!positions.isDirect())
+		{
+			heapSize += Segment.getArraySize(positions.capacity(), 1);
+		}
+		return heapSize;
+	}
+
+	@Override
+	public PostingsIterator iterator()
+	{
+		return new BlockPostingsIterator(this);
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	int getBlockCount()
+	{
+		return skips.limit() / SKIP_ENTRY_SIZE;
+	}
+
+	int getBlockLastDocument(int block)
+	{
+		return skips.get(block * SKIP_ENTRY_SIZE);
+	}
+
+	int getBlockMaxTermFrequency(int block)
+	{
+		return skips.get(block * SKIP_ENTRY_SIZE + 3);
+	}
+
+	int getBlockOffset(int block)
+	{
+		return skips.get(block * SKIP_ENTRY_SIZE + 1);
+	}
+
+	int getBlockPositionOffset(int block)
+	{
+		return skips.get(block * SKIP_ENTRY_SIZE + 2);
+	}
+
+	private static IntBuffer interleave(int[] blockLastDocuments, int[] blockOffsets,
+			int[] blockPositionOffsets, int[] blockMaxTermFrequencies)
+	{
+		int[] skips = new int[blockLastDocuments.length * SKIP_ENTRY_SIZE];
+		for (int block = 0; block < blockLastDocuments.length; block++)
+		{
+			skips[block * SKIP_ENTRY_SIZE] = blockLastDocuments[block];
+			skips[block * SKIP_ENTRY_SIZE + 1] = blockOffsets[block];
+			skips[block * SKIP_ENTRY_SIZE + 2] = blockPositionOffsets[block];
+			skips[block * SKIP_ENTRY_SIZE + 3] = blockMaxTermFrequencies[block];
+		}
+		return IntBuffer.wrap(skips);
+	}
+
+	/**
+	 * Number of integers in the block table per block
+	 */
+	static final int SKIP_ENTRY_SIZE = 4;
+
+	/**
+	 * Estimated size of the list object with its buffers' headers
+	 */
+	private static final int OBJECT_SIZE = 160;
+
+	final ByteBuffer data;
+
+	/**
+	 * Greatest term frequency of the list, -1 until it is found
+	 */
+	private int maxTermFrequency = -1;
+
+	final ByteBuffer positions;
+	final int size;
+	private final IntBuffer skips;
+}
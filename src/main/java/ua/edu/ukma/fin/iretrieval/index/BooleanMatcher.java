@@ -0,0 +1,585 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import ua.edu.ukma.fin.iretrieval.BooleanQuery.Clause;
+
+/**
+ * Forward-only cursor over IDs of the documents matching a Boolean
+ * expression. Matchers of the operators are composed of matchers of their
+ * operands down to the postings of single terms, documents are matched one
+ * at a time without materializing intermediate results.
+ *
+ * @see "Introduction to information retrieval. 1.3 Processing Boolean
+ * queries"
+ */
+abstract class BooleanMatcher
+{
+	/**
+	 * Moves to the first matching document with ID greater or equal to the
+	 * target. Current document is kept if it isn't less than the target.
+	 *
+	 * @param target
+	 * Document ID to advance to.
+	 *
+	 * @return Document ID of the new current document or
+	 * {@link PostingsIterator#NO_MORE_DOCUMENTS}.
+	 */
+	public abstract int advance(int target);
+
+	/**
+	 * @return Upper bound of the number of matching documents, used to pick
+	 * the cheapest operand to lead an intersection.
+	 */
+	public abstract long cost();
+
+	/**
+	 * @return ID of the current document, -1 if matching hasn't been started
+	 * or {@link PostingsIterator#NO_MORE_DOCUMENTS} if it's over.
+	 */
+	public abstract int document();
+
+	/**
+	 * Moves to the next matching document.
+	 *
+	 * @return Document ID of the new current document or
+	 * {@link PostingsIterator#NO_MORE_DOCUMENTS}.
+	 */
+	public abstract int nextDocument();
+
+	/**
+	 * Builds matcher of the clause over the segment. Operands of AND are
+	 * intersected in order of increasing cost, negated operands are
+	 * subtracted from the intersection, negation standing on its own is
+	 * subtracted from all the documents. Phrases and proximity operators
+	 * intersect postings of their terms and check positions of the terms in
+	 * the documents found.
+	 *
+	 * @param segment
+	 * Segment to match documents of.
+	 *
+	 * @param clause
+	 * Root of the query expression, can be null.
+	 *
+	 * @return Matcher or null if no document can match.
+	 */
+	static BooleanMatcher create(Segment segment, Clause clause)
+	{
+		if (clause == null)
+		{
+			return null;
+		}
+		switch (clause.getOperator())
+		{
+		case TERM:
+			PostingsList postings = segment.getPostings(clause.getTerm());
+			return postings == null ? null : new TermMatcher(postings.iterator());
+		case NOT:
+			return exclude(new AllMatcher(segment.getDocumentCount()), create(segment, clause
+					.getClauses().get(0)));
+		case AND:
+			List<BooleanMatcher> included = new ArrayList<BooleanMatcher>();
+			List<BooleanMatcher> excluded = new ArrayList<BooleanMatcher>();
+			for (Clause operand : clause.getClauses())
+			{
+				if (operand.getOperator() == Clause.Operator.NOT)
+				{
+					BooleanMatcher matcher = create(segment, operand.getClauses().get(0));
+					if (matcher != null)
+					{
+						excluded.add(matcher);
+					}
+				}
+				else
+				{
+					BooleanMatcher matcher = create(segment, operand);
+					if (matcher == null)
+					{
+						return null;
+					}
+					included.add(matcher);
+				}
+			}
+			BooleanMatcher intersection;
+			if (included.isEmpty())
+			{
+				intersection = new AllMatcher(segment.getDocumentCount());
+			}
+			else if (included.size() == 1)
+			{
+				intersection = included.get(0);
+			}
+			else
+			{
+				intersection = new ConjunctionMatcher(included);
+			}
+			return exclude(intersection, union(excluded));
+		case PHRASE:
+		case NEAR:
+			List<Clause> phrases = clause.getOperator() == Clause.Operator.PHRASE ? Collections
+					.singletonList(clause) : clause.getClauses();
+			PostingsIterator[][] iterators = new PostingsIterator[phrases.size()][];
+			List<BooleanMatcher> terms = new ArrayList<BooleanMatcher>();
+			for (int i = 0; i < phrases.size(); i++)
+			{
+				List<Clause> words = phrases.get(i).getOperator() == Clause.Operator.TERM ? Collections
+						.singletonList(phrases.get(i)) : phrases.get(i).getClauses();
+				iterators[i] = new PostingsIterator[words.size()];
+				for (int j = 0; j < words.size(); j++)
+				{
+					PostingsList wordPostings = segment.getPostings(words.get(j).getTerm());
+					if (wordPostings == null)
+					{
+						return null;
+					}
+					iterators[i][j] = wordPostings.iterator();
+					terms.add(new TermMatcher(iterators[i][j]));
+				}
+			}
+			return new PositionalMatcher(new ConjunctionMatcher(terms), iterators, clause
+					.getDistance());
+		case OR:
+			List<BooleanMatcher> operands = new ArrayList<BooleanMatcher>();
+			for (Clause operand : clause.getClauses())
+			{
+				BooleanMatcher matcher = create(segment, operand);
+				if (matcher != null)
+				{
+					operands.add(matcher);
+				}
+			}
+			return union(operands);
+		default:
+			throw new IllegalArgumentException("Unknown operator: " + clause.getOperator());
+		}
+	}
+
+	private static BooleanMatcher exclude(BooleanMatcher included, BooleanMatcher excluded)
+	{
+		return excluded == null ? included : new ExclusionMatcher(included, excluded);
+	}
+
+	private static BooleanMatcher union(List<BooleanMatcher> operands)
+	{
+		if (operands.isEmpty())
+		{
+			return null;
+		}
+		if (operands.size() == 1)
+		{
+			return operands.get(0);
+		}
+		return new DisjunctionMatcher(operands);
+	}
+
+	/**
+	 * Matches every document of the segment.
+	 */
+	private static final class AllMatcher extends BooleanMatcher
+	{
+		AllMatcher(int documentCount)
+		{
+			this.documentCount = documentCount;
+		}
+
+		@Override
+		public int advance(int target)
+		{
+			if (document >= target)
+			{
+				return document;
+			}
+			document = target < documentCount ? target : PostingsIterator.NO_MORE_DOCUMENTS;
+			return document;
+		}
+
+		@Override
+		public long cost()
+		{
+			return documentCount;
+		}
+
+		@Override
+		public int document()
+		{
+			return document;
+		}
+
+		@Override
+		public int nextDocument()
+		{
+			return advance(document + 1);
+		}
+
+		private int document = -1;
+		private final int documentCount;
+	}
+
+	/**
+	 * Intersects operands leapfrog style. The cheapest operand leads: its
+	 * next document is the candidate the others are advanced to, the first
+	 * one to overshoot makes the leader skip to its document. Every advance
+	 * skips whole blocks of postings using their last documents as skip
+	 * pointers.
+	 *
+	 * @see "Introduction to information retrieval. 2.3 Faster postings list
+	 * intersection via skip pointers"
+	 */
+	private static final class ConjunctionMatcher extends BooleanMatcher
+	{
+		ConjunctionMatcher(List<BooleanMatcher> operands)
+		{
+			this.operands = operands.toArray(new BooleanMatcher[operands.size()]);
+			Arrays.sort(this.operands, BY_COST);
+		}
+
+		@Override
+		public int advance(int target)
+		{
+			if (document != -1 && document >= target)
+			{
+				return document;
+			}
+			return intersect(operands[0].advance(target));
+		}
+
+		@Override
+		public long cost()
+		{
+			return operands[0].cost();
+		}
+
+		@Override
+		public int document()
+		{
+			return document;
+		}
+
+		@Override
+		public int nextDocument()
+		{
+			return intersect(operands[0].nextDocument());
+		}
+
+		private int intersect(int candidate)
+		{
+			while (candidate != PostingsIterator.NO_MORE_DOCUMENTS)
+			{
+				int i = 1;
+				for (; i < operands.length; i++)
+				{
+					int found = operands[i].advance(candidate);
+					if (found != candidate)
+					{
+						candidate = operands[0].advance(found);
+						break;
+					}
+				}
+				if (i == operands.length)
+				{
+					break;
+				}
+			}
+			document = candidate;
+			return document;
+		}
+
+		private int document = -1;
+		private final BooleanMatcher[] operands;
+	}
+
+	/**
+	 * Unites operands, current document is the least of theirs.
+	 */
+	private static final class DisjunctionMatcher extends BooleanMatcher
+	{
+		DisjunctionMatcher(List<BooleanMatcher> operands)
+		{
+			this.operands = operands.toArray(new BooleanMatcher[operands.size()]);
+			long cost = 0;
+			for (BooleanMatcher operand : operands)
+			{
+				cost += operand.cost();
+			}
+			this.cost = cost;
+		}
+
+		@Override
+		public int advance(int target)
+		{
+			if (document != -1 && document >= target)
+			{
+				return document;
+			}
+			int least = PostingsIterator.NO_MORE_DOCUMENTS;
+			for (BooleanMatcher operand : operands)
+			{
+				least = Math.min(least, operand.advance(target));
+			}
+			document = least;
+			return document;
+		}
+
+		@Override
+		public long cost()
+		{
+			return cost;
+		}
+
+		@Override
+		public int document()
+		{
+			return document;
+		}
+
+		@Override
+		public int nextDocument()
+		{
+			return advance(document + 1);
+		}
+
+		private final long cost;
+		private int document = -1;
+		private final BooleanMatcher[] operands;
+	}
+
+	/**
+	 * Matches documents of the included operand which the excluded one
+	 * doesn't match.
+	 */
+	private static final class ExclusionMatcher extends BooleanMatcher
+	{
+		ExclusionMatcher(BooleanMatcher included, BooleanMatcher excluded)
+		{
+			this.included = included;
+			this.excluded = excluded;
+		}
+
+		@Override
+		public int advance(int target)
+		{
+			return exclude(included.advance(target));
+		}
+
+		@Override
+		public long cost()
+		{
+			return included.cost();
+		}
+
+		@Override
+		public int document()
+		{
+			return included.document();
+		}
+
+		@Override
+		public int nextDocument()
+		{
+			return exclude(included.nextDocument());
+		}
+
+		private int exclude(int candidate)
+		{
+			while (candidate != PostingsIterator.NO_MORE_DOCUMENTS
+					&& excluded.advance(candidate) == candidate)
+			{
+				candidate = included.nextDocument();
+			}
+			return candidate;
+		}
+
+		private final BooleanMatcher excluded;
+		private final BooleanMatcher included;
+	}
+
+	/**
+	 * Matches documents containing a phrase or two phrases close to each
+	 * other. Documents containing all the terms are found by intersection,
+	 * positions are decoded for them only and merged: occurrences of a phrase
+	 * are positions of its first term followed by the rest of the terms, two
+	 * phrases are near if an occurrence of one of them starts within the
+	 * distance after the end of an occurrence of the other.
+	 *
+	 * @see "Introduction to information retrieval. 2.4.2 Positional indexes"
+	 */
+	private static final class PositionalMatcher extends BooleanMatcher
+	{
+		/**
+		 * @param intersection
+		 * Intersection of the terms' postings.
+		 *
+		 * @param phrases
+		 * Iterators over postings of every phrase's terms, the same iterators
+		 * are moved by the intersection.
+		 *
+		 * @param distance
+		 * Maximum distance between two phrases, not used for a single one.
+		 */
+		PositionalMatcher(BooleanMatcher intersection, PostingsIterator[][] phrases, int distance)
+		{
+			this.intersection = intersection;
+			this.phrases = phrases;
+			this.distance = distance;
+		}
+
+		@Override
+		public int advance(int target)
+		{
+			if (document != -1 && document >= target)
+			{
+				return document;
+			}
+			return verify(intersection.advance(target));
+		}
+
+		@Override
+		public long cost()
+		{
+			return intersection.cost();
+		}
+
+		@Override
+		public int document()
+		{
+			return document;
+		}
+
+		@Override
+		public int nextDocument()
+		{
+			return verify(intersection.nextDocument());
+		}
+
+		private boolean matchesPositions()
+		{
+			int[] first = getOccurrences(phrases[0]);
+			if (phrases.length == 1 || first.length == 0)
+			{
+				return first.length > 0;
+			}
+			int[] second = getOccurrences(phrases[1]);
+			return follows(first, phrases[0].length, second, distance)
+					|| follows(second, phrases[1].length, first, distance);
+		}
+
+		private int verify(int candidate)
+		{
+			while (candidate != PostingsIterator.NO_MORE_DOCUMENTS && !matchesPositions())
+			{
+				candidate = intersection.nextDocument();
+			}
+			document = candidate;
+			return document;
+		}
+
+		/**
+		 * Tells whether an occurrence of phrase b starts within the distance
+		 * after the end of an occurrence of phrase a.
+		 */
+		private static boolean follows(int[] a, int aLength, int[] b, int distance)
+		{
+			int j = 0;
+			for (int start : a)
+			{
+				int end = start + aLength - 1;
+				while (j < b.length && b[j] <= end)
+				{
+					j++;
+				}
+				if (j == b.length)
+				{
+					return false;
+				}
+				if (b[j] - end <= distance)
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * @return Sorted positions the phrase starts at in the current
+		 * document.
+		 */
+		private static int[] getOccurrences(PostingsIterator[] phrase)
+		{
+			int[] starts = phrase[0].positions();
+			int count = starts.length;
+			for (int i = 1; i < phrase.length && count > 0; i++)
+			{
+				int[] positions = phrase[i].positions();
+				int matched = 0;
+				int j = 0;
+				for (int k = 0; k < count; k++)
+				{
+					while (j < positions.length && positions[j] < starts[k] + i)
+					{
+						j++;
+					}
+					if (j < positions.length && positions[j] == starts[k] + i)
+					{
+						starts[matched++] = starts[k];
+					}
+				}
+				count = matched;
+			}
+			return count == starts.length ? starts : Arrays.copyOf(starts, count);
+		}
+
+		private final int distance;
+		private int document = -1;
+		private final BooleanMatcher intersection;
+		private final PostingsIterator[][] phrases;
+	}
+
+	/**
+	 * Matches documents of a single term's postings.
+	 */
+	private static final class TermMatcher extends BooleanMatcher
+	{
+		TermMatcher(PostingsIterator iterator)
+		{
+			this.iterator = iterator;
+		}
+
+		@Override
+		public int advance(int target)
+		{
+			return iterator.advance(target);
+		}
+
+		@Override
+		public long cost()
+		{
+			return iterator.size();
+		}
+
+		@Override
+		public int document()
+		{
+			return iterator.document();
+		}
+
+		@Override
+		public int nextDocument()
+		{
+			return iterator.nextDocument();
+		}
+
+		private final PostingsIterator iterator;
+	}
+
+	private static final Comparator<BooleanMatcher> BY_COST = new Comparator<BooleanMatcher>()
+	{
+		public int compare(BooleanMatcher a, BooleanMatcher b)
+		{
+			return a.cost() < b.cost() ? -1 : a.cost() == b.cost() ? 0 : 1;
+		}
+	};
+}
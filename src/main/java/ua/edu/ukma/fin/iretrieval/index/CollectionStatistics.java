@@ -0,0 +1,25 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+/**
+ * Statistics of a collection split into several indexes, e.g. into shards.
+ * Indexes weighing terms by these statistics rather than by their own
+ * documents score documents the same way a single index of the whole
+ * collection would.
+ *
+ * @see "Introduction to information retrieval. 20.3 Distributing indexes"
+ */
+interface CollectionStatistics
+{
+	/**
+	 * @return Number of documents in the collection.
+	 */
+	int getDocumentCount();
+
+	/**
+	 * @param term
+	 * Term to get document frequency for.
+	 *
+	 * @return Number of documents of the collection containing the term.
+	 */
+	int getDocumentFrequency(String term);
+}
@@ -0,0 +1,163 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import ua.edu.ukma.fin.iretrieval.ZoneName;
+
+/**
+ * Iterator over a {@link CompositePostingsList}. Iterates parts one after
+ * another, parts lying entirely before the target are skipped when
+ * {@link #advance(int) advancing}, block bounds are taken from the part
+ * containing the target.
+ */
+class CompositePostingsIterator extends PostingsIterator
+{
+	CompositePostingsIterator(PostingsIterator[] parts, int[] bases, int size,
+			int maxTermFrequency)
+	{
+		this.parts = parts;
+		this.bases = bases;
+		this.size = size;
+		this.maxTermFrequency = maxTermFrequency;
+	}
+
+	@Override
+	public int advance(int target)
+	{
+		if (document != -1 && document >= target)
+		{
+			return document;
+		}
+		for (part = findPart(target, part); part < parts.length; part++)
+		{
+			int found = parts[part].advance(Math.max(target - bases[part], 0));
+			if (found != NO_MORE_DOCUMENTS)
+			{
+				document = bases[part] + found;
+				return document;
+			}
+		}
+		document = NO_MORE_DOCUMENTS;
+		return document;
+	}
+
+	@Override
+	public int document()
+	{
+		return document;
+	}
+
+	@Override
+	public int getBlockLastDocument(int target)
+	{
+		for (int i = findPart(target, part); i < parts.length; i++)
+		{
+			int last = parts[i].getBlockLastDocument(Math.max(target - bases[i], 0));
+			if (last != NO_MORE_DOCUMENTS)
+			{
+				return bases[i] + last;
+			}
+		}
+		return NO_MORE_DOCUMENTS;
+	}
+
+	@Override
+	public int getBlockMaxTermFrequency(int target)
+	{
+		for (int i = findPart(target, part); i < parts.length; i++)
+		{
+			int relative = Math.max(target - bases[i], 0);
+			if (parts[i].getBlockLastDocument(relative) != NO_MORE_DOCUMENTS)
+			{
+				return parts[i].getBlockMaxTermFrequency(relative);
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public int getMaxTermFrequency()
+	{
+		return maxTermFrequency;
+	}
+
+	@Override
+	public int getScannedCount()
+	{
+		int scannedCount = 0;
+		for (PostingsIterator iterator : parts)
+		{
+			scannedCount += iterator.getScannedCount();
+		}
+		return scannedCount;
+	}
+
+	@Override
+	public int nextDocument()
+	{
+		for (; part < parts.length; part++)
+		{
+			int next = parts[part].nextDocument();
+			if (next != NO_MORE_DOCUMENTS)
+			{
+				document = bases[part] + next;
+				return document;
+			}
+		}
+		document = NO_MORE_DOCUMENTS;
+		return document;
+	}
+
+	@Override
+	public int[] positions()
+	{
+		if (part >= parts.length)
+		{
+			throw new IllegalStateException("Iterator is exhausted.");
+		}
+		return parts[part].positions();
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	@Override
+	public int termFrequency()
+	{
+		return part < parts.length ? parts[part].termFrequency() : 0;
+	}
+
+	@Override
+	public int zoneMask()
+	{
+		return part < parts.length ? parts[part].zoneMask() : 0;
+	}
+
+	@Override
+	public int zoneTermFrequency(ZoneName zone)
+	{
+		return part < parts.length ? parts[part].zoneTermFrequency(zone) : 0;
+	}
+
+	/**
+	 * Finds the last part, starting from the given one, whose base doesn't
+	 * exceed the target.
+	 */
+	private int findPart(int target, int from)
+	{
+		int i = from;
+		while (i + 1 < parts.length && bases[i + 1] <= target)
+		{
+			i++;
+		}
+		return i;
+	}
+
+	private final int[] bases;
+	private int document = -1;
+	private final int maxTermFrequency;
+	private int part = 0;
+	private final PostingsIterator[] parts;
+	private final int size;
+}
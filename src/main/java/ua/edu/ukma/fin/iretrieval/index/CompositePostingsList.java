@@ -0,0 +1,77 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+/**
+ * Postings list of a term spanning several segments. Postings of every
+ * segment stay where they are, document IDs are shifted by the base of the
+ * segment while being iterated.
+ *
+ * @see CompositeSegment
+ */
+class CompositePostingsList extends PostingsList
+{
+	/**
+	 * @param parts
+	 * Postings lists of the term in the segments.
+	 *
+	 * @param bases
+	 * Increasing document ID offsets of the segments, each base must be
+	 * greater than all document IDs of the previous part shifted by its base.
+	 */
+	CompositePostingsList(PostingsList[] parts, int[] bases)
+	{
+		this.parts = parts;
+		this.bases = bases;
+		int size = 0;
+		int maxTermFrequency = 0;
+		for (PostingsList part : parts)
+		{
+			size += part.size();
+			maxTermFrequency = Math.max(maxTermFrequency, part.getMaxTermFrequency());
+		}
+		this.size = size;
+		this.maxTermFrequency = maxTermFrequency;
+	}
+
+	@Override
+	public int getMaxTermFrequency()
+	{
+		return maxTermFrequency;
+	}
+
+	/**
+	 * @return Estimated size of the parts, which belong to the underlying
+	 * segments.
+	 */
+	@Override
+	public long getHeapSize()
+	{
+		long heapSize = 0;
+		for (PostingsList part : parts)
+		{
+			heapSize += part.getHeapSize();
+		}
+		return heapSize;
+	}
+
+	@Override
+	public PostingsIterator iterator()
+	{
+		PostingsIterator[] iterators = new PostingsIterator[parts.length];
+		for (int i = 0; i < parts.length; i++)
+		{
+			iterators[i] = parts[i].iterator();
+		}
+		return new CompositePostingsIterator(iterators, bases, size, maxTermFrequency);
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	private final int[] bases;
+	private final int maxTermFrequency;
+	private final PostingsList[] parts;
+	private final int size;
+}
@@ -0,0 +1,227 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import ua.edu.ukma.fin.iretrieval.Document;
+
+/**
+ * Read-only view presenting several segments as a single one. Documents of
+ * every segment get IDs shifted by the total number of documents in the
+ * segments preceding it, postings lists of a term are chained without being
+ * copied. Segments must not share documents. Dictionaries of the segments
+ * are merged into a {@link TermDictionary front-coded} one.
+ */
+public class CompositeSegment extends Segment
+{
+	/**
+	 * @param segments
+	 * Segments to be viewed as one, in the order their documents are numbered.
+	 */
+	public CompositeSegment(List<? extends Segment> segments)
+	{
+		this.segments = Collections.unmodifiableList(new ArrayList<Segment>(segments));
+		bases = new int[this.segments.size()];
+		List<Iterator<String>> terms = new ArrayList<Iterator<String>>(bases.length);
+		int documentCount = 0;
+		for (int i = 0; i < bases.length; i++)
+		{
+			Segment segment = this.segments.get(i);
+			bases[i] = documentCount;
+			documentCount += segment.getDocumentCount();
+			terms.add(segment.getTerms().iterator());
+		}
+		this.documentCount = documentCount;
+		this.terms = new TermDictionary(merge(terms));
+	}
+
+	@Override
+	public Document getDocument(int documentId)
+	{
+		int i = findSegment(documentId);
+		return segments.get(i).getDocument(documentId - bases[i]);
+	}
+
+	@Override
+	public int getDocumentCount()
+	{
+		return documentCount;
+	}
+
+	@Override
+	public int getDocumentId(String guid)
+	{
+		for (int i = 0; i < bases.length; i++)
+		{
+			int documentId = segments.get(i).getDocumentId(guid);
+			if (documentId != -1)
+			{
+				return bases[i] + documentId;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public double getEuclideanLength(int documentId)
+	{
+		int i = findSegment(documentId);
+		return segments.get(i).getEuclideanLength(documentId - bases[i]);
+	}
+
+	@Override
+	public long getHeapSize()
+	{
+		long heapSize = terms.getHeapSize();
+		for (Segment segment : segments)
+		{
+			heapSize += segment.getHeapSize();
+		}
+		return heapSize;
+	}
+
+	@Override
+	public PostingsList getPostings(String term)
+	{
+		List<PostingsList> parts = new ArrayList<PostingsList>(bases.length);
+		int[] partsBases = new int[bases.length];
+		for (int i = 0; i < bases.length; i++)
+		{
+			PostingsList postings = segments.get(i).getPostings(term);
+			if (postings != null)
+			{
+				partsBases[parts.size()] = bases[i];
+				parts.add(postings);
+			}
+		}
+		if (parts.isEmpty())
+		{
+			return null;
+		}
+		if (parts.size() == 1 && partsBases[0] == 0)
+		{
+			return parts.get(0);
+		}
+		return new CompositePostingsList(parts.toArray(new PostingsList[parts.size()]),
+				Arrays.copyOf(partsBases, parts.size()));
+	}
+
+	/**
+	 * @return Unmodifiable list of the underlying segments.
+	 */
+	public List<Segment> getSegments()
+	{
+		return segments;
+	}
+
+	@Override
+	public Set<String> getTerms()
+	{
+		return terms;
+	}
+
+	@Override
+	public Iterator<String> getTerms(String prefix)
+	{
+		return terms.iterator(prefix);
+	}
+
+	@Override
+	public int[] getZoneLengths(int documentId)
+	{
+		int i = findSegment(documentId);
+		return segments.get(i).getZoneLengths(documentId - bases[i]);
+	}
+
+	/**
+	 * @return Index of the segment the document belongs to.
+	 */
+	private int findSegment(int documentId)
+	{
+		if (documentId < 0 || documentId >= documentCount)
+		{
+			throw new IndexOutOfBoundsException("Document ID: " + documentId + ", documents: "
+					+ documentCount);
+		}
+		int found = Arrays.binarySearch(bases, documentId);
+		if (found < 0)
+		{
+			return -found - 2;
+		}
+		// Empty segments share the base with the next one
+		while (found + 1 < bases.length && bases[found + 1] == documentId)
+		{
+			found++;
+		}
+		return found;
+	}
+
+	/**
+	 * Merges sorted iterators of terms, a term present in several of them is
+	 * returned once.
+	 */
+	private static Iterator<String> merge(final List<Iterator<String>> iterators)
+	{
+		final String[] heads = new String[iterators.size()];
+		for (int i = 0; i < heads.length; i++)
+		{
+			heads[i] = iterators.get(i).hasNext() ? iterators.get(i).next() : null;
+		}
+		return new Iterator<String>()
+		{
+			public boolean hasNext()
+			{
+				for (String head : heads)
+				{
+					if (head != null)
+					{
+						return true;
+					}
+				}
+				return false;
+			}
+
+			public String next()
+			{
+				String least = null;
+				for (String head : heads)
+				{
+					if (head != null && (least == null || head.compareTo(least) < 0))
+					{
+						least = head;
+					}
+				}
+				if (least == null)
+				{
+					throw new NoSuchElementException();
+				}
+				for (int i = 0; i < heads.length; i++)
+				{
+					if (least.equals(heads[i]))
+					{
+						heads[i] = iterators.get(i).hasNext() ? iterators.get(i).next() : null;
+					}
+				}
+				return least;
+			}
+
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * The first document ID of every segment
+	 */
+	private final int[] bases;
+	private final int documentCount;
+	private final List<Segment> segments;
+	private final TermDictionary terms;
+}
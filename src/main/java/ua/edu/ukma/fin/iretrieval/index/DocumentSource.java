@@ -0,0 +1,222 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Location of feeds to be indexed: a feed available by URL, a feed saved to a
+ * local file or a directory of saved feeds. Sources are read by
+ * {@link IndexFactory#addDocuments(java.util.Collection)}, every
+ * {@link #getFeeds() feed} of every source is read concurrently with the
+ * others.
+ */
+public abstract class DocumentSource
+{
+	/**
+	 * @return Feeds the source consists of, each of them can be
+	 * {@link #open() opened} and read independently of the others.
+	 *
+	 * @throws IOException
+	 * In case the feeds can't be listed.
+	 */
+	public List<DocumentSource> getFeeds() throws IOException
+	{
+		return Collections.singletonList(this);
+	}
+
+	/**
+	 * Opens the feed for reading.
+	 *
+	 * @return Reader of the feed's items, closed by the caller.
+	 *
+	 * @throws IOException
+	 * In case the feed can't be opened or the source is not a single feed.
+	 */
+	public abstract FeedReader open() throws IOException;
+
+	/**
+	 * @param directory
+	 * Directory containing feeds saved to files, each regular file except
+	 * hidden ones is a feed.
+	 *
+	 * @return Source of the feeds saved to the directory.
+	 */
+	public static DocumentSource forDirectory(Path directory)
+	{
+		return new DirectorySource(directory);
+	}
+
+	/**
+	 * @param file
+	 * File the feed is saved to.
+	 *
+	 * @return Source of the feed saved to the file.
+	 */
+	public static DocumentSource forFile(Path file)
+	{
+		return new FileSource(file);
+	}
+
+	/**
+	 * Creates a source for the location given by user.
+	 *
+	 * @param location
+	 * URL of a feed or a path to a local file or a directory of feeds. URLs
+	 * with file protocol are treated as paths.
+	 *
+	 * @return Source for the location.
+	 *
+	 * @throws IOException
+	 * In case the location is neither a valid URL nor a path.
+	 */
+	public static DocumentSource forLocation(String location) throws IOException
+	{
+		if (location == null)
+		{
+			throw new MalformedURLException("Location of the feed isn't specified.");
+		}
+		Path path;
+		try
+		{
+			URL url = new URL(location);
+			if (!"file".equals(url.getProtocol()))
+			{
+				return forUrl(url);
+			}
+			path = Paths.get(url.toURI());
+		}
+		catch (MalformedURLException e)
+		{
+			path = Paths.get(location);
+		}
+		catch (URISyntaxException e)
+		{
+			throw new MalformedURLException(e.getMessage());
+		}
+		return Files.isDirectory(path) ? forDirectory(path) : forFile(path);
+	}
+
+	/**
+	 * @param url
+	 * URL of the feed.
+	 *
+	 * @return Source of the feed downloaded by URL.
+	 */
+	public static DocumentSource forUrl(URL url)
+	{
+		return new UrlSource(url);
+	}
+
+	private static class DirectorySource extends DocumentSource
+	{
+		DirectorySource(Path directory)
+		{
+			this.directory = directory;
+		}
+
+		/**
+		 * @return Files of the directory in order of their names.
+		 */
+		@Override
+		public List<DocumentSource> getFeeds() throws IOException
+		{
+			List<Path> files = new ArrayList<Path>();
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory))
+			{
+				for (Path file : stream)
+				{
+					if (Files.isRegularFile(file) && !Files.isHidden(file))
+					{
+						files.add(file);
+					}
+				}
+			}
+			Collections.sort(files);
+			List<DocumentSource> feeds = new ArrayList<DocumentSource>(files.size());
+			for (Path file : files)
+			{
+				feeds.add(forFile(file));
+			}
+			return feeds;
+		}
+
+		@Override
+		public FeedReader open() throws IOException
+		{
+			throw new IOException(directory + " is a directory of feeds, not a feed.");
+		}
+
+		@Override
+		public String toString()
+		{
+			return directory.toString();
+		}
+
+		private final Path directory;
+	}
+
+	private static class FileSource extends DocumentSource
+	{
+		FileSource(Path file)
+		{
+			this.file = file;
+		}
+
+		@Override
+		public FeedReader open() throws IOException
+		{
+			return new FeedReader(new BufferedInputStream(Files.newInputStream(file)));
+		}
+
+		@Override
+		public String toString()
+		{
+			return file.toString();
+		}
+
+		private final Path file;
+	}
+
+	private static class UrlSource extends DocumentSource
+	{
+		UrlSource(URL url)
+		{
+			this.url = url;
+		}
+
+		@Override
+		public FeedReader open() throws IOException
+		{
+			URLConnection connection = url.openConnection();
+			connection.setConnectTimeout(CONNECT_TIMEOUT);
+			connection.setReadTimeout(READ_TIMEOUT);
+			return new FeedReader(new BufferedInputStream(connection.getInputStream()));
+		}
+
+		@Override
+		public String toString()
+		{
+			return url.toString();
+		}
+
+		/**
+		 * Timeouts in milliseconds, a feed that doesn't respond shouldn't hold
+		 * up ingestion of the others
+		 */
+		private static final int CONNECT_TIMEOUT = 10000;
+		private static final int READ_TIMEOUT = 30000;
+
+		private final URL url;
+	}
+}
@@ -0,0 +1,43 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+/**
+ * Strategies of top-k query evaluation. All of them return the same documents,
+ * pruned ones skip postings which can't get to the top.
+ */
+public enum EvaluationMode
+{
+	/**
+	 * Every posting of every query term is scored.
+	 */
+	EXHAUSTIVE("Exhaustive"),
+
+	/**
+	 * Weak AND: postings are skipped when the sum of maximum scores of the terms
+	 * they could match doesn't exceed the current top-k threshold.
+	 * 
+	 * @see "Broder et al. Efficient query evaluation using a two-level
+	 * retrieval process"
+	 */
+	WAND("WAND"),
+
+	/**
+	 * WAND which additionally checks per-block maximum scores of the candidate
+	 * and skips whole blocks that can't make it to the top.
+	 * 
+	 * @see "Ding, Suel. Faster top-k document retrieval using block-max
+	 * indexes"
+	 */
+	BLOCK_MAX_WAND("Block-Max WAND");
+
+	private EvaluationMode(String readableName)
+	{
+		this.readableName = readableName;
+	}
+
+	public String getReadableName()
+	{
+		return readableName;
+	}
+
+	private String readableName = "";
+}
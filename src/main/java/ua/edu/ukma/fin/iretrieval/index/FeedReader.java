@@ -0,0 +1,397 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import ua.edu.ukma.fin.iretrieval.Document;
+
+/**
+ * Streaming reader of RSS (0.9x, 1.0, 2.0) and Atom feeds. Items are parsed
+ * one at a time with StAX, so memory used by the reader doesn't depend on the
+ * size of the feed. Items are converted to documents the same way ROME's feed
+ * entries used to be: GUID (or link if there is no GUID), title, description,
+ * link, publication date, categories and elements of foreign namespaces as
+ * extra fields.
+ *
+ * Reader isn't thread-safe.
+ */
+public class FeedReader implements Closeable
+{
+	/**
+	 * Raw content of a feed item. Conversion to a {@link Document} normalizes
+	 * the text, which is the expensive part of ingestion, so it can be done by
+	 * a thread other than the one parsing the feed.
+	 */
+	static final class Item
+	{
+		/**
+		 * @return Document made of the item or null if the item has no GUID.
+		 */
+		Document toDocument()
+		{
+			if (guid == null || guid.isEmpty())
+			{
+				return null;
+			}
+			Document document = new Document(guid);
+			if (title != null && !title.isEmpty())
+			{
+				document.setTitle(title);
+			}
+			if (description != null && !description.isEmpty())
+			{
+				document.setBody(description);
+			}
+			if (link != null && !link.isEmpty())
+			{
+				document.setLink(link);
+			}
+			if (pubDate != null)
+			{
+				document.setPubDate(pubDate);
+			}
+			for (String category : categories)
+			{
+				if (!category.isEmpty())
+				{
+					document.addCategory(category);
+				}
+			}
+			for (String[] extraField : extraFields)
+			{
+				if (!extraField[2].isEmpty())
+				{
+					document.addExtraField(extraField[0], extraField[1], extraField[2]);
+				}
+			}
+			return document;
+		}
+
+		private final List<String> categories = new ArrayList<String>(2);
+		private String description;
+
+		/**
+		 * Namespace, name and value of every extra field
+		 */
+		private final List<String[]> extraFields = new ArrayList<String[]>(0);
+		private String guid;
+		private String link;
+		private Date pubDate;
+		private String title;
+	}
+
+	/**
+	 * @param input
+	 * Stream of the feed, it is closed together with the reader. Encoding is
+	 * detected from the XML declaration.
+	 *
+	 * @throws IOException
+	 * In case the stream isn't XML.
+	 */
+	public FeedReader(InputStream input) throws IOException
+	{
+		this.input = input;
+		try
+		{
+			XMLInputFactory factory = XMLInputFactory.newInstance();
+			factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+			factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+			factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+			reader = factory.createXMLStreamReader(input);
+		}
+		catch (XMLStreamException e)
+		{
+			input.close();
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			reader.close();
+		}
+		catch (XMLStreamException e)
+		{
+			throw new IOException(e);
+		}
+		finally
+		{
+			input.close();
+		}
+	}
+
+	/**
+	 * Reads the next item of the feed.
+	 *
+	 * @return Document made of the item, null if there are no more items.
+	 * Items without GUID and link are skipped.
+	 *
+	 * @throws IOException
+	 * In case the feed can't be read or isn't well-formed.
+	 */
+	public Document read() throws IOException
+	{
+		Item item;
+		while ((item = nextItem()) != null)
+		{
+			Document document = item.toDocument();
+			if (document != null)
+			{
+				return document;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return Next item of the feed, null if there are no more items.
+	 */
+	Item nextItem() throws IOException
+	{
+		try
+		{
+			while (reader.hasNext())
+			{
+				if (reader.next() == XMLStreamConstants.START_ELEMENT && isItem())
+				{
+					return readItem();
+				}
+			}
+			return null;
+		}
+		catch (XMLStreamException e)
+		{
+			throw new IOException(e);
+		}
+	}
+
+	private boolean isItem()
+	{
+		String namespace = reader.getNamespaceURI();
+		if ("item".equals(reader.getLocalName()))
+		{
+			return namespace == null || namespace.isEmpty() || RSS_NAMESPACES.contains(namespace);
+		}
+		return "entry".equals(reader.getLocalName()) && ATOM_NAMESPACES.contains(namespace);
+	}
+
+	private Date parseDate(String date)
+	{
+		for (SimpleDateFormat format : dateFormats)
+		{
+			ParsePosition position = new ParsePosition(0);
+			Date parsed = format.parse(date, position);
+			if (parsed != null && position.getIndex() == date.length())
+			{
+				return parsed;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Moves to the next start or end tag skipping any text in between.
+	 */
+	private int nextTag() throws XMLStreamException
+	{
+		int event;
+		do
+		{
+			event = reader.next();
+		}
+		while (event != XMLStreamConstants.START_ELEMENT
+				&& event != XMLStreamConstants.END_ELEMENT);
+		return event;
+	}
+
+	/**
+	 * Reads the item the reader is positioned at up to its end tag.
+	 */
+	private Item readItem() throws XMLStreamException
+	{
+		Item item = new Item();
+		String about = reader.getAttributeValue(RDF_NAMESPACE, "about");
+		Date updated = null;
+		while (nextTag() == XMLStreamConstants.START_ELEMENT)
+		{
+			String namespace = reader.getNamespaceURI() == null ? "" : reader.getNamespaceURI();
+			String name = reader.getLocalName();
+			if (namespace.isEmpty() || RSS_NAMESPACES.contains(namespace)
+					|| ATOM_NAMESPACES.contains(namespace))
+			{
+				if (name.equals("guid") || name.equals("id"))
+				{
+					item.guid = readText().trim();
+				}
+				else if (name.equals("title"))
+				{
+					item.title = readText();
+				}
+				else if (name.equals("description") || name.equals("summary"))
+				{
+					item.description = readText();
+				}
+				else if (name.equals("link") && reader.getAttributeValue(null, "href") != null)
+				{
+					String rel = reader.getAttributeValue(null, "rel");
+					if (item.link == null && (rel == null || rel.equals("alternate")))
+					{
+						item.link = reader.getAttributeValue(null, "href").trim();
+					}
+					readText();
+				}
+				else if (name.equals("link"))
+				{
+					item.link = readText().trim();
+				}
+				else if (name.equals("category") && reader.getAttributeValue(null, "term") != null)
+				{
+					item.categories.add(reader.getAttributeValue(null, "term"));
+					readText();
+				}
+				else if (name.equals("category"))
+				{
+					item.categories.add(readText());
+				}
+				else if (name.equals("pubDate") || name.equals("published"))
+				{
+					item.pubDate = parseDate(readText().trim());
+				}
+				else if (name.equals("updated") || name.equals("modified"))
+				{
+					updated = parseDate(readText().trim());
+				}
+				else
+				{
+					readText();
+				}
+			}
+			else if (namespace.equals(DC_NAMESPACE))
+			{
+				if (name.equals("date"))
+				{
+					updated = parseDate(readText().trim());
+				}
+				else if (name.equals("subject"))
+				{
+					item.categories.add(readText());
+				}
+				else
+				{
+					readText();
+				}
+			}
+			else if (MODULE_NAMESPACES.contains(namespace))
+			{
+				readText();
+			}
+			else
+			{
+				item.extraFields.add(new String[] { namespace, name, readText() });
+			}
+		}
+		if (item.pubDate == null)
+		{
+			item.pubDate = updated;
+		}
+		if (item.guid == null || item.guid.isEmpty())
+		{
+			item.guid = about != null ? about : item.link;
+		}
+		return item;
+	}
+
+	/**
+	 * Reads text of the element the reader is positioned at, including text
+	 * of nested elements, and moves to its end tag.
+	 */
+	private String readText() throws XMLStreamException
+	{
+		StringBuilder text = null;
+		String first = null;
+		for (int depth = 1; depth > 0;)
+		{
+			switch (reader.next())
+			{
+			case XMLStreamConstants.START_ELEMENT:
+				depth++;
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				depth--;
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				if (first == null)
+				{
+					first = reader.getText();
+				}
+				else
+				{
+					if (text == null)
+					{
+						text = new StringBuilder(first);
+					}
+					text.append(reader.getText());
+				}
+				break;
+			default:
+				break;
+			}
+		}
+		return text != null ? text.toString() : first != null ? first : "";
+	}
+
+	private static Set<String> setOf(String... elements)
+	{
+		return new HashSet<String>(Arrays.asList(elements));
+	}
+
+	private static final Set<String> ATOM_NAMESPACES = setOf("http://www.w3.org/2005/Atom",
+			"http://purl.org/atom/ns#");
+	private static final String DC_NAMESPACE = "http://purl.org/dc/elements/1.1/";
+
+	/**
+	 * Namespaces of the modules whose elements aren't extra fields
+	 */
+	private static final Set<String> MODULE_NAMESPACES = setOf(
+			"http://purl.org/rss/1.0/modules/content/",
+			"http://purl.org/rss/1.0/modules/syndication/",
+			"http://www.w3.org/1999/02/22-rdf-syntax-ns#");
+
+	private static final String RDF_NAMESPACE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+	private static final Set<String> RSS_NAMESPACES = setOf("http://purl.org/rss/1.0/",
+			"http://my.netscape.com/rdf/simple/0.9/");
+
+	/**
+	 * Formats of RFC 822 dates used by RSS and ISO 8601 dates used by Atom and
+	 * Dublin Core
+	 */
+	private final SimpleDateFormat[] dateFormats = {
+			new SimpleDateFormat("EEE, d MMM yyyy HH:mm:ss z", Locale.ENGLISH),
+			new SimpleDateFormat("EEE, d MMM yyyy HH:mm z", Locale.ENGLISH),
+			new SimpleDateFormat("d MMM yyyy HH:mm:ss z", Locale.ENGLISH),
+			new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX", Locale.ENGLISH),
+			new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX", Locale.ENGLISH),
+			new SimpleDateFormat("yyyy-MM-dd", Locale.ENGLISH) };
+	private final InputStream input;
+	private final XMLStreamReader reader;
+}
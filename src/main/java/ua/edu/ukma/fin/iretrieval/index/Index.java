@@ -1,57 +1,50 @@
 package ua.edu.ukma.fin.iretrieval.index;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.SortedSet;
-import java.util.StringTokenizer;
-import java.util.TreeMap;
-import java.util.TreeSet;
 import java.util.logging.Logger;
 
+import ua.edu.ukma.fin.iretrieval.BooleanQuery;
 import ua.edu.ukma.fin.iretrieval.Document;
 import ua.edu.ukma.fin.iretrieval.Query;
 
+/**
+ * Basic index ranking documents by compound term frequency of the query
+ * terms. Index is an immutable view on a {@link Segment}: nothing is cached or
+ * changed while documents are retrieved, so a single index can serve queries
+ * from any number of threads. New versions of an index are handed to readers
+ * through an {@link IndexManager}.
+ */
 public class Index
 {
 
 	/**
-	 * Constructs an inverted index for a given collection of documents.
+	 * Constructs an inverted index for a given collection of documents in
+	 * memory.
 	 * 
-	 * @see "Introduction to information retrieval. 1.2 A first take at building
-	 * an inverted index."
+	 * @see MemorySegment#MemorySegment(Collection)
 	 * 
 	 * @param documents
 	 * Collection of the documents to be indexed, duplicates will be ignored
 	 */
 	public Index(Collection<? extends Document> documents)
 	{
-		for (Document document : documents)
-		{
-			if (document != null && document.getGuid() != null)
-			{
-				if (documentsCache.put(document.getGuid(), document) == null)
-				{
-					StringTokenizer st = new StringTokenizer(document.getText());
-					while (st.hasMoreTokens())
-					{
-						String term = st.nextToken();
-						SortedSet<String> postings = postingsList.get(term);
-						if (postings == null)
-						{
-							postings = new TreeSet<String>();
-							postingsList.put(term, postings);
-						}
-						postings.add(document.getGuid());
-					}
-				}
-			}
-		}
+		this(new MemorySegment(documents));
+	}
+
+	/**
+	 * Constructs an index on top of already built segment, e.g. the one
+	 * {@link MappedSegment#open(java.nio.file.Path) opened} from a file.
+	 * 
+	 * @param segment
+	 * Segment containing documents and postings
+	 */
+	public Index(Segment segment)
+	{
+		this.segment = segment;
 	}
 
 	/**
@@ -65,43 +58,175 @@ public class Index
 	 */
 	public Document getDocumentFromCache(String guid)
 	{
-		return documentsCache.get(guid);
+		int documentId = segment.getDocumentId(guid);
+		if (documentId != -1)
+		{
+			return segment.getDocument(documentId);
+		}
+		return null;
 	};
 
+	/**
+	 * @return Number of indexed documents.
+	 */
+	public int getDocumentCount()
+	{
+		return segment.getDocumentCount();
+	}
+
+	/**
+	 * @return Type of the index, the queries it evaluates are recorded under.
+	 */
+	public IndexType getType()
+	{
+		return IndexType.BASIC;
+	}
+
 	/**
 	 * Retrieves documents that satisfy the query given
 	 * 
 	 * @param query
 	 * Query to retrieve documents for
 	 * 
-	 * @return List of documents
+	 * @return List of documents ordered from the most relevant to the least
+	 * relevant one
 	 */
 	public List<Document> retrieveDocuments(final Query query)
 	{
-		List<Document> results = new LinkedList<Document>();
+		return retrieveDocuments(query, Math.max(segment.getDocumentCount(), 1));
+	}
+
+	/**
+	 * Retrieves k most relevant documents that satisfy the query given.
+	 * Postings lists of the query terms are merged document-at-a-time, each
+	 * candidate document is scored once and only k best of them are kept.
+	 * {@link BooleanQuery Boolean queries} are answered by documents matching
+	 * the query's expression only. {@link Query#getWildcards() Wildcards} are
+	 * expanded into the dictionary terms they match first. Latency of the
+	 * query is {@link SearchMetrics recorded} under the index's type, a query
+	 * slower than the {@link SearchMetrics#setSlowQueryThreshold(long)
+	 * threshold} is written to the slow query log with its profile.
+	 * 
+	 * @see "Introduction to information retrieval. 7.1 Efficient scoring and
+	 * ranking"
+	 * 
+	 * @param query
+	 * Query to retrieve documents for
+	 * 
+	 * @param k
+	 * Maximum number of documents to retrieve, must be positive
+	 * 
+	 * @return List of documents ordered from the most relevant to the least
+	 * relevant one
+	 */
+	public List<Document> retrieveDocuments(final Query query, int k)
+	{
+		List<Document> results = new ArrayList<Document>();
 		if (query != null)
 		{
-			for (String term : query.getTerms())
+			SearchMetrics metrics = SearchMetrics.getInstance();
+			long start = System.nanoTime();
+			QueryProfile profile = metrics.isProfiling() ? QueryProfile.start() : null;
+			try
 			{
-				SortedSet<String> postings = postingsList.get(term);
-				if (postings != null)
+				for (ScoredDocument scoredDocument : evaluate(query, k))
 				{
-					for (String guid : postings)
-					{
-						Document document = documentsCache.get(guid);
-						if (document != null && !results.contains(document))
-						{
-							results.add(document);
-						}
-					}
+					results.add(segment.getDocument(scoredDocument.getDocumentId()));
 				}
+				QueryProfile.lap(QueryProfile.Stage.MATERIALIZE);
+			}
+			finally
+			{
+				if (profile != null)
+				{
+					profile.stop();
+				}
+			}
+			long elapsed = System.nanoTime() - start;
+			metrics.recordQuery(getType(), elapsed);
+			if (profile != null && metrics.isSlowQuery(elapsed))
+			{
+				metrics.recordSlowQuery(describeSlowQuery(query, profile));
 			}
-			Collections.sort(results, getDocumentComparator(query));
-			Collections.reverse(results);
 		}
 		return results;
 	}
 
+	/**
+	 * Scores k most relevant documents for the query, Boolean queries are
+	 * {@link #searchBoolean(BooleanQuery, int) matched} against their
+	 * expression, others are {@link #search(Query, int) ranked} by their
+	 * terms and expanded wildcards.
+	 * 
+	 * @return Scored documents from the most relevant to the least relevant
+	 * one
+	 */
+	ScoredDocument[] evaluate(Query query, int k)
+	{
+		if (query instanceof BooleanQuery)
+		{
+			return searchBoolean((BooleanQuery) query, k);
+		}
+		Query expanded = expandWildcards(query);
+		QueryProfile.lap(QueryProfile.Stage.EXPAND);
+		return search(expanded, k);
+	}
+
+	/**
+	 * Takes the top documents out of the collector and records how many
+	 * postings the evaluation has decoded and how many candidates it has
+	 * scored.
+	 * 
+	 * @param collector
+	 * Collector the candidates were offered to
+	 * 
+	 * @param postings
+	 * Iterators over postings of the query terms
+	 * 
+	 * @return Scored documents from the most relevant to the least relevant
+	 * one
+	 */
+	static ScoredDocument[] getTopDocuments(TopDocumentsCollector collector,
+			PostingsIterator... postings)
+	{
+		long scanned = 0;
+		for (PostingsIterator iterator : postings)
+		{
+			scanned += iterator.getScannedCount();
+		}
+		SearchMetrics.getInstance().recordEvaluation(scanned, collector.getCollectedCount());
+		QueryProfile.lap(QueryProfile.Stage.SCORING);
+		ScoredDocument[] topDocuments = collector.getTopDocuments();
+		QueryProfile.lap(QueryProfile.Stage.TOP_K);
+		return topDocuments;
+	}
+
+	/**
+	 * Expands every wildcard of the query into at most
+	 * {@link #MAX_EXPANSIONS} dictionary terms.
+	 * 
+	 * @see Segment#expandTerms(String, int)
+	 * 
+	 * @param query
+	 * Query to expand
+	 * 
+	 * @return Query with the matching terms instead of wildcards, the query
+	 * itself if it has no wildcards
+	 */
+	protected Query expandWildcards(Query query)
+	{
+		if (query.getWildcards().isEmpty())
+		{
+			return query;
+		}
+		Set<String> terms = new LinkedHashSet<String>();
+		for (String pattern : query.getWildcards())
+		{
+			terms.addAll(segment.expandTerms(pattern, MAX_EXPANSIONS));
+		}
+		return query.expand(terms);
+	}
+
 	/**
 	 * Gets the dictionary
 	 * 
@@ -109,34 +234,276 @@ public class Index
 	 */
 	protected Set<String> getDictionary()
 	{
-		return Collections.unmodifiableSet(postingsList.keySet());
+		return segment.getTerms();
+	}
+
+	/**
+	 * Gets ID assigned to the document when it was indexed. Documents are
+	 * identified by GUID.
+	 * 
+	 * @param document
+	 * Document to get ID for.
+	 * 
+	 * @return Document ID or -1 if document is not present in the index.
+	 */
+	protected int getDocumentId(Document document)
+	{
+		if (document.getGuid() == null)
+		{
+			return -1;
+		}
+		return segment.getDocumentId(document.getGuid());
 	}
 
 	/**
-	 * Return comparator used in {@link #retrieveDocuments(Query)
+	 * Filters out query terms which are absent from the dictionary.
+	 * 
+	 * @param query
+	 * Query to get terms from
+	 * 
+	 * @return Terms present in the index
+	 */
+	protected String[] getIndexedTerms(Query query)
+	{
+		List<String> terms = new ArrayList<String>();
+		for (String term : query.getTerms())
+		{
+			if (segment.getPostings(term) != null)
+			{
+				terms.add(term);
+			}
+		}
+		return terms.toArray(new String[terms.size()]);
+	}
+
+	/**
+	 * Return score function used in {@link #retrieveDocuments(Query, int)
 	 * retrieveDocuments method} to range results. Override this method to
-	 * change documents' ranking scheme.
+	 * change documents' ranking scheme. Default implementation scores
+	 * documents by compound term frequency of the query terms.
 	 * 
 	 * @param query
 	 * As weight of the document depends on a query it is required when building
-	 * comparator
+	 * score function
+	 * 
+	 * @param terms
+	 * Query terms in the order their postings will be passed to the score
+	 * function
 	 * 
-	 * @return Comparator object
+	 * @return Score function object
 	 */
-	protected Comparator<Document> getDocumentComparator(final Query query)
+	protected ScoreFunction getScoreFunction(final Query query, final String[] terms)
 	{
-		return new Comparator<Document>()
+		return new ScoreFunction()
 		{
-			public int compare(Document a, Document b)
+			public double score(int documentId, PostingsIterator[] postings)
 			{
-				return Double.valueOf(a.getTermFrequency(query)).compareTo(
-						Double.valueOf(b.getTermFrequency(query)));
+				int termFrequency = 0;
+				for (PostingsIterator iterator : postings)
+				{
+					if (iterator.document() == documentId)
+					{
+						termFrequency += iterator.termFrequency();
+					}
+				}
+				return termFrequency;
 			}
 		};
 	}
 
-	protected Map<String, Document> documentsCache = new HashMap<String, Document>();
-	protected Map<String, SortedSet<String>> postingsList = new TreeMap<String, SortedSet<String>>();
+	/**
+	 * Calculates compound term frequency for all terms in a query. Simply calls
+	 * {@link #getTermFrequency(Document, String) getTermFrequency} on each term
+	 * and adds the result to the return value
+	 * 
+	 * @param document
+	 * Document to calculate term frequency for.
+	 * 
+	 * @param query
+	 * Query object, can't be null, should contain set of query terms
+	 * 
+	 * @return Compound term frequency
+	 */
+	protected int getTermFrequency(Document document, Query query)
+	{
+		int termFrequency = 0;
+		for (String term : query.getTerms())
+		{
+			termFrequency += getTermFrequency(document, term);
+		}
+		return termFrequency;
+	}
+
+	/**
+	 * Gets how many times term occurs in the document. Term frequency is read
+	 * from the postings recorded at indexing time, documents which aren't
+	 * present in the index are asked to {@link Document#getTermFrequency(String)
+	 * count occurrences} themselves.
+	 * 
+	 * @see "Introduction to information retrieval. 6.2 Term frequency and
+	 * weighting"
+	 * 
+	 * @param document
+	 * Document to calculate term frequency for.
+	 * 
+	 * @param term
+	 * Term to calculate number of occurrences for
+	 * 
+	 * @return Term frequency
+	 */
+	protected int getTermFrequency(Document document, String term)
+	{
+		int documentId = getDocumentId(document);
+		if (documentId == -1)
+		{
+			return document.getTermFrequency(term);
+		}
+		PostingsList postings = segment.getPostings(term);
+		if (postings != null)
+		{
+			PostingsIterator iterator = postings.iterator();
+			if (iterator.advance(documentId) == documentId)
+			{
+				return iterator.termFrequency();
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Evaluates the query document-at-a-time: on each step the least document
+	 * ID among current postings of the query terms is picked, document is
+	 * scored with the {@link #getScoreFunction(Query, String[]) score function}
+	 * and offered to the bounded top-k heap, then matching postings are
+	 * advanced.
+	 * 
+	 * @param query
+	 * Query to evaluate
+	 * 
+	 * @param k
+	 * Maximum number of documents to return, must be positive
+	 * 
+	 * @return Scored documents from the most relevant to the least relevant
+	 * one
+	 */
+	protected ScoredDocument[] search(Query query, int k)
+	{
+		TopDocumentsCollector collector = new TopDocumentsCollector(k);
+		String[] terms = getIndexedTerms(query);
+		ScoreFunction scoreFunction = getScoreFunction(query, terms);
+		PostingsIterator[] postings = new PostingsIterator[terms.length];
+		for (int i = 0; i < terms.length; i++)
+		{
+			postings[i] = segment.getPostings(terms[i]).iterator();
+			postings[i].nextDocument();
+		}
+		QueryProfile.lap(QueryProfile.Stage.POSTINGS);
+		while (true)
+		{
+			int documentId = PostingsIterator.NO_MORE_DOCUMENTS;
+			for (PostingsIterator iterator : postings)
+			{
+				documentId = Math.min(documentId, iterator.document());
+			}
+			if (documentId == PostingsIterator.NO_MORE_DOCUMENTS)
+			{
+				break;
+			}
+			collector.collect(documentId, scoreFunction.score(documentId, postings));
+			for (PostingsIterator iterator : postings)
+			{
+				if (iterator.document() == documentId)
+				{
+					iterator.nextDocument();
+				}
+			}
+		}
+		return getTopDocuments(collector, postings);
+	}
+
+	/**
+	 * Evaluates the Boolean query. Documents matching the query's expression
+	 * are enumerated by a {@link BooleanMatcher}, which intersects postings
+	 * lists smallest first skipping blocks which can't contain a match. Only
+	 * the matching documents are scored, by the
+	 * {@link #getScoreFunction(Query, String[]) score function} of the terms
+	 * which aren't negated, and offered to the bounded top-k heap.
+	 * 
+	 * @see "Introduction to information retrieval. 1.3 Processing Boolean
+	 * queries"
+	 * 
+	 * @param query
+	 * Query to evaluate
+	 * 
+	 * @param k
+	 * Maximum number of documents to return, must be positive
+	 * 
+	 * @return Scored documents from the most relevant to the least relevant
+	 * one
+	 */
+	protected ScoredDocument[] searchBoolean(BooleanQuery query, int k)
+	{
+		TopDocumentsCollector collector = new TopDocumentsCollector(k);
+		BooleanMatcher matcher = BooleanMatcher.create(segment, query.getClause());
+		if (matcher == null)
+		{
+			return getTopDocuments(collector);
+		}
+		String[] terms = getIndexedTerms(query);
+		ScoreFunction scoreFunction = getScoreFunction(query, terms);
+		PostingsIterator[] postings = new PostingsIterator[terms.length];
+		for (int i = 0; i < terms.length; i++)
+		{
+			postings[i] = segment.getPostings(terms[i]).iterator();
+		}
+		QueryProfile.lap(QueryProfile.Stage.POSTINGS);
+		int documentId;
+		while ((documentId = matcher.nextDocument()) != PostingsIterator.NO_MORE_DOCUMENTS)
+		{
+			for (PostingsIterator iterator : postings)
+			{
+				iterator.advance(documentId);
+			}
+			collector.collect(documentId, scoreFunction.score(documentId, postings));
+		}
+		return getTopDocuments(collector, postings);
+	}
+
+	/**
+	 * Describes a slow query for the log: its type, duration, normalized text
+	 * followed by wildcards, profile and document frequencies of its terms,
+	 * wildcards expanded.
+	 */
+	private String describeSlowQuery(Query query, QueryProfile profile)
+	{
+		StringBuilder text = new StringBuilder(query instanceof BooleanQuery ? query.toString()
+				: query.getQueryString());
+		for (String pattern : query.getWildcards())
+		{
+			text.append(text.length() > 0 ? " " : "").append(pattern);
+		}
+		StringBuilder entry = new StringBuilder("Slow ").append(getType()).append(" query ");
+		entry.append(String.format("%.3f ms: \"%s\" [%s ms] document frequencies {",
+				profile.getElapsedTime() / 1e6, text, profile));
+		Set<String> terms = query instanceof BooleanQuery ? query.getTerms() : expandWildcards(
+				query).getTerms();
+		boolean first = true;
+		for (String term : terms)
+		{
+			PostingsList postings = segment.getPostings(term);
+			entry.append(first ? "" : ", ").append(term).append('=');
+			entry.append(postings == null ? 0 : postings.size());
+			first = false;
+		}
+		return entry.append('}').toString();
+	}
+
+	/**
+	 * Maximum number of terms a wildcard is expanded into
+	 */
+	public static final int MAX_EXPANSIONS = 1024;
+
+	protected final Segment segment;
 	protected static final Logger logger = Logger.getLogger("com.iretrieval.index");
 
 }
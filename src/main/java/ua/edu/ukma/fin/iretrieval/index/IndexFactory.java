@@ -1,29 +1,35 @@
 package ua.edu.ukma.fin.iretrieval.index;
 
 import java.io.IOException;
-import java.net.URL;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Date;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.dom4j.DocumentException;
 import org.dom4j.Node;
 import org.dom4j.io.SAXReader;
-import org.jdom.Element;
 
 import ua.edu.ukma.fin.iretrieval.Document;
 import ua.edu.ukma.fin.iretrieval.TrainingExample;
-import ua.edu.ukma.fin.iretrieval.ZonedDocument;
-import com.sun.syndication.feed.synd.SyndCategory;
-import com.sun.syndication.feed.synd.SyndContent;
-import com.sun.syndication.feed.synd.SyndEntry;
-import com.sun.syndication.feed.synd.SyndFeed;
-import com.sun.syndication.io.SyndFeedInput;
-import com.sun.syndication.io.XmlReader;
 
 /**
  * @author Ivan Palianytsia
@@ -33,104 +39,73 @@ public final class IndexFactory
 {
 
 	/**
-	 * Parses documents from RSS feed and adds them to factory's documents' set.
-	 * Duplicates are ignored. When next time Zoned index is built updated set
-	 * is passed to be indexed.
+	 * Parses documents from feeds of the sources and adds them to factory's
+	 * documents' set. Duplicates (documents with equal GUIDs) are ignored. When
+	 * next time Zoned index is built updated set is passed to be indexed. If
+	 * there is an {@link #setIndexWriter(IndexWriter) index writer}, new
+	 * documents are passed to it instead of the set, so they are held only
+	 * by the writer and duplicates are skipped by the writer.
 	 * 
-	 * @param source
-	 * String representation of the URL of RSS feed containing items (documents)
-	 * to be indexed. If <code>null</code> is given the initial set of documents
-	 * remains untouched.
+	 * Feeds are fetched and parsed concurrently by the
+	 * {@link #getExecutor() executor}. Every feed is streamed: items are parsed
+	 * one at a time and handed through a bounded queue to
+	 * {@link #getParallelism() parallelism} workers which convert them to
+	 * documents and index them. Parsing blocks while the queue is full, so
+	 * memory needed doesn't grow with the size of the feeds, only the
+	 * documents themselves are kept.
+	 * 
+	 * @param sources
+	 * Sources of the documents.
 	 * 
 	 * @throws IOException
-	 * In case source is not valid URL or RSS feed cannot be parsed.
+	 * In case some of the feeds cannot be read or parsed, documents of the
+	 * other feeds are added nevertheless.
 	 */
-	public void addDocuments(String source) throws IOException
+	public void addDocuments(Collection<? extends DocumentSource> sources) throws IOException
 	{
 		assert documents != null;
+		List<DocumentSource> feeds = new ArrayList<DocumentSource>();
 		try
 		{
-			URL feedUrl = new URL(source);
-			SyndFeed sf = new SyndFeedInput().build(new XmlReader(feedUrl));
-			for (Object itemObject : sf.getEntries())
+			for (DocumentSource source : sources)
 			{
-				SyndEntry item = (SyndEntry) itemObject;
-				String guid = item.getUri();
-				if (guid != null && !guid.isEmpty())
-				{
-					Document document = new Document(guid);
-
-					String title = item.getTitle();
-					if (title != null && !title.isEmpty())
-					{
-						document.setTitle(title);
-					}
-
-					SyndContent description = item.getDescription();
-					if (description != null && description.getValue() != null
-							&& !description.getValue().isEmpty())
-					{
-						document.setBody(description.getValue());
-					}
-
-					String link = item.getLink();
-					if (link != null && !link.isEmpty())
-					{
-						document.setLink(link);
-					}
-
-					Date pubDate = item.getPublishedDate();
-					if (pubDate != null)
-					{
-						document.setPubDate(pubDate);
-					}
-
-					Collection<?> categories = item.getCategories();
-					if (categories != null)
-					{
-						for (Object categoryObject : categories)
-						{
-							SyndCategory category = (SyndCategory) categoryObject;
-							if (category != null && category.getName() != null
-									&& !category.getName().isEmpty())
-							{
-								document.addCategory(category.getName());
-							}
-						}
-					}
-
-					List<?> extraFields = (List<?>) item.getForeignMarkup();
-					for (Object extraFieldObject : extraFields)
-					{
-						Element extraField = (Element) extraFieldObject;
-						if (extraField != null && extraField.getNamespaceURI() != null
-								&& extraField.getName() != null && extraField.getValue() != null
-								&& !extraField.getNamespaceURI().isEmpty()
-								&& !extraField.getName().isEmpty()
-								&& !extraField.getValue().isEmpty())
-						{
-							document.addExtraField(extraField.getNamespaceURI(),
-									extraField.getName(), extraField.getValue());
-						}
-					}
-
-					documents.add(document);
-				}
+				feeds.addAll(source.getFeeds());
 			}
+			ingest(feeds);
 		}
-		catch (Exception e)
+		catch (IOException e)
 		{
 			logger.log(Level.WARNING, "Exception occured while trying to add documents: {0}.", e);
-			IOException ioe = new IOException(e);
-			logger.throwing(IndexFactory.class.getName(), "addDocuments", ioe);
-			throw ioe;
+			logger.throwing(IndexFactory.class.getName(), "addDocuments", e);
+			throw e;
 		}
 	}
 
+	/**
+	 * Parses documents from RSS feed and adds them to factory's documents' set.
+	 * 
+	 * @see #addDocuments(Collection)
+	 * 
+	 * @param source
+	 * String representation of the URL of RSS feed containing items (documents)
+	 * to be indexed, or a path to a feed saved locally or to a directory of
+	 * such feeds. If <code>null</code> is given the initial set of documents
+	 * remains untouched.
+	 * 
+	 * @throws IOException
+	 * In case source is not valid URL or RSS feed cannot be parsed.
+	 */
+	public void addDocuments(String source) throws IOException
+	{
+		addDocuments(Collections.singletonList(DocumentSource.forLocation(source)));
+	}
+
 	/**
 	 * Loads training examples from XML file and adds them to set of already
 	 * known examples. Duplicates are ignored. When next time Zoned index is
-	 * built updated set is used to learn zone weights.
+	 * built updated set is used to learn zone weights. Examples are counted
+	 * incrementally: only the new ones are looked up in the index, in parallel
+	 * by at most {@link #getParallelism() parallelism} threads.
 	 * 
 	 * @param xmlFileLocation
 	 * Path to the XML file containing examples description. All examples should
@@ -150,6 +125,7 @@ public final class IndexFactory
 			{
 				org.dom4j.Document examplesSource = new SAXReader().read(xmlFileLocation);
 				List<?> nodes = examplesSource.selectNodes("//ExampleSet/Example");
+				List<TrainingExample> added = new ArrayList<TrainingExample>();
 				for (Object nodeObj : nodes)
 				{
 					Node node = (Node) nodeObj;
@@ -158,10 +134,15 @@ public final class IndexFactory
 					Node relevance = node.selectSingleNode("Relevance");
 					if (term != null && guid != null && relevance != null)
 					{
-						examples.add(new TrainingExample(guid.getText().trim(), term.getText(),
-								Boolean.parseBoolean(relevance.getText())));
+						TrainingExample example = new TrainingExample(guid.getText().trim(), term
+								.getText(), Boolean.parseBoolean(relevance.getText()));
+						if (examples.add(example))
+						{
+							added.add(example);
+						}
 					}
 				}
+				zoneStatistics.add(added);
 			}
 			catch (DocumentException de)
 			{
@@ -174,9 +155,29 @@ public final class IndexFactory
 		}
 	}
 
+	/**
+	 * @return Executor fetching and parsing feeds. Unless
+	 * {@link #setExecutor(ExecutorService) set} explicitly, every feed is read
+	 * by its own virtual thread where the runtime supports them, otherwise by
+	 * a pool of {@link #FETCH_THREADS} daemon threads.
+	 */
+	public synchronized ExecutorService getExecutor()
+	{
+		if (executor == null)
+		{
+			executor = newFetchExecutor();
+		}
+		return executor;
+	}
+
 	/**
 	 * Constructs an index of a given type based on the current factory state
-	 * (available documents and examples).
+	 * (available documents and examples). Documents are indexed in parallel
+	 * by at most {@link #getParallelism() parallelism} threads. If the factory
+	 * has an
+	 * {@link #setIndexWriter(IndexWriter) index writer} the index is built
+	 * over writer's live segments, so only documents added since the previous
+	 * call are indexed.
 	 * 
 	 * @param type
 	 * Index type. Supported types are ZONED, INVERTED, VECTOR_SPACE and BASIC.
@@ -185,25 +186,67 @@ public final class IndexFactory
 	 * 
 	 * @throws UnsupportedOperationException
 	 * In case the given type is not supported by this method.
+	 * 
+	 * @throws IllegalStateException
+	 * In case the index writer fails to flush documents.
 	 */
 	public Index getIndex(IndexType type) throws UnsupportedOperationException
 	{
 		assert documents != null;
+		if (indexWriter != null)
+		{
+			try
+			{
+				return getIndex(indexWriter.getSegment(), type);
+			}
+			catch (IOException e)
+			{
+				logger.log(Level.WARNING, "Index writer failed to flush documents: {0}.", e);
+				throw new IllegalStateException("Index writer failed to flush documents.", e);
+			}
+		}
+		long start = System.nanoTime();
+		Segment segment = new MemorySegment(documents, getPool());
+		SearchMetrics.getInstance().recordPhase(SearchMetrics.Phase.INVERT,
+				System.nanoTime() - start);
+		Index index = getIndex(segment, type);
+		assert index != null;
+		logger.log(Level.INFO, "{0} index has been successfully built.", type.getReadableName());
+		return index;
+	}
+
+	/**
+	 * Constructs an index of a given type over the segment. Factory's examples
+	 * are used to adjust weights of ZONED index.
+	 * 
+	 * @param segment
+	 * Segment containing documents and postings.
+	 * 
+	 * @param type
+	 * Index type. Supported types are ZONED, INVERTED, VECTOR_SPACE and BASIC.
+	 * 
+	 * @return Index backed by the segment.
+	 * 
+	 * @throws UnsupportedOperationException
+	 * In case the given type is not supported by this method.
+	 */
+	public Index getIndex(Segment segment, IndexType type) throws UnsupportedOperationException
+	{
 		Index index = null;
 		switch (type)
 		{
 		case ZONED:
-			Collection<ZonedDocument> zonedDocuments = ZonedIndex.convertDocuments(documents);
-			index = new ZonedIndex(zonedDocuments, examples);
+			zoneStatistics.update(segment, getPool());
+			index = ZonedIndex.withStatistics(segment, zoneStatistics);
 			break;
 		case INVERTED:
-			index = new InvertedIndex(documents);
+			index = new InvertedIndex(segment);
 			break;
 		case VECTOR_SPACE:
-			index = new VectorSpaceIndex(documents);
+			index = new VectorSpaceIndex(segment);
 			break;
 		case BASIC:
-			index = new Index(documents);
+			index = new Index(segment);
 			break;
 		default:
 			UnsupportedOperationException e = new UnsupportedOperationException("Index of type "
@@ -211,8 +254,101 @@ public final class IndexFactory
 			logger.throwing(IndexFactory.class.getName(), "getIndex", e);
 			throw e;
 		}
-		assert index != null;
-		logger.log(Level.INFO, "{0} index has been successfully built.", type.getReadableName());
+		return index;
+	}
+
+	/**
+	 * Constructs an index of a given type partitioned into shards, which are
+	 * indexed and queried in parallel by at most {@link #getParallelism()
+	 * parallelism} threads. Factory's examples are used to adjust weights of
+	 * ZONED index.
+	 * 
+	 * @see ShardedIndex
+	 * 
+	 * @param type
+	 * Type of the shards' indexes. Supported types are ZONED, INVERTED,
+	 * VECTOR_SPACE and BASIC.
+	 * 
+	 * @param shardCount
+	 * Number of shards, must be positive.
+	 * 
+	 * @return Newly created index.
+	 * 
+	 * @throws UnsupportedOperationException
+	 * In case the given type is not supported by this method.
+	 * 
+	 * @throws IllegalStateException
+	 * In case the index writer fails to flush documents.
+	 */
+	public ShardedIndex getShardedIndex(IndexType type, int shardCount)
+			throws UnsupportedOperationException
+	{
+		assert documents != null;
+		Collection<Document> indexed;
+		try
+		{
+			indexed = getDocuments();
+		}
+		catch (IOException e)
+		{
+			logger.log(Level.WARNING, "Index writer failed to flush documents: {0}.", e);
+			throw new IllegalStateException("Index writer failed to flush documents.", e);
+		}
+		long start = System.nanoTime();
+		List<Segment> shards = ShardedIndex.partition(indexed, shardCount, getPool());
+		SearchMetrics.getInstance().recordPhase(SearchMetrics.Phase.INVERT,
+				System.nanoTime() - start);
+		ShardedIndex index = new ShardedIndex(shards, type, zoneStatistics, getPool());
+		logger.log(Level.INFO, "{0} index of {1} shards has been successfully built.",
+				new Object[] { type.getReadableName(), shardCount });
+		return index;
+	}
+
+	/**
+	 * @return Writer maintaining the index incrementally or null if there is
+	 * no one.
+	 */
+	public IndexWriter getIndexWriter()
+	{
+		return indexWriter;
+	}
+
+	/**
+	 * @return Maximum number of threads parsing and indexing documents.
+	 */
+	public int getParallelism()
+	{
+		return parallelism;
+	}
+
+	/**
+	 * Opens an index of a given type over the segment file previously written
+	 * by {@link #writeIndex(Path)}. The file is memory-mapped, so the index is
+	 * ready to answer queries without reparsing and reindexing the documents.
+	 * Segment file doesn't depend on the index type, the same file can back
+	 * indexes of all types. Factory's examples are used to adjust weights of
+	 * ZONED index.
+	 * 
+	 * @param path
+	 * Location of the segment file.
+	 * 
+	 * @param type
+	 * Index type. Supported types are ZONED, INVERTED, VECTOR_SPACE and BASIC.
+	 * 
+	 * @return Index backed by the file.
+	 * 
+	 * @throws IOException
+	 * In case the file can't be read or isn't a segment file.
+	 * 
+	 * @throws UnsupportedOperationException
+	 * In case the given type is not supported by this method.
+	 */
+	public Index openIndex(Path path, IndexType type) throws IOException,
+			UnsupportedOperationException
+	{
+		Index index = getIndex(MappedSegment.open(path), type);
+		logger.log(Level.INFO, "{0} index has been opened from {1}.", new Object[] {
+				type.getReadableName(), path });
 		return index;
 	}
 
@@ -222,7 +358,8 @@ public final class IndexFactory
 	 * 
 	 * @param source
 	 * String representation of the URL of RSS feed containing items (documents)
-	 * to be indexed. If <code>null</code> is given or RSS feed contains no
+	 * to be indexed, or a path to a feed saved locally or to a directory of
+	 * such feeds. If <code>null</code> is given or RSS feed contains no
 	 * documents the initial set of documents is truncated.
 	 * 
 	 * @throws IOException
@@ -232,9 +369,91 @@ public final class IndexFactory
 	{
 		assert documents != null;
 		documents.clear();
+		recountExamples();
 		addDocuments(source);
 	}
 
+	/**
+	 * Loads documents from feeds of the sources to factory's documents' set.
+	 * Old documents are removed from the set.
+	 * 
+	 * @see #addDocuments(Collection)
+	 * 
+	 * @param sources
+	 * Sources of the documents.
+	 * 
+	 * @throws IOException
+	 * In case some of the feeds cannot be read or parsed.
+	 */
+	public void setDocuments(Collection<? extends DocumentSource> sources) throws IOException
+	{
+		assert documents != null;
+		documents.clear();
+		recountExamples();
+		addDocuments(sources);
+	}
+
+	/**
+	 * Sets executor fetching and parsing feeds, e.g. to limit the number of
+	 * concurrent connections. The executor isn't shut down by the factory.
+	 * 
+	 * @param executor
+	 * Executor or null to use the default one.
+	 */
+	public synchronized void setExecutor(ExecutorService executor)
+	{
+		this.executor = executor;
+	}
+
+	/**
+	 * Limits number of threads parsing and indexing documents. By default
+	 * all available processors are used.
+	 * 
+	 * @param parallelism
+	 * Maximum number of threads, must be positive.
+	 */
+	public synchronized void setParallelism(int parallelism)
+	{
+		if (parallelism < 1)
+		{
+			throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+		}
+		if (pool != null && parallelism != this.parallelism)
+		{
+			pool.shutdown();
+			pool = null;
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Sets writer maintaining the index incrementally. Documents already
+	 * present in the factory are moved to the writer, afterwards every new
+	 * document is passed to it as soon as it's parsed and isn't kept by the
+	 * factory. Documents of the previous writer are moved to the new one or,
+	 * if there is no new writer, back to the factory.
+	 * 
+	 * @param indexWriter
+	 * Index writer or null to build every index from scratch.
+	 * 
+	 * @throws IOException
+	 * In case writer fails to write segments.
+	 */
+	public void setIndexWriter(IndexWriter indexWriter) throws IOException
+	{
+		Collection<Document> current = getDocuments();
+		if (indexWriter != null)
+		{
+			indexWriter.addDocuments(current);
+			documents.clear();
+		}
+		else if (current != documents)
+		{
+			documents.addAll(current);
+		}
+		this.indexWriter = indexWriter;
+	}
+
 	/**
 	 * Loads training examples from XML file to factory's examples' set. Old
 	 * examples are removed from the set.
@@ -253,11 +472,390 @@ public final class IndexFactory
 	{
 		assert examples != null;
 		examples.clear();
+		zoneStatistics.clear();
 		addExamples(xmlFileLocation);
 	}
 
+	/**
+	 * Indexes factory's documents and writes the result to the segment file,
+	 * which can be {@link #openIndex(Path, IndexType) opened} later instead of
+	 * building the index again.
+	 * 
+	 * @param path
+	 * Location of the segment file, existing file will be replaced.
+	 * 
+	 * @throws IOException
+	 * In case file can't be written.
+	 */
+	public void writeIndex(Path path) throws IOException
+	{
+		assert documents != null;
+		Collection<Document> indexed = getDocuments();
+		SegmentWriter.write(new MemorySegment(indexed), path);
+		logger.log(Level.INFO, "Index of {0} documents has been written to {1}.", new Object[] {
+				indexed.size(), path });
+	}
+
+	/**
+	 * Partitions factory's documents into shards the way
+	 * {@link #getShardedIndex(IndexType, int)} does and writes every shard to
+	 * its own segment file, named after the given one with the number of the
+	 * shard appended: <code>index.0</code>, <code>index.1</code>, etc. Every
+	 * file can then be served by a {@link ShardServer}.
+	 *
+	 * @param path
+	 * Location of the segment files without the shard numbers, existing files
+	 * will be replaced.
+	 *
+	 * @param shardCount
+	 * Number of shards, must be positive.
+	 *
+	 * @return Locations of the written files ordered by shard.
+	 *
+	 * @throws IOException
+	 * In case a file can't be written.
+	 */
+	public List<Path> writeShards(Path path, int shardCount) throws IOException
+	{
+		assert documents != null;
+		List<Path> paths = new ArrayList<Path>(shardCount);
+		Collection<Document> indexed = getDocuments();
+		List<Segment> shards = ShardedIndex.partition(indexed, shardCount, getPool());
+		for (int i = 0; i < shardCount; i++)
+		{
+			Path shardPath = path.resolveSibling(path.getFileName() + "." + i);
+			SegmentWriter.write(shards.get(i), shardPath);
+			paths.add(shardPath);
+		}
+		logger.log(Level.INFO, "Index of {0} documents has been written to {1} shards.",
+				new Object[] { indexed.size(), shardCount });
+		return paths;
+	}
+
+	/**
+	 * @return Pool of {@link #getParallelism() parallelism} threads, created
+	 * on demand.
+	 */
+	synchronized ForkJoinPool getPool()
+	{
+		if (pool == null)
+		{
+			pool = new ForkJoinPool(parallelism);
+		}
+		return pool;
+	}
+
+	/**
+	 * Passes the document to the index writer, which skips duplicates itself,
+	 * or adds it to the set if there is no writer. Called by ingestion
+	 * workers concurrently.
+	 */
+	private void addDocument(Document document) throws IOException
+	{
+		IndexWriter indexWriter = this.indexWriter;
+		if (indexWriter != null)
+		{
+			indexWriter.addDocument(document);
+			return;
+		}
+		synchronized (documents)
+		{
+			documents.add(document);
+		}
+	}
+
+	/**
+	 * @return Documents of the factory, read back from the index writer's
+	 * segments if there is a writer.
+	 * 
+	 * @throws IOException
+	 * In case the writer fails to flush documents.
+	 */
+	private Collection<Document> getDocuments() throws IOException
+	{
+		if (indexWriter == null)
+		{
+			return documents;
+		}
+		Segment segment = indexWriter.getSegment();
+		List<Document> stored = new ArrayList<Document>(segment.getDocumentCount());
+		for (int documentId = 0; documentId < segment.getDocumentCount(); documentId++)
+		{
+			stored.add(segment.getDocument(documentId));
+		}
+		return stored;
+	}
+
+	/**
+	 * Schedules all the examples to be counted again, since documents they refer
+	 * to might have changed.
+	 */
+	private void recountExamples()
+	{
+		zoneStatistics.clear();
+		zoneStatistics.add(examples);
+	}
+
+	/**
+	 * Moves items of the feeds through the bounded queue to the workers
+	 * converting them to documents. Feeds are read by the executor, failure
+	 * to read one of them doesn't stop the others.
+	 *
+	 * Workers run on the shared pool, so they must finish whatever happens to
+	 * the calling thread: they are stopped by the end of feed markers or, when
+	 * ingestion fails or is interrupted, by the stop flag they poll.
+	 */
+	private void ingest(List<DocumentSource> feeds) throws IOException
+	{
+		final BlockingQueue<FeedReader.Item> queue = new ArrayBlockingQueue<FeedReader.Item>(
+				QUEUE_CAPACITY);
+		final AtomicBoolean stopped = new AtomicBoolean();
+		final List<Future<Void>> workers = new ArrayList<Future<Void>>(parallelism);
+		for (int i = 0; i < parallelism; i++)
+		{
+			workers.add(getPool().submit(new Callable<Void>()
+			{
+				public Void call() throws IOException, InterruptedException
+				{
+					while (!stopped.get())
+					{
+						FeedReader.Item item = queue.poll(100, TimeUnit.MILLISECONDS);
+						if (item == END_OF_FEED)
+						{
+							break;
+						}
+						if (item == null)
+						{
+							continue;
+						}
+						long start = System.nanoTime();
+						Document document = item.toDocument();
+						SearchMetrics.getInstance().recordPhase(SearchMetrics.Phase.NORMALIZE,
+								System.nanoTime() - start);
+						if (document != null)
+						{
+							addDocument(document);
+						}
+					}
+					return null;
+				}
+			}));
+		}
+		List<Future<Void>> readers = new ArrayList<Future<Void>>(feeds.size());
+		IOException failure = null;
+		Exception primary = null;
+		try
+		{
+			for (final DocumentSource feed : feeds)
+			{
+				readers.add(getExecutor().submit(new Callable<Void>()
+				{
+					public Void call() throws IOException
+					{
+						long start = System.nanoTime();
+						long waiting = 0;
+						try (FeedReader reader = feed.open())
+						{
+							FeedReader.Item item;
+							while ((item = reader.nextItem()) != null)
+							{
+								long put = System.nanoTime();
+								put(queue, item, workers);
+								waiting += System.nanoTime() - put;
+							}
+						}
+						// waiting for the workers to free the queue isn't fetching
+						SearchMetrics.getInstance().recordPhase(SearchMetrics.Phase.FETCH,
+								System.nanoTime() - start - waiting);
+						return null;
+					}
+				}));
+			}
+			for (int i = 0; i < readers.size(); i++)
+			{
+				try
+				{
+					await(readers.get(i));
+				}
+				catch (InterruptedIOException e)
+				{
+					throw e;
+				}
+				catch (IOException e)
+				{
+					logger.log(Level.WARNING, "Feed {0} can''t be read: {1}.", new Object[] {
+							feeds.get(i), e });
+					if (failure == null)
+					{
+						failure = new IOException("Some of the feeds can't be read.");
+					}
+					failure.addSuppressed(e);
+				}
+			}
+		}
+		catch (IOException | RuntimeException e)
+		{
+			primary = e;
+			stopped.set(true);
+			for (Future<Void> reader : readers)
+			{
+				reader.cancel(true);
+			}
+			queue.clear();
+			throw e;
+		}
+		finally
+		{
+			// the interrupt which may have stopped ingestion mustn't keep the
+			// workers from being stopped, it is restored afterwards
+			boolean interrupted = Thread.interrupted();
+			try
+			{
+				if (!stopped.get())
+				{
+					for (int i = 0; i < workers.size(); i++)
+					{
+						put(queue, END_OF_FEED, workers);
+					}
+				}
+				for (Future<Void> worker : workers)
+				{
+					await(worker);
+				}
+			}
+			catch (IOException | RuntimeException e)
+			{
+				stopped.set(true);
+				if (primary == null)
+				{
+					throw e;
+				}
+				primary.addSuppressed(e);
+			}
+			finally
+			{
+				if (interrupted)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+		if (failure != null)
+		{
+			throw failure;
+		}
+	}
+
+	/**
+	 * Creates executor running every task on a new virtual thread. Virtual
+	 * threads are looked up reflectively, so that the factory still runs on
+	 * older runtimes, where a fixed pool of daemon threads is used instead.
+	 */
+	private static ExecutorService newFetchExecutor()
+	{
+		try
+		{
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			logger.log(Level.FINE, "Virtual threads aren't available, feeds will be read "
+					+ "by a pool of {0} threads.", FETCH_THREADS);
+			return Executors.newFixedThreadPool(FETCH_THREADS, new ThreadFactory()
+			{
+				public Thread newThread(Runnable runnable)
+				{
+					Thread thread = new Thread(runnable, "feed-reader");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Waits for the worker to finish and rethrows its exception, if any.
+	 */
+	private static void await(Future<Void> worker) throws IOException
+	{
+		try
+		{
+			worker.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Ingestion has been interrupted.");
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+			{
+				throw (IOException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException)
+			{
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Puts the item into the queue waiting while it is full. Stops waiting if
+	 * a worker has failed, since the queue might never be drained then.
+	 */
+	private static void put(BlockingQueue<FeedReader.Item> queue, FeedReader.Item item,
+			List<Future<Void>> workers) throws IOException
+	{
+		try
+		{
+			while (!queue.offer(item, 100, TimeUnit.MILLISECONDS))
+			{
+				for (Future<Void> worker : workers)
+				{
+					if (worker.isDone())
+					{
+						await(worker);
+						throw new IllegalStateException("Ingestion worker has stopped.");
+					}
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Ingestion has been interrupted.");
+		}
+	}
+
 	private Set<Document> documents = new HashSet<Document>();
 	private Set<TrainingExample> examples = new HashSet<TrainingExample>();
+	private ExecutorService executor = null;
+	private IndexWriter indexWriter = null;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private ForkJoinPool pool = null;
+
+	/**
+	 * Statistics of the examples zone weights are learned from
+	 */
+	private final ZoneStatistics zoneStatistics = new ZoneStatistics();
+
+	/**
+	 * Marks the end of the feed for ingestion workers
+	 */
+	private static final FeedReader.Item END_OF_FEED = new FeedReader.Item();
+
+	/**
+	 * Number of threads reading feeds when virtual threads aren't available
+	 */
+	public static final int FETCH_THREADS = 16;
+
+	/**
+	 * Maximal number of parsed feed items waiting to be indexed
+	 */
+	private static final int QUEUE_CAPACITY = 1024;
 
 	private static final Logger logger = Logger.getLogger("com.iretrieval.index");
 }
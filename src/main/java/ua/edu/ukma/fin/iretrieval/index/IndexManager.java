@@ -0,0 +1,116 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ua.edu.ukma.fin.iretrieval.Document;
+import ua.edu.ukma.fin.iretrieval.Query;
+
+/**
+ * Hands the current version of an index to concurrent readers. Readers
+ * {@link #acquire() acquire} a snapshot without locking and run queries
+ * against it, while a writer builds the next version (e.g. from
+ * {@link IndexWriter#getSegment()}) and {@link #publish(Index) publishes} it
+ * atomically. Queries already running keep using the version they started
+ * with.
+ *
+ * Results can be cached in a {@link #setQueryCache(QueryCache) query cache},
+ * which is cleared whenever a new version is published.
+ */
+public class IndexManager
+{
+	/**
+	 * @param index
+	 * Initial version of the index, can't be null.
+	 */
+	public IndexManager(Index index)
+	{
+		if (index == null)
+		{
+			throw new IllegalArgumentException("Index can't be null.");
+		}
+		current = new AtomicReference<IndexSnapshot>(new IndexSnapshot(index, 1));
+	}
+
+	/**
+	 * @return Snapshot of the latest published version.
+	 */
+	public IndexSnapshot acquire()
+	{
+		return current.get();
+	}
+
+	/**
+	 * Makes the index the current version. Readers acquiring a snapshot
+	 * afterwards get the new version.
+	 *
+	 * @param index
+	 * New version of the index, can't be null.
+	 *
+	 * @return Snapshot of the published version.
+	 */
+	public IndexSnapshot publish(Index index)
+	{
+		if (index == null)
+		{
+			throw new IllegalArgumentException("Index can't be null.");
+		}
+		IndexSnapshot previous;
+		IndexSnapshot next;
+		do
+		{
+			previous = current.get();
+			next = new IndexSnapshot(index, previous.getVersion() + 1);
+		}
+		while (!current.compareAndSet(previous, next));
+		QueryCache queryCache = this.queryCache;
+		if (queryCache != null)
+		{
+			queryCache.clear();
+		}
+		logger.log(Level.FINE, "Index version {0} has been published.", next.getVersion());
+		return next;
+	}
+
+	/**
+	 * @return Cache of query results or null if results aren't cached.
+	 */
+	public QueryCache getQueryCache()
+	{
+		return queryCache;
+	}
+
+	/**
+	 * Retrieves documents from the current version of the index, through the
+	 * query cache if there is one.
+	 *
+	 * @see Index#retrieveDocuments(Query, int)
+	 */
+	public List<Document> retrieveDocuments(Query query, int k)
+	{
+		QueryCache queryCache = this.queryCache;
+		if (queryCache != null)
+		{
+			return queryCache.retrieveDocuments(acquire(), query, k);
+		}
+		return acquire().getIndex().retrieveDocuments(query, k);
+	}
+
+	/**
+	 * Sets cache of query results.
+	 *
+	 * @param queryCache
+	 * Cache or null to retrieve every query from the index.
+	 */
+	public void setQueryCache(QueryCache queryCache)
+	{
+		this.queryCache = queryCache;
+	}
+
+	private final AtomicReference<IndexSnapshot> current;
+	private volatile QueryCache queryCache = null;
+
+	private static final Logger logger = Logger.getLogger("com.iretrieval.index");
+}
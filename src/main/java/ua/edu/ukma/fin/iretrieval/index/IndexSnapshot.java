@@ -0,0 +1,34 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+/**
+ * Version of an index published by an {@link IndexManager}. Snapshot is
+ * immutable, so a reader holding it sees the same documents for as long as it
+ * needs regardless of versions published afterwards.
+ */
+public final class IndexSnapshot
+{
+	IndexSnapshot(Index index, long version)
+	{
+		this.index = index;
+		this.version = version;
+	}
+
+	/**
+	 * @return Index of this version.
+	 */
+	public Index getIndex()
+	{
+		return index;
+	}
+
+	/**
+	 * @return Number of the version, increases with every publication.
+	 */
+	public long getVersion()
+	{
+		return version;
+	}
+
+	private final Index index;
+	private final long version;
+}
@@ -0,0 +1,484 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ua.edu.ukma.fin.iretrieval.Document;
+
+/**
+ * Maintains an index which grows incrementally. Added documents are buffered
+ * and {@link #flush() flushed} into small immutable segments, segments are
+ * merged in the background according to the {@link TieredMergePolicy merge
+ * policy}. Searches run over a {@link #getSegment() snapshot} of all live
+ * segments, so new documents become searchable without rebuilding the whole
+ * index.
+ *
+ * Writer either keeps segments in memory or, given a directory, writes every
+ * segment to a file, maps it and lists live segment files in the
+ * {@value #SEGMENTS_FILE} file, so the index can be reopened later.
+ *
+ * @see "Introduction to information retrieval. 4.5 Dynamic indexing"
+ */
+public class IndexWriter implements Closeable
+{
+	/**
+	 * Creates writer keeping segments in memory.
+	 */
+	public IndexWriter()
+	{
+		this.directory = null;
+	}
+
+	/**
+	 * Creates writer keeping segments in the directory. Segments listed in
+	 * the {@value #SEGMENTS_FILE} file are opened, other segment files left
+	 * from unfinished flushes and merges are deleted.
+	 *
+	 * @param directory
+	 * Directory to keep segment files in, created if doesn't exist.
+	 *
+	 * @throws IOException
+	 * In case directory or segment files can't be read.
+	 */
+	public IndexWriter(Path directory) throws IOException
+	{
+		this.directory = directory;
+		Files.createDirectories(directory);
+		Set<String> live = new HashSet<String>();
+		Path manifest = directory.resolve(SEGMENTS_FILE);
+		if (Files.exists(manifest))
+		{
+			List<Segment> opened = new ArrayList<Segment>();
+			for (String name : Files.readAllLines(manifest, StandardCharsets.UTF_8))
+			{
+				if (!name.isEmpty())
+				{
+					Path file = directory.resolve(name);
+					Segment segment = MappedSegment.open(file);
+					opened.add(segment);
+					files.put(segment, file);
+					live.add(name);
+					generation = Math.max(generation, getGeneration(name) + 1);
+				}
+			}
+			segments = Collections.unmodifiableList(opened);
+		}
+		DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "segment_*.seg*");
+		try
+		{
+			for (Path file : stream)
+			{
+				if (!live.contains(file.getFileName().toString()))
+				{
+					Files.deleteIfExists(file);
+				}
+			}
+		}
+		finally
+		{
+			stream.close();
+		}
+	}
+
+	/**
+	 * Adds the document to the buffer, which is flushed once it's full.
+	 * Documents with GUIDs already present in the index are ignored.
+	 *
+	 * @param document
+	 * Document to be indexed.
+	 *
+	 * @throws IOException
+	 * In case the buffer has to be flushed and segment can't be written.
+	 */
+	public synchronized void addDocument(Document document) throws IOException
+	{
+		ensureOpen();
+		if (document == null || document.getGuid() == null
+				|| bufferedGuids.contains(document.getGuid()))
+		{
+			return;
+		}
+		for (Segment segment : segments)
+		{
+			if (segment.getDocumentId(document.getGuid()) != -1)
+			{
+				return;
+			}
+		}
+		buffer.add(document);
+		bufferedGuids.add(document.getGuid());
+		if (buffer.size() >= maxBufferedDocuments)
+		{
+			flush();
+		}
+	}
+
+	/**
+	 * Adds documents one by one.
+	 *
+	 * @see #addDocument(Document)
+	 *
+	 * @param documents
+	 * Documents to be indexed.
+	 *
+	 * @throws IOException
+	 * In case segment can't be written.
+	 */
+	public synchronized void addDocuments(Collection<? extends Document> documents)
+			throws IOException
+	{
+		for (Document document : documents)
+		{
+			addDocument(document);
+		}
+	}
+
+	/**
+	 * Flushes buffered documents and waits for running merges to finish.
+	 */
+	public void close() throws IOException
+	{
+		synchronized (this)
+		{
+			if (closed)
+			{
+				return;
+			}
+			flush();
+			closed = true;
+		}
+		merger.shutdown();
+		try
+		{
+			merger.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Turns buffered documents into a new segment and schedules a merge if
+	 * the merge policy finds one necessary.
+	 *
+	 * @throws IOException
+	 * In case segment can't be written.
+	 */
+	public synchronized void flush() throws IOException
+	{
+		ensureOpen();
+		if (buffer.isEmpty())
+		{
+			return;
+		}
+		Segment segment = store(new MemorySegment(buffer));
+		List<Segment> live = new ArrayList<Segment>(segments);
+		live.add(segment);
+		publish(live);
+		logger.log(Level.FINE, "{0} documents have been flushed.", buffer.size());
+		buffer.clear();
+		bufferedGuids.clear();
+		if (!mergeScheduled && mergePolicy.findMerge(segments) != null)
+		{
+			mergeScheduled = true;
+			merger.execute(new Runnable()
+			{
+				public void run()
+				{
+					mergeSegments();
+				}
+			});
+		}
+	}
+
+	/**
+	 * @return Number of indexed documents including buffered ones.
+	 */
+	public synchronized int getDocumentCount()
+	{
+		int documentCount = buffer.size();
+		for (Segment segment : segments)
+		{
+			documentCount += segment.getDocumentCount();
+		}
+		return documentCount;
+	}
+
+	/**
+	 * @return Number of documents buffered before flush.
+	 */
+	public int getMaxBufferedDocuments()
+	{
+		return maxBufferedDocuments;
+	}
+
+	/**
+	 * @return Merge policy, its settings can be changed at any time.
+	 */
+	public TieredMergePolicy getMergePolicy()
+	{
+		return mergePolicy;
+	}
+
+	/**
+	 * Flushes buffered documents and returns a point-in-time view of the
+	 * index. The view isn't affected by documents added and segments merged
+	 * afterwards. Combining the segments merges their dictionaries, so the
+	 * view is reused until a flush or a merge changes the live segments.
+	 *
+	 * @return Segment combining all live segments.
+	 *
+	 * @throws IOException
+	 * In case buffered documents can't be written.
+	 */
+	public synchronized Segment getSegment() throws IOException
+	{
+		flush();
+		if (snapshot == null)
+		{
+			snapshot = new CompositeSegment(segments);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * @param maxBufferedDocuments
+	 * Number of documents buffered before flush, must be positive.
+	 */
+	public void setMaxBufferedDocuments(int maxBufferedDocuments)
+	{
+		if (maxBufferedDocuments < 1)
+		{
+			throw new IllegalArgumentException("Number of buffered documents must be positive: "
+					+ maxBufferedDocuments);
+		}
+		this.maxBufferedDocuments = maxBufferedDocuments;
+	}
+
+	/**
+	 * Blocks until merges scheduled so far are finished.
+	 *
+	 * @throws InterruptedException
+	 * In case the current thread is interrupted while waiting.
+	 */
+	public void waitForMerges() throws InterruptedException
+	{
+		if (merger.isShutdown())
+		{
+			merger.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			return;
+		}
+		try
+		{
+			merger.submit(new Runnable()
+			{
+				public void run()
+				{
+				}
+			}).get();
+		}
+		catch (ExecutionException e)
+		{
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Deletes file of the merged segment. Snapshots taken before the merge may
+	 * still use the mapping, so failure to delete the file isn't an error.
+	 */
+	private void deleteFile(Segment segment)
+	{
+		Path file = files.remove(segment);
+		if (file != null)
+		{
+			try
+			{
+				Files.deleteIfExists(file);
+			}
+			catch (IOException e)
+			{
+				logger.log(Level.WARNING, "Failed to delete merged segment {0}: {1}.",
+						new Object[] { file, e });
+			}
+		}
+	}
+
+	private void ensureOpen()
+	{
+		if (closed)
+		{
+			throw new IllegalStateException("Index writer is closed.");
+		}
+	}
+
+	/**
+	 * Merges segments while the merge policy finds merges. Runs in the
+	 * background thread, the writer is locked only to pick the segments and to
+	 * replace them with the merged one.
+	 */
+	private void mergeSegments()
+	{
+		try
+		{
+			while (true)
+			{
+				List<Segment> merge;
+				synchronized (this)
+				{
+					merge = mergePolicy.findMerge(segments);
+					if (merge == null)
+					{
+						mergeScheduled = false;
+						return;
+					}
+				}
+				Segment merged = store(new MemorySegment(new CompositeSegment(merge)));
+				synchronized (this)
+				{
+					List<Segment> live = new ArrayList<Segment>(segments.size());
+					boolean inserted = false;
+					for (Segment segment : segments)
+					{
+						if (!merge.contains(segment))
+						{
+							live.add(segment);
+						}
+						else if (!inserted)
+						{
+							live.add(merged);
+							inserted = true;
+						}
+					}
+					publish(live);
+					for (Segment segment : merge)
+					{
+						deleteFile(segment);
+					}
+				}
+				logger.log(Level.FINE, "{0} segments have been merged into a segment of {1} "
+						+ "documents.", new Object[] { merge.size(), merged.getDocumentCount() });
+			}
+		}
+		catch (IOException e)
+		{
+			logger.log(Level.WARNING, "Failed to merge segments: {0}.", e);
+			synchronized (this)
+			{
+				mergeScheduled = false;
+			}
+		}
+	}
+
+	/**
+	 * Makes segments live and records them in the {@value #SEGMENTS_FILE}
+	 * file. Must be called with the writer locked.
+	 */
+	private void publish(List<Segment> live) throws IOException
+	{
+		if (directory != null)
+		{
+			List<String> names = new ArrayList<String>(live.size());
+			for (Segment segment : live)
+			{
+				names.add(files.get(segment).getFileName().toString());
+			}
+			Path temporary = directory.resolve(SEGMENTS_FILE + ".tmp");
+			Files.write(temporary, names, StandardCharsets.UTF_8);
+			Files.move(temporary, directory.resolve(SEGMENTS_FILE),
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		segments = Collections.unmodifiableList(live);
+		snapshot = null;
+	}
+
+	/**
+	 * Writes the segment to a new file and maps it, if the writer keeps
+	 * segments in a directory.
+	 */
+	private Segment store(Segment segment) throws IOException
+	{
+		if (directory == null)
+		{
+			return segment;
+		}
+		Path file;
+		synchronized (this)
+		{
+			file = directory.resolve("segment_" + generation++ + ".seg");
+		}
+		SegmentWriter.write(segment, file);
+		Segment mapped = MappedSegment.open(file);
+		synchronized (this)
+		{
+			files.put(mapped, file);
+		}
+		return mapped;
+	}
+
+	private static int getGeneration(String name)
+	{
+		try
+		{
+			return Integer.parseInt(name.substring(name.indexOf('_') + 1, name.indexOf('.')));
+		}
+		catch (RuntimeException e)
+		{
+			return 0;
+		}
+	}
+
+	/**
+	 * Name of the file listing live segments
+	 */
+	public static final String SEGMENTS_FILE = "segments";
+
+	private final List<Document> buffer = new ArrayList<Document>();
+	private final Set<String> bufferedGuids = new HashSet<String>();
+	private boolean closed = false;
+	private final Path directory;
+	private final Map<Segment, Path> files = new IdentityHashMap<Segment, Path>();
+	private int generation = 0;
+	private volatile int maxBufferedDocuments = 1000;
+	private final ExecutorService merger = Executors.newSingleThreadExecutor(new ThreadFactory()
+	{
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, "index-merger");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	private final TieredMergePolicy mergePolicy = new TieredMergePolicy();
+	private boolean mergeScheduled = false;
+	private volatile List<Segment> segments = Collections.emptyList();
+
+	/**
+	 * View of the live segments handed out by {@link #getSegment()}, null
+	 * until requested after they have changed
+	 */
+	private Segment snapshot = null;
+
+	private static final Logger logger = Logger.getLogger("com.iretrieval.index");
+}
@@ -1,8 +1,6 @@
 package ua.edu.ukma.fin.iretrieval.index;
 
 import java.util.Collection;
-import java.util.Comparator;
-import java.util.SortedSet;
 
 import ua.edu.ukma.fin.iretrieval.Document;
 import ua.edu.ukma.fin.iretrieval.Query;
@@ -21,17 +19,55 @@ public class InvertedIndex extends Index
 		super(documents);
 	}
 
+	/**
+	 * Simply calls the {@link Index#Index(Segment) superclass constructor}
+	 * 
+	 * @param segment
+	 * Segment containing documents and postings
+	 */
+	public InvertedIndex(Segment segment)
+	{
+		super(segment);
+	}
+
 	@Override
-	protected Comparator<Document> getDocumentComparator(final Query query)
+	public IndexType getType()
+	{
+		return IndexType.INVERTED;
+	}
+
+	/**
+	 * @return Strategy used to evaluate top-k queries.
+	 */
+	public EvaluationMode getEvaluationMode()
 	{
-		return new Comparator<Document>()
+		return evaluationMode;
+	}
+
+	/**
+	 * Switches strategy used to evaluate top-k queries. Pruned strategies
+	 * return the same documents as the exhaustive one, so modes can be switched
+	 * on the same index to compare them.
+	 * 
+	 * @param evaluationMode
+	 * New evaluation mode, can't be null.
+	 */
+	public void setEvaluationMode(EvaluationMode evaluationMode)
+	{
+		if (evaluationMode == null)
 		{
-			public int compare(Document a, Document b)
-			{
-				return Double.valueOf(getTfIdfWeight(a, query)).compareTo(
-						Double.valueOf(getTfIdfWeight(b, query)));
-			}
-		};
+			throw new IllegalArgumentException("Evaluation mode can't be null.");
+		}
+		this.evaluationMode = evaluationMode;
+	}
+
+	/**
+	 * @return Number of documents in the collection inverse document
+	 * frequencies are computed for, the documents of the segment by default.
+	 */
+	protected int getCollectionSize()
+	{
+		return segment.getDocumentCount();
 	}
 
 	/**
@@ -47,7 +83,7 @@ public class InvertedIndex extends Index
 	 */
 	protected int getDocumentFrequency(String term)
 	{
-		SortedSet<String> postings = postingsList.get(term);
+		PostingsList postings = segment.getPostings(term);
 		if (postings != null)
 		{
 			return postings.size();
@@ -69,16 +105,71 @@ public class InvertedIndex extends Index
 	 */
 	protected double getInverseDocumentFrequency(String term)
 	{
-		if (documentsCache != null && documentsCache.size() > 0)
+		if (getCollectionSize() > 0)
 		{
 			double documentFrequency = getDocumentFrequency(term);
-			double collectionSize = documentsCache.size();
+			double collectionSize = getCollectionSize();
 			double value = Math.log10(collectionSize/documentFrequency);
 			return value;
 		}
 		return 0.0;
 	}
 
+	/**
+	 * Tells whether the score is a sum of independent contributions of the
+	 * query terms, each growing with term frequency, so that maximum term
+	 * frequencies give its upper bounds. Dynamic pruning is only possible for
+	 * such scores.
+	 * 
+	 * @return TRUE for tf-idf weight, subclasses changing the ranking scheme
+	 * should override.
+	 */
+	protected boolean isPruningSupported()
+	{
+		return true;
+	}
+
+	/**
+	 * Scores documents by {@link #getTfIdfWeight(Document, Query) tf-idf
+	 * weight}. Inverse document frequencies of the terms are computed once per
+	 * query.
+	 */
+	@Override
+	protected ScoreFunction getScoreFunction(final Query query, final String[] terms)
+	{
+		final double[] inverseDocumentFrequencies = new double[terms.length];
+		for (int i = 0; i < terms.length; i++)
+		{
+			inverseDocumentFrequencies[i] = getInverseDocumentFrequency(terms[i]);
+		}
+		return new ScoreFunction()
+		{
+			public double score(int documentId, PostingsIterator[] postings)
+			{
+				double weight = 0.0;
+				for (int i = 0; i < postings.length; i++)
+				{
+					if (postings[i].document() == documentId)
+					{
+						weight += postings[i].termFrequency() * inverseDocumentFrequencies[i];
+					}
+				}
+				return weight;
+			}
+		};
+	}
+
+	@Override
+	protected ScoredDocument[] search(Query query, int k)
+	{
+		EvaluationMode mode = evaluationMode;
+		if (mode == EvaluationMode.EXHAUSTIVE || !isPruningSupported())
+		{
+			return super.search(query, k);
+		}
+		return searchWand(query, k, mode == EvaluationMode.BLOCK_MAX_WAND);
+	}
+
 	/**
 	 * Calculates tf-idf weight of the document against the given query.
 	 * 
@@ -99,9 +190,146 @@ public class InvertedIndex extends Index
 		double weight = 0.0;
 		for (String term : query.getTerms())
 		{
-			weight += document.getTermFrequency(term) * getInverseDocumentFrequency(term);
+			weight += getTermFrequency(document, term) * getInverseDocumentFrequency(term);
 		}
 		return weight;
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Evaluates the query with WAND or Block-Max WAND. Iterators are kept
+	 * sorted by their current document; the pivot is the first iterator at
+	 * which the sum of maximum contributions of the preceding terms exceeds
+	 * the top-k threshold, no document before the pivot document can get to
+	 * the top. Block-Max WAND additionally checks the maximum contributions
+	 * within the blocks containing the pivot document and skips the blocks
+	 * altogether when their sum doesn't exceed the threshold.
+	 * 
+	 * @param query
+	 * Query to evaluate
+	 * 
+	 * @param k
+	 * Maximum number of documents to return, must be positive
+	 * 
+	 * @param blockMax
+	 * TRUE to use block maximums
+	 * 
+	 * @return Scored documents from the most relevant to the least relevant
+	 * one
+	 */
+	private ScoredDocument[] searchWand(Query query, int k, boolean blockMax)
+	{
+		TopDocumentsCollector collector = new TopDocumentsCollector(k);
+		String[] terms = getIndexedTerms(query);
+		ScoreFunction scoreFunction = getScoreFunction(query, terms);
+		PostingsIterator[] postings = new PostingsIterator[terms.length];
+		double[] inverseDocumentFrequencies = new double[terms.length];
+		double[] upperBounds = new double[terms.length];
+		int[] order = new int[terms.length];
+		for (int i = 0; i < terms.length; i++)
+		{
+			postings[i] = segment.getPostings(terms[i]).iterator();
+			postings[i].nextDocument();
+			inverseDocumentFrequencies[i] = getInverseDocumentFrequency(terms[i]);
+			upperBounds[i] = postings[i].getMaxTermFrequency() * inverseDocumentFrequencies[i];
+			order[i] = i;
+		}
+		QueryProfile.lap(QueryProfile.Stage.POSTINGS);
+		while (true)
+		{
+			sortByDocument(order, postings);
+			double threshold = collector.getThreshold();
+			double bound = 0.0;
+			int pivot = -1;
+			for (int i = 0; i < order.length; i++)
+			{
+				if (postings[order[i]].document() == PostingsIterator.NO_MORE_DOCUMENTS)
+				{
+					break;
+				}
+				bound += upperBounds[order[i]];
+				if (bound > threshold)
+				{
+					pivot = i;
+					break;
+				}
+			}
+			if (pivot == -1)
+			{
+				break;
+			}
+			int pivotDocument = postings[order[pivot]].document();
+			while (pivot + 1 < order.length && postings[order[pivot + 1]].document() == pivotDocument)
+			{
+				pivot++;
+			}
+			if (blockMax)
+			{
+				double blockBound = 0.0;
+				for (int i = 0; i <= pivot; i++)
+				{
+					blockBound += postings[order[i]].getBlockMaxTermFrequency(pivotDocument)
+							* inverseDocumentFrequencies[order[i]];
+				}
+				if (blockBound <= threshold)
+				{
+					int next = PostingsIterator.NO_MORE_DOCUMENTS;
+					for (int i = 0; i <= pivot; i++)
+					{
+						int blockLastDocument = postings[order[i]].getBlockLastDocument(pivotDocument);
+						if (blockLastDocument != PostingsIterator.NO_MORE_DOCUMENTS)
+						{
+							next = Math.min(next, blockLastDocument + 1);
+						}
+					}
+					if (pivot + 1 < order.length)
+					{
+						next = Math.min(next, postings[order[pivot + 1]].document());
+					}
+					for (int i = 0; i <= pivot; i++)
+					{
+						postings[order[i]].advance(next);
+					}
+					continue;
+				}
+			}
+			if (postings[order[0]].document() == pivotDocument)
+			{
+				collector.collect(pivotDocument, scoreFunction.score(pivotDocument, postings));
+				for (int i = 0; i <= pivot; i++)
+				{
+					postings[order[i]].nextDocument();
+				}
+			}
+			else
+			{
+				for (int i = 0; i < pivot; i++)
+				{
+					postings[order[i]].advance(pivotDocument);
+				}
+			}
+		}
+		return getTopDocuments(collector, postings);
+	}
+
+	/**
+	 * Insertion sort of iterators' indices by current document, the number of
+	 * query terms is small and the order changes little between steps.
+	 */
+	private static void sortByDocument(int[] order, PostingsIterator[] postings)
+	{
+		for (int i = 1; i < order.length; i++)
+		{
+			int current = order[i];
+			int document = postings[current].document();
+			int j = i - 1;
+			for (; j >= 0 && postings[order[j]].document() > document; j--)
+			{
+				order[j + 1] = order[j];
+			}
+			order[j + 1] = current;
+		}
+	}
+
+	private volatile EvaluationMode evaluationMode = EvaluationMode.EXHAUSTIVE;
+
+}
@@ -0,0 +1,169 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations with bounded relative error, in the manner of
+ * HdrHistogram. Durations under {@link #SUB_BUCKETS} nanoseconds are counted
+ * exactly, every greater power of two is split into {@link #SUB_BUCKETS}
+ * linear sub-buckets, so a percentile is reported at most 1/32 (about 3%)
+ * above the true value whatever the magnitude. Memory is fixed, about 15 KB,
+ * and recording is a few arithmetic operations and an atomic increment, so
+ * every query can be recorded.
+ *
+ * Histogram is thread-safe. Readings taken while durations are recorded may
+ * be slightly inconsistent, e.g. the count may include a duration the
+ * percentiles don't.
+ *
+ * @see <a href="http://hdrhistogram.org/">HdrHistogram</a>
+ */
+public class LatencyHistogram implements LatencyHistogramMBean
+{
+	public long getCount()
+	{
+		return count.sum();
+	}
+
+	public double getMaxMillis()
+	{
+		return max.get() / NANOS_PER_MILLI;
+	}
+
+	public double getMeanMillis()
+	{
+		long count = getCount();
+		return count == 0 ? 0.0 : total.sum() / NANOS_PER_MILLI / count;
+	}
+
+	public double getP50Millis()
+	{
+		return getValueAtPercentile(50.0) / NANOS_PER_MILLI;
+	}
+
+	public double getP90Millis()
+	{
+		return getValueAtPercentile(90.0) / NANOS_PER_MILLI;
+	}
+
+	public double getP999Millis()
+	{
+		return getValueAtPercentile(99.9) / NANOS_PER_MILLI;
+	}
+
+	public double getP99Millis()
+	{
+		return getValueAtPercentile(99.0) / NANOS_PER_MILLI;
+	}
+
+	public double getTotalMillis()
+	{
+		return total.sum() / NANOS_PER_MILLI;
+	}
+
+	/**
+	 * @param percentile
+	 * Percentile in range [0, 100].
+	 *
+	 * @return The greatest duration of the bucket which the percentile falls
+	 * into, in nanoseconds, but not more than the maximum recorded duration;
+	 * 0 if nothing is recorded.
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		long[] snapshot = new long[BUCKETS];
+		long recorded = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			snapshot[i] = counts.get(i);
+			recorded += snapshot[i];
+		}
+		if (recorded == 0)
+		{
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * recorded));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			seen += snapshot[i];
+			if (seen >= rank)
+			{
+				return Math.min(getHighestValue(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * Records a duration.
+	 *
+	 * @param nanos
+	 * Duration in nanoseconds, negative durations are counted as 0.
+	 */
+	public void record(long nanos)
+	{
+		long value = Math.max(nanos, 0);
+		counts.incrementAndGet(getBucket(value));
+		count.increment();
+		total.add(value);
+		long current;
+		while (value > (current = max.get()) && !max.compareAndSet(current, value))
+		{
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("count=%d mean=%.3f p50=%.3f p90=%.3f p99=%.3f p99.9=%.3f "
+				+ "max=%.3f ms", getCount(), getMeanMillis(), getP50Millis(), getP90Millis(),
+				getP99Millis(), getP999Millis(), getMaxMillis());
+	}
+
+	static int getBucket(long value)
+	{
+		if (value < SUB_BUCKETS)
+		{
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		return SUB_BUCKETS + shift * SUB_BUCKETS + (int) (value >>> shift & (SUB_BUCKETS - 1));
+	}
+
+	static long getHighestValue(int bucket)
+	{
+		if (bucket < SUB_BUCKETS)
+		{
+			return bucket;
+		}
+		int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+		long lowest = (long) (SUB_BUCKETS | (bucket - SUB_BUCKETS) % SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	private static final int SUB_BUCKET_BITS = 5;
+
+	/**
+	 * Number of linear sub-buckets per power of two
+	 */
+	static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * Sub-buckets of exact values and of every power of two up to 2^62
+	 */
+	private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private static final double NANOS_PER_MILLI = 1e6;
+
+	private final LongAdder count = new LongAdder();
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Sum of the durations in nanoseconds
+	 */
+	private final LongAdder total = new LongAdder();
+}
@@ -0,0 +1,24 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+/**
+ * Management interface of a {@link LatencyHistogram}, attributes are shown by
+ * JMX consoles such as JConsole.
+ */
+public interface LatencyHistogramMBean
+{
+	long getCount();
+
+	double getMaxMillis();
+
+	double getMeanMillis();
+
+	double getP50Millis();
+
+	double getP90Millis();
+
+	double getP999Millis();
+
+	double getP99Millis();
+
+	double getTotalMillis();
+}
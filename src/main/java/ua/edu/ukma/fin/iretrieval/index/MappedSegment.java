@@ -0,0 +1,376 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import ua.edu.ukma.fin.iretrieval.Document;
+import ua.edu.ukma.fin.iretrieval.ZoneName;
+
+/**
+ * Read-only segment backed by a memory-mapped file written by
+ * {@link SegmentWriter}. Opening the segment only maps the file and checks its
+ * header, nothing is deserialized onto the heap: terms and GUIDs are found by
+ * binary search over the mapped tables, postings are decoded in place and
+ * documents are restored on demand.
+ */
+public class MappedSegment extends Segment
+{
+	/**
+	 * Maps the segment file into memory.
+	 *
+	 * @param path
+	 * Location of the segment file.
+	 *
+	 * @return Opened segment.
+	 *
+	 * @throws IOException
+	 * In case the file can't be read or isn't a segment file.
+	 */
+	public static MappedSegment open(Path path) throws IOException
+	{
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try
+		{
+			if (channel.size() > Integer.MAX_VALUE)
+			{
+				throw new IOException("Segment file " + path + " exceeds 2GB.");
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new MappedSegment(path, buffer);
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+
+	private MappedSegment(Path path, ByteBuffer buffer) throws IOException
+	{
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+		{
+			throw new IOException(path + " is not a segment file.");
+		}
+		if (buffer.getInt(4) != VERSION)
+		{
+			throw new IOException("Segment file " + path + " has unsupported version "
+					+ buffer.getInt(4) + ".");
+		}
+		this.buffer = buffer;
+		this.documentCount = buffer.getInt(8);
+		this.termCount = buffer.getInt(12);
+		this.documentsTable = buffer.getInt(16);
+		this.guidsTable = buffer.getInt(20);
+		this.dictionaryTable = buffer.getInt(24);
+	}
+
+	@Override
+	public Document getDocument(int documentId)
+	{
+		ByteBuffer input = buffer.duplicate();
+		input.position(getStoredOffset(documentId));
+		return readDocument(input);
+	}
+
+	@Override
+	public int getDocumentCount()
+	{
+		return documentCount;
+	}
+
+	@Override
+	public int getDocumentId(String guid)
+	{
+		int low = 0;
+		int high = documentCount - 1;
+		while (low <= high)
+		{
+			int middle = (low + high) >>> 1;
+			int documentId = buffer.getInt(guidsTable + middle * 4);
+			ByteBuffer input = buffer.duplicate();
+			input.position(getStoredOffset(documentId));
+			int comparison = readString(input).compareTo(guid);
+			if (comparison < 0)
+			{
+				low = middle + 1;
+			}
+			else if (comparison > 0)
+			{
+				high = middle - 1;
+			}
+			else
+			{
+				return documentId;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public double getEuclideanLength(int documentId)
+	{
+		return buffer.getDouble(documentsTable + documentId * DOCUMENT_ENTRY_SIZE + 4);
+	}
+
+	@Override
+	public PostingsList getPostings(String term)
+	{
+		int index = findTerm(term);
+		if (index < 0)
+		{
+			return null;
+		}
+		ByteBuffer input = buffer.duplicate();
+		input.position(buffer.getInt(dictionaryTable + index * 4));
+		input.position(input.position() + 4 + input.getInt());
+		return readPostings(input);
+	}
+
+	@Override
+	public Set<String> getTerms()
+	{
+		return new AbstractSet<String>()
+		{
+			@Override
+			public boolean contains(Object term)
+			{
+				return term instanceof String && findTerm((String) term) >= 0;
+			}
+
+			@Override
+			public Iterator<String> iterator()
+			{
+				return new Iterator<String>()
+				{
+					public boolean hasNext()
+					{
+						return index < termCount;
+					}
+
+					public String next()
+					{
+						if (!hasNext())
+						{
+							throw new NoSuchElementException();
+						}
+						return getTerm(index++);
+					}
+
+					public void remove()
+					{
+						throw new UnsupportedOperationException();
+					}
+
+					private int index = 0;
+				};
+			}
+
+			@Override
+			public int size()
+			{
+				return termCount;
+			}
+		};
+	}
+
+	@Override
+	public Iterator<String> getTerms(final String prefix)
+	{
+		final int start = findCeiling(prefix);
+		return new Iterator<String>()
+		{
+			public boolean hasNext()
+			{
+				if (next == null && index < termCount)
+				{
+					String term = getTerm(index);
+					next = term.startsWith(prefix) ? term : null;
+				}
+				return next != null;
+			}
+
+			public String next()
+			{
+				if (!hasNext())
+				{
+					throw new NoSuchElementException();
+				}
+				String term = next;
+				next = null;
+				index++;
+				return term;
+			}
+
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+
+			private int index = start;
+			private String next = null;
+		};
+	}
+
+	@Override
+	public int[] getZoneLengths(int documentId)
+	{
+		int[] lengths = new int[ZoneName.values().length];
+		int offset = documentsTable + documentId * DOCUMENT_ENTRY_SIZE + 12;
+		for (int i = 0; i < lengths.length; i++)
+		{
+			lengths[i] = buffer.getInt(offset + i * 4);
+		}
+		return lengths;
+	}
+
+	/**
+	 * Binary search over the dictionary table.
+	 *
+	 * @return Index of the first term which isn't less than the target,
+	 * number of terms if there is no such term.
+	 */
+	private int findCeiling(String target)
+	{
+		int low = 0;
+		int high = termCount;
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if (getTerm(middle).compareTo(target) < 0)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return Index of the term in the dictionary or -1 if it is absent.
+	 */
+	private int findTerm(String term)
+	{
+		int index = findCeiling(term);
+		if (index < termCount && getTerm(index).equals(term))
+		{
+			return index;
+		}
+		return -1;
+	}
+
+	private int getStoredOffset(int documentId)
+	{
+		return buffer.getInt(documentsTable + documentId * DOCUMENT_ENTRY_SIZE);
+	}
+
+	private String getTerm(int index)
+	{
+		ByteBuffer input = buffer.duplicate();
+		input.position(buffer.getInt(dictionaryTable + index * 4));
+		return readString(input);
+	}
+
+	/**
+	 * Reads stored fields of a document written by
+	 * {@link SegmentWriter#writeDocument(java.io.DataOutputStream, Document)}.
+	 * Fields were normalized when the document was indexed, they are restored
+	 * as they are.
+	 */
+	static Document readDocument(ByteBuffer input)
+	{
+		String guid = readString(input);
+		String title = readString(input);
+		String body = readString(input);
+		String link = readString(input);
+		Date pubDate = input.get() != 0 ? new Date(input.getLong()) : null;
+		int categoryCount = input.getInt();
+		List<String> categories = new ArrayList<String>(categoryCount);
+		for (int i = 0; i < categoryCount; i++)
+		{
+			categories.add(readString(input));
+		}
+		Map<String, Map<String, String>> extraFields = new HashMap<String, Map<String, String>>();
+		for (int groups = input.getInt(); groups > 0; groups--)
+		{
+			String groupName = readString(input);
+			Map<String, String> group = new HashMap<String, String>();
+			for (int fields = input.getInt(); fields > 0; fields--)
+			{
+				String fieldName = readString(input);
+				group.put(fieldName, readString(input));
+			}
+			extraFields.put(groupName, group);
+		}
+		return new Document(guid, title, body, link, pubDate, categories, extraFields);
+	}
+
+	/**
+	 * Reads postings list header, the block table and compressed streams are
+	 * sliced from the mapped buffer without copying.
+	 */
+	private static PostingsList readPostings(ByteBuffer input)
+	{
+		int size = input.getInt();
+		int blocks = input.getInt();
+		IntBuffer skips = input.slice().asIntBuffer();
+		skips.limit(blocks * BlockPostingsList.SKIP_ENTRY_SIZE);
+		input.position(input.position() + blocks * BlockPostingsList.SKIP_ENTRY_SIZE * 4);
+		ByteBuffer data = readBuffer(input);
+		ByteBuffer positions = readBuffer(input);
+		return new BlockPostingsList(data, positions, size, skips.slice());
+	}
+
+	private static ByteBuffer readBuffer(ByteBuffer input)
+	{
+		int length = input.getInt();
+		ByteBuffer slice = input.slice();
+		slice.limit(length);
+		input.position(input.position() + length);
+		return slice.slice();
+	}
+
+	private static String readString(ByteBuffer input)
+	{
+		int length = input.getInt();
+		if (length < 0)
+		{
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		input.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	static final int HEADER_SIZE = 64;
+	static final int MAGIC = 0x49525347;
+	static final int VERSION = 2;
+
+	/**
+	 * Stored document offset, Euclidean length and zones' lengths
+	 */
+	private static final int DOCUMENT_ENTRY_SIZE = 4 + 8 + 4 * ZoneName.values().length;
+
+	private final ByteBuffer buffer;
+	private final int dictionaryTable;
+	private final int documentCount;
+	private final int documentsTable;
+	private final int guidsTable;
+	private final int termCount;
+}
@@ -0,0 +1,403 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import ua.edu.ukma.fin.iretrieval.Document;
+import ua.edu.ukma.fin.iretrieval.Tokenizer;
+import ua.edu.ukma.fin.iretrieval.ZoneName;
+
+/**
+ * Segment built on the heap from a collection of documents.
+ */
+public class MemorySegment extends Segment
+{
+	/**
+	 * Builds an inverted index for a given collection of documents on the
+	 * calling thread.
+	 *
+	 * @see #MemorySegment(Collection, ForkJoinPool)
+	 *
+	 * @param documents
+	 * Collection of the documents to be indexed, duplicates will be ignored
+	 */
+	public MemorySegment(Collection<? extends Document> documents)
+	{
+		this(documents, null);
+	}
+
+	/**
+	 * Builds an inverted index for a given collection of documents. Each
+	 * document is assigned a dense integer ID in the order it is met, postings
+	 * refer to documents by these IDs. Text of every document is tokenized
+	 * once, term frequencies and positions are recorded in the postings.
+	 *
+	 * Documents are split into ranges of consecutive IDs which are indexed in
+	 * parallel into partial postings lists, then partial lists of every term
+	 * are concatenated in the order of ranges, also in parallel. Terms are
+	 * finally sorted into a front-coded {@link TermDictionary dictionary}.
+	 *
+	 * @see "Introduction to information retrieval. 1.2 A first take at building
+	 * an inverted index."
+	 * @see "Introduction to information retrieval. 4.4 Distributed indexing"
+	 *
+	 * @param documents
+	 * Collection of the documents to be indexed, duplicates will be ignored
+	 *
+	 * @param pool
+	 * Pool to build the index in, null to build it on the calling thread.
+	 */
+	public MemorySegment(Collection<? extends Document> documents, ForkJoinPool pool)
+	{
+		for (Document document : documents)
+		{
+			if (document != null && document.getGuid() != null
+					&& !documentIds.containsKey(document.getGuid()))
+			{
+				documentIds.put(document.getGuid(), this.documents.size());
+				this.documents.add(document);
+			}
+		}
+		euclideanLengths = new double[this.documents.size()];
+		zoneLengths.addAll(Collections.<int[]> nCopies(this.documents.size(), null));
+
+		int ranges = 1;
+		if (pool != null)
+		{
+			ranges = Math.min(pool.getParallelism() * 4, this.documents.size() / MIN_RANGE_SIZE);
+		}
+		if (ranges <= 1)
+		{
+			Map<String, PostingsList> range = indexRange(0, this.documents.size());
+			String[] terms = range.keySet().toArray(new String[range.size()]);
+			Arrays.sort(terms);
+			postingsList = new PostingsList[terms.length];
+			for (int i = 0; i < terms.length; i++)
+			{
+				postingsList[i] = range.get(terms[i]);
+			}
+			dictionary = new TermDictionary(Arrays.asList(terms).iterator());
+			return;
+		}
+
+		List<Callable<Map<String, PostingsList>>> indexing =
+				new ArrayList<Callable<Map<String, PostingsList>>>(ranges);
+		for (int i = 0; i < ranges; i++)
+		{
+			final int from = (int) ((long) this.documents.size() * i / ranges);
+			final int to = (int) ((long) this.documents.size() * (i + 1) / ranges);
+			indexing.add(new Callable<Map<String, PostingsList>>()
+			{
+				public Map<String, PostingsList> call()
+				{
+					return indexRange(from, to);
+				}
+			});
+		}
+		final Map<String, List<PostingsList>> partials = new HashMap<String, List<PostingsList>>();
+		for (Map<String, PostingsList> partial : invokeAll(pool, indexing))
+		{
+			for (Map.Entry<String, PostingsList> entry : partial.entrySet())
+			{
+				List<PostingsList> lists = partials.get(entry.getKey());
+				if (lists == null)
+				{
+					lists = new ArrayList<PostingsList>(1);
+					partials.put(entry.getKey(), lists);
+				}
+				lists.add(entry.getValue());
+			}
+		}
+
+		final String[] terms = partials.keySet().toArray(new String[partials.size()]);
+		Arrays.sort(terms);
+		List<Callable<PostingsList[]>> merging = new ArrayList<Callable<PostingsList[]>>(ranges);
+		for (int i = 0; i < ranges; i++)
+		{
+			final int from = (int) ((long) terms.length * i / ranges);
+			final int to = (int) ((long) terms.length * (i + 1) / ranges);
+			merging.add(new Callable<PostingsList[]>()
+			{
+				public PostingsList[] call()
+				{
+					PostingsList[] merged = new PostingsList[to - from];
+					for (int j = from; j < to; j++)
+					{
+						merged[j - from] = concatenate(partials.get(terms[j]));
+					}
+					return merged;
+				}
+			});
+		}
+		postingsList = new PostingsList[terms.length];
+		int term = 0;
+		for (PostingsList[] merged : invokeAll(pool, merging))
+		{
+			for (PostingsList postings : merged)
+			{
+				postingsList[term++] = postings;
+			}
+		}
+		dictionary = new TermDictionary(Arrays.asList(terms).iterator());
+	}
+
+	/**
+	 * Copies the segment onto the heap, postings are encoded into new lists.
+	 * Applied to a {@link CompositeSegment} merges its segments into one
+	 * without tokenizing the documents again.
+	 *
+	 * @param segment
+	 * Segment to copy.
+	 */
+	public MemorySegment(Segment segment)
+	{
+		int documentCount = segment.getDocumentCount();
+		euclideanLengths = new double[documentCount];
+		for (int documentId = 0; documentId < documentCount; documentId++)
+		{
+			Document document = segment.getDocument(documentId);
+			documents.add(document);
+			documentIds.put(document.getGuid(), documentId);
+			zoneLengths.add(segment.getZoneLengths(documentId));
+			euclideanLengths[documentId] = segment.getEuclideanLength(documentId);
+		}
+		dictionary = new TermDictionary(segment.getTerms().iterator());
+		postingsList = new PostingsList[dictionary.size()];
+		int ordinal = 0;
+		for (String term : dictionary)
+		{
+			PostingsList.Builder postings = new PostingsList.Builder();
+			postings.add(segment.getPostings(term), 0);
+			postingsList[ordinal++] = postings.build();
+		}
+	}
+
+	@Override
+	public Document getDocument(int documentId)
+	{
+		return documents.get(documentId);
+	}
+
+	@Override
+	public int getDocumentCount()
+	{
+		return documents.size();
+	}
+
+	@Override
+	public int getDocumentId(String guid)
+	{
+		Integer documentId = documentIds.get(guid);
+		if (documentId != null)
+		{
+			return documentId;
+		}
+		return -1;
+	}
+
+	@Override
+	public double getEuclideanLength(int documentId)
+	{
+		return euclideanLengths[documentId];
+	}
+
+	/**
+	 * Estimated once, the segment doesn't change.
+	 */
+	@Override
+	public long getHeapSize()
+	{
+		long heapSize = this.heapSize;
+		if (heapSize < 0)
+		{
+			heapSize = dictionary.getHeapSize() + Segment.getArraySize(postingsList.length, 4)
+					+ Segment.getArraySize(euclideanLengths.length, 8);
+			for (PostingsList postings : postingsList)
+			{
+				heapSize += postings.getHeapSize();
+			}
+			for (Document document : documents)
+			{
+				heapSize += getDocumentSize(document);
+			}
+			heapSize += documentIds.size() * ID_ENTRY_SIZE;
+			heapSize += zoneLengths.size()
+					* Segment.getArraySize(ZoneName.values().length, 4);
+			this.heapSize = heapSize;
+		}
+		return heapSize;
+	}
+
+	@Override
+	public PostingsList getPostings(String term)
+	{
+		int ordinal = dictionary.find(term);
+		return ordinal < 0 ? null : postingsList[ordinal];
+	}
+
+	@Override
+	public Set<String> getTerms()
+	{
+		return dictionary;
+	}
+
+	@Override
+	public Iterator<String> getTerms(String prefix)
+	{
+		return dictionary.iterator(prefix);
+	}
+
+	@Override
+	public int[] getZoneLengths(int documentId)
+	{
+		return zoneLengths.get(documentId).clone();
+	}
+
+	/**
+	 * Indexes documents with IDs in range [from, to). Each range writes
+	 * lengths of its own documents only, so ranges can be indexed
+	 * concurrently. Every occurrence is attributed to the zone of the document
+	 * it belongs to. Tokens are looked up in the range's dictionary by their
+	 * characters, no string is created for a term already met.
+	 *
+	 * @return Postings lists of the range's terms.
+	 */
+	private Map<String, PostingsList> indexRange(int from, int to)
+	{
+		Tokenizer tokenizer = new Tokenizer();
+		TermTable dictionary = new TermTable();
+		List<PostingsList.Builder> builders = new ArrayList<PostingsList.Builder>();
+		for (int documentId = from; documentId < to; documentId++)
+		{
+			Document document = documents.get(documentId);
+			int[] lengths = countZoneLengths(document);
+			zoneLengths.set(documentId, lengths);
+			tokenizer.reset(document.getText());
+			// zones follow each other in the text, zone of a position is
+			// found by moving past the zones ending before it
+			int zone = 0;
+			int zoneEnd = lengths[TEXT_ORDER[0].ordinal()];
+			for (int position = 0; tokenizer.next(); position++)
+			{
+				while (position >= zoneEnd && zone < TEXT_ORDER.length - 1)
+				{
+					zoneEnd += lengths[TEXT_ORDER[++zone].ordinal()];
+				}
+				int termId = dictionary.add(tokenizer.buffer(), tokenizer.length());
+				if (termId == builders.size())
+				{
+					builders.add(new PostingsList.Builder());
+				}
+				builders.get(termId).add(documentId, position, TEXT_ORDER[zone]);
+			}
+		}
+		Map<String, PostingsList> postingsList = new HashMap<String, PostingsList>(
+				builders.size() * 2);
+		for (int termId = 0; termId < builders.size(); termId++)
+		{
+			PostingsList postings = builders.get(termId).build();
+			postingsList.put(dictionary.getTerm(termId), postings);
+			PostingsIterator iterator = postings.iterator();
+			int documentId;
+			while ((documentId = iterator.nextDocument()) != PostingsIterator.NO_MORE_DOCUMENTS)
+			{
+				double termFrequency = iterator.termFrequency();
+				euclideanLengths[documentId] += termFrequency * termFrequency;
+			}
+		}
+		for (int documentId = from; documentId < to; documentId++)
+		{
+			euclideanLengths[documentId] = Math.sqrt(euclideanLengths[documentId]);
+		}
+		return postingsList;
+	}
+
+	/**
+	 * Concatenates partial postings lists of a term built for consecutive
+	 * ranges of documents.
+	 */
+	private static PostingsList concatenate(List<PostingsList> partials)
+	{
+		if (partials.size() == 1)
+		{
+			return partials.get(0);
+		}
+		PostingsList.Builder postings = new PostingsList.Builder();
+		for (PostingsList partial : partials)
+		{
+			postings.add(partial, 0);
+		}
+		return postings.build();
+	}
+
+	static <T> List<T> invokeAll(ForkJoinPool pool, List<Callable<T>> tasks)
+	{
+		List<T> results = new ArrayList<T>(tasks.size());
+		for (Future<T> future : pool.invokeAll(tasks))
+		{
+			try
+			{
+				results.add(future.get());
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Tasks have been interrupted.", e);
+			}
+			catch (ExecutionException e)
+			{
+				if (e.getCause() instanceof RuntimeException)
+				{
+					throw (RuntimeException) e.getCause();
+				}
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Minimal number of documents indexed by a single task
+	 */
+	private static final int MIN_RANGE_SIZE = 256;
+
+	/**
+	 * Estimated size of an entry of the GUIDs map, GUIDs themselves are
+	 * counted with the documents
+	 */
+	private static final int ID_ENTRY_SIZE = 56;
+
+	private final TermDictionary dictionary;
+
+	/**
+	 * Maps GUID of the document to its ID, which is an index in
+	 * {@link #documents documents list}
+	 */
+	private final Map<String, Integer> documentIds = new HashMap<String, Integer>();
+	private final List<Document> documents = new ArrayList<Document>();
+	private final double[] euclideanLengths;
+	private volatile long heapSize = -1;
+
+	/**
+	 * Postings lists indexed by {@link TermDictionary#find(String) ordinal} of
+	 * the term
+	 */
+	private final PostingsList[] postingsList;
+
+	/**
+	 * Numbers of tokens in the zones indexed by document ID, each array is
+	 * indexed by {@link ZoneName#ordinal() zone name ordinal}
+	 */
+	private final List<int[]> zoneLengths = new ArrayList<int[]>();
+}
@@ -0,0 +1,115 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import ua.edu.ukma.fin.iretrieval.ZoneName;
+
+/**
+ * Forward-only cursor over a {@link PostingsList}. Postings are visited in
+ * increasing order of document IDs, positions are decoded only for postings
+ * they are requested for. Besides the total term frequency every posting
+ * tells how many times the term occurs in each zone of the document.
+ */
+public abstract class PostingsIterator
+{
+	/**
+	 * Sentinel returned once the iterator is exhausted. Is greater than any
+	 * valid document ID, which simplifies merging of several lists.
+	 */
+	public static final int NO_MORE_DOCUMENTS = Integer.MAX_VALUE;
+
+	/**
+	 * Moves to the first posting with document ID greater or equal to the
+	 * target. Postings which can't match are skipped without being decoded
+	 * where possible.
+	 *
+	 * @param target
+	 * Document ID to advance to.
+	 *
+	 * @return Document ID of the new current posting or
+	 * {@link #NO_MORE_DOCUMENTS}.
+	 */
+	public abstract int advance(int target);
+
+	/**
+	 * @return Document ID of the current posting, -1 if iteration hasn't been
+	 * started or {@link #NO_MORE_DOCUMENTS} if it's over.
+	 */
+	public abstract int document();
+
+	/**
+	 * Gets the last document ID of the block which may contain the target
+	 * document. Iterator isn't moved and nothing is decoded.
+	 *
+	 * @param target
+	 * Document ID not less than the current one.
+	 *
+	 * @return Last document ID of the block or {@link #NO_MORE_DOCUMENTS} if
+	 * all the postings precede the target.
+	 */
+	public abstract int getBlockLastDocument(int target);
+
+	/**
+	 * Gets maximum term frequency within the block which may contain the
+	 * target document. Iterator isn't moved and nothing is decoded.
+	 *
+	 * @param target
+	 * Document ID not less than the current one.
+	 *
+	 * @return Maximum term frequency of the block or 0 if all the postings
+	 * precede the target.
+	 */
+	public abstract int getBlockMaxTermFrequency(int target);
+
+	/**
+	 * @return The greatest term frequency among all postings of the iterated
+	 * term.
+	 */
+	public abstract int getMaxTermFrequency();
+
+	/**
+	 * @return Number of postings decoded so far, postings of skipped blocks
+	 * aren't counted.
+	 */
+	public abstract int getScannedCount();
+
+	/**
+	 * Moves to the next posting.
+	 *
+	 * @return Document ID of the new current posting or
+	 * {@link #NO_MORE_DOCUMENTS}.
+	 */
+	public abstract int nextDocument();
+
+	/**
+	 * Decodes positions of the term in the current document. Can be called
+	 * only once per posting.
+	 *
+	 * @return Sorted array of positions, its length equals to
+	 * {@link #termFrequency() term frequency}.
+	 */
+	public abstract int[] positions();
+
+	/**
+	 * @return Document frequency of the iterated term.
+	 */
+	public abstract int size();
+
+	/**
+	 * @return How many times the term occurs in the current document.
+	 */
+	public abstract int termFrequency();
+
+	/**
+	 * @return Zones of the current document the term occurs in, bit
+	 * <code>1 << zone.ordinal()</code> is set for every such zone.
+	 */
+	public abstract int zoneMask();
+
+	/**
+	 * @param zone
+	 * Name of the zone.
+	 *
+	 * @return How many times the term occurs in the zone of the current
+	 * document.
+	 */
+	public abstract int zoneTermFrequency(ZoneName zone);
+}
@@ -0,0 +1,237 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import ua.edu.ukma.fin.iretrieval.ZoneName;
+
+/**
+ * Immutable list of postings for a single term. Each posting holds document
+ * ID, term frequency in the document and positions of the term occurrences.
+ * Postings are sorted by document ID and grouped into blocks of
+ * {@link #BLOCK_SIZE} entries. Maximum term frequency is kept for the whole
+ * list and for every block, which gives upper bounds of the term's
+ * contribution to a score for dynamic pruning. Every posting also records
+ * the zones of the document the term occurs in and the term frequency in
+ * each of them, so zones are scored without looking at the documents.
+ *
+ * @see "Introduction to information retrieval. 2.4.2 Positional indexes"
+ * @see "Introduction to information retrieval. 5.3 Postings file compression"
+ */
+public abstract class PostingsList
+{
+	/**
+	 * Maximum number of postings in a single block.
+	 */
+	public static final int BLOCK_SIZE = 128;
+
+	/**
+	 * Number of bits in masks of zones, one per {@link ZoneName}.
+	 */
+	public static final int ZONE_BITS = ZoneName.values().length;
+
+	/**
+	 * @return The greatest term frequency among all postings.
+	 */
+	public abstract int getMaxTermFrequency();
+
+	/**
+	 * @return Estimated number of bytes the list holds on the heap, postings
+	 * read in place from a memory-mapped file aren't counted.
+	 *
+	 * @see Segment#getHeapSize()
+	 */
+	public abstract long getHeapSize();
+
+	/**
+	 * @return Fresh iterator positioned before the first posting.
+	 */
+	public abstract PostingsIterator iterator();
+
+	/**
+	 * Number of postings in the list, which is the document frequency of the
+	 * term.
+	 *
+	 * @return Number of postings.
+	 */
+	public abstract int size();
+
+	/**
+	 * Decodes document IDs of the whole list.
+	 *
+	 * @return Sorted array of document IDs.
+	 */
+	public int[] toArray()
+	{
+		int[] documents = new int[size()];
+		PostingsIterator iterator = iterator();
+		for (int i = 0; i < documents.length; i++)
+		{
+			documents[i] = iterator.nextDocument();
+		}
+		return documents;
+	}
+
+	/**
+	 * Accumulates postings of a term while documents are being indexed.
+	 * Occurrences must be added in document order and, within a document, in
+	 * position order.
+	 */
+	public static class Builder
+	{
+		/**
+		 * Registers an occurrence of the term outside of any zone.
+		 *
+		 * @see #add(int, int, ZoneName)
+		 */
+		public void add(int documentId, int position)
+		{
+			add(documentId, position, null);
+		}
+
+		/**
+		 * Registers an occurrence of the term. The first occurrence in a
+		 * document creates a new posting, subsequent ones increase its term
+		 * frequency. Zones should be given either for all occurrences in a
+		 * document or for none of them.
+		 *
+		 * @param documentId
+		 * Document ID, must not be less than the last one added.
+		 *
+		 * @param position
+		 * Position of the term in the document text (number of tokens preceding
+		 * it), must be greater than the last position added for the same
+		 * document.
+		 *
+		 * @param zone
+		 * Zone of the document the occurrence belongs to, null if unknown.
+		 */
+		public void add(int documentId, int position, ZoneName zone)
+		{
+			if (documentId < lastDocument || documentId == lastDocument
+					&& position <= lastPosition)
+			{
+				throw new IllegalArgumentException("Postings must be added in increasing order: "
+						+ documentId + ":" + position + " after " + lastDocument + ":"
+						+ lastPosition);
+			}
+			if (documentId != lastDocument)
+			{
+				flush();
+				if (size % BLOCK_SIZE == 0)
+				{
+					int block = size / BLOCK_SIZE;
+					if (block == blockOffsets.length)
+					{
+						blockOffsets = Arrays.copyOf(blockOffsets, block * 2);
+						blockPositionOffsets = Arrays.copyOf(blockPositionOffsets, block * 2);
+						blockLastDocuments = Arrays.copyOf(blockLastDocuments, block * 2);
+						blockMaxTermFrequencies = Arrays.copyOf(blockMaxTermFrequencies, block * 2);
+					}
+					blockOffsets[block] = output.size();
+					blockPositionOffsets[block] = positionsOutput.size();
+				}
+				output.writeInt(documentId - lastDocument);
+				blockLastDocuments[size / BLOCK_SIZE] = documentId;
+				lastDocument = documentId;
+				lastPosition = -1;
+				size++;
+			}
+			positionsOutput.writeInt(lastPosition == -1 ? position : position - lastPosition);
+			lastPosition = position;
+			termFrequency++;
+			if (zone != null)
+			{
+				zoneTermFrequencies[zone.ordinal()]++;
+			}
+		}
+
+		/**
+		 * Appends all postings of the list, zones of the occurrences are
+		 * preserved. Used to merge postings of several segments without
+		 * tokenizing documents again.
+		 *
+		 * @param postings
+		 * Postings to append.
+		 *
+		 * @param base
+		 * Value added to document IDs of the appended postings, must make them
+		 * greater than the last one added.
+		 */
+		public void add(PostingsList postings, int base)
+		{
+			PostingsIterator iterator = postings.iterator();
+			int documentId;
+			while ((documentId = iterator.nextDocument()) != PostingsIterator.NO_MORE_DOCUMENTS)
+			{
+				for (int position : iterator.positions())
+				{
+					add(base + documentId, position, null);
+				}
+				for (ZoneName zone : ZONES)
+				{
+					zoneTermFrequencies[zone.ordinal()] = iterator.zoneTermFrequency(zone);
+				}
+			}
+		}
+
+		/**
+		 * @return Immutable compressed postings list.
+		 */
+		public PostingsList build()
+		{
+			flush();
+			int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+			return new BlockPostingsList(ByteBuffer.wrap(output.toByteArray()),
+					ByteBuffer.wrap(positionsOutput.toByteArray()), size,
+					Arrays.copyOf(blockLastDocuments, blocks), Arrays.copyOf(blockOffsets, blocks),
+					Arrays.copyOf(blockPositionOffsets, blocks), Arrays.copyOf(blockMaxTermFrequencies,
+							blocks));
+		}
+
+		private void flush()
+		{
+			if (termFrequency > 0)
+			{
+				int zoneMask = 0;
+				for (int zone = 0; zone < ZONE_BITS; zone++)
+				{
+					if (zoneTermFrequencies[zone] > 0)
+					{
+						zoneMask |= 1 << zone;
+					}
+				}
+				output.writeInt(termFrequency << ZONE_BITS | zoneMask);
+				if (Integer.bitCount(zoneMask) > 1)
+				{
+					for (int zone = 0; zone < ZONE_BITS; zone++)
+					{
+						if (zoneTermFrequencies[zone] > 0)
+						{
+							output.writeInt(zoneTermFrequencies[zone]);
+						}
+					}
+				}
+				Arrays.fill(zoneTermFrequencies, 0);
+				int block = (size - 1) / BLOCK_SIZE;
+				blockMaxTermFrequencies[block] = Math.max(blockMaxTermFrequencies[block],
+						termFrequency);
+				termFrequency = 0;
+			}
+		}
+
+		private int[] blockLastDocuments = new int[1];
+		private int[] blockMaxTermFrequencies = new int[1];
+		private int[] blockOffsets = new int[1];
+		private int[] blockPositionOffsets = new int[1];
+		private int lastDocument = -1;
+		private int lastPosition = -1;
+		private final VariableByteOutput output = new VariableByteOutput();
+		private final VariableByteOutput positionsOutput = new VariableByteOutput();
+		private int size = 0;
+		private int termFrequency = 0;
+		private final int[] zoneTermFrequencies = new int[ZONE_BITS];
+	}
+
+	private static final ZoneName[] ZONES = ZoneName.values();
+}
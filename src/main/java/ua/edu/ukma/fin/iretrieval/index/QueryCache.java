@@ -0,0 +1,363 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ua.edu.ukma.fin.iretrieval.BooleanQuery;
+import ua.edu.ukma.fin.iretrieval.Document;
+import ua.edu.ukma.fin.iretrieval.Query;
+
+/**
+ * Bounded cache of query results shared by the readers of an
+ * {@link IndexManager}. Results are keyed on the normalized query (its terms
+ * with their frequencies, or the expression of a Boolean query), number of
+ * results requested, type of the index and the version of the snapshot they
+ * were retrieved from, so results of an older version are never returned.
+ *
+ * Size of the cache is measured in documents held by the cached results
+ * rather than in entries. Entries are kept in LRU order, but a new entry
+ * displaces the least recently used one only if its query has been asked
+ * more often recently, as estimated by a TinyLFU frequency sketch. One-off
+ * queries thus can't flush popular results out of the cache.
+ *
+ * Cache is thread-safe, results are retrieved outside of its lock, so
+ * concurrent misses of the same query may retrieve it more than once.
+ */
+public class QueryCache
+{
+	/**
+	 * @param capacity
+	 * Maximum number of documents held by the cached results, every entry
+	 * also counts as one document.
+	 */
+	public QueryCache(int capacity)
+	{
+		if (capacity <= 0)
+		{
+			throw new IllegalArgumentException("Capacity of the cache must be positive: "
+					+ capacity);
+		}
+		this.capacity = capacity;
+		this.sketch = new FrequencySketch(capacity);
+	}
+
+	/**
+	 * Removes all the results, e.g. when a new version of the index is
+	 * published.
+	 */
+	public synchronized void clear()
+	{
+		entries.clear();
+		weight = 0;
+	}
+
+	/**
+	 * @return Number of documents the cached results may hold.
+	 */
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * @return Number of results removed to make room for new ones.
+	 */
+	public synchronized long getEvictionCount()
+	{
+		return evictionCount;
+	}
+
+	/**
+	 * @return Number of queries answered from the cache.
+	 */
+	public synchronized long getHitCount()
+	{
+		return hitCount;
+	}
+
+	/**
+	 * @return Share of queries answered from the cache, 0 if there were no
+	 * queries.
+	 */
+	public synchronized double getHitRate()
+	{
+		long requestCount = hitCount + missCount;
+		return requestCount == 0 ? 0.0 : (double) hitCount / requestCount;
+	}
+
+	/**
+	 * @return Number of queries retrieved from the index.
+	 */
+	public synchronized long getMissCount()
+	{
+		return missCount;
+	}
+
+	/**
+	 * @return Number of retrieved results which weren't cached because
+	 * cached ones were asked more often.
+	 */
+	public synchronized long getRejectionCount()
+	{
+		return rejectionCount;
+	}
+
+	/**
+	 * @return Number of documents held by the cached results.
+	 */
+	public synchronized int getWeight()
+	{
+		return weight;
+	}
+
+	/**
+	 * Returns cached results of the query or retrieves them from the snapshot
+	 * and caches them.
+	 *
+	 * @param snapshot
+	 * Version of the index to retrieve documents from.
+	 *
+	 * @param query
+	 * Query to retrieve documents for.
+	 *
+	 * @param k
+	 * Maximum number of documents to retrieve.
+	 *
+	 * @return List of documents ordered from the most relevant to the least
+	 * relevant one.
+	 */
+	public List<Document> retrieveDocuments(IndexSnapshot snapshot, Query query, int k)
+	{
+		Key key = new Key(snapshot, query, k);
+		List<Document> documents = get(key);
+		if (documents == null)
+		{
+			documents = snapshot.getIndex().retrieveDocuments(query, k);
+			put(key, Collections.unmodifiableList(new ArrayList<Document>(documents)));
+			return documents;
+		}
+		return new ArrayList<Document>(documents);
+	}
+
+	/**
+	 * @return Number of cached results.
+	 */
+	public synchronized int size()
+	{
+		return entries.size();
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return String.format("%d results of %d documents, %d hits, %d misses (%.1f%%), "
+				+ "%d evictions, %d rejections", entries.size(), weight, hitCount, missCount,
+				getHitRate() * 100, evictionCount, rejectionCount);
+	}
+
+	private synchronized List<Document> get(Key key)
+	{
+		sketch.increment(key.hashCode());
+		List<Document> documents = entries.get(key);
+		if (documents == null)
+		{
+			missCount++;
+		}
+		else
+		{
+			hitCount++;
+		}
+		return documents;
+	}
+
+	/**
+	 * Admits the results if there is room for them or they are asked more
+	 * often than the least recently used results, which are evicted then.
+	 */
+	private synchronized void put(Key key, List<Document> documents)
+	{
+		int entryWeight = documents.size() + 1;
+		if (entryWeight > capacity || entries.containsKey(key))
+		{
+			return;
+		}
+		if (weight + entryWeight > capacity)
+		{
+			Key victim = entries.keySet().iterator().next();
+			if (sketch.frequency(key.hashCode()) <= sketch.frequency(victim.hashCode()))
+			{
+				rejectionCount++;
+				return;
+			}
+			Iterator<Map.Entry<Key, List<Document>>> eldest = entries.entrySet().iterator();
+			while (weight + entryWeight > capacity)
+			{
+				weight -= eldest.next().getValue().size() + 1;
+				eldest.remove();
+				evictionCount++;
+			}
+		}
+		entries.put(key, documents);
+		weight += entryWeight;
+	}
+
+	/**
+	 * Count-min sketch of 4-bit counters estimating how often keys are asked.
+	 * Counters are halved once the number of increments reaches ten times
+	 * the size of the table, so the frequencies reflect recent queries.
+	 *
+	 * @see <a href="https://arxiv.org/abs/1512.00727">TinyLFU: A Highly
+	 * Efficient Cache Admission Policy</a>
+	 */
+	private static final class FrequencySketch
+	{
+		FrequencySketch(int capacity)
+		{
+			int size = Math.min(Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1, 1 << 24);
+			table = new long[size / 16];
+			mask = size - 1;
+			sampleSize = 10 * size;
+		}
+
+		int frequency(int hash)
+		{
+			int frequency = Integer.MAX_VALUE;
+			for (int i = 0; i < SEEDS.length; i++)
+			{
+				int counter = counterIndex(hash, i);
+				int count = (int) (table[counter >>> 4] >>> ((counter & 15) << 2)) & 15;
+				frequency = Math.min(frequency, count);
+			}
+			return frequency;
+		}
+
+		void increment(int hash)
+		{
+			boolean incremented = false;
+			for (int i = 0; i < SEEDS.length; i++)
+			{
+				int counter = counterIndex(hash, i);
+				int shift = (counter & 15) << 2;
+				if ((table[counter >>> 4] >>> shift & 15) < 15)
+				{
+					table[counter >>> 4] += 1L << shift;
+					incremented = true;
+				}
+			}
+			if (incremented && ++additions >= sampleSize)
+			{
+				for (int i = 0; i < table.length; i++)
+				{
+					table[i] = table[i] >>> 1 & 0x7777777777777777L;
+				}
+				additions /= 2;
+			}
+		}
+
+		private int counterIndex(int hash, int row)
+		{
+			long h = (hash + SEEDS[row]) * SEEDS[row];
+			h += h >>> 32;
+			return (int) h & mask;
+		}
+
+		private static final long[] SEEDS = { 0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L,
+				0x9AE16A3B2F90404FL, 0xCBF29CE484222325L };
+
+		private int additions = 0;
+		private final int mask;
+		private final int sampleSize;
+		private final long[] table;
+	}
+
+	/**
+	 * Identifies results of a query retrieved from a version of an index.
+	 */
+	private static final class Key
+	{
+		Key(IndexSnapshot snapshot, Query query, int k)
+		{
+			this.version = snapshot.getVersion();
+			this.type = snapshot.getIndex().getClass();
+			this.k = k;
+			this.query = normalize(query);
+			// name of the class hashes the same way in every run, so does the
+			// key and its frequency estimate
+			this.hashCode = ((Long.valueOf(version).hashCode() * 31 + type.getName().hashCode())
+					* 31 + k) * 31 + this.query.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj) return true;
+			if (obj == null || getClass() != obj.getClass()) return false;
+			Key other = (Key) obj;
+			return version == other.version && k == other.k && type == other.type
+					&& query.equals(other.query);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hashCode;
+		}
+
+		/**
+		 * Boolean queries are identified by their expressions, ranked ones by
+		 * sorted terms with their frequencies and sorted wildcards, which is
+		 * all that scores depend on.
+		 */
+		private static String normalize(Query query)
+		{
+			if (query instanceof BooleanQuery)
+			{
+				return "?" + query;
+			}
+			String[] terms = query.getTerms().toArray(new String[query.getTerms().size()]);
+			Arrays.sort(terms);
+			StringBuilder normalized = new StringBuilder();
+			for (String term : terms)
+			{
+				normalized.append(term).append(' ').append(query.getTermFrequency(term)).append(' ');
+			}
+			String[] wildcards = query.getWildcards().toArray(
+					new String[query.getWildcards().size()]);
+			Arrays.sort(wildcards);
+			for (String wildcard : wildcards)
+			{
+				normalized.append(wildcard).append(' ');
+			}
+			return normalized.toString();
+		}
+
+		private final int hashCode;
+		private final int k;
+		private final String query;
+		private final Class<?> type;
+		private final long version;
+	}
+
+	private final int capacity;
+
+	/**
+	 * Cached results in the order of access, the least recently used first
+	 */
+	private final LinkedHashMap<Key, List<Document>> entries =
+			new LinkedHashMap<Key, List<Document>>(16, 0.75f, true);
+	private long evictionCount = 0;
+	private long hitCount = 0;
+	private long missCount = 0;
+	private long rejectionCount = 0;
+	private final FrequencySketch sketch;
+
+	/**
+	 * Number of documents held by the cached results
+	 */
+	private int weight = 0;
+}
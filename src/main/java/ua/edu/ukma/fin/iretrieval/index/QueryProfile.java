@@ -0,0 +1,137 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Breakdown of the time a query took by stage of its evaluation. Profile is
+ * bound to the thread evaluating the query, so the stages are
+ * {@link #lap(Stage) marked} deep inside the search methods without passing
+ * the profile around. Every lap adds the time elapsed since the previous one
+ * to its stage, stages repeated, e.g. by shards evaluated on the same thread,
+ * are summed up. Marking a stage on a thread without a profile does nothing.
+ *
+ * @see SearchMetrics#setSlowQueryThreshold(long)
+ */
+final class QueryProfile
+{
+	/**
+	 * Stage of the query evaluation
+	 */
+	enum Stage
+	{
+		/**
+		 * Expanding wildcards of the query
+		 */
+		EXPAND,
+
+		/**
+		 * Looking the query terms up in the dictionary, opening their postings
+		 * and preparing the score function
+		 */
+		POSTINGS,
+
+		/**
+		 * Traversing postings and scoring the candidate documents
+		 */
+		SCORING,
+
+		/**
+		 * Sorting the best candidates, merging results of the shards
+		 */
+		TOP_K,
+
+		/**
+		 * Loading the retrieved documents from the segment
+		 */
+		MATERIALIZE
+	}
+
+	/**
+	 * @return Nanoseconds since the profile was started.
+	 */
+	long getElapsedTime()
+	{
+		return last - start;
+	}
+
+	/**
+	 * @return Nanoseconds spent in the stage.
+	 */
+	long getStageTime(Stage stage)
+	{
+		Long time = stageTimes.get(stage);
+		return time == null ? 0 : time;
+	}
+
+	/**
+	 * Attributes the time elapsed since the previous lap to the stage of the
+	 * current thread's profile, if it has one.
+	 */
+	static void lap(Stage stage)
+	{
+		QueryProfile profile = current.get();
+		if (profile != null)
+		{
+			long now = System.nanoTime();
+			profile.stageTimes.put(stage, profile.getStageTime(stage) + now - profile.last);
+			profile.last = now;
+		}
+	}
+
+	/**
+	 * Starts profiling the current thread's query.
+	 *
+	 * @return Profile to be {@link #stop() stopped} once the query is
+	 * answered.
+	 */
+	static QueryProfile start()
+	{
+		QueryProfile profile = new QueryProfile();
+		current.set(profile);
+		return profile;
+	}
+
+	/**
+	 * Unbinds the profile from the thread.
+	 */
+	void stop()
+	{
+		if (current.get() == this)
+		{
+			current.remove();
+		}
+	}
+
+	/**
+	 * @return Milliseconds spent in every stage, e.g.
+	 * <code>expand=0.010 postings=0.120 ...</code>
+	 */
+	@Override
+	public String toString()
+	{
+		StringBuilder builder = new StringBuilder();
+		for (Stage stage : Stage.values())
+		{
+			if (builder.length() > 0)
+			{
+				builder.append(' ');
+			}
+			builder.append(stage.name().toLowerCase(Locale.ENGLISH)).append('=');
+			builder.append(String.format("%.3f", getStageTime(stage) / 1e6));
+		}
+		return builder.toString();
+	}
+
+	private QueryProfile()
+	{
+		start = last = System.nanoTime();
+	}
+
+	private static final ThreadLocal<QueryProfile> current = new ThreadLocal<QueryProfile>();
+
+	private long last;
+	private final long start;
+	private final Map<Stage, Long> stageTimes = new EnumMap<Stage, Long>(Stage.class);
+}
@@ -0,0 +1,26 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+/**
+ * Scores candidate documents during document-at-a-time query evaluation.
+ * Instances are created per query by {@link Index#getScoreFunction(ua.edu.ukma.fin.iretrieval.Query, String[])}
+ * and may precompute any query-dependent values (e.g. inverse document
+ * frequencies of the terms).
+ */
+public interface ScoreFunction
+{
+	/**
+	 * Calculates relevance score of the document.
+	 * 
+	 * @param documentId
+	 * ID of the candidate document.
+	 * 
+	 * @param postings
+	 * Postings iterators of the query terms, in the order of terms the score
+	 * function was created for. Term occurs in the document if its iterator is
+	 * positioned on the documentId, such iterator exposes term frequency and
+	 * positions.
+	 * 
+	 * @return Relevance score, greater is better.
+	 */
+	public double score(int documentId, PostingsIterator[] postings);
+}
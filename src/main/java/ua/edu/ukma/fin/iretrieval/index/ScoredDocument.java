@@ -0,0 +1,47 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+/**
+ * Document ID paired with the score it got for a query.
+ */
+public class ScoredDocument implements Comparable<ScoredDocument>
+{
+	public ScoredDocument(int documentId, double score)
+	{
+		this.documentId = documentId;
+		this.score = score;
+	}
+
+	/**
+	 * Orders documents from the least relevant to the most relevant one. Of
+	 * two documents with the same score the one with the lower ID is
+	 * considered more relevant.
+	 */
+	public int compareTo(ScoredDocument other)
+	{
+		int result = Double.compare(score, other.score);
+		if (result == 0)
+		{
+			result = Integer.compare(other.documentId, documentId);
+		}
+		return result;
+	}
+
+	public int getDocumentId()
+	{
+		return documentId;
+	}
+
+	public double getScore()
+	{
+		return score;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "ScoredDocument[documentId=" + documentId + ",score=" + score + "]";
+	}
+
+	private final int documentId;
+	private final double score;
+}
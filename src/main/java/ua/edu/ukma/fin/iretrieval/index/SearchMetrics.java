@@ -0,0 +1,357 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Metrics of indexing and retrieval shared by all the indexes of the process:
+ *
+ * <ul>
+ * <li>latency histogram of the queries evaluated by every {@link IndexType
+ * index type};</li>
+ * <li>numbers of postings decoded and candidate documents scored;</li>
+ * <li>hits and misses of the query cache of the
+ * {@link #monitor(IndexManager) monitored} manager;</li>
+ * <li>durations of the build phases: fetching and parsing a feed,
+ * normalizing an item into a document and inverting documents into a
+ * segment;</li>
+ * <li>estimated heap size of the monitored index and heap used by the
+ * JVM;</li>
+ * <li>number of queries slower than the {@link #setSlowQueryThreshold(long)
+ * threshold}, which are also written to the slow query log.</li>
+ * </ul>
+ *
+ * Metrics are recorded all the time, their cost is a few atomic increments
+ * per query. They are exposed over JMX once {@link #register() registered}
+ * and as a {@link #dump() text report}.
+ */
+public final class SearchMetrics implements SearchMetricsMBean
+{
+	/**
+	 * Phase of building an index
+	 */
+	public enum Phase
+	{
+		/**
+		 * Reading and parsing a feed
+		 */
+		FETCH,
+
+		/**
+		 * Converting an item of a feed into a document
+		 */
+		NORMALIZE,
+
+		/**
+		 * Indexing documents into a segment
+		 */
+		INVERT
+	}
+
+	public String dump()
+	{
+		StringBuilder dump = new StringBuilder();
+		dump.append("Query latency:\n");
+		for (IndexType type : IndexType.values())
+		{
+			LatencyHistogram latency = latencies.get(type);
+			if (latency.getCount() > 0)
+			{
+				dump.append(String.format("  %-13s %s%n", type, latency));
+			}
+		}
+		dump.append(String.format("Postings scanned: %d, candidates scored: %d%n",
+				getPostingsScanned(), getCandidatesScored()));
+		if (isProfiling())
+		{
+			dump.append(String.format("Slow queries: %d (threshold %d ms)%n",
+					getSlowQueryCount(), getSlowQueryThreshold()));
+		}
+		dump.append(String.format("Query cache: %d hits, %d misses (%.1f%%)%n", getCacheHits(),
+				getCacheMisses(), getCacheHitRate() * 100));
+		dump.append("Build phases:\n");
+		for (Phase phase : Phase.values())
+		{
+			LatencyHistogram time = phaseTimes.get(phase);
+			dump.append(String.format("  %-13s total=%.3f ms %s%n", phase, time.getTotalMillis(),
+					time));
+		}
+		dump.append(String.format("Index: version %d, %d documents, %.1f MB on heap "
+				+ "(estimated)%n", getIndexVersion(), getIndexDocuments(), getIndexHeapSize()
+				/ BYTES_PER_MEGABYTE));
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		dump.append(String.format("Heap: %.1f MB used of %.1f MB%n", heap.getUsed()
+				/ BYTES_PER_MEGABYTE, heap.getMax() / BYTES_PER_MEGABYTE));
+		return dump.toString();
+	}
+
+	public double getCacheHitRate()
+	{
+		QueryCache queryCache = getQueryCache();
+		return queryCache == null ? 0.0 : queryCache.getHitRate();
+	}
+
+	public long getCacheHits()
+	{
+		QueryCache queryCache = getQueryCache();
+		return queryCache == null ? 0 : queryCache.getHitCount();
+	}
+
+	public long getCacheMisses()
+	{
+		QueryCache queryCache = getQueryCache();
+		return queryCache == null ? 0 : queryCache.getMissCount();
+	}
+
+	public long getCandidatesScored()
+	{
+		return candidatesScored.sum();
+	}
+
+	public long getHeapUsed()
+	{
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	public long getIndexDocuments()
+	{
+		IndexManager manager = this.manager;
+		return manager == null ? 0 : manager.acquire().getIndex().getDocumentCount();
+	}
+
+	/**
+	 * @return Estimated number of bytes the monitored index holds on the
+	 * heap, postings and documents of memory-mapped segments aren't counted.
+	 */
+	public long getIndexHeapSize()
+	{
+		IndexManager manager = this.manager;
+		return manager == null ? 0 : manager.acquire().getIndex().segment.getHeapSize();
+	}
+
+	public long getIndexVersion()
+	{
+		IndexManager manager = this.manager;
+		return manager == null ? 0 : manager.acquire().getVersion();
+	}
+
+	/**
+	 * @return Metrics of the process.
+	 */
+	public static SearchMetrics getInstance()
+	{
+		return INSTANCE;
+	}
+
+	/**
+	 * @param type
+	 * Type of the index.
+	 *
+	 * @return Latencies of the queries evaluated by indexes of the type.
+	 */
+	public LatencyHistogram getLatency(IndexType type)
+	{
+		return latencies.get(type);
+	}
+
+	/**
+	 * @param phase
+	 * Phase of building an index.
+	 *
+	 * @return Durations of the phase.
+	 */
+	public LatencyHistogram getPhaseTime(Phase phase)
+	{
+		return phaseTimes.get(phase);
+	}
+
+	public long getPostingsScanned()
+	{
+		return postingsScanned.sum();
+	}
+
+	public long getQueryCount()
+	{
+		long queryCount = 0;
+		for (LatencyHistogram latency : latencies.values())
+		{
+			queryCount += latency.getCount();
+		}
+		return queryCount;
+	}
+
+	public long getSlowQueryCount()
+	{
+		return slowQueryCount.sum();
+	}
+
+	/**
+	 * @return Milliseconds a query must take to be logged as slow, negative if
+	 * the slow query log is off.
+	 */
+	public long getSlowQueryThreshold()
+	{
+		return slowQueryThreshold;
+	}
+
+	/**
+	 * Reports the index and the query cache of the manager.
+	 *
+	 * @param manager
+	 * Manager of the index serving queries, null to stop reporting it.
+	 */
+	public void monitor(IndexManager manager)
+	{
+		this.manager = manager;
+	}
+
+	/**
+	 * Registers the metrics, query latencies and build phase durations with
+	 * the platform MBean server under the
+	 * <code>ua.edu.ukma.fin.iretrieval</code> domain. Registering again has no
+	 * effect.
+	 */
+	public synchronized void register()
+	{
+		if (registered)
+		{
+			return;
+		}
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try
+		{
+			server.registerMBean(this, new ObjectName(DOMAIN + ":type=SearchMetrics"));
+			for (Map.Entry<IndexType, LatencyHistogram> latency : latencies.entrySet())
+			{
+				server.registerMBean(latency.getValue(), new ObjectName(DOMAIN
+						+ ":type=QueryLatency,index=" + latency.getKey()));
+			}
+			for (Map.Entry<Phase, LatencyHistogram> time : phaseTimes.entrySet())
+			{
+				server.registerMBean(time.getValue(), new ObjectName(DOMAIN
+						+ ":type=BuildPhase,phase=" + time.getKey()));
+			}
+			registered = true;
+		}
+		catch (JMException e)
+		{
+			logger.log(Level.WARNING, "Metrics can''t be registered: {0}.", e);
+		}
+	}
+
+	/**
+	 * Turns the slow query log on or off. Queries taking at least the
+	 * threshold are written to the <code>com.iretrieval.index.slowlog</code>
+	 * logger at the WARNING level, with their index type, time spent in every
+	 * stage of evaluation and document frequencies of their terms. While the
+	 * log is on, every query is profiled, which costs a few reads of the clock
+	 * per query.
+	 *
+	 * @param threshold
+	 * Threshold in milliseconds, 0 logs every query, negative turns the log
+	 * off.
+	 */
+	public void setSlowQueryThreshold(long threshold)
+	{
+		slowQueryThreshold = threshold;
+	}
+
+	/**
+	 * @return TRUE if queries are to be profiled for the slow query log.
+	 */
+	boolean isProfiling()
+	{
+		return slowQueryThreshold >= 0;
+	}
+
+	/**
+	 * @param nanos
+	 * Duration of a query in nanoseconds.
+	 *
+	 * @return TRUE if the slow query log is on and the query has taken at
+	 * least the threshold.
+	 */
+	boolean isSlowQuery(long nanos)
+	{
+		long threshold = slowQueryThreshold;
+		return threshold >= 0 && nanos >= threshold * NANOS_PER_MILLI;
+	}
+
+	/**
+	 * Records how many postings an evaluation has decoded and how many
+	 * candidates it has scored.
+	 */
+	void recordEvaluation(long scanned, long scored)
+	{
+		postingsScanned.add(scanned);
+		candidatesScored.add(scored);
+	}
+
+	void recordPhase(Phase phase, long nanos)
+	{
+		phaseTimes.get(phase).record(nanos);
+	}
+
+	void recordQuery(IndexType type, long nanos)
+	{
+		latencies.get(type).record(nanos);
+	}
+
+	/**
+	 * Writes the entry to the slow query log.
+	 *
+	 * @param entry
+	 * Entry describing the query, its type, profile and terms.
+	 */
+	void recordSlowQuery(String entry)
+	{
+		slowQueryCount.increment();
+		slowQueryLogger.log(Level.WARNING, entry);
+	}
+
+	private SearchMetrics()
+	{
+		for (IndexType type : IndexType.values())
+		{
+			latencies.put(type, new LatencyHistogram());
+		}
+		for (Phase phase : Phase.values())
+		{
+			phaseTimes.put(phase, new LatencyHistogram());
+		}
+	}
+
+	private QueryCache getQueryCache()
+	{
+		IndexManager manager = this.manager;
+		return manager == null ? null : manager.getQueryCache();
+	}
+
+	private static final double BYTES_PER_MEGABYTE = 1024.0 * 1024.0;
+	private static final String DOMAIN = "ua.edu.ukma.fin.iretrieval";
+	private static final SearchMetrics INSTANCE = new SearchMetrics();
+	private static final long NANOS_PER_MILLI = 1000000L;
+	private static final Logger logger = Logger.getLogger("com.iretrieval.index");
+	private static final Logger slowQueryLogger = Logger
+			.getLogger("com.iretrieval.index.slowlog");
+
+	private final LongAdder candidatesScored = new LongAdder();
+	private final Map<IndexType, LatencyHistogram> latencies =
+			new EnumMap<IndexType, LatencyHistogram>(IndexType.class);
+	private volatile IndexManager manager = null;
+	private final Map<Phase, LatencyHistogram> phaseTimes =
+			new EnumMap<Phase, LatencyHistogram>(Phase.class);
+	private final LongAdder postingsScanned = new LongAdder();
+	private boolean registered = false;
+	private final LongAdder slowQueryCount = new LongAdder();
+	private volatile long slowQueryThreshold = -1;
+}
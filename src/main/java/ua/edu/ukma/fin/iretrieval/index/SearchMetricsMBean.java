@@ -0,0 +1,40 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+/**
+ * Management interface of {@link SearchMetrics}, attributes are shown by JMX
+ * consoles such as JConsole. Latencies of queries and build phases are
+ * registered as separate {@link LatencyHistogramMBean histograms}.
+ */
+public interface SearchMetricsMBean
+{
+	double getCacheHitRate();
+
+	long getCacheHits();
+
+	long getCacheMisses();
+
+	long getCandidatesScored();
+
+	long getHeapUsed();
+
+	long getIndexDocuments();
+
+	long getIndexHeapSize();
+
+	long getIndexVersion();
+
+	long getPostingsScanned();
+
+	long getQueryCount();
+
+	long getSlowQueryCount();
+
+	long getSlowQueryThreshold();
+
+	void setSlowQueryThreshold(long threshold);
+
+	/**
+	 * @return Metrics as a text report.
+	 */
+	String dump();
+}
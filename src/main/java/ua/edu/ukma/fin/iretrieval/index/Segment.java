@@ -0,0 +1,285 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ua.edu.ukma.fin.iretrieval.Document;
+import ua.edu.ukma.fin.iretrieval.Tokenizer;
+import ua.edu.ukma.fin.iretrieval.Utils;
+import ua.edu.ukma.fin.iretrieval.ZoneName;
+
+/**
+ * Immutable storage of an index: documents addressed by dense integer IDs, the
+ * dictionary, postings lists of the terms and per-document statistics needed
+ * for scoring. Indexes of all types are views on a segment that differ only
+ * in the way documents are ranked.
+ */
+public abstract class Segment
+{
+	/**
+	 * Wildcard matching any single character
+	 */
+	public static final char ANY_CHARACTER = '?';
+
+	/**
+	 * Wildcard matching any sequence of characters, including an empty one
+	 */
+	public static final char ANY_CHARACTERS = '*';
+
+	/**
+	 * Order in which zones' content is concatenated by
+	 * {@link Document#getText()}
+	 */
+	public static final ZoneName[] TEXT_ORDER = { ZoneName.Title, ZoneName.Description,
+			ZoneName.Categories, ZoneName.ExtraFields };
+
+	/**
+	 * Expands a wildcard pattern into the dictionary terms it matches. Only
+	 * the terms starting with the pattern's characters preceding the first
+	 * wildcard are tested against the pattern, so patterns with a longer
+	 * literal prefix are expanded faster; a pattern starting with a wildcard
+	 * is tested against the whole dictionary.
+	 *
+	 * @see "Introduction to information retrieval. 3.2 Wildcard queries"
+	 *
+	 * @param pattern
+	 * Term where {@link #ANY_CHARACTERS} stands for any sequence of
+	 * characters and {@link #ANY_CHARACTER} for any single character.
+	 *
+	 * @param limit
+	 * Maximum number of terms to expand the pattern into.
+	 *
+	 * @return Matching terms in ascending order, at most limit of them.
+	 */
+	public List<String> expandTerms(String pattern, int limit)
+	{
+		int literal = 0;
+		while (literal < pattern.length() && pattern.charAt(literal) != ANY_CHARACTERS
+				&& pattern.charAt(literal) != ANY_CHARACTER)
+		{
+			literal++;
+		}
+		List<String> terms = new ArrayList<String>();
+		Iterator<String> candidates = getTerms(pattern.substring(0, literal));
+		while (candidates.hasNext() && terms.size() < limit)
+		{
+			String term = candidates.next();
+			if (matches(pattern, term))
+			{
+				terms.add(term);
+			}
+		}
+		return terms;
+	}
+
+	/**
+	 * Gets document by its ID.
+	 *
+	 * @param documentId
+	 * ID of the document, must be in range [0, {@link #getDocumentCount()}).
+	 *
+	 * @return Stored copy of the document.
+	 */
+	public abstract Document getDocument(int documentId);
+
+	/**
+	 * @return Number of documents in the segment.
+	 */
+	public abstract int getDocumentCount();
+
+	/**
+	 * Gets ID assigned to the document when it was indexed.
+	 *
+	 * @param guid
+	 * <a href="http://en.wikipedia.org/wiki/Globally_Unique_Identifier"
+	 * >Globally Unique Identifier</a> of the document.
+	 *
+	 * @return Document ID or -1 if there is no document with such GUID.
+	 */
+	public abstract int getDocumentId(String guid);
+
+	/**
+	 * Gets Euclidean length of the document's term frequencies vector.
+	 *
+	 * @see "Introduction to information retrieval. 6.3.1 Dot products"
+	 *
+	 * @param documentId
+	 * ID of the document.
+	 *
+	 * @return Euclidean length of the document vector.
+	 */
+	public abstract double getEuclideanLength(int documentId);
+
+	/**
+	 * Estimates memory the segment holds on the heap: documents, postings,
+	 * dictionary and per-document statistics. Sizes of objects are
+	 * approximated the way a 64-bit JVM with compressed pointers lays them
+	 * out, so the estimate is good for comparing indexes and watching their
+	 * growth rather than for exact accounting.
+	 *
+	 * @return Estimated number of bytes, 0 for a segment reading its data in
+	 * place, e.g. from a memory-mapped file.
+	 */
+	public long getHeapSize()
+	{
+		return 0;
+	}
+
+	/**
+	 * Gets postings list of the term.
+	 *
+	 * @param term
+	 * Term to get postings for.
+	 *
+	 * @return Postings list or null if the term is not present in the
+	 * dictionary.
+	 */
+	public abstract PostingsList getPostings(String term);
+
+	/**
+	 * @return Unmodifiable sorted set of the dictionary terms.
+	 */
+	public abstract Set<String> getTerms();
+
+	/**
+	 * Gets the dictionary terms starting with the prefix.
+	 *
+	 * @param prefix
+	 * Prefix of the terms, empty string for all the terms.
+	 *
+	 * @return Iterator over the terms with the prefix in ascending order.
+	 */
+	public abstract Iterator<String> getTerms(String prefix);
+
+	/**
+	 * Gets numbers of tokens in the zones of the document. As zones are
+	 * concatenated in {@link #TEXT_ORDER text order}, these lengths define
+	 * which zone a position of the term belongs to.
+	 *
+	 * @param documentId
+	 * ID of the document.
+	 *
+	 * @return Numbers of tokens indexed by {@link ZoneName#ordinal() zone name
+	 * ordinal}.
+	 */
+	public abstract int[] getZoneLengths(int documentId);
+
+	/**
+	 * Counts tokens in every zone of the document.
+	 *
+	 * @param document
+	 * Document to count tokens in.
+	 *
+	 * @return Numbers of tokens indexed by {@link ZoneName#ordinal() zone name
+	 * ordinal}.
+	 */
+	static int[] countZoneLengths(Document document)
+	{
+		int[] lengths = new int[ZoneName.values().length];
+		lengths[ZoneName.Title.ordinal()] = countTokens(document.getTitle());
+		lengths[ZoneName.Description.ordinal()] = countTokens(document.getBody());
+		for (String category : document.getCategories())
+		{
+			lengths[ZoneName.Categories.ordinal()] += countTokens(category);
+		}
+		for (Map<String, String> group : document.getExtraFields().values())
+		{
+			for (String value : group.values())
+			{
+				lengths[ZoneName.ExtraFields.ordinal()] += countTokens(value);
+			}
+		}
+		return lengths;
+	}
+
+	/**
+	 * @return Estimated size of an array, including its header.
+	 */
+	static long getArraySize(long length, int elementSize)
+	{
+		return ARRAY_HEADER_SIZE + length * elementSize;
+	}
+
+	/**
+	 * @return Estimated size of a stored document: its text, GUID and link
+	 * and a fixed overhead of the fields.
+	 */
+	static long getDocumentSize(Document document)
+	{
+		return DOCUMENT_OVERHEAD + getStringSize(document.getText())
+				+ getStringSize(document.getGuid()) + getStringSize(document.getLink());
+	}
+
+	/**
+	 * @return Estimated size of a string with its character array, 0 for
+	 * null.
+	 */
+	static long getStringSize(String string)
+	{
+		return string == null ? 0 : STRING_HEADER_SIZE + getArraySize(string.length(), 2);
+	}
+
+	/**
+	 * Matches the term against a wildcard pattern. Every
+	 * {@link #ANY_CHARACTERS} extends to as few characters as possible, the
+	 * last one met is extended further when the rest of the pattern doesn't
+	 * match, which takes linear time for patterns of a single wildcard.
+	 */
+	static boolean matches(String pattern, String term)
+	{
+		int p = 0;
+		int t = 0;
+		int star = -1;
+		int starTerm = 0;
+		while (t < term.length())
+		{
+			if (p < pattern.length()
+					&& (pattern.charAt(p) == ANY_CHARACTER || pattern.charAt(p) == term.charAt(t)))
+			{
+				p++;
+				t++;
+			}
+			else if (p < pattern.length() && pattern.charAt(p) == ANY_CHARACTERS)
+			{
+				star = p++;
+				starTerm = t;
+			}
+			else if (star != -1)
+			{
+				p = star + 1;
+				t = ++starTerm;
+			}
+			else
+			{
+				return false;
+			}
+		}
+		while (p < pattern.length() && pattern.charAt(p) == ANY_CHARACTERS)
+		{
+			p++;
+		}
+		return p == pattern.length();
+	}
+
+	private static int countTokens(String text)
+	{
+		if (text == null)
+		{
+			return 0;
+		}
+		Tokenizer tokenizer = Utils.tokenizer(text);
+		int count = 0;
+		while (tokenizer.next())
+		{
+			count++;
+		}
+		return count;
+	}
+
+	private static final int ARRAY_HEADER_SIZE = 16;
+	private static final int DOCUMENT_OVERHEAD = 128;
+	private static final int STRING_HEADER_SIZE = 24;
+}
@@ -0,0 +1,300 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Map;
+
+import ua.edu.ukma.fin.iretrieval.Document;
+import ua.edu.ukma.fin.iretrieval.ZoneName;
+
+/**
+ * Writes segments to files in the format read by {@link MappedSegment}. The
+ * file starts with a fixed size header, followed by stored documents, the
+ * dictionary terms with their postings and finally fixed size tables which
+ * make documents, GUIDs and terms addressable by binary search. All offsets
+ * are absolute positions in the file. Offsets are 32-bit and the file is
+ * mapped as a single buffer, so a segment can't exceed 2 GB; larger
+ * collections have to be {@link ShardedIndex sharded}.
+ */
+public final class SegmentWriter
+{
+	/**
+	 * Writes the segment to the file. Data is written to a temporary file first
+	 * which then replaces the target, so readers never see partially written
+	 * segments.
+	 *
+	 * @param segment
+	 * Segment to write.
+	 *
+	 * @param path
+	 * Location of the segment file, existing file will be replaced.
+	 *
+	 * @throws IOException
+	 * In case file can't be written or the segment doesn't fit into the 2 GB
+	 * the format can address.
+	 */
+	public static void write(Segment segment, Path path) throws IOException
+	{
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+		FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		try
+		{
+			CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(
+					Channels.newOutputStream(channel), 1 << 16));
+			DataOutputStream output = new DataOutputStream(counter);
+			output.write(new byte[MappedSegment.HEADER_SIZE]);
+
+			int documentCount = segment.getDocumentCount();
+			int[] storedOffsets = new int[documentCount];
+			final String[] guids = new String[documentCount];
+			for (int i = 0; i < documentCount; i++)
+			{
+				Document document = segment.getDocument(i);
+				storedOffsets[i] = counter.getOffset();
+				guids[i] = document.getGuid();
+				writeDocument(output, document);
+			}
+
+			int[] termOffsets = new int[segment.getTerms().size()];
+			int termCount = 0;
+			for (String term : segment.getTerms())
+			{
+				termOffsets[termCount++] = counter.getOffset();
+				writeString(output, term);
+				writePostings(output, segment.getPostings(term));
+			}
+
+			int documentsTable = counter.getOffset();
+			for (int i = 0; i < documentCount; i++)
+			{
+				output.writeInt(storedOffsets[i]);
+				output.writeDouble(segment.getEuclideanLength(i));
+				int[] zoneLengths = segment.getZoneLengths(i);
+				for (ZoneName name : ZoneName.values())
+				{
+					output.writeInt(zoneLengths[name.ordinal()]);
+				}
+			}
+
+			int guidsTable = counter.getOffset();
+			Integer[] byGuid = new Integer[documentCount];
+			for (int i = 0; i < documentCount; i++)
+			{
+				byGuid[i] = i;
+			}
+			Arrays.sort(byGuid, new Comparator<Integer>()
+			{
+				public int compare(Integer a, Integer b)
+				{
+					return guids[a].compareTo(guids[b]);
+				}
+			});
+			for (int documentId : byGuid)
+			{
+				output.writeInt(documentId);
+			}
+
+			int dictionaryTable = counter.getOffset();
+			for (int i = 0; i < termCount; i++)
+			{
+				output.writeInt(termOffsets[i]);
+			}
+			output.flush();
+			// the file is mapped as a single buffer, its size is limited too
+			counter.checkSize();
+
+			ByteBuffer header = ByteBuffer.allocate(MappedSegment.HEADER_SIZE);
+			header.putInt(MappedSegment.MAGIC).putInt(MappedSegment.VERSION);
+			header.putInt(documentCount).putInt(termCount);
+			header.putInt(documentsTable).putInt(guidsTable).putInt(dictionaryTable);
+			header.flip();
+			channel.write(header, 0);
+			channel.force(true);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			channel.close();
+			Files.deleteIfExists(temporary);
+			throw e;
+		}
+		finally
+		{
+			channel.close();
+		}
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Writes the stored fields of the document, they are read back by
+	 * {@link MappedSegment#readDocument(ByteBuffer)}.
+	 */
+	static void writeDocument(DataOutputStream output, Document document)
+			throws IOException
+	{
+		writeString(output, document.getGuid());
+		writeString(output, document.getTitle());
+		writeString(output, document.getBody());
+		writeString(output, document.getLink());
+		Date pubDate = document.getPubDate();
+		output.writeBoolean(pubDate != null);
+		if (pubDate != null)
+		{
+			output.writeLong(pubDate.getTime());
+		}
+		output.writeInt(document.getCategories().size());
+		for (String category : document.getCategories())
+		{
+			writeString(output, category);
+		}
+		Map<String, Map<String, String>> extraFields = document.getExtraFields();
+		output.writeInt(extraFields.size());
+		for (Map.Entry<String, Map<String, String>> group : extraFields.entrySet())
+		{
+			writeString(output, group.getKey());
+			output.writeInt(group.getValue().size());
+			for (Map.Entry<String, String> field : group.getValue().entrySet())
+			{
+				writeString(output, field.getKey());
+				writeString(output, field.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Writes block tables and compressed streams of the postings list. Lists
+	 * spanning several segments are encoded into a single one first.
+	 */
+	private static void writePostings(DataOutputStream output, PostingsList list)
+			throws IOException
+	{
+		if (!(list instanceof BlockPostingsList))
+		{
+			PostingsList.Builder builder = new PostingsList.Builder();
+			builder.add(list, 0);
+			list = builder.build();
+		}
+		BlockPostingsList postings = (BlockPostingsList) list;
+		int blocks = postings.getBlockCount();
+		output.writeInt(postings.size);
+		output.writeInt(blocks);
+		for (int i = 0; i < blocks; i++)
+		{
+			output.writeInt(postings.getBlockLastDocument(i));
+			output.writeInt(postings.getBlockOffset(i));
+			output.writeInt(postings.getBlockPositionOffset(i));
+			output.writeInt(postings.getBlockMaxTermFrequency(i));
+		}
+		writeBuffer(output, postings.data);
+		writeBuffer(output, postings.positions);
+	}
+
+	private static void writeBuffer(DataOutputStream output, ByteBuffer buffer)
+			throws IOException
+	{
+		ByteBuffer source = buffer.duplicate();
+		source.clear();
+		output.writeInt(source.remaining());
+		byte[] chunk = new byte[Math.min(source.remaining(), 8192)];
+		while (source.hasRemaining())
+		{
+			int length = Math.min(chunk.length, source.remaining());
+			source.get(chunk, 0, length);
+			output.write(chunk, 0, length);
+		}
+	}
+
+	/**
+	 * Writes length of UTF-8 representation of the string followed by the
+	 * bytes themselves, -1 stands for null.
+	 */
+	static void writeString(DataOutputStream output, String string) throws IOException
+	{
+		if (string == null)
+		{
+			output.writeInt(-1);
+		}
+		else
+		{
+			byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			output.writeInt(bytes.length);
+			output.write(bytes);
+		}
+	}
+
+	private SegmentWriter()
+	{
+	}
+
+	/**
+	 * Counts bytes written through it. Unlike
+	 * {@link DataOutputStream#size()}, which stops growing at
+	 * {@link Integer#MAX_VALUE}, the count doesn't saturate, so an offset
+	 * beyond the format's limit is detected while writing.
+	 */
+	private static final class CountingOutputStream extends FilterOutputStream
+	{
+		CountingOutputStream(OutputStream output)
+		{
+			super(output);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException
+		{
+			out.write(bytes, offset, length);
+			count += length;
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			out.write(b);
+			count++;
+		}
+
+		/**
+		 * Checks that the bytes written so far fit the segment format.
+		 *
+		 * @throws IOException
+		 * In case the segment has grown past {@link Integer#MAX_VALUE} bytes.
+		 */
+		void checkSize() throws IOException
+		{
+			if (count > Integer.MAX_VALUE)
+			{
+				throw new IOException("Segment exceeds " + Integer.MAX_VALUE
+						+ " bytes, which is the limit of the segment format.");
+			}
+		}
+
+		/**
+		 * @return Number of bytes written so far as a file offset.
+		 *
+		 * @throws IOException
+		 * In case the offset doesn't fit the segment format.
+		 */
+		int getOffset() throws IOException
+		{
+			checkSize();
+			return (int) count;
+		}
+
+		private long count = 0;
+	}
+}
@@ -0,0 +1,586 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import ua.edu.ukma.fin.iretrieval.BooleanQuery;
+import ua.edu.ukma.fin.iretrieval.Document;
+import ua.edu.ukma.fin.iretrieval.Query;
+import ua.edu.ukma.fin.iretrieval.ZoneName;
+
+/**
+ * Evaluates queries against an index distributed over {@link ShardServer
+ * shard servers}, each serving a part of the collection, usually in other
+ * processes or on other machines. A query is evaluated in phases, requests of
+ * every phase are sent to all the shards in parallel:
+ *
+ * <ol>
+ * <li>Wildcards are expanded by every shard, the sorted union of the
+ * expansions is the expansion over the dictionary of the whole
+ * collection.</li>
+ * <li>Shards report their numbers of documents and document frequencies of
+ * the query terms, which are summed into statistics of the whole
+ * collection.</li>
+ * <li>Shards score their documents by the collection statistics and return
+ * top k document IDs, the best k of them are the result.</li>
+ * <li>The resulting documents are fetched from the shards holding them.</li>
+ * </ol>
+ *
+ * Documents are ranked the way a {@link ShardedIndex} over the same shards
+ * ranks them. Zone weights of ZONED shards can't be learned from examples
+ * here, they are equal unless {@link #setZoneWeights(Map) set} explicitly.
+ *
+ * Coordinator is thread-safe. Connections to the shards are pooled, a
+ * connection failed while being used is closed rather than returned to the
+ * pool.
+ *
+ * @see "Introduction to information retrieval. 20.3 Distributing indexes"
+ */
+public class ShardCoordinator implements Closeable
+{
+	/**
+	 * @param shards
+	 * Addresses of the shard servers. The order of the shards has to be the
+	 * same for all the coordinators for ties to be broken the same way.
+	 *
+	 * @param type
+	 * Type of the index the shards are evaluated as. Supported types are
+	 * ZONED, INVERTED, VECTOR_SPACE and BASIC.
+	 */
+	public ShardCoordinator(List<InetSocketAddress> shards, IndexType type)
+	{
+		if (shards.isEmpty())
+		{
+			throw new IllegalArgumentException("There are no shards to coordinate.");
+		}
+		this.shards = new Shard[shards.size()];
+		for (int i = 0; i < this.shards.length; i++)
+		{
+			this.shards[i] = new Shard(shards.get(i));
+		}
+		this.type = type;
+	}
+
+	/**
+	 * Closes pooled connections to the shards.
+	 */
+	public void close()
+	{
+		executor.shutdownNow();
+		for (Shard shard : shards)
+		{
+			shard.close();
+		}
+	}
+
+	/**
+	 * @return Number of shards.
+	 */
+	public int getShardCount()
+	{
+		return shards.length;
+	}
+
+	/**
+	 * @return Type of the index the shards are evaluated as.
+	 */
+	public IndexType getType()
+	{
+		return type;
+	}
+
+	/**
+	 * Retrieves the documents of the whole collection most relevant to the
+	 * query, the same way {@link Index#retrieveDocuments(Query, int)} does.
+	 *
+	 * @param query
+	 * Query to retrieve documents for, documents of Boolean queries are
+	 * ordered by relevance to the query's expression only.
+	 *
+	 * @param k
+	 * Maximum number of documents to retrieve, must be positive.
+	 *
+	 * @return List of documents ordered from the most relevant to the least
+	 * relevant one.
+	 *
+	 * @throws IOException
+	 * In case a shard can't be reached, doesn't answer within the
+	 * {@link #setTimeout(int) timeout} or fails to evaluate the query.
+	 */
+	public List<Document> retrieveDocuments(Query query, final int k) throws IOException
+	{
+		if (query == null || query instanceof BooleanQuery
+				&& ((BooleanQuery) query).getClause() == null)
+		{
+			return new ArrayList<Document>();
+		}
+		final boolean isBoolean = query instanceof BooleanQuery;
+		if (!isBoolean)
+		{
+			query = expandWildcards(query);
+		}
+		final String text = isBoolean ? query.toString() : query.getQueryString();
+		final String[] terms = query.getTerms().toArray(new String[query.getTerms().size()]);
+
+		final List<int[]> statistics = scatter(new Request<int[]>(ShardProtocol.STATISTICS)
+		{
+			@Override
+			void write(DataOutputStream output) throws IOException
+			{
+				writeTerms(output, terms);
+			}
+
+			@Override
+			int[] read(DataInputStream input) throws IOException
+			{
+				int[] counts = new int[terms.length + 1];
+				for (int i = 0; i < counts.length; i++)
+				{
+					counts[i] = input.readInt();
+				}
+				return counts;
+			}
+		});
+		int[] bases = new int[shards.length];
+		final int[] collection = new int[terms.length + 1];
+		for (int i = 0; i < shards.length; i++)
+		{
+			bases[i] = collection[0];
+			for (int j = 0; j < collection.length; j++)
+			{
+				collection[j] += statistics.get(i)[j];
+			}
+		}
+
+		final Map<ZoneName, Double> zoneWeights = this.zoneWeights;
+		List<ScoredDocument[]> results = scatter(new Request<ScoredDocument[]>(
+				ShardProtocol.SEARCH)
+		{
+			@Override
+			void write(DataOutputStream output) throws IOException
+			{
+				ShardProtocol.writeString(output, type.name());
+				output.writeBoolean(isBoolean);
+				ShardProtocol.writeString(output, text);
+				output.writeInt(k);
+				output.writeInt(collection[0]);
+				output.writeInt(terms.length);
+				for (int i = 0; i < terms.length; i++)
+				{
+					ShardProtocol.writeString(output, terms[i]);
+					output.writeInt(collection[i + 1]);
+				}
+				output.writeInt(zoneWeights == null ? 0 : zoneWeights.size());
+				if (zoneWeights != null)
+				{
+					for (Map.Entry<ZoneName, Double> weight : zoneWeights.entrySet())
+					{
+						ShardProtocol.writeString(output, weight.getKey().name());
+						output.writeDouble(weight.getValue());
+					}
+				}
+			}
+
+			@Override
+			ScoredDocument[] read(DataInputStream input) throws IOException
+			{
+				ScoredDocument[] results = new ScoredDocument[ShardProtocol.readCount(input, k)];
+				for (int i = 0; i < results.length; i++)
+				{
+					results[i] = new ScoredDocument(input.readInt(), input.readDouble());
+				}
+				return results;
+			}
+		});
+		TopDocumentsCollector collector = new TopDocumentsCollector(k);
+		for (int i = 0; i < shards.length; i++)
+		{
+			for (ScoredDocument scoredDocument : results.get(i))
+			{
+				collector.collect(bases[i] + scoredDocument.getDocumentId(), scoredDocument
+						.getScore());
+			}
+		}
+		return fetch(collector.getTopDocuments(), bases);
+	}
+
+	/**
+	 * @param timeout
+	 * Time in milliseconds to wait for a shard to accept a connection or to
+	 * answer a request, 0 to wait forever.
+	 */
+	public void setTimeout(int timeout)
+	{
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @param zoneWeights
+	 * Weights of the zones of ZONED shards, null for equal weights. Zones
+	 * missing from the map keep the equal weight.
+	 */
+	public void setZoneWeights(Map<ZoneName, Double> zoneWeights)
+	{
+		this.zoneWeights = zoneWeights == null ? null : Collections
+				.unmodifiableMap(new EnumMap<ZoneName, Double>(zoneWeights));
+	}
+
+	/**
+	 * Replaces wildcards with the terms they match in the dictionaries of all
+	 * the shards. Shards return their first matching terms in ascending
+	 * order, so the first terms of their union are the first terms of the
+	 * whole dictionary, as {@link Index#expandWildcards(Query)} would expand
+	 * them.
+	 */
+	private Query expandWildcards(Query query) throws IOException
+	{
+		if (query.getWildcards().isEmpty())
+		{
+			return query;
+		}
+		Set<String> terms = new TreeSet<String>();
+		for (final String pattern : query.getWildcards())
+		{
+			Set<String> expansion = new TreeSet<String>();
+			for (List<String> shardTerms : scatter(new Request<List<String>>(ShardProtocol.EXPAND)
+			{
+				@Override
+				void write(DataOutputStream output) throws IOException
+				{
+					ShardProtocol.writeString(output, pattern);
+					output.writeInt(Index.MAX_EXPANSIONS);
+				}
+
+				@Override
+				List<String> read(DataInputStream input) throws IOException
+				{
+					int termCount = ShardProtocol.readCount(input, Index.MAX_EXPANSIONS);
+					List<String> terms = new ArrayList<String>(termCount);
+					for (int i = 0; i < termCount; i++)
+					{
+						terms.add(ShardProtocol.readString(input));
+					}
+					return terms;
+				}
+			}))
+			{
+				expansion.addAll(shardTerms);
+			}
+			Iterator<String> iterator = expansion.iterator();
+			for (int i = 0; i < Index.MAX_EXPANSIONS && iterator.hasNext(); i++)
+			{
+				terms.add(iterator.next());
+			}
+		}
+		return query.expand(terms);
+	}
+
+	/**
+	 * Fetches the documents from their shards, a single request per shard.
+	 */
+	private List<Document> fetch(ScoredDocument[] scoredDocuments, int[] bases)
+			throws IOException
+	{
+		final Map<Integer, List<Integer>> requested = new HashMap<Integer, List<Integer>>();
+		int[] shardOf = new int[scoredDocuments.length];
+		for (int i = 0; i < scoredDocuments.length; i++)
+		{
+			int documentId = scoredDocuments[i].getDocumentId();
+			int shard = shards.length - 1;
+			while (bases[shard] > documentId)
+			{
+				shard--;
+			}
+			shardOf[i] = shard;
+			if (!requested.containsKey(shard))
+			{
+				requested.put(shard, new ArrayList<Integer>());
+			}
+			requested.get(shard).add(documentId - bases[shard]);
+		}
+		List<Callable<List<Document>>> fetches = new ArrayList<Callable<List<Document>>>();
+		final List<Integer> fetched = new ArrayList<Integer>(requested.keySet());
+		for (final int shard : fetched)
+		{
+			fetches.add(new Callable<List<Document>>()
+			{
+				public List<Document> call() throws IOException
+				{
+					final List<Integer> documentIds = requested.get(shard);
+					return shards[shard].call(new Request<List<Document>>(ShardProtocol.FETCH)
+					{
+						@Override
+						void write(DataOutputStream output) throws IOException
+						{
+							output.writeInt(documentIds.size());
+							for (int documentId : documentIds)
+							{
+								output.writeInt(documentId);
+							}
+						}
+
+						@Override
+						List<Document> read(DataInputStream input) throws IOException
+						{
+							List<Document> documents = new ArrayList<Document>(documentIds
+									.size());
+							for (int i = 0; i < documentIds.size(); i++)
+							{
+								documents.add(ShardProtocol.readDocument(input));
+							}
+							return documents;
+						}
+					}, timeout);
+				}
+			});
+		}
+		List<List<Document>> answers = invokeAll(fetches);
+		Map<Integer, Iterator<Document>> documents = new HashMap<Integer, Iterator<Document>>();
+		for (int i = 0; i < fetched.size(); i++)
+		{
+			documents.put(fetched.get(i), answers.get(i).iterator());
+		}
+		List<Document> results = new ArrayList<Document>(scoredDocuments.length);
+		for (int shard : shardOf)
+		{
+			results.add(documents.get(shard).next());
+		}
+		return results;
+	}
+
+	/**
+	 * Sends the request to all the shards in parallel.
+	 *
+	 * @return Answers ordered by shard.
+	 */
+	private <T> List<T> scatter(final Request<T> request) throws IOException
+	{
+		final int timeout = this.timeout;
+		List<Callable<T>> calls = new ArrayList<Callable<T>>(shards.length);
+		for (final Shard shard : shards)
+		{
+			calls.add(new Callable<T>()
+			{
+				public T call() throws IOException
+				{
+					return shard.call(request, timeout);
+				}
+			});
+		}
+		return invokeAll(calls);
+	}
+
+	private <T> List<T> invokeAll(List<Callable<T>> calls) throws IOException
+	{
+		if (calls.size() == 1)
+		{
+			try
+			{
+				return Collections.singletonList(calls.get(0).call());
+			}
+			catch (IOException e)
+			{
+				throw e;
+			}
+			catch (Exception e)
+			{
+				throw new IOException(e);
+			}
+		}
+		try
+		{
+			List<T> answers = new ArrayList<T>(calls.size());
+			for (Future<T> future : executor.invokeAll(calls))
+			{
+				answers.add(future.get());
+			}
+			return answers;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the shards.");
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+			{
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private static void writeTerms(DataOutputStream output, String[] terms) throws IOException
+	{
+		output.writeInt(terms.length);
+		for (String term : terms)
+		{
+			ShardProtocol.writeString(output, term);
+		}
+	}
+
+	/**
+	 * Open connection to a shard server
+	 */
+	private static final class Connection
+	{
+		Connection(InetSocketAddress address, int timeout) throws IOException
+		{
+			socket = new Socket();
+			try
+			{
+				socket.connect(address, timeout);
+				socket.setTcpNoDelay(true);
+				input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			}
+			catch (IOException e)
+			{
+				close();
+				throw e;
+			}
+		}
+
+		void close()
+		{
+			try
+			{
+				socket.close();
+			}
+			catch (IOException e)
+			{
+				// nothing left to release
+			}
+		}
+
+		private DataInputStream input;
+		private DataOutputStream output;
+		private final Socket socket;
+	}
+
+	/**
+	 * Request of the protocol, writes its arguments and reads the answer.
+	 */
+	private abstract static class Request<T>
+	{
+		Request(byte opcode)
+		{
+			this.opcode = opcode;
+		}
+
+		abstract T read(DataInputStream input) throws IOException;
+
+		abstract void write(DataOutputStream output) throws IOException;
+
+		private final byte opcode;
+	}
+
+	/**
+	 * Shard server with a pool of idle connections to it
+	 */
+	private static final class Shard
+	{
+		Shard(InetSocketAddress address)
+		{
+			this.address = address;
+		}
+
+		<T> T call(Request<T> request, int timeout) throws IOException
+		{
+			Connection connection = idle.poll();
+			if (connection == null)
+			{
+				connection = new Connection(address, timeout);
+			}
+			boolean succeeded = false;
+			try
+			{
+				connection.socket.setSoTimeout(timeout);
+				connection.output.writeByte(request.opcode);
+				request.write(connection.output);
+				connection.output.flush();
+				byte status = connection.input.readByte();
+				if (status == ShardProtocol.ERROR)
+				{
+					String message = ShardProtocol.readString(connection.input);
+					succeeded = true;
+					throw new IOException("Shard " + address + " failed: " + message);
+				}
+				T answer = request.read(connection.input);
+				succeeded = true;
+				return answer;
+			}
+			finally
+			{
+				if (succeeded)
+				{
+					idle.offer(connection);
+				}
+				else
+				{
+					connection.close();
+				}
+			}
+		}
+
+		void close()
+		{
+			Connection connection;
+			while ((connection = idle.poll()) != null)
+			{
+				connection.close();
+			}
+		}
+
+		private final InetSocketAddress address;
+		private final ConcurrentLinkedQueue<Connection> idle =
+				new ConcurrentLinkedQueue<Connection>();
+	}
+
+	/**
+	 * Sends requests to the shards in parallel
+	 */
+	private final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory()
+	{
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, "shard-coordinator");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	private final Shard[] shards;
+	private volatile int timeout = DEFAULT_TIMEOUT;
+	private final IndexType type;
+	private volatile Map<ZoneName, Double> zoneWeights = null;
+
+	/**
+	 * Milliseconds to wait for a shard unless {@link #setTimeout(int) set}
+	 * otherwise
+	 */
+	public static final int DEFAULT_TIMEOUT = 10000;
+}
@@ -0,0 +1,120 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import ua.edu.ukma.fin.iretrieval.Document;
+
+/**
+ * Binary protocol spoken between a {@link ShardCoordinator} and
+ * {@link ShardServer shard servers} over plain TCP connections. A request is
+ * an opcode byte followed by its arguments, the response is a status byte
+ * followed either by the results or, on ERROR, by the message of the
+ * exception. Connections are kept open, requests are answered one by one in
+ * the order they were sent.
+ *
+ * Numbers are written by {@link DataOutputStream}, strings the way segment
+ * files store them: length of their UTF-8 bytes followed by the bytes, -1 for
+ * null. Documents are sent as a length followed by their stored fields.
+ * Lengths and counts read from the wire are checked against sane bounds
+ * before anything is allocated, a violation throws
+ * {@link ProtocolException}: the rest of the request can't be skipped
+ * reliably, so the connection must be closed.
+ *
+ * <ul>
+ * <li>STATISTICS: terms, answered by the number of documents of the shard and
+ * the document frequency of every term.</li>
+ * <li>EXPAND: wildcard pattern and limit, answered by the matching terms of
+ * the shard's dictionary in ascending order.</li>
+ * <li>SEARCH: index type, whether the query is Boolean, query text, k, number
+ * of documents of the whole collection, terms with their document frequencies
+ * in the whole collection and zone weights, answered by the shard's top k
+ * document IDs with their scores.</li>
+ * <li>FETCH: document IDs, answered by the documents.</li>
+ * </ul>
+ *
+ * @see "Introduction to information retrieval. 20.3 Distributing indexes"
+ */
+final class ShardProtocol
+{
+	/**
+	 * Reads a count of the elements that follow.
+	 *
+	 * @param max
+	 * Greatest count allowed.
+	 *
+	 * @throws ProtocolException
+	 * If the count is negative or greater than the maximum.
+	 */
+	static int readCount(DataInputStream input, int max) throws IOException
+	{
+		int count = input.readInt();
+		if (count < 0 || count > max)
+		{
+			throw new ProtocolException("Count " + count + " out of range [0, " + max + "].");
+		}
+		return count;
+	}
+
+	static Document readDocument(DataInputStream input) throws IOException
+	{
+		byte[] bytes = new byte[readCount(input, MAX_LENGTH)];
+		input.readFully(bytes);
+		return MappedSegment.readDocument(ByteBuffer.wrap(bytes));
+	}
+
+	static String readString(DataInputStream input) throws IOException
+	{
+		int length = input.readInt();
+		if (length == -1)
+		{
+			return null;
+		}
+		if (length < 0 || length > MAX_LENGTH)
+		{
+			throw new ProtocolException("String length " + length + " out of range.");
+		}
+		byte[] bytes = new byte[length];
+		input.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	static void writeDocument(DataOutputStream output, Document document) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		SegmentWriter.writeDocument(new DataOutputStream(bytes), document);
+		output.writeInt(bytes.size());
+		bytes.writeTo(output);
+	}
+
+	static void writeString(DataOutputStream output, String string) throws IOException
+	{
+		SegmentWriter.writeString(output, string);
+	}
+
+	private ShardProtocol()
+	{
+	}
+
+	static final byte ERROR = 1;
+	static final byte EXPAND = 2;
+	static final byte FETCH = 4;
+
+	/**
+	 * Greatest number of bytes of a string or a document
+	 */
+	static final int MAX_LENGTH = 1 << 24;
+
+	/**
+	 * Greatest number of terms of a request
+	 */
+	static final int MAX_TERMS = 1 << 20;
+	static final byte OK = 0;
+	static final byte SEARCH = 3;
+	static final byte STATISTICS = 1;
+}
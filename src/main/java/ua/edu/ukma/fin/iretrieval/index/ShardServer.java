@@ -0,0 +1,400 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ua.edu.ukma.fin.iretrieval.BooleanQuery;
+import ua.edu.ukma.fin.iretrieval.Document;
+import ua.edu.ukma.fin.iretrieval.Query;
+import ua.edu.ukma.fin.iretrieval.ZoneName;
+
+/**
+ * Serves a shard of a distributed index, a segment holding a part of the
+ * collection, to a {@link ShardCoordinator} over the {@link ShardProtocol}.
+ * Server keeps no state between requests: statistics of the whole collection
+ * come with every search request, so the shard scores its documents the same
+ * way a single index of the whole collection would.
+ *
+ * Every connection is served by its own thread, requests of a connection are
+ * answered one by one. The segment is read only, so any number of
+ * connections can be served at once.
+ *
+ * @see "Introduction to information retrieval. 20.3 Distributing indexes"
+ */
+public class ShardServer implements Closeable
+{
+	/**
+	 * @param segment
+	 * Segment of the shard, usually {@link MappedSegment#open(java.nio.file.Path)
+	 * opened} from a file written by {@link IndexFactory#writeShards(java.nio.file.Path, int)}.
+	 */
+	public ShardServer(Segment segment)
+	{
+		this.segment = segment;
+	}
+
+	/**
+	 * Stops accepting connections and closes the open ones.
+	 */
+	public void close() throws IOException
+	{
+		if (serverSocket != null)
+		{
+			serverSocket.close();
+		}
+		executor.shutdownNow();
+		synchronized (connections)
+		{
+			for (Socket socket : connections)
+			{
+				socket.close();
+			}
+			connections.clear();
+		}
+	}
+
+	/**
+	 * @return Port the server listens on, -1 if it isn't started.
+	 */
+	public int getPort()
+	{
+		return serverSocket == null ? -1 : serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Starts accepting connections in background.
+	 *
+	 * @param address
+	 * Address to listen on, port 0 picks any free port.
+	 *
+	 * @throws IOException
+	 * In case the address can't be bound.
+	 */
+	public synchronized void start(InetSocketAddress address) throws IOException
+	{
+		if (serverSocket != null)
+		{
+			throw new IllegalStateException("Server is already started.");
+		}
+		serverSocket = new ServerSocket();
+		serverSocket.setReuseAddress(true);
+		serverSocket.bind(address);
+		executor.execute(new Runnable()
+		{
+			public void run()
+			{
+				accept();
+			}
+		});
+		logger.log(Level.INFO, "Shard of {0} documents is served on {1}.", new Object[] {
+				segment.getDocumentCount(), serverSocket.getLocalSocketAddress() });
+	}
+
+	/**
+	 * Serves a segment file until the process is killed. Prints the port
+	 * once the server listens, so a script or a test starting the process
+	 * knows when it is ready.
+	 *
+	 * @param args
+	 * Location of the segment file and the port to listen on.
+	 */
+	public static void main(String[] args)
+	{
+		if (args.length != 2)
+		{
+			System.err.println("Usage: ShardServer <segment file> <port>");
+			System.exit(-1);
+		}
+		try
+		{
+			ShardServer server = new ShardServer(MappedSegment.open(Paths.get(args[0])));
+			server.start(new InetSocketAddress(Integer.parseInt(args[1])));
+			System.out.println("ShardServer listening on port " + server.getPort());
+			// threads of the server are daemons, main thread keeps the process alive
+			Thread.currentThread().join();
+		}
+		catch (IOException e)
+		{
+			System.err.println("Failed to serve " + args[0] + ": " + e.getMessage());
+			System.exit(-1);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void accept()
+	{
+		while (!serverSocket.isClosed())
+		{
+			final Socket socket;
+			try
+			{
+				socket = serverSocket.accept();
+			}
+			catch (IOException e)
+			{
+				if (!serverSocket.isClosed())
+				{
+					logger.log(Level.WARNING, "Failed to accept connection: {0}.", e);
+				}
+				return;
+			}
+			synchronized (connections)
+			{
+				connections.add(socket);
+			}
+			executor.execute(new Runnable()
+			{
+				public void run()
+				{
+					serve(socket);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Answers requests of the connection until it is closed by the client.
+	 * Failure of a request is reported to the client, the connection is
+	 * closed on I/O errors only.
+	 */
+	private void serve(Socket socket)
+	{
+		try
+		{
+			socket.setTcpNoDelay(true);
+			DataInputStream input = new DataInputStream(new BufferedInputStream(socket
+					.getInputStream()));
+			DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket
+					.getOutputStream()));
+			while (true)
+			{
+				int opcode = input.read();
+				if (opcode == -1)
+				{
+					return;
+				}
+				try
+				{
+					handle(opcode, input, output);
+				}
+				catch (RuntimeException e)
+				{
+					logger.log(Level.WARNING, "Request failed: {0}.", e);
+					output.writeByte(ShardProtocol.ERROR);
+					ShardProtocol.writeString(output, e.toString());
+				}
+				output.flush();
+			}
+		}
+		catch (EOFException e)
+		{
+			// client closed the connection in the middle of a request
+		}
+		catch (SocketException e)
+		{
+			// connection was reset or the server is closed
+		}
+		catch (IOException e)
+		{
+			logger.log(Level.WARNING, "Connection failed: {0}.", e);
+		}
+		finally
+		{
+			synchronized (connections)
+			{
+				connections.remove(socket);
+			}
+			try
+			{
+				socket.close();
+			}
+			catch (IOException e)
+			{
+				// nothing left to release
+			}
+		}
+	}
+
+	/**
+	 * Reads arguments of the request and writes its response. Arguments are
+	 * read completely before evaluation, so the connection remains usable
+	 * when evaluation fails. Malformed arguments throw
+	 * {@link ProtocolException}, which closes the connection.
+	 */
+	private void handle(int opcode, DataInputStream input, DataOutputStream output)
+			throws IOException
+	{
+		switch (opcode)
+		{
+		case ShardProtocol.STATISTICS:
+		{
+			int termCount = ShardProtocol.readCount(input, ShardProtocol.MAX_TERMS);
+			String[] terms = new String[termCount];
+			for (int i = 0; i < termCount; i++)
+			{
+				terms[i] = ShardProtocol.readString(input);
+			}
+			int[] documentFrequencies = new int[termCount];
+			for (int i = 0; i < termCount; i++)
+			{
+				PostingsList postings = segment.getPostings(terms[i]);
+				documentFrequencies[i] = postings == null ? 0 : postings.size();
+			}
+			output.writeByte(ShardProtocol.OK);
+			output.writeInt(segment.getDocumentCount());
+			for (int documentFrequency : documentFrequencies)
+			{
+				output.writeInt(documentFrequency);
+			}
+			break;
+		}
+		case ShardProtocol.EXPAND:
+		{
+			String pattern = ShardProtocol.readString(input);
+			int limit = input.readInt();
+			List<String> terms = segment.expandTerms(pattern, limit);
+			output.writeByte(ShardProtocol.OK);
+			output.writeInt(terms.size());
+			for (String term : terms)
+			{
+				ShardProtocol.writeString(output, term);
+			}
+			break;
+		}
+		case ShardProtocol.SEARCH:
+		{
+			String typeName = ShardProtocol.readString(input);
+			boolean isBoolean = input.readBoolean();
+			String text = ShardProtocol.readString(input);
+			int k = input.readInt();
+			final int documentCount = input.readInt();
+			int termCount = ShardProtocol.readCount(input, ShardProtocol.MAX_TERMS);
+			final Map<String, Integer> documentFrequencies = new HashMap<String, Integer>(
+					termCount * 2);
+			for (int i = 0; i < termCount; i++)
+			{
+				documentFrequencies.put(ShardProtocol.readString(input), input.readInt());
+			}
+			int zoneCount = ShardProtocol.readCount(input, ZoneName.values().length);
+			String[] zoneNames = new String[zoneCount];
+			double[] weights = new double[zoneCount];
+			for (int i = 0; i < zoneCount; i++)
+			{
+				zoneNames[i] = ShardProtocol.readString(input);
+				weights[i] = input.readDouble();
+			}
+			Map<ZoneName, Double> zoneWeights = null;
+			if (zoneCount > 0)
+			{
+				zoneWeights = new EnumMap<ZoneName, Double>(ZoneName.class);
+				for (int i = 0; i < zoneCount; i++)
+				{
+					zoneWeights.put(ZoneName.valueOf(zoneNames[i]), weights[i]);
+				}
+			}
+			IndexType type = IndexType.valueOf(typeName);
+			Query query = isBoolean ? new BooleanQuery(text) : new Query(text);
+			Index index = ShardedIndex.createShard(segment, type, new CollectionStatistics()
+			{
+				public int getDocumentCount()
+				{
+					return documentCount;
+				}
+
+				public int getDocumentFrequency(String term)
+				{
+					Integer documentFrequency = documentFrequencies.get(term);
+					if (documentFrequency == null)
+					{
+						PostingsList postings = segment.getPostings(term);
+						return postings == null ? 0 : postings.size();
+					}
+					return documentFrequency;
+				}
+			}, zoneWeights);
+			ScoredDocument[] results = index.evaluate(query, k);
+			output.writeByte(ShardProtocol.OK);
+			output.writeInt(results.length);
+			for (ScoredDocument result : results)
+			{
+				output.writeInt(result.getDocumentId());
+				output.writeDouble(result.getScore());
+			}
+			break;
+		}
+		case ShardProtocol.FETCH:
+		{
+			int[] documentIds = new int[ShardProtocol.readCount(input, segment
+					.getDocumentCount())];
+			for (int i = 0; i < documentIds.length; i++)
+			{
+				documentIds[i] = input.readInt();
+				// reading a document at a wrong offset allocates arbitrary sizes
+				if (documentIds[i] < 0 || documentIds[i] >= segment.getDocumentCount())
+				{
+					throw new ProtocolException("Document ID " + documentIds[i]
+							+ " out of range [0, " + segment.getDocumentCount() + ").");
+				}
+			}
+			Document[] documents = new Document[documentIds.length];
+			for (int i = 0; i < documentIds.length; i++)
+			{
+				documents[i] = segment.getDocument(documentIds[i]);
+			}
+			output.writeByte(ShardProtocol.OK);
+			for (Document document : documents)
+			{
+				ShardProtocol.writeDocument(output, document);
+			}
+			break;
+		}
+		default:
+			throw new IOException("Unknown request: " + opcode);
+		}
+	}
+
+	private static final Logger logger = Logger.getLogger("com.iretrieval.index");
+
+	private final Set<Socket> connections = Collections.synchronizedSet(new HashSet<Socket>());
+
+	/**
+	 * Runs the accepting loop and a thread per connection
+	 */
+	private final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory()
+	{
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, "shard-server");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	private final Segment segment;
+	private volatile ServerSocket serverSocket;
+}
@@ -0,0 +1,324 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+import ua.edu.ukma.fin.iretrieval.BooleanQuery;
+import ua.edu.ukma.fin.iretrieval.Document;
+import ua.edu.ukma.fin.iretrieval.Query;
+import ua.edu.ukma.fin.iretrieval.ZoneName;
+
+/**
+ * Index partitioned by document into shards, each of them a full index of the
+ * same type over its own segment. Documents are assigned to shards by hash of
+ * their GUIDs. A query is evaluated by all the shards in parallel, every
+ * shard returns its own top k documents and the best k of them are the
+ * result.
+ *
+ * Scores of different shards have to be comparable, so statistics of the
+ * whole collection are used by every shard: tf-idf weights of INVERTED
+ * shards are computed from document frequencies summed over the shards and
+ * the total number of documents, ZONED shards share zone weights learned
+ * from the whole collection. Wildcards are expanded against the dictionary
+ * of the whole collection before the query is sent to the shards. Viewed as
+ * a single index, shards are presented by a {@link CompositeSegment}.
+ *
+ * @see "Introduction to information retrieval. 20.3 Distributing indexes"
+ */
+public class ShardedIndex extends Index
+{
+	/**
+	 * Partitions the documents into shards and indexes the shards in
+	 * parallel. Zone weights of ZONED index are equal.
+	 *
+	 * @param documents
+	 * Collection of the documents to be indexed, duplicates will be ignored.
+	 *
+	 * @param type
+	 * Type of the shards' indexes.
+	 *
+	 * @param shardCount
+	 * Number of shards, must be positive.
+	 *
+	 * @param pool
+	 * Pool to index shards and evaluate queries in, null to do it on the
+	 * calling thread.
+	 */
+	public ShardedIndex(Collection<? extends Document> documents, IndexType type, int shardCount,
+			ForkJoinPool pool)
+	{
+		this(partition(documents, shardCount, pool), type, new ZoneStatistics(), pool);
+	}
+
+	/**
+	 * Constructs an index over already built shards.
+	 *
+	 * @param shards
+	 * Segments of the shards, they must not share documents.
+	 *
+	 * @param statistics
+	 * Training examples to learn zone weights of ZONED shards from, updated
+	 * against all the shards.
+	 */
+	ShardedIndex(List<? extends Segment> shards, IndexType type, ZoneStatistics statistics,
+			ForkJoinPool pool)
+	{
+		super(new CompositeSegment(shards));
+		this.type = type;
+		this.pool = pool;
+		this.shards = new Index[shards.size()];
+		this.bases = new int[shards.size()];
+		Map<ZoneName, Double> zoneWeights = null;
+		if (type == IndexType.ZONED)
+		{
+			statistics.update(segment, pool);
+			zoneWeights = statistics.getWeights();
+		}
+		CollectionStatistics collection = new CollectionStatistics()
+		{
+			public int getDocumentCount()
+			{
+				return segment.getDocumentCount();
+			}
+
+			public int getDocumentFrequency(String term)
+			{
+				return ShardedIndex.this.getDocumentFrequency(term);
+			}
+		};
+		int base = 0;
+		for (int i = 0; i < this.shards.length; i++)
+		{
+			this.shards[i] = createShard(shards.get(i), type, collection, zoneWeights);
+			this.bases[i] = base;
+			base += shards.get(i).getDocumentCount();
+		}
+	}
+
+	/**
+	 * @return Number of shards.
+	 */
+	public int getShardCount()
+	{
+		return shards.length;
+	}
+
+	/**
+	 * @return Type of the shards' indexes.
+	 */
+	@Override
+	public IndexType getType()
+	{
+		return type;
+	}
+
+	/**
+	 * Assigns the document to a shard by its GUID, so the document gets to
+	 * the same shard however the collection is split into batches.
+	 *
+	 * @param guid
+	 * <a href="http://en.wikipedia.org/wiki/Globally_Unique_Identifier"
+	 * >Globally Unique Identifier</a> of the document.
+	 *
+	 * @param shardCount
+	 * Number of shards.
+	 *
+	 * @return Index of the shard in range [0, shardCount).
+	 */
+	public static int getShard(String guid, int shardCount)
+	{
+		int hash = guid.hashCode() * 0x9E3779B9;
+		return (int) (((hash ^ (hash >>> 16)) & 0xFFFFFFFFL) % shardCount);
+	}
+
+	/**
+	 * Scatters the query to the shards and gathers their top k documents.
+	 * Document IDs of every shard are shifted by the number of documents in
+	 * the shards preceding it, the way the composite segment numbers them.
+	 */
+	@Override
+	ScoredDocument[] evaluate(Query query, int k)
+	{
+		final Query expanded = query instanceof BooleanQuery ? query : expandWildcards(query);
+		QueryProfile.lap(QueryProfile.Stage.EXPAND);
+		final int limit = k;
+		List<ScoredDocument[]> results;
+		if (pool == null || shards.length == 1)
+		{
+			results = new ArrayList<ScoredDocument[]>(shards.length);
+			for (Index shard : shards)
+			{
+				results.add(shard.evaluate(expanded, limit));
+			}
+		}
+		else
+		{
+			List<Callable<ScoredDocument[]>> searches =
+					new ArrayList<Callable<ScoredDocument[]>>(shards.length);
+			for (final Index shard : shards)
+			{
+				searches.add(new Callable<ScoredDocument[]>()
+				{
+					public ScoredDocument[] call()
+					{
+						return shard.evaluate(expanded, limit);
+					}
+				});
+			}
+			results = MemorySegment.invokeAll(pool, searches);
+			// shards are profiled on the threads of the pool, not this one
+			QueryProfile.lap(QueryProfile.Stage.SCORING);
+		}
+		TopDocumentsCollector collector = new TopDocumentsCollector(k);
+		for (int i = 0; i < shards.length; i++)
+		{
+			for (ScoredDocument scoredDocument : results.get(i))
+			{
+				collector.collect(bases[i] + scoredDocument.getDocumentId(), scoredDocument
+						.getScore());
+			}
+		}
+		ScoredDocument[] topDocuments = collector.getTopDocuments();
+		QueryProfile.lap(QueryProfile.Stage.TOP_K);
+		return topDocuments;
+	}
+
+	/**
+	 * Creates index of a shard. INVERTED shards weigh terms by statistics of
+	 * the whole collection, ZONED shards use the given zone weights, scores of
+	 * other types don't depend on the rest of the collection.
+	 *
+	 * @param shard
+	 * Segment of the shard.
+	 *
+	 * @param type
+	 * Type of the index.
+	 *
+	 * @param collection
+	 * Statistics of the whole collection.
+	 *
+	 * @param zoneWeights
+	 * Weights of the zones of ZONED index, null for equal weights. Zones
+	 * missing from the map get the equal weight.
+	 *
+	 * @return Index of the shard.
+	 */
+	static Index createShard(Segment shard, IndexType type, final CollectionStatistics collection,
+			final Map<ZoneName, Double> zoneWeights)
+	{
+		switch (type)
+		{
+		case ZONED:
+			return new ZonedIndex(shard, null)
+			{
+				@Override
+				protected double getZoneWeight(ZoneName name)
+				{
+					Double weight = zoneWeights == null ? null : zoneWeights.get(name);
+					return weight == null ? super.getZoneWeight(name) : weight;
+				}
+			};
+		case INVERTED:
+			return new InvertedIndex(shard)
+			{
+				@Override
+				protected int getCollectionSize()
+				{
+					return collection.getDocumentCount();
+				}
+
+				@Override
+				protected int getDocumentFrequency(String term)
+				{
+					return collection.getDocumentFrequency(term);
+				}
+			};
+		case VECTOR_SPACE:
+			return new VectorSpaceIndex(shard);
+		case BASIC:
+			return new Index(shard);
+		default:
+			throw new UnsupportedOperationException("Index of type " + type
+					+ " cannot be sharded.");
+		}
+	}
+
+	/**
+	 * @return Number of documents containing the term in all the shards.
+	 */
+	private int getDocumentFrequency(String term)
+	{
+		int documentFrequency = 0;
+		for (Index shard : shards)
+		{
+			PostingsList postings = shard.segment.getPostings(term);
+			if (postings != null)
+			{
+				documentFrequency += postings.size();
+			}
+		}
+		return documentFrequency;
+	}
+
+	/**
+	 * Splits the documents by {@link #getShard(String, int) GUID hash} and
+	 * indexes every part into a segment, parts are indexed in parallel.
+	 */
+	static List<Segment> partition(Collection<? extends Document> documents, int shardCount,
+			ForkJoinPool pool)
+	{
+		if (shardCount < 1)
+		{
+			throw new IllegalArgumentException("Number of shards must be positive: " + shardCount);
+		}
+		final List<List<Document>> parts = new ArrayList<List<Document>>(shardCount);
+		for (int i = 0; i < shardCount; i++)
+		{
+			parts.add(new ArrayList<Document>(documents.size() / shardCount + 1));
+		}
+		for (Document document : documents)
+		{
+			if (document != null && document.getGuid() != null)
+			{
+				parts.get(getShard(document.getGuid(), shardCount)).add(document);
+			}
+		}
+		if (pool == null)
+		{
+			List<Segment> shards = new ArrayList<Segment>(shardCount);
+			for (List<Document> part : parts)
+			{
+				shards.add(new MemorySegment(part));
+			}
+			return shards;
+		}
+		List<Callable<Segment>> indexing = new ArrayList<Callable<Segment>>(shardCount);
+		for (final List<Document> part : parts)
+		{
+			indexing.add(new Callable<Segment>()
+			{
+				public Segment call()
+				{
+					return new MemorySegment(part);
+				}
+			});
+		}
+		return MemorySegment.invokeAll(pool, indexing);
+	}
+
+	/**
+	 * The first document ID of every shard in the composite segment
+	 */
+	private final int[] bases;
+
+	/**
+	 * Pool evaluating queries, null to evaluate them on the calling thread
+	 */
+	private final ForkJoinPool pool;
+	private final Index[] shards;
+	private final IndexType type;
+}
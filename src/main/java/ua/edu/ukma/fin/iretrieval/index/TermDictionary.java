@@ -0,0 +1,335 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable sorted set of terms compressed by front coding. Terms are split
+ * into blocks of {@link #BLOCK_SIZE} consecutive terms, the first term of a
+ * block is kept as a string, every following one is stored as the length of
+ * the prefix it shares with the previous term and the remaining characters,
+ * all variable byte encoded into a single array. A term is found by binary
+ * search over the first terms of the blocks followed by decoding of a single
+ * block.
+ *
+ * Every term is identified by its ordinal, position of the term in the sorted
+ * order, which can address arrays of values such as postings lists.
+ *
+ * @see "Introduction to information retrieval. 5.2.2 Blocked storage"
+ */
+final class TermDictionary extends AbstractSet<String>
+{
+	/**
+	 * @param terms
+	 * Terms in ascending order, without duplicates.
+	 *
+	 * @throws IllegalArgumentException
+	 * In case terms aren't sorted or are repeated.
+	 */
+	TermDictionary(Iterator<String> terms)
+	{
+		VariableByteOutput output = new VariableByteOutput();
+		List<String> blockTerms = new ArrayList<String>();
+		int[] blockOffsets = new int[16];
+		String previous = null;
+		int size = 0;
+		while (terms.hasNext())
+		{
+			String term = terms.next();
+			if (previous != null && previous.compareTo(term) >= 0)
+			{
+				throw new IllegalArgumentException("Terms are not sorted: " + previous + ", " + term);
+			}
+			if (size % BLOCK_SIZE == 0)
+			{
+				if (blockTerms.size() == blockOffsets.length)
+				{
+					blockOffsets = Arrays.copyOf(blockOffsets, blockOffsets.length * 2);
+				}
+				blockOffsets[blockTerms.size()] = output.size();
+				blockTerms.add(term);
+			}
+			else
+			{
+				int shared = 0;
+				int limit = Math.min(previous.length(), term.length());
+				while (shared < limit && previous.charAt(shared) == term.charAt(shared))
+				{
+					shared++;
+				}
+				output.writeInt(shared);
+				output.writeInt(term.length() - shared);
+				for (int i = shared; i < term.length(); i++)
+				{
+					output.writeInt(term.charAt(i));
+				}
+			}
+			previous = term;
+			size++;
+		}
+		this.blockTerms = blockTerms.toArray(new String[blockTerms.size()]);
+		this.blockOffsets = Arrays.copyOf(blockOffsets, blockTerms.size());
+		this.data = output.toByteArray();
+		this.size = size;
+	}
+
+	@Override
+	public boolean contains(Object term)
+	{
+		return term instanceof String && find((String) term) >= 0;
+	}
+
+	/**
+	 * @return Estimated number of bytes the dictionary holds on the heap.
+	 */
+	long getHeapSize()
+	{
+		long heapSize = Segment.getArraySize(data.length, 1)
+				+ Segment.getArraySize(blockOffsets.length, 4)
+				+ Segment.getArraySize(blockTerms.length, 4);
+		for (String term : blockTerms)
+		{
+			heapSize += Segment.getStringSize(term);
+		}
+		return heapSize;
+	}
+
+	/**
+	 * @return Ordinal of the term or -1 if the term is absent.
+	 */
+	int find(String term)
+	{
+		Cursor cursor = seek(term);
+		if (cursor != null && cursor.compareTo(term) == 0)
+		{
+			return cursor.ordinal;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return Term with the ordinal.
+	 */
+	String getTerm(int ordinal)
+	{
+		if (ordinal < 0 || ordinal >= size)
+		{
+			throw new IndexOutOfBoundsException("Ordinal: " + ordinal + ", terms: " + size);
+		}
+		Cursor cursor = new Cursor(ordinal / BLOCK_SIZE);
+		while (cursor.ordinal < ordinal)
+		{
+			cursor.next();
+		}
+		return cursor.toString();
+	}
+
+	@Override
+	public Iterator<String> iterator()
+	{
+		return iterator("");
+	}
+
+	/**
+	 * Iterates over the terms starting with the prefix. Terms sharing a prefix
+	 * are consecutive, so only they are decoded.
+	 *
+	 * @param prefix
+	 * Prefix of the terms, empty string for all the terms.
+	 *
+	 * @return Terms with the prefix in ascending order.
+	 */
+	Iterator<String> iterator(final String prefix)
+	{
+		final Cursor start = seek(prefix);
+		return new Iterator<String>()
+		{
+			public boolean hasNext()
+			{
+				return cursor != null && cursor.startsWith(prefix);
+			}
+
+			public String next()
+			{
+				if (!hasNext())
+				{
+					throw new NoSuchElementException();
+				}
+				String term = cursor.toString();
+				if (!cursor.next())
+				{
+					cursor = null;
+				}
+				return term;
+			}
+
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+
+			private Cursor cursor = start;
+		};
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return Cursor at the first term which isn't less than the target or
+	 * null if there is no such term.
+	 */
+	private Cursor seek(String target)
+	{
+		if (size == 0)
+		{
+			return null;
+		}
+		int block = Arrays.binarySearch(blockTerms, target);
+		if (block < 0)
+		{
+			block = Math.max(-block - 2, 0);
+		}
+		Cursor cursor = new Cursor(block);
+		while (cursor.compareTo(target) < 0)
+		{
+			if (!cursor.next())
+			{
+				return null;
+			}
+		}
+		return cursor;
+	}
+
+	/**
+	 * Position in the dictionary, decodes terms one by one into a reusable
+	 * buffer.
+	 */
+	private final class Cursor
+	{
+		Cursor(int block)
+		{
+			load(block);
+		}
+
+		int compareTo(String term)
+		{
+			int limit = Math.min(length, term.length());
+			for (int i = 0; i < limit; i++)
+			{
+				if (chars[i] != term.charAt(i))
+				{
+					return chars[i] - term.charAt(i);
+				}
+			}
+			return length - term.length();
+		}
+
+		/**
+		 * Moves to the next term.
+		 *
+		 * @return FALSE if there are no more terms.
+		 */
+		boolean next()
+		{
+			if (ordinal + 1 == size)
+			{
+				return false;
+			}
+			if (++ordinal % BLOCK_SIZE == 0)
+			{
+				load(ordinal / BLOCK_SIZE);
+				return true;
+			}
+			length = readInt();
+			int suffixLength = readInt();
+			if (length + suffixLength > chars.length)
+			{
+				chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + suffixLength));
+			}
+			for (int i = 0; i < suffixLength; i++)
+			{
+				chars[length++] = (char) readInt();
+			}
+			return true;
+		}
+
+		boolean startsWith(String prefix)
+		{
+			if (length < prefix.length())
+			{
+				return false;
+			}
+			for (int i = 0; i < prefix.length(); i++)
+			{
+				if (chars[i] != prefix.charAt(i))
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public String toString()
+		{
+			return new String(chars, 0, length);
+		}
+
+		private void load(int block)
+		{
+			String term = blockTerms[block];
+			ordinal = block * BLOCK_SIZE;
+			offset = blockOffsets[block];
+			length = term.length();
+			if (length > chars.length)
+			{
+				chars = new char[Math.max(chars.length * 2, length)];
+			}
+			term.getChars(0, length, chars, 0);
+		}
+
+		private int readInt()
+		{
+			int value = 0;
+			for (int shift = 0;; shift += 7)
+			{
+				byte b = data[offset++];
+				value |= (b & 0x7F) << shift;
+				if (b >= 0)
+				{
+					return value;
+				}
+			}
+		}
+
+		private char[] chars = new char[32];
+		private int length;
+
+		/**
+		 * Offset of the next encoded term in the data array
+		 */
+		private int offset;
+		private int ordinal;
+	}
+
+	/**
+	 * Number of terms in a block, every block starts with a term kept as is
+	 */
+	static final int BLOCK_SIZE = 16;
+
+	/**
+	 * Offsets of the blocks' encoded terms in the data array
+	 */
+	private final int[] blockOffsets;
+	private final String[] blockTerms;
+	private final byte[] data;
+	private final int size;
+}
@@ -0,0 +1,119 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import java.util.Arrays;
+
+/**
+ * Dictionary assigning dense integer IDs to terms. Terms are looked up by
+ * characters of a token, so a string is created only for a term met for the
+ * first time. Open addressing with linear probing.
+ */
+final class TermTable
+{
+	/**
+	 * Looks the term up and adds it if it isn't in the table yet.
+	 *
+	 * @param chars
+	 * Buffer holding characters of the term.
+	 *
+	 * @param length
+	 * Number of the term's characters at the beginning of the buffer.
+	 *
+	 * @return ID of the term, IDs are assigned in order of addition starting
+	 * from 0.
+	 */
+	int add(char[] chars, int length)
+	{
+		int hash = 0;
+		for (int i = 0; i < length; i++)
+		{
+			hash = 31 * hash + chars[i];
+		}
+		int mask = slots.length - 1;
+		int slot = mix(hash) & mask;
+		while (slots[slot] != 0)
+		{
+			int termId = slots[slot] - 1;
+			if (hashes[termId] == hash && equals(terms[termId], chars, length))
+			{
+				return termId;
+			}
+			slot = (slot + 1) & mask;
+		}
+		int termId = size++;
+		if (termId == terms.length)
+		{
+			terms = Arrays.copyOf(terms, termId * 2);
+			hashes = Arrays.copyOf(hashes, termId * 2);
+		}
+		terms[termId] = new String(chars, 0, length);
+		hashes[termId] = hash;
+		slots[slot] = termId + 1;
+		if (size * 2 > slots.length)
+		{
+			rehash();
+		}
+		return termId;
+	}
+
+	/**
+	 * @return Term with the ID.
+	 */
+	String getTerm(int termId)
+	{
+		return terms[termId];
+	}
+
+	/**
+	 * @return Number of terms in the table.
+	 */
+	int size()
+	{
+		return size;
+	}
+
+	private void rehash()
+	{
+		slots = new int[slots.length * 2];
+		int mask = slots.length - 1;
+		for (int termId = 0; termId < size; termId++)
+		{
+			int slot = mix(hashes[termId]) & mask;
+			while (slots[slot] != 0)
+			{
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = termId + 1;
+		}
+	}
+
+	private static boolean equals(String term, char[] chars, int length)
+	{
+		if (term.length() != length)
+		{
+			return false;
+		}
+		for (int i = 0; i < length; i++)
+		{
+			if (term.charAt(i) != chars[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int mix(int hash)
+	{
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	private int[] hashes = new int[16];
+	private int size = 0;
+
+	/**
+	 * Term ID plus one for every occupied slot, 0 for an empty one
+	 */
+	private int[] slots = new int[32];
+	private String[] terms = new String[16];
+}
@@ -0,0 +1,118 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Decides which segments of an {@link IndexWriter} should be merged. Segments
+ * are grouped into tiers by the number of documents: tier 0 holds segments
+ * not larger than the floor size, each next tier holds segments up to
+ * {@link #getSegmentsPerTier() segments per tier} times larger. Once a tier
+ * collects that many segments they are merged into a single segment of the
+ * next tier, so the number of segments grows logarithmically with the
+ * collection size and every document is rewritten a logarithmic number of
+ * times.
+ *
+ * @see "Introduction to information retrieval. 4.5 Dynamic indexing"
+ */
+public class TieredMergePolicy
+{
+	/**
+	 * Selects segments to be merged next.
+	 *
+	 * @param segments
+	 * Live segments of the index.
+	 *
+	 * @return Segments to be merged or null if no merge is needed.
+	 */
+	public List<Segment> findMerge(List<Segment> segments)
+	{
+		List<List<Segment>> tiers = new ArrayList<List<Segment>>();
+		for (Segment segment : segments)
+		{
+			int tier = getTier(segment.getDocumentCount());
+			while (tiers.size() <= tier)
+			{
+				tiers.add(new ArrayList<Segment>());
+			}
+			tiers.get(tier).add(segment);
+		}
+		for (List<Segment> tier : tiers)
+		{
+			if (tier.size() >= segmentsPerTier)
+			{
+				Collections.sort(tier, new Comparator<Segment>()
+				{
+					public int compare(Segment a, Segment b)
+					{
+						return a.getDocumentCount() - b.getDocumentCount();
+					}
+				});
+				return new ArrayList<Segment>(tier.subList(0, segmentsPerTier));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return Number of documents up to which segments belong to the lowest
+	 * tier.
+	 */
+	public int getFloorSegmentSize()
+	{
+		return floorSegmentSize;
+	}
+
+	/**
+	 * @return Number of segments of a tier that triggers their merge.
+	 */
+	public int getSegmentsPerTier()
+	{
+		return segmentsPerTier;
+	}
+
+	/**
+	 * @param floorSegmentSize
+	 * Number of documents up to which segments belong to the lowest tier, must
+	 * be positive.
+	 */
+	public void setFloorSegmentSize(int floorSegmentSize)
+	{
+		if (floorSegmentSize < 1)
+		{
+			throw new IllegalArgumentException("Floor segment size must be positive: "
+					+ floorSegmentSize);
+		}
+		this.floorSegmentSize = floorSegmentSize;
+	}
+
+	/**
+	 * @param segmentsPerTier
+	 * Number of segments of a tier that triggers their merge, must be at least
+	 * 2.
+	 */
+	public void setSegmentsPerTier(int segmentsPerTier)
+	{
+		if (segmentsPerTier < 2)
+		{
+			throw new IllegalArgumentException("At least two segments per tier are required: "
+					+ segmentsPerTier);
+		}
+		this.segmentsPerTier = segmentsPerTier;
+	}
+
+	private int getTier(int documentCount)
+	{
+		int tier = 0;
+		for (long limit = floorSegmentSize; documentCount > limit; limit *= segmentsPerTier)
+		{
+			tier++;
+		}
+		return tier;
+	}
+
+	private volatile int floorSegmentSize = 1000;
+	private volatile int segmentsPerTier = 10;
+}
@@ -0,0 +1,94 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import java.util.PriorityQueue;
+
+/**
+ * Keeps k best scored documents seen so far in a min-heap, so the least
+ * relevant of them is always on top and can be cheaply compared with a new
+ * candidate.
+ */
+class TopDocumentsCollector
+{
+	/**
+	 * @param k
+	 * Maximum number of documents to keep, must be positive.
+	 */
+	public TopDocumentsCollector(int k)
+	{
+		if (k <= 0)
+		{
+			throw new IllegalArgumentException("Number of documents to collect must be positive: "
+					+ k);
+		}
+		this.k = k;
+		this.heap = new PriorityQueue<ScoredDocument>(Math.min(k, 1024));
+	}
+
+	/**
+	 * Offers scored document to the collector.
+	 * 
+	 * @return TRUE if the document got to the top, FALSE otherwise.
+	 */
+	public boolean collect(int documentId, double score)
+	{
+		collectedCount++;
+		if (heap.size() < k)
+		{
+			heap.add(new ScoredDocument(documentId, score));
+			return true;
+		}
+		ScoredDocument least = heap.peek();
+		if (score > least.getScore() || score == least.getScore()
+				&& documentId < least.getDocumentId())
+		{
+			heap.poll();
+			heap.add(new ScoredDocument(documentId, score));
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return Number of documents offered to the collector, i.e. number of
+	 * candidates scored.
+	 */
+	public int getCollectedCount()
+	{
+		return collectedCount;
+	}
+
+	/**
+	 * Score a document has to beat in order to get to the top.
+	 * 
+	 * @return Score of the least relevant collected document or negative
+	 * infinity while the collector isn't full.
+	 */
+	public double getThreshold()
+	{
+		if (heap.size() < k)
+		{
+			return Double.NEGATIVE_INFINITY;
+		}
+		return heap.peek().getScore();
+	}
+
+	/**
+	 * Empties the collector.
+	 * 
+	 * @return Collected documents from the most relevant to the least relevant
+	 * one.
+	 */
+	public ScoredDocument[] getTopDocuments()
+	{
+		ScoredDocument[] top = new ScoredDocument[heap.size()];
+		for (int i = top.length - 1; i >= 0; i--)
+		{
+			top[i] = heap.poll();
+		}
+		return top;
+	}
+
+	private int collectedCount = 0;
+	private final PriorityQueue<ScoredDocument> heap;
+	private final int k;
+}
@@ -0,0 +1,58 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import java.util.Arrays;
+
+/**
+ * Growable byte array that integers are appended to using variable byte
+ * encoding: seven bits of payload per byte, the high bit is set on every byte
+ * except the last one of the number.
+ *
+ * @see "Introduction to information retrieval. 5.3.1 Variable byte codes"
+ */
+class VariableByteOutput
+{
+	/**
+	 * Appends a non-negative integer.
+	 *
+	 * @param value
+	 * Value to append, must not be negative.
+	 */
+	public void writeInt(int value)
+	{
+		assert value >= 0;
+		ensureCapacity(size + 5);
+		while ((value & ~0x7F) != 0)
+		{
+			bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		bytes[size++] = (byte) value;
+	}
+
+	/**
+	 * @return Number of bytes written so far.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return Copy of the written bytes trimmed to the actual size.
+	 */
+	public byte[] toByteArray()
+	{
+		return Arrays.copyOf(bytes, size);
+	}
+
+	private void ensureCapacity(int capacity)
+	{
+		if (capacity > bytes.length)
+		{
+			bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+		}
+	}
+
+	private byte[] bytes = new byte[16];
+	private int size = 0;
+}
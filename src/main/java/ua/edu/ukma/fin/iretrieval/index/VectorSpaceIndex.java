@@ -1,7 +1,7 @@
 package ua.edu.ukma.fin.iretrieval.index;
 
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -13,7 +13,8 @@ public class VectorSpaceIndex extends InvertedIndex
 {
 	/**
 	 * Simply calls the {@link InvertedIndex#InvertedIndex(Collection)
-	 * superclass constructor}
+	 * superclass constructor}, Euclidean lengths of documents' vectors are
+	 * precomputed by the segment.
 	 * 
 	 * @param documents
 	 * Collection of the documents to be indexed, duplicates will be ignored
@@ -23,6 +24,24 @@ public class VectorSpaceIndex extends InvertedIndex
 		super(documents);
 	}
 
+	/**
+	 * Simply calls the {@link InvertedIndex#InvertedIndex(Segment) superclass
+	 * constructor}
+	 * 
+	 * @param segment
+	 * Segment containing documents and postings
+	 */
+	public VectorSpaceIndex(Segment segment)
+	{
+		super(segment);
+	}
+
+	@Override
+	public IndexType getType()
+	{
+		return IndexType.VECTOR_SPACE;
+	}
+
 	/**
 	 * When documents are represented as vectors we can compute the the
 	 * similarity between them as cosine of the angle between two vectors that
@@ -41,8 +60,8 @@ public class VectorSpaceIndex extends InvertedIndex
 	 */
 	protected double getCosineSimilarity(Document a, Document b)
 	{
-		double[] componentsA = getVectorComponents(a, getDictionary());
-		double[] componentsB = getVectorComponents(b, getDictionary());
+		double[] componentsA = getVectorComponents(getTermStatistics(a), getDictionary());
+		double[] componentsB = getVectorComponents(getTermStatistics(b), getDictionary());
 		return getCosineTeta(componentsA, componentsB);
 	}
 
@@ -50,7 +69,9 @@ public class VectorSpaceIndex extends InvertedIndex
 	 * We can view a query as a very small document, and that gives us a
 	 * possibility to compute cosine similarity between query and document like
 	 * we do it for {@link #getCosineSimilarity(Document, Document) two
-	 * documents}.
+	 * documents}. Components of the query vector are zero for all terms except
+	 * the query ones, so only they contribute to the dot product, and length
+	 * of the indexed document's vector is precomputed.
 	 * 
 	 * @see "Introduction retrieval. 6.3.2 Queries as vectors"
 	 * 
@@ -60,32 +81,117 @@ public class VectorSpaceIndex extends InvertedIndex
 	 * @param query
 	 * Query for the second vector.
 	 * 
-	 * @return {@link #getCosineTeta(double[], double[]) Cosine of the angle}
-	 * between document's and query's vectors.
+	 * @return Cosine of the angle between document's and query's vectors.
 	 */
 	protected double getCosineSimilarity(Document document, Query query)
 	{
-		Set<String> terms = new HashSet<String>();
-		terms.addAll(getDictionary());
-		terms.addAll(query.getTerms());
-		double[] componentsA = getVectorComponents(document, terms);
-		double[] componentsB = getVectorComponents(query, terms);
-		return getCosineTeta(componentsA, componentsB);
+		int documentId = getDocumentId(document);
+		if (documentId == -1)
+		{
+			Set<String> terms = new HashSet<String>();
+			terms.addAll(getDictionary());
+			terms.addAll(query.getTerms());
+			double[] componentsA = getVectorComponents(document, terms);
+			double[] componentsB = getVectorComponents(query, terms);
+			return getCosineTeta(componentsA, componentsB);
+		}
+		double dotProduct = 0.0;
+		for (String term : query.getTerms())
+		{
+			dotProduct += getTermFrequency(document, term) * query.getTermFrequency(term);
+		}
+		return dotProduct / (segment.getEuclideanLength(documentId) * getEuclideanLength(query));
 	}
 
+	/**
+	 * Scores documents by {@link #getCosineSimilarity(Document, Query) cosine
+	 * similarity} with the query using precomputed lengths of documents'
+	 * vectors.
+	 */
 	@Override
-	protected Comparator<Document> getDocumentComparator(final Query query)
+	protected ScoreFunction getScoreFunction(final Query query, final String[] terms)
 	{
-		return new Comparator<Document>()
+		final double[] queryComponents = getVectorComponents(query, Arrays.asList(terms));
+		final double queryLength = getEuclideanLength(query);
+		return new ScoreFunction()
 		{
-			public int compare(Document a, Document b)
+			public double score(int documentId, PostingsIterator[] postings)
 			{
-				return Double.valueOf(getCosineSimilarity(a, query)).compareTo(
-						Double.valueOf(getCosineSimilarity(b, query)));
+				double dotProduct = 0.0;
+				for (int i = 0; i < postings.length; i++)
+				{
+					if (postings[i].document() == documentId)
+					{
+						dotProduct += postings[i].termFrequency() * queryComponents[i];
+					}
+				}
+				return dotProduct / (segment.getEuclideanLength(documentId) * queryLength);
 			}
 		};
 	}
 
+	/**
+	 * Cosine similarity is normalized by the document vector length, so the
+	 * maximum term frequency doesn't bound a term's contribution to it.
+	 */
+	@Override
+	protected boolean isPruningSupported()
+	{
+		return false;
+	}
+
+	/**
+	 * Evaluates the query term-at-a-time. Postings of each query term are
+	 * traversed in turn and products of document's and query's term
+	 * frequencies are added to the documents' accumulators. After all terms
+	 * are processed, accumulators are divided by vectors' lengths and offered
+	 * to the top-k heap. Accumulators are kept in a hash table sized by the
+	 * total document frequency of the query terms, so scoring takes time
+	 * proportional to the number of postings of the query terms rather than
+	 * to the collection or the dictionary size.
+	 * 
+	 * @see "Introduction to information retrieval. 6.3.3 Computing vector
+	 * scores"
+	 */
+	@Override
+	protected ScoredDocument[] search(Query query, int k)
+	{
+		TopDocumentsCollector collector = new TopDocumentsCollector(k);
+		String[] terms = getIndexedTerms(query);
+		PostingsList[] lists = new PostingsList[terms.length];
+		long postingsCount = 0;
+		for (int i = 0; i < terms.length; i++)
+		{
+			lists[i] = segment.getPostings(terms[i]);
+			postingsCount += lists[i].size();
+		}
+		Accumulators accumulators = new Accumulators((int) Math.min(postingsCount, segment
+				.getDocumentCount()));
+		PostingsIterator[] postings = new PostingsIterator[terms.length];
+		QueryProfile.lap(QueryProfile.Stage.POSTINGS);
+		for (int i = 0; i < terms.length; i++)
+		{
+			double queryComponent = query.getTermFrequency(terms[i]);
+			PostingsIterator iterator = postings[i] = lists[i].iterator();
+			int documentId;
+			while ((documentId = iterator.nextDocument()) != PostingsIterator.NO_MORE_DOCUMENTS)
+			{
+				accumulators.add(documentId, iterator.termFrequency() * queryComponent);
+			}
+		}
+		double queryLength = getEuclideanLength(query);
+		for (int slot = 0; slot < accumulators.keys.length; slot++)
+		{
+			int id = accumulators.keys[slot] - 1;
+			if (id >= 0)
+			{
+				collector.collect(id, accumulators.values[slot]
+						/ (segment.getEuclideanLength(id) * queryLength));
+			}
+		}
+		return getTopDocuments(collector, postings);
+	}
+
 	/**
 	 * When documents are represented as vectors we can measure how close they
 	 * are by computing the Euclidean distance between the two documents'
@@ -102,8 +208,8 @@ public class VectorSpaceIndex extends InvertedIndex
 	 */
 	protected double getEuclideanDistance(Document a, Document b)
 	{
-		double[] componentsA = getVectorComponents(a, getDictionary());
-		double[] componentsB = getVectorComponents(b, getDictionary());
+		double[] componentsA = getVectorComponents(getTermStatistics(a), getDictionary());
+		double[] componentsB = getVectorComponents(getTermStatistics(b), getDictionary());
 		return getEuclideanDistance(componentsA, componentsB);
 	}
 
@@ -192,6 +298,40 @@ public class VectorSpaceIndex extends InvertedIndex
 		return euclideanLength;
 	}
 
+	/**
+	 * Wraps the document so that its term frequencies are read from the
+	 * postings.
+	 * 
+	 * @param document
+	 * Document to provide term statistics for.
+	 * 
+	 * @return Term statistics backed by the index.
+	 */
+	private TermStatistics getTermStatistics(final Document document)
+	{
+		return new TermStatistics()
+		{
+			public int getTermFrequency(String term)
+			{
+				return VectorSpaceIndex.this.getTermFrequency(document, term);
+			}
+		};
+	}
+
+	/**
+	 * Computes Euclidean length of the query vector. Query terms are the only
+	 * non-zero components of it.
+	 * 
+	 * @param query
+	 * Query to compute vector length for.
+	 * 
+	 * @return Euclidean length of the query vector.
+	 */
+	private double getEuclideanLength(Query query)
+	{
+		return getEuclideanLength(getVectorComponents(query, query.getTerms()));
+	}
+
 	/**
 	 * We can model a vector space where each axis will a term and coordinates
 	 * an such an axis will be term frequencies for this term. So any object
@@ -218,4 +358,40 @@ public class VectorSpaceIndex extends InvertedIndex
 		}
 		return components;
 	}
+
+	/**
+	 * Open-addressing hash table of score accumulators keyed by document ID.
+	 * Table is at most half full, so linear probing stays short.
+	 */
+	private static final class Accumulators
+	{
+		/**
+		 * @param capacity
+		 * Maximum number of documents to be accumulated.
+		 */
+		Accumulators(int capacity)
+		{
+			int size = Integer.highestOneBit(Math.max(capacity, 1) * 2 - 1) << 1;
+			keys = new int[size];
+			values = new double[size];
+		}
+
+		void add(int documentId, double value)
+		{
+			int mask = keys.length - 1;
+			int slot = (documentId * 0x9E3779B9) >>> 1 & mask;
+			while (keys[slot] != 0 && keys[slot] != documentId + 1)
+			{
+				slot = slot + 1 & mask;
+			}
+			keys[slot] = documentId + 1;
+			values[slot] += value;
+		}
+
+		/**
+		 * Document IDs shifted by one, 0 marks a free slot
+		 */
+		final int[] keys;
+		final double[] values;
+	}
 }
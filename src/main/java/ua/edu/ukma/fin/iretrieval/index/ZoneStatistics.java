@@ -0,0 +1,286 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ua.edu.ukma.fin.iretrieval.TrainingExample;
+import ua.edu.ukma.fin.iretrieval.ZoneName;
+
+/**
+ * Statistics of training examples zone weights are learned from. Learning
+ * needs to know only whether the example's term occurs in each zone of the
+ * example's document, so every example is reduced to the
+ * {@link PostingsIterator#zoneMask() zone mask} of its posting, read once,
+ * and counted by mask and relevance. Weights are then learned from
+ * <code>2^{@link PostingsList#ZONE_BITS}</code> pairs of counters no matter
+ * how many examples there are.
+ *
+ * Examples are added incrementally: only examples added since the last
+ * {@link #update(Segment, ForkJoinPool) update} are looked up in the
+ * postings. Examples whose documents aren't indexed yet are kept and looked up
+ * again on the next update. Documents are identified by GUID, so the counts
+ * remain valid as long as documents with the same GUIDs have the same content.
+ *
+ * @see "Introduction to information retrieval. 6.1.2 Learning weights"
+ */
+final class ZoneStatistics
+{
+	/**
+	 * Adds examples to be counted on the next update.
+	 *
+	 * @param examples
+	 * Training examples, duplicates have to be filtered out by the caller.
+	 */
+	synchronized void add(Collection<TrainingExample> examples)
+	{
+		pending.addAll(examples);
+	}
+
+	/**
+	 * Forgets all the examples, both counted and pending.
+	 */
+	synchronized void clear()
+	{
+		Arrays.fill(counts, 0);
+		pending.clear();
+	}
+
+	/**
+	 * @return Number of examples counted so far.
+	 */
+	synchronized long getExampleCount()
+	{
+		long exampleCount = 0;
+		for (long count : counts)
+		{
+			exampleCount += count;
+		}
+		return exampleCount;
+	}
+
+	/**
+	 * Learns weights of the zones from the counted examples. Starting from
+	 * equal weights, weights of every pair of zones are redistributed
+	 * according to the examples whose term occurs in one zone of the pair
+	 * only.
+	 *
+	 * @return Weights of the zones, they sum up to one.
+	 */
+	synchronized Map<ZoneName, Double> getWeights()
+	{
+		double[] weights = new double[ZONES.length];
+		Arrays.fill(weights, 1.0 / ZONES.length);
+		for (int a = 0; a < ZONES.length - 1; a++)
+		{
+			for (int b = a + 1; b < ZONES.length; b++)
+			{
+				long n01r = 0;
+				long n01n = 0;
+				long n10r = 0;
+				long n10n = 0;
+				for (int mask = 0; mask < 1 << PostingsList.ZONE_BITS; mask++)
+				{
+					boolean inA = (mask & 1 << a) != 0;
+					boolean inB = (mask & 1 << b) != 0;
+					if (!inA && inB)
+					{
+						n01r += counts[mask << 1 | 1];
+						n01n += counts[mask << 1];
+					}
+					else if (inA && !inB)
+					{
+						n10r += counts[mask << 1 | 1];
+						n10n += counts[mask << 1];
+					}
+				}
+				if (n10r != 0 || n10n != 0 || n01r != 0 || n01n != 0)
+				{
+					double g = (double) (n10r + n01n) / (n10r + n10n + n01r + n01n);
+					if (g > 0 && g < 1)
+					{
+						double oldTotalWeight = weights[a] + weights[b];
+						BigDecimal newWeightA = new BigDecimal(oldTotalWeight * g);
+						newWeightA = newWeightA.setScale(5, BigDecimal.ROUND_HALF_UP);
+						BigDecimal newWeightB = new BigDecimal(oldTotalWeight
+								- newWeightA.doubleValue());
+						newWeightB = newWeightB.setScale(5, BigDecimal.ROUND_HALF_UP);
+						weights[a] = newWeightA.doubleValue();
+						weights[b] = newWeightB.doubleValue();
+					}
+				}
+			}
+		}
+		Map<ZoneName, Double> zonesWeights = new EnumMap<ZoneName, Double>(ZoneName.class);
+		for (ZoneName name : ZONES)
+		{
+			zonesWeights.put(name, weights[name.ordinal()]);
+		}
+		return zonesWeights;
+	}
+
+	/**
+	 * Counts pending examples whose documents are present in the segment.
+	 * Examples are sorted by term and document, so that postings of every term
+	 * are looked up once and scanned forward only. Sorted examples are split
+	 * into ranges counted in parallel.
+	 *
+	 * @param segment
+	 * Segment to read zone masks from.
+	 *
+	 * @param pool
+	 * Pool to count examples in, null to count them on the calling thread.
+	 */
+	synchronized void update(final Segment segment, ForkJoinPool pool)
+	{
+		if (pending.isEmpty())
+		{
+			return;
+		}
+		List<Judgement> judgements = new ArrayList<Judgement>(pending.size());
+		List<TrainingExample> unresolved = new ArrayList<TrainingExample>();
+		for (TrainingExample example : pending)
+		{
+			int documentId = segment.getDocumentId(example.getDocumentGuid());
+			if (documentId == -1)
+			{
+				unresolved.add(example);
+			}
+			else
+			{
+				judgements.add(new Judgement(example.getTerm().toLowerCase(), documentId, example
+						.isRelevant()));
+			}
+		}
+		if (!unresolved.isEmpty())
+		{
+			logger.log(Level.WARNING, "Documents of {0} training examples are not present in the "
+					+ "index, examples will be used once the documents are indexed.",
+					unresolved.size());
+		}
+		pending.clear();
+		pending.addAll(unresolved);
+
+		final Judgement[] sorted = judgements.toArray(new Judgement[judgements.size()]);
+		Arrays.sort(sorted, BY_TERM_AND_DOCUMENT);
+		int ranges = 1;
+		if (pool != null)
+		{
+			ranges = Math.min(pool.getParallelism() * 4, sorted.length / MIN_RANGE_SIZE);
+		}
+		if (ranges <= 1)
+		{
+			count(segment, sorted, 0, sorted.length, counts);
+			return;
+		}
+		List<Callable<long[]>> counting = new ArrayList<Callable<long[]>>(ranges);
+		for (int i = 0; i < ranges; i++)
+		{
+			final int from = (int) ((long) sorted.length * i / ranges);
+			final int to = (int) ((long) sorted.length * (i + 1) / ranges);
+			counting.add(new Callable<long[]>()
+			{
+				public long[] call()
+				{
+					long[] partial = new long[2 << PostingsList.ZONE_BITS];
+					count(segment, sorted, from, to, partial);
+					return partial;
+				}
+			});
+		}
+		for (long[] partial : MemorySegment.invokeAll(pool, counting))
+		{
+			for (int i = 0; i < counts.length; i++)
+			{
+				counts[i] += partial[i];
+			}
+		}
+	}
+
+	/**
+	 * Counts judgements in range [from, to) sorted by term and document.
+	 * Iterator over postings of a term is reused while its judgements are
+	 * counted.
+	 */
+	private static void count(Segment segment, Judgement[] judgements, int from, int to,
+			long[] counts)
+	{
+		String term = null;
+		PostingsIterator iterator = null;
+		for (int i = from; i < to; i++)
+		{
+			Judgement judgement = judgements[i];
+			if (!judgement.term.equals(term))
+			{
+				term = judgement.term;
+				PostingsList postings = segment.getPostings(term);
+				iterator = postings == null ? null : postings.iterator();
+			}
+			int mask = 0;
+			if (iterator != null && iterator.advance(judgement.documentId) == judgement.documentId)
+			{
+				mask = iterator.zoneMask();
+			}
+			counts[mask << 1 | (judgement.relevant ? 1 : 0)]++;
+		}
+	}
+
+	/**
+	 * Training example resolved against a segment
+	 */
+	private static final class Judgement
+	{
+		Judgement(String term, int documentId, boolean relevant)
+		{
+			this.term = term;
+			this.documentId = documentId;
+			this.relevant = relevant;
+		}
+
+		private final int documentId;
+		private final boolean relevant;
+		private final String term;
+	}
+
+	private static final Comparator<Judgement> BY_TERM_AND_DOCUMENT = new Comparator<Judgement>()
+	{
+		public int compare(Judgement a, Judgement b)
+		{
+			int order = a.term.compareTo(b.term);
+			if (order != 0)
+			{
+				return order;
+			}
+			return a.documentId < b.documentId ? -1 : a.documentId == b.documentId ? 0 : 1;
+		}
+	};
+
+	/**
+	 * Minimal number of examples counted by a single task
+	 */
+	private static final int MIN_RANGE_SIZE = 4096;
+
+	private static final ZoneName[] ZONES = ZoneName.values();
+
+	private static final Logger logger = Logger.getLogger("com.iretrieval.index");
+
+	/**
+	 * Numbers of counted examples indexed by zone mask shifted left by one
+	 * bit, the lowest bit is set for relevant examples
+	 */
+	private final long[] counts = new long[2 << PostingsList.ZONE_BITS];
+
+	/**
+	 * Examples which haven't been counted yet
+	 */
+	private final List<TrainingExample> pending = new ArrayList<TrainingExample>();
+}
@@ -1,8 +1,6 @@
 package ua.edu.ukma.fin.iretrieval.index;
 
-import java.math.BigDecimal;
 import java.util.Collection;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -17,23 +15,56 @@ import ua.edu.ukma.fin.iretrieval.ZonedDocument;
 
 public class ZonedIndex extends Index
 {
-	public ZonedIndex(Collection<ZonedDocument> documents)
+	public ZonedIndex(Collection<? extends Document> documents)
 	{
 		this(documents, null);
 	}
 
-	public ZonedIndex(Collection<ZonedDocument> documents, Collection<TrainingExample> examples)
+	/**
+	 * Constructs zoned index of the documents. Documents don't have to be
+	 * {@link ZonedDocument zoned}, zones are recorded in the postings while
+	 * documents are indexed.
+	 * 
+	 * @param documents
+	 * Documents to be indexed
+	 * 
+	 * @param examples
+	 * Training examples to learn zones' weights from, can be null
+	 */
+	public ZonedIndex(Collection<? extends Document> documents,
+			Collection<TrainingExample> examples)
 	{
-		super(documents);
-		zonesWeights = new HashMap<ZoneName, Double>();
-		for (ZoneName name : ZoneName.values())
+		this(new MemorySegment(documents), examples);
+	}
+
+	/**
+	 * Constructs zoned index on top of already built segment. Term frequencies
+	 * in zones are read from the segment's postings.
+	 * 
+	 * @param segment
+	 * Segment containing documents and postings
+	 * 
+	 * @param examples
+	 * Training examples to learn zones' weights from, can be null
+	 */
+	public ZonedIndex(Segment segment, Collection<TrainingExample> examples)
+	{
+		this(segment, count(segment, examples));
+	}
+
+	private ZonedIndex(Segment segment, ZoneStatistics statistics)
+	{
+		super(segment);
+		for (ZoneName name : ZONES)
 		{
-			zonesWeights.put(name, (1.0 / ZoneName.values().length));
+			zonesWeights.put(name, (1.0 / ZONES.length));
 		}
-		if (examples != null && examples.size() > 0)
+		if (statistics.getExampleCount() > 0)
 		{
-			if (!adjustWeights(examples))
+			Map<ZoneName, Double> learnedWeights = statistics.getWeights();
+			if (!learnedWeights.equals(zonesWeights))
 			{
+				zonesWeights.putAll(learnedWeights);
 				logger.log(Level.INFO, "Zones' weights were adjusted. New weights: {0}.",
 						zonesWeights);
 			}
@@ -48,18 +79,49 @@ public class ZonedIndex extends Index
 	@Override
 	public ZonedDocument getDocumentFromCache(String guid)
 	{
-		return (ZonedDocument) super.getDocumentFromCache(guid);
+		Document document = super.getDocumentFromCache(guid);
+		if (document == null || document instanceof ZonedDocument)
+		{
+			return (ZonedDocument) document;
+		}
+		return new ZonedDocument(document);
 	}
 
 	@Override
-	protected Comparator<Document> getDocumentComparator(final Query query)
+	public IndexType getType()
 	{
-		return new Comparator<Document>()
+		return IndexType.ZONED;
+	}
+
+	/**
+	 * Scores documents by {@link #getWeightedZoneScore(ZonedDocument, Query)
+	 * weighted zone score}. Term frequencies in zones are taken from the
+	 * postings and multiplied by zones' weights.
+	 */
+	@Override
+	protected ScoreFunction getScoreFunction(final Query query, final String[] terms)
+	{
+		final double[] weights = new double[ZONES.length];
+		for (ZoneName name : ZONES)
 		{
-			public int compare(Document a, Document b)
+			weights[name.ordinal()] = getZoneWeight(name);
+		}
+		return new ScoreFunction()
+		{
+			public double score(int documentId, PostingsIterator[] postings)
 			{
-				return Double.valueOf(getWeightedZoneScore((ZonedDocument) a, query)).compareTo(
-						Double.valueOf(getWeightedZoneScore((ZonedDocument) b, query)));
+				double score = 0.0;
+				for (PostingsIterator iterator : postings)
+				{
+					if (iterator.document() == documentId)
+					{
+						for (ZoneName name : ZONES)
+						{
+							score += iterator.zoneTermFrequency(name) * weights[name.ordinal()];
+						}
+					}
+				}
+				return score;
 			}
 		};
 	}
@@ -97,9 +159,10 @@ public class ZonedIndex extends Index
 	protected double getWeightedZoneScore(ZonedDocument document, String term)
 	{
 		double score = 0.0;
-		for (Zone zone : document.getZones())
+		int[] termFrequencies = getZonesTermFrequencies(document, term);
+		for (ZoneName name : ZoneName.values())
 		{
-			score += zone.getTermFrequency(term) * getZoneWeight(zone.getName());
+			score += termFrequencies[name.ordinal()] * getZoneWeight(name);
 		}
 		return score;
 	}
@@ -124,92 +187,40 @@ public class ZonedIndex extends Index
 	}
 
 	/**
-	 * Given a set of training examples adjusts weights of known zones using
-	 * machine learning techniques.
+	 * Gets how many times term occurs in each zone of the document. For
+	 * indexed documents frequencies are read from the postings, other
+	 * documents are asked to {@link Zone#getTermFrequency(String) count
+	 * occurrences} zone by zone.
 	 * 
-	 * @see "Introduction to information retrieval. 6.1.2 Learning weights"
+	 * @param document
+	 * Document to calculate term frequencies for.
 	 * 
-	 * @param examples
-	 * Collection of training examples to learn weights from
+	 * @param term
+	 * Term to calculate number of occurrences for.
 	 * 
-	 * @return TRUE if weights were adjusted, FALSE otherwise
+	 * @return Term frequencies indexed by {@link ZoneName#ordinal() zone name
+	 * ordinal}.
 	 */
-	private boolean adjustWeights(Collection<TrainingExample> examples)
+	protected int[] getZonesTermFrequencies(ZonedDocument document, String term)
 	{
-		Map<ZoneName, Double> oldZonesWeights = zonesWeights;
-		for (int i = 0; i < ZoneName.values().length - 1; i++)
+		int documentId = getDocumentId(document);
+		if (documentId == -1)
 		{
-			for (int j = i + 1; j < ZoneName.values().length; j++)
+			int[] termFrequencies = new int[ZONES.length];
+			for (Zone zone : document.getZones())
 			{
-				ZoneName a = ZoneName.values()[i];
-				ZoneName b = ZoneName.values()[j];
-				double oldTotalWeight = getZoneWeight(a) + getZoneWeight(b);
-				int n01r = 0;
-				int n01n = 0;
-				int n10r = 0;
-				int n10n = 0;
-				for (TrainingExample example : examples)
-				{
-					ZonedDocument document = getDocumentFromCache(example.getDocumentGuid());
-					if (document == null)
-					{
-						System.err.printf("Document [%s] is not present in the index cache.%n",
-								example.getDocumentGuid());
-					}
-					else
-					{
-						Zone zoneA = document.getZone(a);
-						Zone zoneB = document.getZone(b);
-						if ((zoneA == null || zoneA.getTermFrequency(example.getTerm()) == 0)
-								&& (zoneB != null && zoneB.getTermFrequency(example.getTerm()) > 0)
-								&& example.isRelevant())
-						{
-							n01r++;
-						}
-						if ((zoneA == null || zoneA.getTermFrequency(example.getTerm()) == 0)
-								&& (zoneB != null && zoneB.getTermFrequency(example.getTerm()) > 0)
-								&& !example.isRelevant())
-						{
-							n01n++;
-						}
-						if ((zoneA != null && zoneA.getTermFrequency(example.getTerm()) > 0)
-								&& (zoneB == null || zoneB.getTermFrequency(example.getTerm()) == 0)
-								&& example.isRelevant())
-						{
-							n10r++;
-						}
-						if ((zoneA != null && zoneA.getTermFrequency(example.getTerm()) > 0)
-								&& (zoneB == null || zoneB.getTermFrequency(example.getTerm()) == 0)
-								&& !example.isRelevant())
-						{
-							n10n++;
-						}
-					}
-				}
-				if (n10r != 0 || n10n != 0 || n01r != 0 || n01n != 0)
-				{
-					double g = Double.valueOf(n10r + n01n)
-							/ Double.valueOf(n10r + n10n + n01r + n01n);
-					if (g > 0 && g < 1)
-					{
-						BigDecimal newWeightA = new BigDecimal(oldTotalWeight * g);
-						newWeightA = newWeightA.setScale(5, BigDecimal.ROUND_HALF_UP);
-						BigDecimal newWeightB = new BigDecimal(oldTotalWeight
-								- newWeightA.doubleValue());
-						newWeightB = newWeightB.setScale(5, BigDecimal.ROUND_HALF_UP);
-						zonesWeights.put(a, newWeightA.doubleValue());
-						zonesWeights.put(b, newWeightB.doubleValue());
-					}
-				}
+				termFrequencies[zone.getName().ordinal()] = zone.getTermFrequency(term);
 			}
+			return termFrequencies;
 		}
-		if (oldZonesWeights.equals(zonesWeights))
-		{
-			return false;
-		}
-		return true;
+		return getZonesTermFrequencies(documentId, term);
 	}
 
+	/**
+	 * @deprecated Documents are indexed by zoned index as they are, zones are
+	 * recorded in the postings, so there is no need to keep zoned copies.
+	 */
+	@Deprecated
 	public static Collection<ZonedDocument> convertDocuments(Collection<Document> documents)
 	{
 		Collection<ZonedDocument> zonedDocuments = new HashSet<ZonedDocument>();
@@ -220,6 +231,67 @@ public class ZonedIndex extends Index
 		return zonedDocuments;
 	}
 
-	private Map<ZoneName, Double> zonesWeights = null;
+	/**
+	 * Reads term frequencies in zones of the indexed document from the
+	 * postings of the term.
+	 * 
+	 * @return Term frequencies indexed by {@link ZoneName#ordinal() zone name
+	 * ordinal}.
+	 */
+	private int[] getZonesTermFrequencies(int documentId, String term)
+	{
+		int[] termFrequencies = new int[ZONES.length];
+		PostingsList postings = segment.getPostings(term);
+		if (postings != null)
+		{
+			PostingsIterator iterator = postings.iterator();
+			if (iterator.advance(documentId) == documentId)
+			{
+				for (ZoneName name : ZONES)
+				{
+					termFrequencies[name.ordinal()] = iterator.zoneTermFrequency(name);
+				}
+			}
+		}
+		return termFrequencies;
+	}
+
+	/**
+	 * Constructs zoned index on top of already built segment with zones'
+	 * weights learned from the statistics of training examples. Statistics are
+	 * {@link ZoneStatistics#update(Segment, java.util.concurrent.ForkJoinPool)
+	 * updated} by the caller, so that they can be reused by the next index.
+	 * 
+	 * @param segment
+	 * Segment containing documents and postings
+	 * 
+	 * @param statistics
+	 * Statistics of training examples counted over the segment
+	 * 
+	 * @return Zoned index of the segment
+	 */
+	static ZonedIndex withStatistics(Segment segment, ZoneStatistics statistics)
+	{
+		return new ZonedIndex(segment, statistics);
+	}
+
+	private static ZoneStatistics count(Segment segment, Collection<TrainingExample> examples)
+	{
+		ZoneStatistics statistics = new ZoneStatistics();
+		if (examples != null)
+		{
+			statistics.add(examples);
+			statistics.update(segment, null);
+		}
+		return statistics;
+	}
+
+	private static final ZoneName[] ZONES = ZoneName.values();
+
+	/**
+	 * Is changed only while the index is being constructed, so is safe to be
+	 * read by concurrent queries
+	 */
+	private final Map<ZoneName, Double> zonesWeights = new HashMap<ZoneName, Double>();
 
 }
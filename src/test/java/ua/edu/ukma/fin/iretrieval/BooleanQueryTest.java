@@ -0,0 +1,69 @@
+package ua.edu.ukma.fin.iretrieval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+public class BooleanQueryTest
+{
+	@Test
+	public void testIsBoolean()
+	{
+		assertTrue(BooleanQuery.isBoolean("car AND auto"));
+		assertTrue(BooleanQuery.isBoolean("(car)"));
+		assertTrue(BooleanQuery.isBoolean("\"car insurance\""));
+		assertTrue(BooleanQuery.isBoolean("car NEAR/2 insurance"));
+		assertFalse(BooleanQuery.isBoolean("car and auto near"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMissingOperand()
+	{
+		new BooleanQuery("car AND");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMissingParenthesis()
+	{
+		new BooleanQuery("(car OR auto");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMissingNearOperand()
+	{
+		new BooleanQuery("car NEAR/2 (auto)");
+	}
+
+	@Test
+	public void testParse()
+	{
+		assertEquals("((car AND insurance) OR (auto AND NOT tractor))", new BooleanQuery(
+				"Car insurance OR auto NOT tractor").toString());
+		assertEquals("(car AND (auto OR NOT best))", new BooleanQuery(
+				"car AND (auto OR NOT <b>best</b>)").toString());
+		// single characters are dropped by normalization together with their
+		// operators
+		assertEquals("car", new BooleanQuery("car AND NOT x").toString());
+		assertNull(new BooleanQuery("()").getClause());
+		assertEquals("(\"machine learning\" OR \"state of the art\")", new BooleanQuery(
+				"\"Machine learning\" OR state-of-the-art").toString());
+		assertEquals("(\"car insurance\" NEAR/3 auto)", new BooleanQuery(
+				"\"car insurance\" NEAR/3 auto").toString());
+		assertEquals("((car NEAR/2 auto) AND NOT tractor)", new BooleanQuery(
+				"car NEAR/2 auto NOT tractor").toString());
+	}
+
+	@Test
+	public void testTerms()
+	{
+		BooleanQuery query = new BooleanQuery("car OR car NOT (tractor OR NOT auto)");
+		assertEquals(new HashSet<String>(Arrays.asList("car", "auto")), query.getTerms());
+		assertEquals(2, query.getTermFrequency("car"));
+	}
+}
@@ -0,0 +1,184 @@
+package ua.edu.ukma.fin.iretrieval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import ua.edu.ukma.fin.iretrieval.index.Index;
+import ua.edu.ukma.fin.iretrieval.index.IndexManager;
+import ua.edu.ukma.fin.iretrieval.index.QueryCache;
+
+public class SearchServerTest
+{
+	@After
+	public void tearDown()
+	{
+		release.countDown();
+		if (server != null)
+		{
+			server.close();
+		}
+	}
+
+	@Test
+	public void testSearch() throws IOException
+	{
+		List<Document> documents = new ArrayList<Document>();
+		for (int i = 0; i < 10; i++)
+		{
+			Document document = new Document("Document " + i);
+			document.setTitle(i % 2 == 0 ? "Car insurance" : "Tractor");
+			document.setLink("http://example.com/\"" + i + "\"");
+			documents.add(document);
+		}
+		IndexManager manager = new IndexManager(new Index(documents));
+		manager.setQueryCache(new QueryCache(100));
+		start(manager, 2, 2, 5000);
+
+		String response = get("/search?q=car+insurance&k=3", 200);
+		assertTrue(response, response.startsWith("{\"query\":\"car insurance\",\"results\":[{"));
+		assertTrue(response, response.contains("\"link\":\"http://example.com/\\\"0\\\"\""));
+		assertEquals(3, response.split("\"guid\"").length - 1);
+		response = get("/search?q=%22car+insurance%22+NOT+tractor", 200);
+		assertEquals(5, response.split("\"guid\"").length - 1);
+		get("/search?q=missing", 200);
+		get("/search", 400);
+		get("/search?q=car&k=0", 400);
+		get("/search?q=car&k=x", 400);
+		get("/search?q=(car", 400);
+		get("/search?q=%zz", 400);
+
+		response = get("/status", 200);
+		assertTrue(response, response.startsWith("{\"version\":1,\"index\":\"Index\","
+				+ "\"documents\":10,\"workers\":2,"));
+		assertTrue(response, response.contains("\"rejected\":0,\"timedOut\":0"));
+		assertTrue(response, response.contains("\"cache\":{\"size\":3,"));
+	}
+
+	@Test(timeout = 20000)
+	public void testLoadShedding() throws Exception
+	{
+		start(new IndexManager(new BlockingIndex()), 1, 1, 10000);
+		List<Thread> clients = new ArrayList<Thread>();
+		// the first query occupies the worker, the second one the queue
+		for (int i = 0; i < 2; i++)
+		{
+			Thread client = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						get("/search?q=car", 200);
+					}
+					catch (IOException e)
+					{
+						throw new RuntimeException(e);
+					}
+				}
+			});
+			client.start();
+			clients.add(client);
+			if (i == 0)
+			{
+				assertTrue(started.await(10, TimeUnit.SECONDS));
+			}
+		}
+		while (!get("/status", 200).contains("\"queued\":1"))
+		{
+			Thread.sleep(10);
+		}
+		get("/search?q=car", 503);
+		assertEquals(1, server.getRejectedCount());
+		release.countDown();
+		for (Thread client : clients)
+		{
+			client.join();
+		}
+	}
+
+	@Test
+	public void testTimeout() throws IOException
+	{
+		start(new IndexManager(new BlockingIndex()), 1, 1, 100);
+		get("/search?q=car", 504);
+		assertEquals(1, server.getTimedOutCount());
+		assertTrue(get("/status", 200).contains("\"timedOut\":1"));
+	}
+
+	/**
+	 * Index answering queries only once it is released.
+	 */
+	private class BlockingIndex extends Index
+	{
+		BlockingIndex()
+		{
+			super(new ArrayList<Document>());
+		}
+
+		@Override
+		public List<Document> retrieveDocuments(Query query, int k)
+		{
+			started.countDown();
+			try
+			{
+				release.await();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			return new ArrayList<Document>();
+		}
+	}
+
+	private String get(String path, int expectedStatus) throws IOException
+	{
+		URL url = new URL("http://localhost:" + server.getPort() + path);
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		try
+		{
+			assertEquals(path, expectedStatus, connection.getResponseCode());
+			InputStream input = expectedStatus < 400 ? connection.getInputStream() : connection
+					.getErrorStream();
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			for (int read; (read = input.read(buffer)) != -1;)
+			{
+				body.write(buffer, 0, read);
+			}
+			input.close();
+			return new String(body.toByteArray(), StandardCharsets.UTF_8);
+		}
+		finally
+		{
+			connection.disconnect();
+		}
+	}
+
+	private void start(IndexManager manager, int workers, int queueCapacity, long timeout)
+			throws IOException
+	{
+		server = new SearchServer(manager, workers, queueCapacity, timeout);
+		server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+	}
+
+	private final CountDownLatch release = new CountDownLatch(1);
+	private SearchServer server = null;
+	private final CountDownLatch started = new CountDownLatch(1);
+}
@@ -0,0 +1,57 @@
+package ua.edu.ukma.fin.iretrieval;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TermFrequenciesTest
+{
+	@Test
+	public void testCount()
+	{
+		StringBuilder text = new StringBuilder("<p>Terms of <b>the</b> TEXT</p>");
+		Set<String> terms = new HashSet<String>();
+		Random random = new Random(19);
+		for (int i = 0; i < 5000; i++)
+		{
+			String term = "t" + Integer.toString(random.nextInt(1000), 36);
+			terms.add(term);
+			text.append(' ').append(term);
+		}
+		TermFrequencies frequencies = TermFrequencies.count(text);
+		Tokenizer tokenizer = Utils.tokenizer(text);
+		while (tokenizer.next())
+		{
+			terms.add(tokenizer.toString());
+		}
+		assertEquals(terms.size(), frequencies.size());
+		for (String term : terms)
+		{
+			assertEquals(Utils.countTerms(term, text.toString()), frequencies.get(term));
+		}
+		assertEquals(1, frequencies.get("text"));
+		assertEquals(1, frequencies.get("Text"));
+		assertEquals(0, frequencies.get("p"));
+		assertEquals(0, frequencies.get("missing"));
+		assertEquals(0, frequencies.get("of the"));
+		assertEquals(0, TermFrequencies.count("").get("text"));
+	}
+
+	@Test
+	public void testDocument()
+	{
+		Document document = new Document("1");
+		document.setTitle("Query terms");
+		assertEquals(1, document.getTermFrequency("query"));
+		assertEquals(0, document.getTermFrequency("document"));
+		document.setBody("Terms of the document");
+		assertEquals(2, document.getTermFrequency("terms"));
+		assertEquals(1, document.getTermFrequency("document"));
+		document.addCategory("document");
+		assertEquals(2, document.getTermFrequency("document"));
+	}
+}
@@ -0,0 +1,67 @@
+package ua.edu.ukma.fin.iretrieval;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TokenizerTest
+{
+	@Test
+	public void testCyrillic()
+	{
+		assertEquals(Arrays.asList("\u043f\u043e\u0448\u0443\u043a", "\u0442\u0435\u043a\u0441\u0442"),
+				tokenize("\u041f\u043e\u0448\u0443\u043a \u0422\u0435\u043a\u0441\u0442"));
+		assertEquals(2, Utils.countTerms("\u043f\u043e\u0448\u0443\u043a",
+				"\u041f\u043e\u0448\u0443\u043a, \u043f\u043e\u0448\u0443\u043a!"));
+	}
+
+	@Test
+	public void testMarkup()
+	{
+		assertEquals(Arrays.asList("bold", "text", "next", "block", "c++", "c#"),
+				tokenize("<b>Bo</b>ld <!-- comment --> text<script>var x;</script>"
+						+ "<p>next</p><div>block</div> C&plus;+ C&#35;"));
+		assertEquals(Arrays.asList("fish", "chips"), tokenize("fish &amp; chips"));
+		assertEquals(Arrays.asList("fish", "chips"), tokenize("fish&nbsp;chips"));
+		assertEquals(Arrays.asList("before", "after"),
+				tokenize("before<style>p { color: red }</STYLE >after"));
+	}
+
+	/**
+	 * Bare '<' without a closing '>' is text, a long run of them mustn't make
+	 * tokenization quadratic.
+	 */
+	@Test(timeout = 10000)
+	public void testUnclosedMarkup()
+	{
+		assertEquals(Arrays.asList("cars", "bold", "bikes"),
+				tokenize("cars <b>bold</b> <bikes <z"));
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 200000; i++)
+		{
+			text.append("a <b ");
+		}
+		assertEquals(Arrays.asList("end"), tokenize(text.append("end").toString()));
+	}
+
+	@Test
+	public void testShortTokens()
+	{
+		assertEquals(Arrays.asList("100", "ab"), tokenize("a 10 100 ab 1"));
+	}
+
+	private static List<String> tokenize(String text)
+	{
+		List<String> tokens = new ArrayList<String>();
+		Tokenizer tokenizer = new Tokenizer().reset(text);
+		while (tokenizer.next())
+		{
+			tokens.add(tokenizer.toString());
+		}
+		return tokens;
+	}
+}
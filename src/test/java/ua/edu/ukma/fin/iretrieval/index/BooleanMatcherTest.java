@@ -0,0 +1,153 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ua.edu.ukma.fin.iretrieval.BooleanQuery;
+import ua.edu.ukma.fin.iretrieval.Document;
+
+public class BooleanMatcherTest
+{
+	@Test
+	public void testMatches()
+	{
+		String[] queries = { "alpha AND beta", "alpha beta gamma", "alpha OR delta",
+				"alpha NOT beta", "NOT gamma", "(alpha OR beta) AND NOT (gamma OR delta)",
+				"delta AND (alpha OR NOT beta) AND NOT gamma", "delta missing",
+				"missing OR delta", "NOT missing", "\"alpha beta\"", "\"beta alpha\" OR delta",
+				"alpha NEAR/1 gamma", "\"word alpha\" NEAR/2 delta", "alpha NEAR/3 beta NOT gamma",
+				"\"alpha missing\"" };
+		for (String text : queries)
+		{
+			BooleanQuery query = new BooleanQuery(text);
+			List<Integer> expected = new ArrayList<Integer>();
+			for (int documentId = 0; documentId < DOCUMENT_COUNT; documentId++)
+			{
+				if (matches(query.getClause(), segment.getDocument(documentId).getText()))
+				{
+					expected.add(documentId);
+				}
+			}
+			List<Integer> actual = new ArrayList<Integer>();
+			BooleanMatcher matcher = BooleanMatcher.create(segment, query.getClause());
+			int documentId;
+			while (matcher != null
+					&& (documentId = matcher.nextDocument()) != PostingsIterator.NO_MORE_DOCUMENTS)
+			{
+				actual.add(documentId);
+			}
+			assertEquals(text, expected, actual);
+		}
+	}
+
+	@Test
+	public void testRetrieveDocuments()
+	{
+		Index index = new InvertedIndex(segment);
+		for (Document document : index.retrieveDocuments(new BooleanQuery("delta NOT alpha")))
+		{
+			String text = document.getText();
+			assertTrue(text.contains("delta") && !text.contains("alpha"));
+		}
+		List<Document> top = index.retrieveDocuments(new BooleanQuery("alpha AND beta"), 5);
+		assertEquals(5, top.size());
+	}
+
+	@BeforeClass
+	public static void setUpBeforeClass()
+	{
+		Random random = new Random(42);
+		List<Document> documents = new ArrayList<Document>();
+		for (int i = 0; i < DOCUMENT_COUNT; i++)
+		{
+			Document document = new Document("document " + i);
+			// frequent, rare and very rare terms in random order, so that lists
+			// of different lengths spanning several blocks are intersected
+			List<String> terms = new ArrayList<String>();
+			addIf(terms, random.nextInt(2) == 0, "alpha");
+			addIf(terms, random.nextInt(3) == 0, "beta");
+			addIf(terms, random.nextInt(10) == 0, "gamma");
+			addIf(terms, random.nextInt(100) == 0, "delta");
+			Collections.shuffle(terms, random);
+			StringBuilder text = new StringBuilder("word");
+			for (String term : terms)
+			{
+				text.append(random.nextInt(4) == 0 ? " word " : " ").append(term);
+			}
+			document.setTitle(text.toString());
+			documents.add(document);
+		}
+		segment = new MemorySegment(documents);
+	}
+
+	private static void addIf(List<String> terms, boolean condition, String term)
+	{
+		if (condition)
+		{
+			terms.add(term);
+		}
+	}
+
+	private static boolean matches(BooleanQuery.Clause clause, String text)
+	{
+		switch (clause.getOperator())
+		{
+		case TERM:
+		case PHRASE:
+			return (" " + text + " ").contains(" " + clause.toString().replace("\"", "") + " ");
+		case NEAR:
+			List<String> words = Arrays.asList(text.trim().split(" "));
+			String[] first = clause.getClauses().get(0).toString().replace("\"", "").split(" ");
+			String[] second = clause.getClauses().get(1).toString().replace("\"", "").split(" ");
+			for (int i = 0; i + first.length <= words.size(); i++)
+			{
+				for (int j = 0; j + second.length <= words.size(); j++)
+				{
+					if (words.subList(i, i + first.length).equals(Arrays.asList(first))
+							&& words.subList(j, j + second.length).equals(Arrays.asList(second))
+							&& (j - (i + first.length - 1) >= 1
+									&& j - (i + first.length - 1) <= clause.getDistance()
+									|| i - (j + second.length - 1) >= 1
+									&& i - (j + second.length - 1) <= clause.getDistance()))
+					{
+						return true;
+					}
+				}
+			}
+			return false;
+		case NOT:
+			return !matches(clause.getClauses().get(0), text);
+		case AND:
+			for (BooleanQuery.Clause operand : clause.getClauses())
+			{
+				if (!matches(operand, text))
+				{
+					return false;
+				}
+			}
+			return true;
+		default:
+			for (BooleanQuery.Clause operand : clause.getClauses())
+			{
+				if (matches(operand, text))
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	private static final int DOCUMENT_COUNT = 5000;
+
+	private static Segment segment;
+}
@@ -0,0 +1,193 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ua.edu.ukma.fin.iretrieval.Query;
+
+public class DocumentSourceTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testConcurrentIngestion() throws IOException
+	{
+		Path directory = folder.newFolder("feeds").toPath();
+		for (int feed = 0; feed < 20; feed++)
+		{
+			// neighbouring feeds share half of their items
+			write(directory.resolve("feed" + feed + ".xml"), feed * 50, feed * 50 + 100);
+		}
+		Path single = folder.newFile("single.xml").toPath();
+		write(single, 1000, 1100);
+
+		IndexFactory factory = new IndexFactory();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		factory.setExecutor(executor);
+		factory.setDocuments(Arrays.asList(DocumentSource.forDirectory(directory),
+				DocumentSource.forLocation(single.toString())));
+		executor.shutdown();
+		Index index = factory.getIndex(IndexType.INVERTED);
+		assertEquals(1100, index.retrieveDocuments(new Query("item"), 2000).size());
+	}
+
+	@Test
+	public void testFailedFeed() throws IOException
+	{
+		Path good = folder.newFile("good.xml").toPath();
+		write(good, 0, 10);
+		Path bad = folder.newFile("bad.xml").toPath();
+		Files.write(bad, "<rss><channel><item>".getBytes(StandardCharsets.UTF_8));
+		IndexFactory factory = new IndexFactory();
+		try
+		{
+			factory.setDocuments(Arrays.asList(DocumentSource.forFile(bad),
+					DocumentSource.forFile(good)));
+			fail("Malformed feed must be reported.");
+		}
+		catch (IOException e)
+		{
+			assertEquals(1, e.getSuppressed().length);
+		}
+		assertEquals(10, factory.getIndex(IndexType.BASIC).retrieveDocuments(new Query("item"),
+				100).size());
+	}
+
+	/**
+	 * Documents ingested with an index writer are kept by the writer only,
+	 * which skips duplicates, and return to the factory with the writer.
+	 */
+	@Test
+	public void testIndexWriter() throws IOException
+	{
+		Path first = folder.newFile("first.xml").toPath();
+		write(first, 0, 100);
+		Path second = folder.newFile("second.xml").toPath();
+		write(second, 50, 150);
+		IndexFactory factory = new IndexFactory();
+		factory.setDocuments(Collections.singletonList(DocumentSource.forFile(first)));
+		IndexWriter writer = new IndexWriter();
+		factory.setIndexWriter(writer);
+		factory.addDocuments(Collections.singletonList(DocumentSource.forFile(second)));
+		assertEquals(150, writer.getDocumentCount());
+		assertEquals(150, factory.getIndex(IndexType.BASIC).getDocumentCount());
+		assertEquals(150, factory.getShardedIndex(IndexType.BASIC, 2).getDocumentCount());
+
+		factory.setIndexWriter(null);
+		writer.close();
+		assertEquals(150, factory.getIndex(IndexType.INVERTED).retrieveDocuments(
+				new Query("item"), 200).size());
+	}
+
+	/**
+	 * Interrupted ingestion must stop its workers, otherwise they hold the
+	 * threads of the factory's pool forever.
+	 */
+	@Test(timeout = 10000)
+	public void testInterruptedIngestion() throws IOException
+	{
+		final byte[] head = ("<rss version=\"2.0\"><channel><item><guid>guid-0</guid>"
+				+ "<title>item</title></item>").getBytes(StandardCharsets.UTF_8);
+		DocumentSource stalled = new DocumentSource()
+		{
+			@Override
+			public FeedReader open() throws IOException
+			{
+				return new FeedReader(new InputStream()
+				{
+					@Override
+					public int read() throws IOException
+					{
+						if (offset < head.length)
+						{
+							return head[offset++];
+						}
+						try
+						{
+							new CountDownLatch(1).await();
+						}
+						catch (InterruptedException e)
+						{
+							throw new InterruptedIOException();
+						}
+						return -1;
+					}
+
+					private int offset = 0;
+				});
+			}
+		};
+		IndexFactory factory = new IndexFactory();
+		factory.setParallelism(2);
+		final Thread caller = Thread.currentThread();
+		new Thread(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					Thread.sleep(200);
+				}
+				catch (InterruptedException e)
+				{
+					return;
+				}
+				caller.interrupt();
+			}
+		}).start();
+		try
+		{
+			factory.setDocuments(Collections.singletonList(stalled));
+			fail("Interrupted ingestion must be reported.");
+		}
+		catch (InterruptedIOException e)
+		{
+			// expected
+		}
+		assertTrue(Thread.interrupted());
+		assertTrue(factory.getPool().awaitQuiescence(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testForLocation() throws IOException
+	{
+		Path file = folder.newFile("feed.xml").toPath();
+		write(file, 0, 5);
+		assertEquals(1, DocumentSource.forLocation(file.toUri().toString()).getFeeds().size());
+		assertEquals(0, DocumentSource.forLocation(folder.newFolder().toString()).getFeeds()
+				.size());
+		assertTrue(DocumentSource.forLocation("http://example.com/rss").toString().startsWith(
+				"http"));
+	}
+
+	private static void write(Path path, int from, int to) throws IOException
+	{
+		StringBuilder feed = new StringBuilder("<rss version=\"2.0\"><channel><title>Feed</title>");
+		for (int i = from; i < to; i++)
+		{
+			feed.append("<item><guid>guid-").append(i).append("</guid><title>item number ")
+					.append(i).append("</title></item>");
+		}
+		Files.write(path, feed.append("</channel></rss>").toString().getBytes(
+				StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,96 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ua.edu.ukma.fin.iretrieval.Document;
+import ua.edu.ukma.fin.iretrieval.Query;
+
+public class FeedReaderTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testAtom() throws IOException
+	{
+		FeedReader reader = reader("<feed xmlns=\"http://www.w3.org/2005/Atom\"><title>Feed</title>"
+				+ "<entry><id>urn:entry:1</id><title>Entry title</title>"
+				+ "<link rel=\"alternate\" href=\"http://example.com/1\"/>"
+				+ "<category term=\"science\"/><summary>Entry summary</summary>"
+				+ "<updated>2016-11-20T10:00:00Z</updated></entry></feed>");
+		Document document = reader.read();
+		assertEquals("urn:entry:1", document.getGuid());
+		assertEquals("entry title", document.getTitle());
+		assertEquals("entry summary", document.getBody());
+		assertEquals("http://example.com/1", document.getLink());
+		assertTrue(document.getCategories().contains("science"));
+		assertNotNull(document.getPubDate());
+		assertNull(reader.read());
+		reader.close();
+	}
+
+	@Test
+	public void testIngestion() throws IOException
+	{
+		StringBuilder feed = new StringBuilder("<rss version=\"2.0\"><channel><title>Feed</title>");
+		for (int i = 0; i < 3000; i++)
+		{
+			feed.append("<item><guid>guid-").append(i % 2500).append("</guid><title>item ")
+					.append(i % 2 == 0 ? "even" : "odd").append("</title></item>");
+		}
+		Path path = folder.newFile("feed.xml").toPath();
+		Files.write(path, feed.append("</channel></rss>").toString().getBytes(
+				StandardCharsets.UTF_8));
+		IndexFactory factory = new IndexFactory();
+		factory.setParallelism(4);
+		factory.setDocuments(path.toUri().toString());
+		Index index = factory.getIndex(IndexType.INVERTED);
+		assertEquals(2500, index.retrieveDocuments(new Query("item"), 3000).size());
+		assertEquals(1250, index.retrieveDocuments(new Query("even"), 3000).size());
+	}
+
+	@Test
+	public void testRss() throws IOException
+	{
+		FeedReader reader = reader("<?xml version=\"1.0\"?><rss version=\"2.0\" "
+				+ "xmlns:media=\"http://search.yahoo.com/mrss/\"><channel><title>Feed</title>"
+				+ "<item><guid> http://example.com/1 </guid><title>First item</title>"
+				+ "<description><![CDATA[<p>Some <b>bold</b> text</p>]]></description>"
+				+ "<link>http://example.com/first</link><category>World news</category>"
+				+ "<pubDate>Sun, 20 Nov 2016 10:00:00 GMT</pubDate>"
+				+ "<media:keywords>climate change</media:keywords></item>"
+				+ "<item><title>Without guid</title><link>http://example.com/second</link></item>"
+				+ "<item><title>Without guid and link</title></item>"
+				+ "</channel></rss>");
+		Document first = reader.read();
+		assertEquals("http://example.com/1", first.getGuid());
+		assertEquals("first item", first.getTitle());
+		assertEquals("some bold text", first.getBody());
+		assertEquals("http://example.com/first", first.getLink());
+		assertTrue(first.getCategories().contains("world news"));
+		assertEquals(1479636000000L, first.getPubDate().getTime());
+		assertEquals("climate change", first.getExtraFields().get("http://search.yahoo.com/mrss/")
+				.get("keywords"));
+		assertEquals("http://example.com/second", reader.read().getGuid());
+		assertNull(reader.read());
+		reader.close();
+	}
+
+	private static FeedReader reader(String feed) throws IOException
+	{
+		return new FeedReader(new ByteArrayInputStream(feed.getBytes(StandardCharsets.UTF_8)));
+	}
+}
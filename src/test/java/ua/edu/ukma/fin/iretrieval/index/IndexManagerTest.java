@@ -0,0 +1,80 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import ua.edu.ukma.fin.iretrieval.Document;
+import ua.edu.ukma.fin.iretrieval.Query;
+
+public class IndexManagerTest
+{
+	@Test
+	public void testConcurrentRetrieval() throws Exception
+	{
+		List<Document> documents = new ArrayList<Document>();
+		for (int i = 0; i < 2000; i++)
+		{
+			Document document = new Document("Document " + i);
+			document.setTitle((i % 3 == 0 ? "car " : "auto ") + (i % 7 == 0 ? "insurance" : "policy"));
+			document.setBody("number " + (i % 50) + " car " + (i % 13 == 0 ? "car" : ""));
+			documents.add(document);
+		}
+		final IndexManager manager = new IndexManager(new VectorSpaceIndex(documents));
+		final String[] queries = { "car insurance", "auto policy", "car number", "insurance" };
+		final List<List<Document>> expected = new ArrayList<List<Document>>();
+		for (String query : queries)
+		{
+			expected.add(manager.retrieveDocuments(new Query(query), 20));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+		for (int thread = 0; thread < 8; thread++)
+		{
+			results.add(executor.submit(new Callable<Boolean>()
+			{
+				public Boolean call()
+				{
+					for (int i = 0; i < 200; i++)
+					{
+						int q = i % queries.length;
+						Query query = new Query(queries[q]);
+						if (!expected.get(q).equals(manager.retrieveDocuments(query, 20)))
+						{
+							return false;
+						}
+					}
+					return true;
+				}
+			}));
+		}
+		for (Future<Boolean> result : results)
+		{
+			assertEquals(true, result.get());
+		}
+		executor.shutdown();
+	}
+
+	@Test
+	public void testPublish()
+	{
+		Index first = new Index(IndexTest.docs);
+		Index second = new InvertedIndex(IndexTest.docs);
+		IndexManager manager = new IndexManager(first);
+		IndexSnapshot snapshot = manager.acquire();
+		assertSame(first, snapshot.getIndex());
+		IndexSnapshot published = manager.publish(second);
+		assertEquals(snapshot.getVersion() + 1, published.getVersion());
+		assertSame(second, manager.acquire().getIndex());
+		assertSame(first, snapshot.getIndex());
+	}
+}
@@ -59,6 +59,17 @@ public class IndexTest
 		assertTrue(results.contains(a) && results.contains(b));
 	}
 
+	@Test
+	public void testRetrieveDocumentsTopK()
+	{
+		List<Document> results = index.retrieveDocuments(new Query("car auto"), 1);
+		assertEquals(1, results.size());
+		assertEquals(a, results.get(0));
+		results = index.retrieveDocuments(new Query("car auto"), 10);
+		assertEquals(3, results.size());
+		assertEquals(a, results.get(0));
+	}
+
 	@BeforeClass
 	public static void setUpBeforeClass() throws Exception
 	{
@@ -0,0 +1,121 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ua.edu.ukma.fin.iretrieval.Document;
+import ua.edu.ukma.fin.iretrieval.Query;
+
+public class IndexWriterTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Before
+	public void setUp()
+	{
+		documents = new ArrayList<Document>();
+		for (int i = 0; i < 1000; i++)
+		{
+			Document document = new Document("Document " + i);
+			StringBuilder title = new StringBuilder();
+			for (int j = 0; j <= i % 5; j++)
+			{
+				title.append(i % 3 == 0 ? "car " : "auto ");
+			}
+			document.setTitle(title.toString());
+			document.setBody("insurance policy " + (i % 11 == 0 ? "car" : "number " + i));
+			documents.add(document);
+		}
+	}
+
+	@Test
+	public void testIncrementalIndexing() throws IOException, InterruptedException
+	{
+		IndexWriter writer = createWriter();
+		writer.addDocuments(documents.subList(0, 500));
+		writer.addDocuments(documents.subList(400, 1000));
+		writer.waitForMerges();
+		Segment segment = writer.getSegment();
+		assertEquals(1000, segment.getDocumentCount());
+		assertTrue(((CompositeSegment) segment).getSegments().size() < 20);
+		assertSame(segment, writer.getSegment());
+		assertEquals(new InvertedIndex(documents).getDictionary(), segment.getTerms());
+
+		// Merges renumber documents, so only ties may be ordered differently
+		InvertedIndex index = new InvertedIndex(segment);
+		Query query = new Query("car insurance policy");
+		assertEquals(new HashSet<Document>(new InvertedIndex(documents).retrieveDocuments(query)),
+				new HashSet<Document>(index.retrieveDocuments(query)));
+		List<Document> expected = index.retrieveDocuments(query, 10);
+		for (EvaluationMode mode : EvaluationMode.values())
+		{
+			index.setEvaluationMode(mode);
+			assertEquals(mode.getReadableName(), expected, index.retrieveDocuments(query, 10));
+		}
+		Document document = new Document("Document 1000");
+		document.setTitle("tractor");
+		writer.addDocument(document);
+		Segment updated = writer.getSegment();
+		assertNotSame(segment, updated);
+		assertEquals(1001, updated.getDocumentCount());
+		assertEquals(1000, segment.getDocumentCount());
+		writer.close();
+	}
+
+	@Test
+	public void testReopen() throws IOException, InterruptedException
+	{
+		Path directory = folder.getRoot().toPath();
+		IndexWriter writer = createWriter(directory);
+		writer.addDocuments(documents.subList(0, 700));
+		writer.close();
+
+		writer = createWriter(directory);
+		assertEquals(700, writer.getDocumentCount());
+		writer.addDocuments(documents);
+		writer.waitForMerges();
+		Segment segment = writer.getSegment();
+		assertEquals(1000, segment.getDocumentCount());
+		Query query = new Query("auto");
+		assertEquals(new HashSet<Document>(new VectorSpaceIndex(documents).retrieveDocuments(query)),
+				new HashSet<Document>(new VectorSpaceIndex(segment).retrieveDocuments(query)));
+		writer.close();
+	}
+
+	private IndexWriter createWriter()
+	{
+		IndexWriter writer = new IndexWriter();
+		configure(writer);
+		return writer;
+	}
+
+	private IndexWriter createWriter(Path directory) throws IOException
+	{
+		IndexWriter writer = new IndexWriter(directory);
+		configure(writer);
+		return writer;
+	}
+
+	private void configure(IndexWriter writer)
+	{
+		writer.setMaxBufferedDocuments(30);
+		writer.getMergePolicy().setFloorSegmentSize(30);
+		writer.getMergePolicy().setSegmentsPerTier(3);
+	}
+
+	private List<Document> documents = null;
+}
@@ -3,10 +3,17 @@ package ua.edu.ukma.fin.iretrieval.index;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import ua.edu.ukma.fin.iretrieval.Document;
+import ua.edu.ukma.fin.iretrieval.Query;
+
 public class InvertedIndexTest extends IndexTest
 {
 	@Before
@@ -46,5 +53,40 @@ public class InvertedIndexTest extends IndexTest
 				0.001);
 	}
 
+	@Test
+	public void testPrunedEvaluation()
+	{
+		Random random = new Random(42);
+		List<Document> corpus = new ArrayList<Document>();
+		for (int i = 0; i < 2000; i++)
+		{
+			StringBuilder body = new StringBuilder();
+			int length = 5 + random.nextInt(40);
+			for (int j = 0; j < length; j++)
+			{
+				// skewed distribution makes some terms very frequent
+				int term = (int) (Math.pow(random.nextDouble(), 3) * 60);
+				body.append("term").append((char) ('a' + term / 26)).append((char) ('a' + term % 26));
+				body.append(' ');
+			}
+			Document document = new Document("Document " + i);
+			document.setBody(body.toString());
+			corpus.add(document);
+		}
+		InvertedIndex index = new InvertedIndex(corpus);
+		String[] queries = { "termaa termab", "termaa termac termbe termch", "termbz termaa",
+				"termax termay termaz termba termbb termbc" };
+		for (String queryString : queries)
+		{
+			Query query = new Query(queryString);
+			index.setEvaluationMode(EvaluationMode.EXHAUSTIVE);
+			List<Document> expected = index.retrieveDocuments(query, 10);
+			index.setEvaluationMode(EvaluationMode.WAND);
+			assertEquals(expected, index.retrieveDocuments(query, 10));
+			index.setEvaluationMode(EvaluationMode.BLOCK_MAX_WAND);
+			assertEquals(expected, index.retrieveDocuments(query, 10));
+		}
+	}
+
 	private InvertedIndex invertedIndex = null;
 }
\ No newline at end of file
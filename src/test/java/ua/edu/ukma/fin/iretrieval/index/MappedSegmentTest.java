@@ -0,0 +1,120 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ua.edu.ukma.fin.iretrieval.Document;
+import ua.edu.ukma.fin.iretrieval.Query;
+
+public class MappedSegmentTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Before
+	public void setUp() throws IOException
+	{
+		documents = new ArrayList<Document>();
+		for (int i = 0; i < 300; i++)
+		{
+			Document document = new Document("Document " + i);
+			document.setTitle("title " + (i % 7 == 0 ? "car" : "auto"));
+			document.setBody("insurance policy number " + i);
+			document.addCategory("category" + (i % 3));
+			documents.add(document);
+		}
+		memory = new MemorySegment(documents);
+		File file = folder.newFile("index.seg");
+		SegmentWriter.write(memory, file.toPath());
+		mapped = MappedSegment.open(file.toPath());
+	}
+
+	@Test
+	public void testDictionary()
+	{
+		assertEquals(memory.getTerms(), mapped.getTerms());
+		assertTrue(mapped.getTerms().contains("car"));
+		assertNull(mapped.getPostings("tractor"));
+		for (String term : memory.getTerms())
+		{
+			assertArrayEquals(memory.getPostings(term).toArray(), mapped.getPostings(term).toArray());
+		}
+	}
+
+	@Test
+	public void testDocuments()
+	{
+		assertEquals(memory.getDocumentCount(), mapped.getDocumentCount());
+		for (Document document : documents)
+		{
+			int documentId = mapped.getDocumentId(document.getGuid());
+			assertEquals(memory.getDocumentId(document.getGuid()), documentId);
+			Document stored = mapped.getDocument(documentId);
+			assertEquals(document, stored);
+			assertEquals(document.getText(), stored.getText());
+			assertEquals(memory.getEuclideanLength(documentId), mapped.getEuclideanLength(documentId),
+					1e-9);
+			assertArrayEquals(memory.getZoneLengths(documentId), mapped.getZoneLengths(documentId));
+		}
+		assertEquals(-1, mapped.getDocumentId("Document 300"));
+	}
+
+	@Test
+	public void testRetrieveDocuments()
+	{
+		Query query = new Query("car insurance");
+		assertEquals(new VectorSpaceIndex(memory).retrieveDocuments(query, 10),
+				new VectorSpaceIndex(mapped).retrieveDocuments(query, 10));
+		assertEquals(new ZonedIndex(memory, null).retrieveDocuments(query, 10), new ZonedIndex(
+				mapped, null).retrieveDocuments(query, 10));
+	}
+
+	@Test
+	public void testWildcards()
+	{
+		Segment composite = new CompositeSegment(Arrays.asList(memory, mapped));
+		for (String pattern : new String[] { "car*", "ca?", "c*", "*y", "in*ce", "category?",
+				"t?tle", "tractor*", "1?*" })
+		{
+			List<String> expected = new ArrayList<String>();
+			for (String term : memory.getTerms())
+			{
+				if (term.matches(pattern.replace("?", ".").replace("*", ".*")))
+				{
+					expected.add(term);
+				}
+			}
+			assertEquals(pattern, expected, memory.expandTerms(pattern, Index.MAX_EXPANSIONS));
+			assertEquals(pattern, expected, mapped.expandTerms(pattern, Index.MAX_EXPANSIONS));
+			assertEquals(pattern, expected, composite.expandTerms(pattern, Index.MAX_EXPANSIONS));
+		}
+		assertEquals(3, memory.expandTerms("c*", 3).size());
+
+		Query query = new Query("Ca* policy?");
+		assertEquals(Collections.singleton("ca*"), query.getWildcards());
+		assertEquals(Collections.singleton("policy"), query.getTerms());
+		List<Document> found = new InvertedIndex(mapped).retrieveDocuments(query, 300);
+		assertEquals(300, found.size());
+		assertEquals(new InvertedIndex(memory).retrieveDocuments(new Query(
+				"car category0 category1 category2 policy"), 300), found);
+	}
+
+	private Collection<Document> documents = null;
+	private Segment mapped = null;
+	private Segment memory = null;
+}
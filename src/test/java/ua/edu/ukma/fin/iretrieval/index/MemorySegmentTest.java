@@ -0,0 +1,56 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import ua.edu.ukma.fin.iretrieval.Document;
+
+public class MemorySegmentTest
+{
+	@Test
+	public void testParallelConstruction()
+	{
+		List<Document> documents = new ArrayList<Document>();
+		for (int i = 0; i < 3000; i++)
+		{
+			Document document = new Document("Document " + i % 2900);
+			document.setTitle("title " + (i % 7 == 0 ? "car car" : "auto"));
+			document.setBody("insurance policy number " + i % 400);
+			document.addCategory("category" + (i % 3));
+			documents.add(document);
+		}
+		ForkJoinPool pool = new ForkJoinPool(4);
+		Segment sequential = new MemorySegment(documents);
+		Segment parallel = new MemorySegment(documents, pool);
+		pool.shutdown();
+
+		assertEquals(2900, parallel.getDocumentCount());
+		assertEquals(sequential.getTerms(), parallel.getTerms());
+		for (String term : sequential.getTerms())
+		{
+			PostingsIterator expected = sequential.getPostings(term).iterator();
+			PostingsIterator actual = parallel.getPostings(term).iterator();
+			int documentId;
+			while ((documentId = expected.nextDocument()) != PostingsIterator.NO_MORE_DOCUMENTS)
+			{
+				assertEquals(documentId, actual.nextDocument());
+				assertArrayEquals(expected.positions(), actual.positions());
+			}
+			assertEquals(PostingsIterator.NO_MORE_DOCUMENTS, actual.nextDocument());
+		}
+		for (int documentId = 0; documentId < sequential.getDocumentCount(); documentId++)
+		{
+			assertEquals(sequential.getDocument(documentId), parallel.getDocument(documentId));
+			assertEquals(sequential.getEuclideanLength(documentId),
+					parallel.getEuclideanLength(documentId), 1e-9);
+			assertArrayEquals(sequential.getZoneLengths(documentId),
+					parallel.getZoneLengths(documentId));
+		}
+	}
+}
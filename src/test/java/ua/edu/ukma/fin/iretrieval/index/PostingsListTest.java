@@ -0,0 +1,123 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ua.edu.ukma.fin.iretrieval.ZoneName;
+
+public class PostingsListTest
+{
+	@Before
+	public void setUp()
+	{
+		PostingsList.Builder builder = new PostingsList.Builder();
+		documents = new int[1000];
+		for (int i = 0; i < documents.length; i++)
+		{
+			documents[i] = i * 3 + (i % 7) * 1000;
+			if (i > 0 && documents[i] <= documents[i - 1])
+			{
+				documents[i] = documents[i - 1] + 1;
+			}
+			for (int position = 0; position < i % 3 + 1; position++)
+			{
+				builder.add(documents[i], position * 200);
+			}
+		}
+		postings = builder.build();
+	}
+
+	@Test
+	public void testAdvance()
+	{
+		PostingsIterator iterator = postings.iterator();
+		assertEquals(documents[0], iterator.advance(0));
+		assertEquals(documents[500], iterator.advance(documents[500]));
+		assertEquals(documents[501], iterator.advance(documents[500] + 1));
+		assertEquals(documents[501], iterator.advance(documents[100]));
+		assertEquals(documents[999], iterator.advance(documents[999]));
+		assertEquals(PostingsIterator.NO_MORE_DOCUMENTS, iterator.advance(documents[999] + 1));
+		assertEquals(PostingsIterator.NO_MORE_DOCUMENTS, iterator.nextDocument());
+	}
+
+	@Test
+	public void testCompression()
+	{
+		assertTrue(((BlockPostingsList) postings).data.capacity() < documents.length * 4);
+	}
+
+	@Test
+	public void testPositions()
+	{
+		PostingsIterator iterator = postings.iterator();
+		iterator.nextDocument();
+		iterator.nextDocument();
+		assertArrayEquals(new int[] { 0, 200 }, iterator.positions());
+		assertEquals(documents[400], iterator.advance(documents[400]));
+		assertArrayEquals(new int[] { 0, 200 }, iterator.positions());
+		iterator.nextDocument();
+		iterator.nextDocument();
+		assertArrayEquals(new int[] { 0 }, iterator.positions());
+	}
+
+	@Test
+	public void testSize()
+	{
+		assertEquals(documents.length, postings.size());
+	}
+
+	@Test
+	public void testTermFrequency()
+	{
+		PostingsIterator iterator = postings.iterator();
+		for (int i = 0; i < documents.length; i++)
+		{
+			iterator.nextDocument();
+			assertEquals(i % 3 + 1, iterator.termFrequency());
+		}
+	}
+
+	@Test
+	public void testToArray()
+	{
+		assertArrayEquals(documents, postings.toArray());
+	}
+
+	@Test
+	public void testZones()
+	{
+		PostingsList.Builder builder = new PostingsList.Builder();
+		builder.add(1, 0, ZoneName.Title);
+		builder.add(1, 5, ZoneName.Description);
+		builder.add(1, 6, ZoneName.Description);
+		builder.add(4, 2, ZoneName.Categories);
+		PostingsList.Builder merged = new PostingsList.Builder();
+		merged.add(builder.build(), 10);
+		PostingsIterator iterator = merged.build().iterator();
+		assertEquals(11, iterator.nextDocument());
+		assertEquals(3, iterator.termFrequency());
+		assertEquals(1 << ZoneName.Title.ordinal() | 1 << ZoneName.Description.ordinal(),
+				iterator.zoneMask());
+		assertEquals(1, iterator.zoneTermFrequency(ZoneName.Title));
+		assertEquals(2, iterator.zoneTermFrequency(ZoneName.Description));
+		assertEquals(0, iterator.zoneTermFrequency(ZoneName.Categories));
+		assertEquals(14, iterator.nextDocument());
+		assertEquals(1, iterator.zoneTermFrequency(ZoneName.Categories));
+		assertEquals(0, iterator.zoneTermFrequency(ZoneName.Title));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnorderedAdd()
+	{
+		PostingsList.Builder builder = new PostingsList.Builder();
+		builder.add(5, 0);
+		builder.add(3, 0);
+	}
+
+	private int[] documents = null;
+	private PostingsList postings = null;
+}
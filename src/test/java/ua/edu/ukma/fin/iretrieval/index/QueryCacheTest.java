@@ -0,0 +1,67 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import ua.edu.ukma.fin.iretrieval.BooleanQuery;
+import ua.edu.ukma.fin.iretrieval.Document;
+import ua.edu.ukma.fin.iretrieval.Query;
+
+public class QueryCacheTest
+{
+	@Test
+	public void testAdmission()
+	{
+		IndexManager manager = new IndexManager(new InvertedIndex(IndexTest.docs));
+		QueryCache cache = new QueryCache(5);
+		manager.setQueryCache(cache);
+		for (int i = 0; i < 5; i++)
+		{
+			manager.retrieveDocuments(new Query("car"), 1);
+		}
+		// every result holds one document and counts as another one, a scan
+		// of one-off queries doesn't displace the popular result
+		String[] scan = { "auto", "tractor", "best", "fast", "insurance", "policy" };
+		for (String query : scan)
+		{
+			manager.retrieveDocuments(new Query(query), 1);
+		}
+		assertTrue(cache.getRejectionCount() > 0);
+		long hits = cache.getHitCount();
+		manager.retrieveDocuments(new Query("car"), 1);
+		assertEquals(hits + 1, cache.getHitCount());
+		assertTrue(cache.getWeight() <= cache.getCapacity());
+	}
+
+	@Test
+	public void testRetrieveDocuments()
+	{
+		IndexManager manager = new IndexManager(new InvertedIndex(IndexTest.docs));
+		QueryCache cache = new QueryCache(100);
+		manager.setQueryCache(cache);
+		List<Document> results = manager.retrieveDocuments(new Query("car auto"), 10);
+		assertEquals(0, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		// normalized terms are the key, so order and case don't matter
+		assertEquals(results, manager.retrieveDocuments(new Query("Auto, car"), 10));
+		assertEquals(1, cache.getHitCount());
+		// frequencies of the terms and the number of results do
+		manager.retrieveDocuments(new Query("car car auto"), 10);
+		manager.retrieveDocuments(new Query("car auto"), 5);
+		assertEquals(3, cache.getMissCount());
+		// Boolean queries are told apart from ranked ones
+		manager.retrieveDocuments(new BooleanQuery("car OR auto"), 10);
+		assertEquals(4, cache.getMissCount());
+		assertEquals(4, cache.size());
+
+		manager.publish(new InvertedIndex(IndexTest.docs));
+		assertEquals(0, cache.size());
+		assertEquals(results, manager.retrieveDocuments(new Query("car auto"), 10));
+		assertEquals(5, cache.getMissCount());
+		assertEquals(1.0 / 6, cache.getHitRate(), 1e-9);
+	}
+}
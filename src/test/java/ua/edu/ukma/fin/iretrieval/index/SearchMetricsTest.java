@@ -0,0 +1,160 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ua.edu.ukma.fin.iretrieval.BooleanQuery;
+import ua.edu.ukma.fin.iretrieval.Document;
+import ua.edu.ukma.fin.iretrieval.Query;
+
+public class SearchMetricsTest
+{
+	@BeforeClass
+	public static void setUpBeforeClass()
+	{
+		for (int i = 0; i < 10; i++)
+		{
+			Document document = new Document("Document " + i);
+			document.setTitle(i % 3 == 0 ? "Car insurance" : "Insured tractor");
+			documents.add(document);
+		}
+	}
+
+	@After
+	public void tearDown()
+	{
+		SearchMetrics.getInstance().monitor(null);
+		SearchMetrics.getInstance().setSlowQueryThreshold(-1);
+	}
+
+	@Test
+	public void testHistogram()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getValueAtPercentile(99.0));
+		for (long micros = 1; micros <= 1000; micros++)
+		{
+			histogram.record(micros * 1000);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1.0, histogram.getMaxMillis(), 1e-9);
+		assertEquals(0.5005, histogram.getMeanMillis(), 1e-9);
+		// percentiles are rounded up to the end of their bucket
+		assertEquals(0.5, histogram.getP50Millis(), 0.5 / LatencyHistogram.SUB_BUCKETS);
+		assertEquals(0.99, histogram.getP99Millis(), 0.99 / LatencyHistogram.SUB_BUCKETS);
+		assertEquals(1.0, histogram.getValueAtPercentile(100.0) / 1e6, 1e-9);
+
+		for (long value : new long[] { 0, 31, 32, 33, 1000, 123456789, Long.MAX_VALUE })
+		{
+			int bucket = LatencyHistogram.getBucket(value);
+			assertTrue(value <= LatencyHistogram.getHighestValue(bucket));
+			assertTrue(bucket == 0 || value > LatencyHistogram.getHighestValue(bucket - 1));
+		}
+	}
+
+	@Test
+	public void testRecording() throws Exception
+	{
+		SearchMetrics metrics = SearchMetrics.getInstance();
+		InvertedIndex index = new InvertedIndex(documents);
+		IndexManager manager = new IndexManager(index);
+		manager.setQueryCache(new QueryCache(100));
+		metrics.monitor(manager);
+
+		long queries = metrics.getLatency(IndexType.INVERTED).getCount();
+		long scanned = metrics.getPostingsScanned();
+		long scored = metrics.getCandidatesScored();
+		long hits = metrics.getCacheHits();
+		manager.retrieveDocuments(new Query("car insurance"), 2);
+		manager.retrieveDocuments(new Query("car insurance"), 2);
+		manager.retrieveDocuments(new BooleanQuery("car AND NOT tractor"), 2);
+		assertEquals(queries + 2, metrics.getLatency(IndexType.INVERTED).getCount());
+		assertTrue(metrics.getPostingsScanned() > scanned);
+		assertTrue(metrics.getCandidatesScored() > scored);
+		assertEquals(hits + 1, metrics.getCacheHits());
+
+		assertEquals(documents.size(), metrics.getIndexDocuments());
+		assertTrue(metrics.getIndexHeapSize() > 0);
+		String dump = metrics.dump();
+		assertTrue(dump, dump.contains("INVERTED"));
+		assertTrue(dump, dump.contains("Query cache: " + metrics.getCacheHits() + " hits"));
+
+		metrics.register();
+		metrics.register();
+		assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(
+				new ObjectName("ua.edu.ukma.fin.iretrieval:type=QueryLatency,index=INVERTED")));
+	}
+
+	@Test
+	public void testSlowQueryLog()
+	{
+		SearchMetrics metrics = SearchMetrics.getInstance();
+		final List<String> entries = new ArrayList<String>();
+		Handler handler = new Handler()
+		{
+			@Override
+			public void publish(LogRecord record)
+			{
+				entries.add(record.getMessage());
+			}
+
+			@Override
+			public void flush()
+			{
+			}
+
+			@Override
+			public void close()
+			{
+			}
+		};
+		Logger logger = Logger.getLogger("com.iretrieval.index.slowlog");
+		logger.addHandler(handler);
+		try
+		{
+			VectorSpaceIndex index = new VectorSpaceIndex(documents);
+			index.retrieveDocuments(new Query("car insurance"), 2);
+			assertTrue(entries.isEmpty());
+
+			long slowQueries = metrics.getSlowQueryCount();
+			metrics.setSlowQueryThreshold(0);
+			index.retrieveDocuments(new Query("car insur* tractorless"), 2);
+			assertEquals(1, entries.size());
+			assertEquals(slowQueries + 1, metrics.getSlowQueryCount());
+			String entry = entries.get(0);
+			assertTrue(entry, entry.startsWith("Slow VECTOR_SPACE query "));
+			assertTrue(entry, entry.contains("\"car tractorless insur*\""));
+			assertTrue(entry, entry.contains("expand="));
+			assertTrue(entry, entry.contains(" postings="));
+			assertTrue(entry, entry.contains(" scoring="));
+			assertTrue(entry, entry.contains(" top_k="));
+			assertTrue(entry, entry.contains(" materialize="));
+			assertTrue(entry, entry.contains("car=" + index.segment.getPostings("car").size()));
+			assertTrue(entry, entry.contains("insurance="));
+			assertTrue(entry, entry.contains("tractorless=0"));
+
+			metrics.setSlowQueryThreshold(60000);
+			index.retrieveDocuments(new Query("car"), 2);
+			assertEquals(1, entries.size());
+		}
+		finally
+		{
+			logger.removeHandler(handler);
+		}
+	}
+
+	private static final List<Document> documents = new ArrayList<Document>();
+}
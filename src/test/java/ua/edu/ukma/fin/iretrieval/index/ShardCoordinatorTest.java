@@ -0,0 +1,242 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.ProcessBuilder.Redirect;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ua.edu.ukma.fin.iretrieval.BooleanQuery;
+import ua.edu.ukma.fin.iretrieval.Document;
+import ua.edu.ukma.fin.iretrieval.Query;
+
+public class ShardCoordinatorTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@BeforeClass
+	public static void setUpClass()
+	{
+		String[] words = { "car", "auto", "insurance", "policy", "tractor", "truck", "claim",
+				"driver", "premium", "accident" };
+		Random random = new Random(22);
+		for (int i = 0; i < 500; i++)
+		{
+			Document document = new Document("Document " + i);
+			StringBuilder title = new StringBuilder();
+			StringBuilder body = new StringBuilder();
+			for (int j = 0; j < 3; j++)
+			{
+				title.append(words[random.nextInt(words.length)]).append(' ');
+			}
+			for (int j = 0; j < 5 + random.nextInt(20); j++)
+			{
+				body.append(words[random.nextInt(words.length)]).append(' ');
+			}
+			document.setTitle(title.toString());
+			document.setBody(body.toString());
+			document.addCategory(words[i % words.length]);
+			documents.add(document);
+		}
+	}
+
+	@Test
+	public void testRetrieveDocuments() throws IOException
+	{
+		List<Path> paths = writeShards(3);
+		List<ShardServer> servers = new ArrayList<ShardServer>();
+		List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+		for (Path path : paths)
+		{
+			ShardServer server = new ShardServer(MappedSegment.open(path));
+			server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+			servers.add(server);
+			addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), server
+					.getPort()));
+		}
+		try
+		{
+			for (IndexType type : IndexType.values())
+			{
+				ShardCoordinator coordinator = new ShardCoordinator(addresses, type);
+				try
+				{
+					assertSameResults(new ShardedIndex(ShardedIndex.partition(documents, 3, null),
+							type, new ZoneStatistics(), null), coordinator);
+				}
+				finally
+				{
+					coordinator.close();
+				}
+			}
+		}
+		finally
+		{
+			for (ShardServer server : servers)
+			{
+				server.close();
+			}
+		}
+		ShardCoordinator coordinator = new ShardCoordinator(addresses, IndexType.BASIC);
+		coordinator.setTimeout(1000);
+		try
+		{
+			coordinator.retrieveDocuments(new Query("car"), 10);
+			fail("Closed shards must not answer.");
+		}
+		catch (IOException e)
+		{
+			// expected
+		}
+		finally
+		{
+			coordinator.close();
+		}
+	}
+
+	/**
+	 * Lengths that are negative or too large for any sane request and
+	 * document IDs outside the shard close the connection instead of
+	 * desynchronizing or exhausting the server.
+	 */
+	@Test(timeout = 10000)
+	public void testMalformedRequests() throws IOException
+	{
+		ShardServer server = new ShardServer(new MemorySegment(documents));
+		server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		try
+		{
+			// opcode, count and the first string length or document ID
+			int[][] requests = { { ShardProtocol.STATISTICS, 1, -2 },
+					{ ShardProtocol.STATISTICS, 1, Integer.MAX_VALUE },
+					{ ShardProtocol.FETCH, 1, -1 }, { ShardProtocol.FETCH, 1, documents.size() } };
+			for (int[] request : requests)
+			{
+				Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+				try
+				{
+					DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+					DataInputStream input = new DataInputStream(socket.getInputStream());
+					output.writeByte(request[0]);
+					output.writeInt(request[1]);
+					output.writeInt(request[2]);
+					output.flush();
+					assertEquals(-1, input.read());
+				}
+				finally
+				{
+					socket.close();
+				}
+			}
+		}
+		finally
+		{
+			server.close();
+		}
+	}
+
+	/**
+	 * Serves shards by separate processes, the way they are deployed on
+	 * several machines.
+	 */
+	@Test
+	public void testProcesses() throws IOException
+	{
+		List<Path> paths = writeShards(2);
+		List<Process> processes = new ArrayList<Process>();
+		List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+		try
+		{
+			for (Path path : paths)
+			{
+				ProcessBuilder builder = new ProcessBuilder(System.getProperty("java.home")
+						+ File.separator + "bin" + File.separator + "java", "-cp", System
+						.getProperty("java.class.path"), ShardServer.class.getName(), path
+						.toString(), "0");
+				builder.redirectError(Redirect.INHERIT);
+				Process process = builder.start();
+				processes.add(process);
+				BufferedReader output = new BufferedReader(new InputStreamReader(process
+						.getInputStream(), StandardCharsets.UTF_8));
+				String line = output.readLine();
+				assertTrue(String.valueOf(line), line != null
+						&& line.startsWith("ShardServer listening on port "));
+				int port = Integer.parseInt(line.substring(line.lastIndexOf(' ') + 1));
+				addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+			}
+			ShardCoordinator coordinator = new ShardCoordinator(addresses, IndexType.INVERTED);
+			try
+			{
+				assertSameResults(new ShardedIndex(ShardedIndex.partition(documents, 2, null),
+						IndexType.INVERTED, new ZoneStatistics(), null), coordinator);
+			}
+			finally
+			{
+				coordinator.close();
+			}
+		}
+		finally
+		{
+			for (Process process : processes)
+			{
+				process.destroy();
+			}
+		}
+	}
+
+	private static void assertSameResults(ShardedIndex expected, ShardCoordinator coordinator)
+			throws IOException
+	{
+		Query[] queries = { new Query("car insurance"), new Query("tractor truck claim"),
+				new Query("acc* pol?cy"), new BooleanQuery("car NOT (truck OR tractor)"),
+				new BooleanQuery("\"auto insurance\""), new Query("missing"), new Query("") };
+		for (Query query : queries)
+		{
+			for (int k : new int[] { 1, 10, documents.size() })
+			{
+				List<Document> actual = coordinator.retrieveDocuments(query, k);
+				assertEquals(coordinator.getType() + " " + query, expected.retrieveDocuments(query,
+						k), actual);
+				for (Document document : actual)
+				{
+					assertEquals(documents.get(documents.indexOf(document)).getCategories(),
+							document.getCategories());
+				}
+			}
+		}
+	}
+
+	private List<Path> writeShards(int shardCount) throws IOException
+	{
+		List<Path> paths = new ArrayList<Path>();
+		for (Segment shard : ShardedIndex.partition(documents, shardCount, null))
+		{
+			Path path = folder.getRoot().toPath().resolve("index." + paths.size());
+			SegmentWriter.write(shard, path);
+			paths.add(path);
+		}
+		return paths;
+	}
+
+	private static List<Document> documents = new ArrayList<Document>();
+}
@@ -0,0 +1,123 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ua.edu.ukma.fin.iretrieval.BooleanQuery;
+import ua.edu.ukma.fin.iretrieval.Document;
+import ua.edu.ukma.fin.iretrieval.Query;
+import ua.edu.ukma.fin.iretrieval.ZoneName;
+
+public class ShardedIndexTest
+{
+	@BeforeClass
+	public static void setUpClass()
+	{
+		String[] words = { "car", "auto", "insurance", "policy", "tractor", "truck", "claim",
+				"driver", "premium", "accident" };
+		Random random = new Random(21);
+		for (int i = 0; i < 1000; i++)
+		{
+			Document document = new Document("Document " + i);
+			StringBuilder title = new StringBuilder();
+			StringBuilder body = new StringBuilder();
+			for (int j = 0; j < 3; j++)
+			{
+				title.append(words[random.nextInt(words.length)]).append(' ');
+			}
+			for (int j = 0; j < 5 + random.nextInt(20); j++)
+			{
+				body.append(words[random.nextInt(words.length)]).append(' ');
+			}
+			document.setTitle(title.toString());
+			document.setBody(body.toString());
+			documents.add(document);
+		}
+		pool = new ForkJoinPool(4);
+	}
+
+	@AfterClass
+	public static void tearDownClass()
+	{
+		pool.shutdown();
+	}
+
+	@Test
+	public void testEvaluate()
+	{
+		Query[] queries = { new Query("car insurance"), new Query("tractor truck claim"),
+				new Query("acc* pol?cy"), new BooleanQuery("car NOT (truck OR tractor)"),
+				new Query("missing") };
+		Segment segment = new MemorySegment(documents);
+		for (IndexType type : IndexType.values())
+		{
+			Index index = new IndexFactory().getIndex(segment, type);
+			ShardedIndex sharded = new ShardedIndex(documents, type, 5, pool);
+			assertEquals(5, sharded.getShardCount());
+			assertEquals(documents.size(), sharded.segment.getDocumentCount());
+			for (Query query : queries)
+			{
+				for (int k : new int[] { 1, 10, documents.size() })
+				{
+					ScoredDocument[] expected = index.evaluate(query, k);
+					ScoredDocument[] actual = sharded.evaluate(query, k);
+					assertEquals(type + " " + query, expected.length, actual.length);
+					for (int i = 0; i < expected.length; i++)
+					{
+						assertEquals(expected[i].getScore(), actual[i].getScore(), 1e-9);
+					}
+				}
+				assertEquals(new HashSet<Document>(index.retrieveDocuments(query)),
+						new HashSet<Document>(sharded.retrieveDocuments(query)));
+			}
+		}
+	}
+
+	@Test
+	public void testPartition()
+	{
+		List<Segment> shards = ShardedIndex.partition(documents, 4, null);
+		int documentCount = 0;
+		for (int i = 0; i < shards.size(); i++)
+		{
+			Segment shard = shards.get(i);
+			assertTrue(shard.getDocumentCount() > documents.size() / 8);
+			for (int documentId = 0; documentId < shard.getDocumentCount(); documentId++)
+			{
+				assertEquals(i, ShardedIndex.getShard(shard.getDocument(documentId).getGuid(), 4));
+			}
+			documentCount += shard.getDocumentCount();
+		}
+		assertEquals(documents.size(), documentCount);
+	}
+
+	@Test
+	public void testPartialZoneWeights()
+	{
+		Segment segment = new MemorySegment(documents);
+		Map<ZoneName, Double> zoneWeights = new EnumMap<ZoneName, Double>(ZoneName.class);
+		zoneWeights.put(ZoneName.Title, 0.7);
+		ZonedIndex equal = new ZonedIndex(segment, null);
+		ZonedIndex shard = (ZonedIndex) ShardedIndex.createShard(segment, IndexType.ZONED, null,
+				zoneWeights);
+		assertEquals(0.7, shard.getZoneWeight(ZoneName.Title), 1e-9);
+		assertEquals(equal.getZoneWeight(ZoneName.Description),
+				shard.getZoneWeight(ZoneName.Description), 1e-9);
+		assertTrue(shard.evaluate(new Query("car insurance"), 10).length > 0);
+	}
+
+	private static List<Document> documents = new ArrayList<Document>();
+	private static ForkJoinPool pool = null;
+}
@@ -0,0 +1,98 @@
+package ua.edu.ukma.fin.iretrieval.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+public class TermDictionaryTest
+{
+	@Test
+	public void testDictionary()
+	{
+		String alphabet = "abc\u0430\u0431\u0432#+";
+		Random random = new Random(20);
+		SortedSet<String> terms = new TreeSet<String>();
+		while (terms.size() < 5000)
+		{
+			StringBuilder term = new StringBuilder();
+			for (int length = 1 + random.nextInt(8); length > 0; length--)
+			{
+				term.append(alphabet.charAt(random.nextInt(alphabet.length())));
+			}
+			terms.add(term.toString());
+		}
+		TermDictionary dictionary = new TermDictionary(terms.iterator());
+		assertEquals(terms.size(), dictionary.size());
+		assertEquals(new ArrayList<String>(terms), new ArrayList<String>(dictionary));
+
+		int ordinal = 0;
+		for (String term : terms)
+		{
+			assertEquals(ordinal, dictionary.find(term));
+			assertEquals(term, dictionary.getTerm(ordinal++));
+			assertFalse(dictionary.contains(term + "z"));
+		}
+		assertEquals(-1, dictionary.find(""));
+		assertEquals(-1, dictionary.find("\u0433"));
+
+		for (String prefix : new String[] { "", "a", "ab", "\u0431\u0430", "#+", "z", "c\u0432a" })
+		{
+			List<String> expected = new ArrayList<String>();
+			for (String term : terms.tailSet(prefix))
+			{
+				if (!term.startsWith(prefix))
+				{
+					break;
+				}
+				expected.add(term);
+			}
+			List<String> actual = new ArrayList<String>();
+			for (Iterator<String> iterator = dictionary.iterator(prefix); iterator.hasNext();)
+			{
+				actual.add(iterator.next());
+			}
+			assertEquals(prefix, expected, actual);
+		}
+	}
+
+	@Test
+	public void testEmpty()
+	{
+		TermDictionary dictionary = new TermDictionary(new TreeSet<String>().iterator());
+		assertEquals(0, dictionary.size());
+		assertEquals(-1, dictionary.find("term"));
+		assertFalse(dictionary.iterator().hasNext());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsorted()
+	{
+		List<String> terms = new ArrayList<String>();
+		terms.add("b");
+		terms.add("a");
+		new TermDictionary(terms.iterator());
+	}
+
+	@Test
+	public void testMatches()
+	{
+		assertTrue(Segment.matches("car*", "car"));
+		assertTrue(Segment.matches("car*", "cars"));
+		assertTrue(Segment.matches("*s", "cars"));
+		assertTrue(Segment.matches("c*r*s", "cars"));
+		assertTrue(Segment.matches("c?rs", "cars"));
+		assertTrue(Segment.matches("a*b*c", "aXbYbZc"));
+		assertFalse(Segment.matches("c?rs", "crs"));
+		assertFalse(Segment.matches("car*s", "carts2"));
+		assertFalse(Segment.matches("a*b*c", "aXbYbZ"));
+	}
+}
@@ -3,10 +3,13 @@ package ua.edu.ukma.fin.iretrieval.index;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
+import java.util.List;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import ua.edu.ukma.fin.iretrieval.Document;
 import ua.edu.ukma.fin.iretrieval.Query;
 
 public class VectorSpaceIndexTest extends InvertedIndexTest
@@ -35,5 +38,15 @@ public class VectorSpaceIndexTest extends InvertedIndexTest
 		assertEquals(null, 0.12502479392953, vectorSpaceIndex.getCosineSimilarity(IndexTest.c, query), 0.001);
 	}
 
+	@Test
+	public void testRetrieveDocumentsByCosineSimilarity()
+	{
+		List<Document> results = vectorSpaceIndex.retrieveDocuments(new Query(
+				"car insurance auto"), 2);
+		assertEquals(2, results.size());
+		assertEquals(IndexTest.a, results.get(0));
+		assertEquals(IndexTest.b, results.get(1));
+	}
+
 	private VectorSpaceIndex vectorSpaceIndex = null;
 }
@@ -1,18 +1,26 @@
 package ua.edu.ukma.fin.iretrieval.index;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import ua.edu.ukma.fin.iretrieval.Document;
 import ua.edu.ukma.fin.iretrieval.TrainingExample;
+import ua.edu.ukma.fin.iretrieval.Zone;
 import ua.edu.ukma.fin.iretrieval.ZoneName;
+import ua.edu.ukma.fin.iretrieval.ZonedDocument;
 
 public class ZonedIndexTest extends IndexTest
 {
@@ -20,7 +28,7 @@ public class ZonedIndexTest extends IndexTest
 	public void setUp()
 	{
 		super.setUp();
-		Set<TrainingExample> trainingExamples = new HashSet<TrainingExample>();
+		trainingExamples = new HashSet<TrainingExample>();
 		trainingExamples.add(new TrainingExample("Document a", "policy", true));
 		trainingExamples.add(new TrainingExample("Document b", "policy", false));
 		trainingExamples.add(new TrainingExample("Document c", "policy", false));
@@ -33,7 +41,7 @@ public class ZonedIndexTest extends IndexTest
 		trainingExamples.add(new TrainingExample("Document a", "tractor", false));
 		trainingExamples.add(new TrainingExample("Document b", "tractor", false));
 		trainingExamples.add(new TrainingExample("Document c", "tractor", false));
-		zonedIndex = new ZonedIndex(ZonedIndex.convertDocuments(IndexTest.docs), trainingExamples);
+		zonedIndex = new ZonedIndex(IndexTest.docs, trainingExamples);
 		assertNotNull(zonedIndex);
 	}
 	
@@ -41,6 +49,7 @@ public class ZonedIndexTest extends IndexTest
 	public void tearDown() {
 		super.tearDown();
 		zonedIndex = null;
+		trainingExamples = null;
 	}
 
 	@Test
@@ -77,5 +86,65 @@ public class ZonedIndexTest extends IndexTest
 		assertTrue(1.0 == totalWeight);
 	}
 	
+	@Test
+	public void testGetZonesTermFrequencies()
+	{
+		for (Document document : IndexTest.docs)
+		{
+			ZonedDocument zoned = new ZonedDocument(document);
+			for (String term : zonedIndex.getDictionary())
+			{
+				int[] expected = new int[ZoneName.values().length];
+				for (Zone zone : zoned.getZones())
+				{
+					expected[zone.getName().ordinal()] = zone.getTermFrequency(term);
+				}
+				assertArrayEquals(expected, zonedIndex.getZonesTermFrequencies(zoned, term));
+			}
+		}
+	}
+
+	@Test
+	public void testZoneStatistics()
+	{
+		Segment segment = new MemorySegment(IndexTest.docs);
+		List<TrainingExample> examples = new ArrayList<TrainingExample>(trainingExamples);
+		ZoneStatistics batch = new ZoneStatistics();
+		batch.add(examples);
+		batch.update(segment, null);
+
+		ZoneStatistics incremental = new ZoneStatistics();
+		incremental.add(examples.subList(0, examples.size() / 2));
+		incremental.update(segment, null);
+		incremental.add(examples.subList(examples.size() / 2, examples.size()));
+		incremental.update(segment, null);
+		assertEquals(batch.getExampleCount(), incremental.getExampleCount());
+		assertEquals(batch.getWeights(), incremental.getWeights());
+
+		List<TrainingExample> repeated = new ArrayList<TrainingExample>();
+		for (int i = 0; i < 2000; i++)
+		{
+			repeated.addAll(examples);
+		}
+		ZoneStatistics sequential = new ZoneStatistics();
+		sequential.add(repeated);
+		sequential.update(segment, null);
+		ZoneStatistics parallel = new ZoneStatistics();
+		parallel.add(repeated);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try
+		{
+			parallel.update(segment, pool);
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		assertEquals(repeated.size(), parallel.getExampleCount());
+		assertEquals(sequential.getWeights(), parallel.getWeights());
+		assertEquals(batch.getWeights(), parallel.getWeights());
+	}
+
+	private Set<TrainingExample> trainingExamples = null;
 	private ZonedIndex zonedIndex = null;
 }